@@ -23,7 +23,7 @@ public class FakeSyncManager extends SyncManager {
 
     // TODO/cleanup: Create a common interface between SyncManager and this class.
     public FakeSyncManager(EventBusInterface eventBus) {
-        super(eventBus);
+        super(eventBus, null, null);
     }
 
     /** Sets whether or not syncing should appear to be occurring. */
@@ -42,4 +42,6 @@ public class FakeSyncManager extends SyncManager {
     @Override public void startFullSync() {
         mSyncing = true;
     }
+
+    @Override public void startPatientSync(String patientUuid) {}
 }
@@ -0,0 +1,118 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.net;
+
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import com.android.volley.toolbox.RequestFuture;
+
+import org.joda.time.DateTime;
+import org.projectbuendia.client.App;
+import org.projectbuendia.client.json.JsonEncounter;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.Encounter;
+import org.projectbuendia.client.models.Patient;
+import org.projectbuendia.client.sync.FakeServerFixture;
+import org.projectbuendia.client.sync.SyncAdapter;
+import org.projectbuendia.client.sync.SyncAdapter.SyncOption;
+import org.projectbuendia.client.sync.SyncTelemetry;
+import org.projectbuendia.client.utils.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that saving an encounter stays quick while a full sync is downloading, which is what
+ * the separate {@link VolleyRequestQueue.Lane}s are for: the saves go in the INTERACTIVE lane,
+ * so they shouldn't wait behind the sync's page downloads.  The sync runs the app's own
+ * {@link SyncAdapter} against a {@link org.projectbuendia.client.fakeserver.FakeBuendiaServer}
+ * on the device, slowed down so that it lasts through all the saves.
+ * <p>
+ * This clears the local database and points the app at the fake server while it runs, so use
+ * a test device.
+ */
+public class EncounterSaveLatencyTest extends InstrumentationTestCase {
+    private static final Logger LOG = Logger.create();
+
+    private static final int PATIENTS = 200;
+    private static final int DAYS = 14;
+    private static final long SEED = 1;
+    // Slow enough that the full sync takes far longer than the saves.
+    private static final long SYNC_BYTES_PER_SECOND = 50000;
+
+    private static final int SAVES = 10;
+    private static final long SAVE_INTERVAL_MILLIS = 500;
+    /** Longest an encounter save may take while the sync is running. */
+    private static final long MAX_SAVE_MILLIS = 2000;
+
+    private FakeServerFixture mFixture;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        mFixture = new FakeServerFixture(getInstrumentation().getTargetContext());
+        mFixture.setUp(PATIENTS, DAYS, SEED);
+        mFixture.getServer().setBytesPerSecond(SYNC_BYTES_PER_SECOND);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        mFixture.tearDown();
+        super.tearDown();
+    }
+
+    public void testEncounterSaveDuringFullSync() throws Exception {
+        final SyncAdapter adapter = mFixture.newSyncAdapter(new SyncTelemetry(
+            getInstrumentation().getTargetContext().getContentResolver()));
+        final SyncResult[] syncResult = new SyncResult[1];
+        Thread syncThread = new Thread(new Runnable() {
+            @Override public void run() {
+                Bundle full = new Bundle();
+                full.putBoolean(SyncOption.FULL_SYNC.name(), true);
+                syncResult[0] = mFixture.sync(adapter, full);
+            }
+        }, "Sync");
+        syncThread.start();
+        // Let the sync get past the small reference data and into the big page downloads.
+        while (syncThread.isAlive() && mFixture.getServer().getRequestCount() < 10) {
+            Thread.sleep(100);
+        }
+
+        Patient patient = Patient.fromJson(mFixture.getData().patients.get(0));
+        long maxMillis = 0;
+        int savesDuringSync = 0;
+        for (int i = 0; i < SAVES; i++) {
+            Encounter encounter = new Encounter(patient.uuid, null, DateTime.now(),
+                new Encounter.Observation[] {
+                    new Encounter.Observation(ConceptUuids.TEMPERATURE_UUID, "37." + i)
+                }, null, null);
+            RequestFuture<JsonEncounter> future = RequestFuture.newFuture();
+            long startMillis = SystemClock.elapsedRealtime();
+            App.getServer().addEncounter(patient, encounter, future, future);
+            future.get(MAX_SAVE_MILLIS*5, TimeUnit.MILLISECONDS);
+            long millis = SystemClock.elapsedRealtime() - startMillis;
+            if (syncThread.isAlive()) {
+                savesDuringSync++;
+                maxMillis = Math.max(maxMillis, millis);
+            }
+            LOG.i("Save %d took %d ms%s", i, millis, syncThread.isAlive() ? " during sync" : "");
+            Thread.sleep(SAVE_INTERVAL_MILLIS);
+        }
+        syncThread.join();
+
+        assertFalse("Full sync failed: " + syncResult[0], syncResult[0].hasError());
+        assertTrue("The sync finished before any encounter was saved", savesDuringSync > 0);
+        assertTrue("An encounter save took " + maxMillis + " ms during the sync",
+            maxMillis <= MAX_SAVE_MILLIS);
+    }
+}
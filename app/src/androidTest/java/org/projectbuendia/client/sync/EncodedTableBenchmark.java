@@ -0,0 +1,225 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.text.TextUtils;
+
+import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.providers.Contracts.Table;
+import org.projectbuendia.client.utils.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Compares the size and speed of the observations table with UUIDs stored as text, as in
+ * database version 35, and with UUIDs stored as ids (see {@link EncodedTable}).  Both get the
+ * same generated history; the results are written to the log, tagged EncodedTableBenchmark.
+ */
+public class EncodedTableBenchmark extends InstrumentationTestCase {
+    private static final Logger LOG = Logger.create();
+
+    private static final int PATIENTS = 100;
+    private static final int DAYS = 14;
+    private static final int ROUNDS_PER_DAY = 3;
+    private static final int CONCEPTS = 15;
+    private static final long MILLIS_PER_ROUND = 8 * 3600 * 1000;
+
+    /** The observations table as it was in database version 35. */
+    private static final String TEXT_SCHEMA = ""
+        + "uuid TEXT PRIMARY KEY,"
+        + "patient_uuid TEXT,"
+        + "encounter_uuid TEXT,"
+        + "encounter_millis INTEGER,"
+        + "concept_uuid TEXT,"
+        + "enterer_uuid TEXT,"
+        + "value STRING,"
+        + "value_number REAL,"
+        + "value_coded TEXT,"
+        + "value_millis INTEGER,"
+        + "UNIQUE (patient_uuid, encounter_uuid, concept_uuid)";
+
+    private static final String[] CHART_PROJECTION = {
+        Observations.ENCOUNTER_MILLIS, Observations.CONCEPT_UUID, Observations.VALUE};
+
+    private final List<String> mPatientUuids = new ArrayList<>();
+    private final List<String> mConceptUuids = new ArrayList<>();
+    private final List<ContentValues> mRows = new ArrayList<>();
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        Random random = new Random(0);
+        String entererUuid = UUID.randomUUID().toString();
+        for (int c = 0; c < CONCEPTS; c++) {
+            mConceptUuids.add(UUID.randomUUID().toString());
+        }
+        for (int p = 0; p < PATIENTS; p++) {
+            String patientUuid = UUID.randomUUID().toString();
+            mPatientUuids.add(patientUuid);
+            for (int r = 0; r < DAYS * ROUNDS_PER_DAY; r++) {
+                String encounterUuid = UUID.randomUUID().toString();
+                for (String conceptUuid : mConceptUuids) {
+                    ContentValues values = new ContentValues();
+                    values.put(Observations.UUID, UUID.randomUUID().toString());
+                    values.put(Observations.PATIENT_UUID, patientUuid);
+                    values.put(Observations.ENCOUNTER_UUID, encounterUuid);
+                    values.put(Observations.ENCOUNTER_MILLIS, r * MILLIS_PER_ROUND);
+                    values.put(Observations.CONCEPT_UUID, conceptUuid);
+                    values.put(Observations.ENTERER_UUID, entererUuid);
+                    // Half the values are numbers and half are coded answers.
+                    boolean coded = conceptUuid.hashCode() % 2 == 0;
+                    String value = coded ? mConceptUuids.get(random.nextInt(CONCEPTS))
+                        : Integer.toString(random.nextInt(100));
+                    values.put(Observations.VALUE, value);
+                    values.put(Observations.VALUE_NUMBER, coded ? null : Double.valueOf(value));
+                    values.put(Observations.VALUE_CODED, coded ? value : null);
+                    values.putNull(Observations.VALUE_MILLIS);
+                    mRows.add(values);
+                }
+            }
+        }
+    }
+
+    public void testTextUuidsAgainstEncodedUuids() {
+        Context context = getInstrumentation().getTargetContext();
+
+        File textFile = new File(context.getCacheDir(), "benchmark-text.db");
+        SQLiteDatabase textDb = open(textFile);
+        textDb.execSQL("CREATE TABLE " + Table.OBSERVATIONS + " (" + TEXT_SCHEMA + ")");
+        long textInsertMillis = insert(textDb, null);
+        Result text = measure(textDb, textFile, textInsertMillis);
+
+        File encodedFile = new File(context.getCacheDir(), "benchmark-encoded.db");
+        SQLiteDatabase encodedDb = open(encodedFile);
+        Database database = new Database(context);
+        database.onCreate(encodedDb);
+        database.onOpen(encodedDb);
+        long encodedInsertMillis = insert(encodedDb, EncodedTable.get(Table.OBSERVATIONS));
+        Result encoded = measure(encodedDb, encodedFile, encodedInsertMillis);
+
+        LOG.i("%d observations with text UUIDs: %s", mRows.size(), text);
+        LOG.i("%d observations with encoded UUIDs: %s", mRows.size(), encoded);
+        textDb.close();
+        encodedDb.close();
+        SQLiteDatabase.deleteDatabase(textFile);
+        SQLiteDatabase.deleteDatabase(encodedFile);
+
+        assertEquals(text.chartRows, encoded.chartRows);
+        assertEquals(text.scanRows, encoded.scanRows);
+        assertTrue("Encoded UUIDs should take less space", encoded.fileBytes < text.fileBytes);
+    }
+
+    private static SQLiteDatabase open(File file) {
+        SQLiteDatabase.deleteDatabase(file);
+        return SQLiteDatabase.openOrCreateDatabase(file, null);
+    }
+
+    /** Inserts all the rows, as a sync does, and returns the time taken in milliseconds. */
+    private long insert(SQLiteDatabase db, EncodedTable encoded) {
+        long startMillis = SystemClock.elapsedRealtime();
+        String[] columns = mRows.get(0).keySet().toArray(new String[0]);
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement;
+            if (encoded != null) {
+                encoded.intern(db, mRows.toArray(new ContentValues[mRows.size()]));
+                statement = encoded.compileInsert(db, "OR REPLACE", columns);
+            } else {
+                statement = db.compileStatement("INSERT OR REPLACE INTO " + Table.OBSERVATIONS
+                    + " (" + TextUtils.join(", ", columns) + ") VALUES ("
+                    + TextUtils.join(", ", Collections.nCopies(columns.length, "?")) + ")");
+            }
+            for (ContentValues values : mRows) {
+                statement.clearBindings();
+                for (int i = 0; i < columns.length; i++) {
+                    DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i]));
+                }
+                statement.executeInsert();
+            }
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return SystemClock.elapsedRealtime() - startMillis;
+    }
+
+    private Result measure(SQLiteDatabase db, File file, long insertMillis) {
+        db.execSQL("VACUUM");
+        Result result = new Result();
+        result.insertMillis = insertMillis;
+        result.fileBytes = file.length();
+
+        // Load every patient's chart, as opening the chart does.
+        long startMillis = SystemClock.elapsedRealtime();
+        for (String patientUuid : mPatientUuids) {
+            result.chartRows += readAll(db.query(
+                Table.OBSERVATIONS.name, CHART_PROJECTION, Observations.PATIENT_UUID + " = ?",
+                new String[] {patientUuid}, null, null, Observations.ENCOUNTER_MILLIS));
+        }
+        result.chartMillis = SystemClock.elapsedRealtime() - startMillis;
+
+        // Read one concept for every patient, as the patient lists do for the condition.
+        startMillis = SystemClock.elapsedRealtime();
+        result.scanRows = readAll(db.query(
+            Table.OBSERVATIONS.name,
+            new String[] {Observations.PATIENT_UUID, Observations.VALUE},
+            Observations.CONCEPT_UUID + " = ?", new String[] {mConceptUuids.get(0)},
+            null, null, null));
+        result.scanMillis = SystemClock.elapsedRealtime() - startMillis;
+        return result;
+    }
+
+    /** Reads every column of every row, then closes the cursor; returns the number of rows. */
+    private static int readAll(Cursor cursor) {
+        int rows = 0;
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    cursor.getString(i);
+                }
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static class Result {
+        long insertMillis;
+        long fileBytes;
+        int chartRows;
+        long chartMillis;
+        int scanRows;
+        long scanMillis;
+
+        @Override public String toString() {
+            return String.format("insert %d ms, file %d kB, %d charts (%d rows) in %d ms, "
+                + "%d rows of one concept in %d ms", insertMillis, fileBytes / 1024,
+                PATIENTS, chartRows, chartMillis, scanRows, scanMillis);
+        }
+    }
+}
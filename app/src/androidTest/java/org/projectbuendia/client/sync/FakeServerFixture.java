@@ -0,0 +1,122 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+
+import org.projectbuendia.client.App;
+import org.projectbuendia.client.AppSettings;
+import org.projectbuendia.client.fakeserver.FakeBuendiaServer;
+import org.projectbuendia.client.fakeserver.HospitalData;
+import org.projectbuendia.client.fakeserver.HospitalDataGenerator;
+import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.utils.Logger;
+
+import de.greenrobot.event.EventBus;
+
+/**
+ * Runs a {@link FakeBuendiaServer} on the device, loaded with generated data, and points the
+ * app at it with an empty local database, for tests that sync.  The runner arguments
+ * "bytesPerSecond" and "latencyMillis" slow the server down to imitate a poor link.
+ */
+public class FakeServerFixture {
+    private static final Logger LOG = Logger.create();
+
+    private static final String SERVER_URL_KEY = "openmrs_root_url";
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private String mSavedServerUrl;
+    private HospitalDataGenerator mGenerator;
+    private HospitalData mData;
+    private FakeBuendiaServer mServer;
+
+    public FakeServerFixture(Context context) {
+        mContext = context;
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    /** Clears the local database and starts serving the given number of patients and days. */
+    public void setUp(int numPatients, int numDays, long seed) throws Exception {
+        mSavedServerUrl = mPrefs.getString(SERVER_URL_KEY, null);
+
+        // Every sync starts from an empty database, as on a new tablet.
+        Database db = new Database(mContext);
+        db.onUpgrade(db.getWritableDatabase(), 0, 1);
+        db.close();
+
+        mGenerator = new HospitalDataGenerator(seed);
+        mData = mGenerator.generate(numPatients, numDays);
+        mServer = new FakeBuendiaServer();
+        mServer.load(mData);
+        Bundle args = InstrumentationRegistry.getArguments();
+        mServer.setBytesPerSecond(Long.parseLong(args.getString("bytesPerSecond", "0")));
+        mServer.setLatencyMillis(Long.parseLong(args.getString("latencyMillis", "0")));
+        mServer.start();
+        mPrefs.edit().putString(SERVER_URL_KEY, mServer.getOpenmrsUrl()).commit();
+        // Forget any trouble with the previous server, which would stop the sync from starting.
+        App.getInstance().getHealthMonitor().clear();
+        LOG.i("Server has %s", mData);
+    }
+
+    /** Stops the server and points the app back at the server it was using before. */
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        if (mSavedServerUrl == null) {
+            mPrefs.edit().remove(SERVER_URL_KEY).commit();
+        } else {
+            mPrefs.edit().putString(SERVER_URL_KEY, mSavedServerUrl).commit();
+        }
+    }
+
+    public FakeBuendiaServer getServer() {
+        return mServer;
+    }
+
+    public HospitalDataGenerator getGenerator() {
+        return mGenerator;
+    }
+
+    /** Returns the data that setUp loaded into the server. */
+    public HospitalData getData() {
+        return mData;
+    }
+
+    /** Creates a SyncAdapter like the app's, recording its measurements in telemetry. */
+    public SyncAdapter newSyncAdapter(SyncTelemetry telemetry) {
+        PatientArchiver archiver = new PatientArchiver(mContext.getContentResolver(),
+            new AppSettings(mPrefs, mContext.getResources()),
+            mContext.getDatabasePath(Database.DATABASE_FILENAME));
+        return new SyncAdapter(mContext, new EventBus(), telemetry, archiver, false);
+    }
+
+    /** Runs one sync with the given extras on the calling thread. */
+    public SyncResult sync(SyncAdapter adapter, Bundle extras) {
+        SyncResult result = new SyncResult();
+        ContentProviderClient client =
+            mContext.getContentResolver().acquireContentProviderClient(Contracts.CONTENT_AUTHORITY);
+        try {
+            adapter.onPerformSync(SyncAccountService.getAccount(), extras,
+                Contracts.CONTENT_AUTHORITY, client, result);
+        } finally {
+            client.release();
+        }
+        return result;
+    }
+}
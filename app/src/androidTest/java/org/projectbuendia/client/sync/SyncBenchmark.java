@@ -0,0 +1,98 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.test.InstrumentationTestCase;
+
+import org.projectbuendia.client.fakeserver.FakeBuendiaServer;
+import org.projectbuendia.client.fakeserver.HospitalData;
+import org.projectbuendia.client.sync.SyncAdapter.SyncOption;
+import org.projectbuendia.client.sync.SyncAdapter.SyncPhase;
+import org.projectbuendia.client.utils.Logger;
+
+import java.util.List;
+
+/**
+ * Times a full sync, and then an incremental sync after another day of observations, by running
+ * the app's own {@link SyncAdapter} and sync phases against a {@link FakeBuendiaServer} on the
+ * device, loaded with generated data.  The measurements are those that {@link SyncTelemetry}
+ * records for the Sync diagnostics screen; they are written to the log, tagged SyncBenchmark.
+ * <p>
+ * This clears the local database and points the app at the fake server while it runs, so use
+ * a test device.  The runner arguments "bytesPerSecond" and "latencyMillis" slow the server
+ * down to imitate a poor link, e.g.:
+ * <pre>
+ *   ./gradlew connectedAndroidTest \
+ *       -Pandroid.testInstrumentationRunnerArguments.class=org.projectbuendia.client.sync.SyncBenchmark \
+ *       -Pandroid.testInstrumentationRunnerArguments.bytesPerSecond=50000
+ * </pre>
+ */
+public class SyncBenchmark extends InstrumentationTestCase {
+    private static final Logger LOG = Logger.create();
+
+    private static final int PATIENTS = 200;
+    private static final int DAYS = 14;
+    private static final long SEED = 1;
+
+    private FakeServerFixture mFixture;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        mFixture = new FakeServerFixture(getInstrumentation().getTargetContext());
+        mFixture.setUp(PATIENTS, DAYS, SEED);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        mFixture.tearDown();
+        super.tearDown();
+    }
+
+    public void testFullSyncThenIncrementalSync() throws Exception {
+        SyncTelemetry telemetry = new SyncTelemetry(
+            getInstrumentation().getTargetContext().getContentResolver());
+        SyncAdapter adapter = mFixture.newSyncAdapter(telemetry);
+
+        Bundle full = new Bundle();
+        full.putBoolean(SyncOption.FULL_SYNC.name(), true);
+        SyncResult fullResult = mFixture.sync(adapter, full);
+
+        HospitalData nextDay = mFixture.getGenerator().generateDay(DAYS);
+        mFixture.getServer().load(nextDay);
+        LOG.i("Server has %d more observations", nextDay.observations.size());
+        Bundle incremental = new Bundle();
+        incremental.putBoolean(SyncPhase.SYNC_PATIENTS.name(), true);
+        incremental.putBoolean(SyncPhase.SYNC_OBSERVATIONS.name(), true);
+        incremental.putBoolean(SyncPhase.SYNC_ORDERS.name(), true);
+        SyncResult incrementalResult = mFixture.sync(adapter, incremental);
+
+        List<SyncMeasurement> measurements = telemetry.getMeasurements();
+        for (SyncMeasurement m : measurements) {
+            if (m.isPhase()) {
+                LOG.i("%s", m);
+            }
+        }
+        // Newest first: the incremental sync, then the full sync.
+        for (SyncTelemetry.SyncSummary sync : SyncTelemetry.summarizeSyncs(measurements)) {
+            LOG.i("Sync of %s: %d rows, %d bytes on the wire, %d ms (%.0f rows/s)",
+                sync.phases, sync.rows, sync.wireBytes, sync.totalMillis,
+                sync.totalMillis == 0 ? 0 : sync.rows * 1000.0 / sync.totalMillis);
+        }
+        LOG.i("%d requests in all", mFixture.getServer().getRequestCount());
+
+        assertFalse("Full sync failed: " + fullResult, fullResult.hasError());
+        assertFalse("Incremental sync failed: " + incrementalResult, incrementalResult.hasError());
+        assertEquals(2, SyncTelemetry.summarizeSyncs(measurements).size());
+    }
+}
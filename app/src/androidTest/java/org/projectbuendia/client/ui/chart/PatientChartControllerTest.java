@@ -16,6 +16,7 @@ import android.test.AndroidTestCase;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import org.joda.time.LocalDate;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.projectbuendia.client.R;
@@ -28,8 +29,10 @@ import org.projectbuendia.client.events.data.ItemFetchedEvent;
 import org.projectbuendia.client.json.ConceptType;
 import org.projectbuendia.client.models.AppModel;
 import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.Encounter;
 import org.projectbuendia.client.models.Obs;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.models.Order;
 import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.sync.ChartDataHelper;
@@ -43,6 +46,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -87,14 +91,11 @@ public final class PatientChartControllerTest extends AndroidTestCase {
     /** Tests that observations are updated in the UI when patient details fetched. */
     public void testPatientDetailsLoaded_SetsObservationsOnUi() {
         // GIVEN the observations provider is set up to return some dummy data
-        List<Obs> allObservations =
-            ImmutableList.of(OBS_1);
+        ObsTable allObservations = new ObsTable.Builder().add(OBS_1).build();
         Map<String, Obs> recentObservations =
             ImmutableMap.of(OBS_1.conceptUuid, OBS_1);
-        when(mMockChartHelper.getObservations(PATIENT_UUID_1))
+        when(mMockChartHelper.getObservationTable(PATIENT_UUID_1))
             .thenReturn(allObservations);
-        when(mMockChartHelper.getLatestObservations(PATIENT_UUID_1))
-            .thenReturn(recentObservations);
         // GIVEN controller is initialized
         mController.init();
         // WHEN that patient's details are loaded
@@ -105,13 +106,38 @@ public final class PatientChartControllerTest extends AndroidTestCase {
         mFakeHandler.runUntilEmpty();
         // THEN the controller puts observations on the UI
         verify(mMockUi).updateTilesAndGrid(
-            null, recentObservations, allObservations, ImmutableList.<Order> of(), null, null);
+            null, recentObservations, allObservations, ImmutableList.<Order> of(),
+            ImmutableMap.<String, Map<LocalDate, Integer>> of(),
+            ImmutableMap.<String, List<DailyStats>> of(), null, null);
         verify(mMockUi).updateAdmissionDateAndFirstSymptomsDateUi(null, null);
         verify(mMockUi).updateWeightUi(recentObservations);
         verify(mMockUi).updateEbolaPcrTestResultUi(recentObservations);
         verify(mMockUi).updatePregnancyAndIvStatusUi(recentObservations);
     }
 
+    /** Tests that switching charts reuses the observations already loaded. */
+    public void testShowChart_DoesNotReloadObservations() {
+        // GIVEN a patient whose observations have been loaded
+        ObsTable allObservations = new ObsTable.Builder().add(OBS_1).build();
+        Map<String, Obs> recentObservations =
+            ImmutableMap.of(OBS_1.conceptUuid, OBS_1);
+        when(mMockChartHelper.getObservationTable(PATIENT_UUID_1))
+            .thenReturn(allObservations);
+        mController.init();
+        mFakeCrudEventBus.post(new ItemFetchedEvent<>(Patient.builder().build()));
+        mFakeHandler.runUntilEmpty();
+        // WHEN a chart is selected
+        mController.showChart(0);
+        // THEN the chart is shown with the same observations, which are not queried again
+        verify(mMockChartHelper, times(1)).getObservationTable(PATIENT_UUID_1);
+        verify(mMockUi, times(2)).updateTilesAndGrid(
+            null, recentObservations, allObservations, ImmutableList.<Order> of(),
+            ImmutableMap.<String, Map<LocalDate, Integer>> of(),
+            ImmutableMap.<String, List<DailyStats>> of(), null, null);
+        // AND the other charts are prerendered
+        verify(mMockUi, times(2)).prerenderCharts(mController.getCharts());
+    }
+
     /** Tests that the UI is given updated patient data when patient data is fetched. */
     public void testPatientDetailsLoaded_UpdatesUi() {
         // GIVEN controller is initialized
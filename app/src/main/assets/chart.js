@@ -45,10 +45,15 @@ function runChartRowScript(pointGroupsByConceptId, conceptIds, chartRowScript) {
   var args = [conceptIds];
   for (var i = 0; i < conceptIds.length; i++) {
     var id = conceptIds[i];
-    var pointGroups = pointGroupsByConceptId[id];
-    for (var j = 0; j < pointGroups.length; j++) {
-      var group = pointGroups[j];
+    // Only some of the days are rendered; skip the point groups that have no cell.
+    var pointGroups = [];
+    var allPointGroups = pointGroupsByConceptId[id];
+    for (var j = 0; j < allPointGroups.length; j++) {
+      var group = allPointGroups[j];
       group.cell = document.getElementById('cell-' + id + '-' + group.start);
+      if (group.cell) {
+        pointGroups.push(group);
+      }
     }
     args.push(pointGroups);
   }
@@ -74,3 +79,51 @@ function getPoints(pointGroups) {
   }
   return Array.prototype.concat.apply([], pointArrays);
 }
+
+var moreDaysRequested = false;
+
+// Asks the controller to render more days before or after the ones shown, keeping the
+// leftmost visible day column where it is on the screen.
+function loadMoreDays(earlier) {
+  if (moreDaysRequested) return;
+  moreDaysRequested = true;
+  var scroller = $('#grid-scroller');
+  var left = scroller.scrollLeft();
+  var anchorMillis = 0, anchorX = 0;
+  $('#grid thead th[data-start]').each(function(index, element) {
+    if (element.offsetLeft + element.offsetWidth > left) {
+      anchorMillis = parseInt($(element).attr('data-start'));
+      anchorX = element.offsetLeft - left;
+      return false;
+    }
+  });
+  controller.onMoreDaysRequested(earlier, anchorMillis, anchorX);
+}
+
+// Scrolls the grid so that the day column starting at startMillis is x pixels from the left.
+function scrollToColumn(startMillis, x) {
+  var column = $('#grid thead th[data-start="' + startMillis + '"]');
+  if (column.length > 0) {
+    $('#grid-scroller').scrollLeft(column[0].offsetLeft - x);
+  }
+}
+
+// Loads more days when the user scrolls the grid to either end.  Scrolling done by the app
+// (such as restoring the scroll position) doesn't count, so the page never loads itself.
+function watchGridScroll(hasEarlierDays, hasLaterDays) {
+  var touched = false;
+  var scroller = $('#grid-scroller');
+  scroller.bind('touchstart mousedown', function() {
+    touched = true;
+  });
+  scroller.scroll(function() {
+    if (!touched) return;
+    var element = scroller[0];
+    if (hasEarlierDays && element.scrollLeft <= 0) {
+      loadMoreDays(true);
+    } else if (hasLaterDays &&
+        element.scrollLeft + element.clientWidth >= element.scrollWidth - 1) {
+      loadMoreDays(false);
+    }
+  });
+}
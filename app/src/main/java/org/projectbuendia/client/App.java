@@ -19,8 +19,14 @@ import android.support.multidex.MultiDex;
 import org.odk.collect.android.application.Collect;
 import org.projectbuendia.client.debug.StethoInitializer;
 import org.projectbuendia.client.diagnostics.HealthMonitor;
+import org.projectbuendia.client.net.ChangeFeedClient;
 import org.projectbuendia.client.net.OpenMrsConnectionDetails;
 import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.sync.ChartDataHelper;
+import org.projectbuendia.client.sync.ConceptRegistry;
+import org.projectbuendia.client.sync.EventLogShipper;
+import org.projectbuendia.client.sync.OutboxManager;
+import org.projectbuendia.client.ui.chart.ChartWebViewPool;
 import org.projectbuendia.client.user.UserManager;
 
 import javax.inject.Inject;
@@ -36,12 +42,20 @@ public class App extends Application {
     private static UserManager sUserManager;
     private static Server sServer;
     private static OpenMrsConnectionDetails sConnectionDetails;
+    private static OutboxManager sOutboxManager;
+    private static EventLogShipper sEventLogShipper;
+    private static ConceptRegistry sConceptRegistry;
     private ObjectGraph mObjectGraph;
     @Inject UserManager mUserManager;
     @Inject OpenMrsConnectionDetails mOpenMrsConnectionDetails;
     @Inject Server mServer;
     @Inject HealthMonitor mHealthMonitor;
+    @Inject ChangeFeedClient mChangeFeedClient;
+    @Inject OutboxManager mOutboxManager;
+    @Inject EventLogShipper mEventLogShipper;
+    @Inject ConceptRegistry mConceptRegistry;
     @Inject StethoInitializer mStethoInitializer;
+    @Inject ChartWebViewPool mChartWebViewPool;
 
     public static synchronized App getInstance() {
         return sInstance;
@@ -59,6 +73,18 @@ public class App extends Application {
         return sConnectionDetails;
     }
 
+    public static synchronized OutboxManager getOutboxManager() {
+        return sOutboxManager;
+    }
+
+    public static synchronized EventLogShipper getEventLogShipper() {
+        return sEventLogShipper;
+    }
+
+    public static synchronized ConceptRegistry getConceptRegistry() {
+        return sConceptRegistry;
+    }
+
     @Override public void onCreate() {
         Collect.onCreate(this);
         super.onCreate();
@@ -83,9 +109,17 @@ public class App extends Application {
             sUserManager = mUserManager; // TODO: Remove when Daggered.
             sConnectionDetails = mOpenMrsConnectionDetails; // TODO: Remove when Daggered.
             sServer = mServer; // TODO: Remove when Daggered.
+            sOutboxManager = mOutboxManager; // TODO: Remove when Daggered.
+            sEventLogShipper = mEventLogShipper; // TODO: Remove when Daggered.
+            sConceptRegistry = mConceptRegistry; // TODO: Remove when Daggered.
         }
 
         mHealthMonitor.start();
+        mChangeFeedClient.start();
+        mOutboxManager.start();
+        mEventLogShipper.start();
+        mConceptRegistry.preload(ChartDataHelper.ENGLISH_LOCALE);
+        mChartWebViewPool.prewarm();
     }
 
     @Override
@@ -17,16 +17,26 @@ import android.preference.PreferenceManager;
 
 import org.projectbuendia.client.debug.StethoInitializer;
 import org.projectbuendia.client.diagnostics.DiagnosticsModule;
+import org.projectbuendia.client.diagnostics.HealthMonitor;
 import org.projectbuendia.client.events.EventsModule;
 import org.projectbuendia.client.models.AppModelModule;
 import org.projectbuendia.client.net.NetModule;
+import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.sync.ChartDataHelper;
+import org.projectbuendia.client.sync.ConceptRegistry;
+import org.projectbuendia.client.sync.Database;
+import org.projectbuendia.client.sync.EventLogShipper;
+import org.projectbuendia.client.sync.OutboxManager;
+import org.projectbuendia.client.sync.PatientArchiver;
 import org.projectbuendia.client.sync.SyncAccountService;
 import org.projectbuendia.client.sync.SyncAdapterService;
 import org.projectbuendia.client.sync.SyncManager;
+import org.projectbuendia.client.sync.SyncTelemetry;
 import org.projectbuendia.client.ui.BaseActivity;
 import org.projectbuendia.client.ui.SettingsActivity;
+import org.projectbuendia.client.ui.SyncDiagnosticsActivity;
 import org.projectbuendia.client.ui.UpdateNotificationController;
+import org.projectbuendia.client.ui.chart.ChartWebViewPool;
 import org.projectbuendia.client.ui.chart.PatientChartActivity;
 import org.projectbuendia.client.ui.dialogs.EditPatientDialogFragment;
 import org.projectbuendia.client.ui.dialogs.GoToPatientDialogFragment;
@@ -84,6 +94,7 @@ import de.greenrobot.event.EventBus;
         LoginActivity.class,
         LoginFragment.class,
         SettingsActivity.class,
+        SyncDiagnosticsActivity.class,
         SyncAdapterService.class,
     },
     staticInjections = {
@@ -114,13 +125,55 @@ public final class AppModule {
     }
 
     @Provides
-    @Singleton SyncManager provideSyncManager(EventBus eventBus, AppSettings settings) {
-        return new SyncManager(new EventBusWrapper(eventBus));
+    @Singleton SyncManager provideSyncManager(
+        EventBus eventBus, ContentResolver contentResolver, PatientArchiver archiver,
+        Executor executor) {
+        return new SyncManager(
+            new EventBusWrapper(eventBus), contentResolver, archiver, executor);
     }
 
     @Provides
-    @Singleton ChartDataHelper provideLocalizedChartHelper(ContentResolver contentResolver) {
-        return new ChartDataHelper(contentResolver);
+    @Singleton PatientArchiver providePatientArchiver(
+        Application app, ContentResolver contentResolver, AppSettings settings) {
+        return new PatientArchiver(contentResolver, settings,
+            app.getDatabasePath(Database.DATABASE_FILENAME));
+    }
+
+    @Provides
+    @Singleton OutboxManager provideOutboxManager(
+        ContentResolver contentResolver, Server server, HealthMonitor healthMonitor,
+        EventBus eventBus) {
+        return new OutboxManager(contentResolver, server, healthMonitor,
+            new EventBusWrapper(eventBus), Executors.newSingleThreadScheduledExecutor());
+    }
+
+    @Provides
+    @Singleton SyncTelemetry provideSyncTelemetry(ContentResolver contentResolver) {
+        return new SyncTelemetry(contentResolver);
+    }
+
+    @Provides
+    @Singleton EventLogShipper provideEventLogShipper(
+        ContentResolver contentResolver, Server server, HealthMonitor healthMonitor) {
+        return new EventLogShipper(contentResolver, server, healthMonitor,
+            Executors.newSingleThreadScheduledExecutor());
+    }
+
+    @Provides
+    @Singleton ConceptRegistry provideConceptRegistry(
+        ContentResolver contentResolver, Executor executor) {
+        return new ConceptRegistry(contentResolver, executor);
+    }
+
+    @Provides
+    @Singleton ChartWebViewPool provideChartWebViewPool(Application app) {
+        return new ChartWebViewPool(app);
+    }
+
+    @Provides
+    @Singleton ChartDataHelper provideLocalizedChartHelper(
+        ContentResolver contentResolver, ConceptRegistry conceptRegistry) {
+        return new ChartDataHelper(contentResolver, conceptRegistry);
     }
 
     @Provides
@@ -17,6 +17,7 @@ import android.content.res.Resources;
 /** Type-safe access to application settings. */
 public class AppSettings {
     static final int APK_UPDATE_INTERVAL_DEFAULT = 90; // default to 1.5 minutes.
+    static final int ARCHIVE_AFTER_DAYS_DEFAULT = 14;
     SharedPreferences mSharedPreferences;
     Resources mResources;
 
@@ -68,6 +69,14 @@ public class AppSettings {
         return mSharedPreferences.getInt("apk_update_interval_secs", APK_UPDATE_INTERVAL_DEFAULT);
     }
 
+    /**
+     * Gets the number of days without observations after which a discharged or deceased
+     * patient's observation history is removed from the tablet, or 0 to keep every history.
+     */
+    public int getArchiveAfterDays() {
+        return mSharedPreferences.getInt("archive_after_days", ARCHIVE_AFTER_DAYS_DEFAULT);
+    }
+
     /** Gets the flag for whether to save filled-in forms locally. */
     public boolean getKeepFormInstancesLocally() {
         return mSharedPreferences.getBoolean("keep_form_instances_locally",
@@ -12,29 +12,28 @@
 package org.projectbuendia.client.diagnostics;
 
 import android.app.Application;
-import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.HttpHostConnectException;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.projectbuendia.client.models.ConceptUuids;
 import org.projectbuendia.client.net.OpenMrsConnectionDetails;
+import org.projectbuendia.client.net.TransferStats;
 import org.projectbuendia.client.utils.Logger;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.UnknownHostException;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -61,13 +60,27 @@ public class BuendiaApiHealthCheck extends HealthCheck {
     );
 
     // Retrieving a concept should be quick and ensures that the module is both
-    // running and has database access.
+    // running and has database access.  The ref representation is just the concept's UUID
+    // and display name, so each probe doesn't download its names in every locale.
     private static final String HEALTH_CHECK_ENDPOINT =
-        "/concepts/" + ConceptUuids.GENERAL_CONDITION_UUID;
+        "/concepts/" + ConceptUuids.GENERAL_CONDITION_UUID + "?v=ref";
+
+    // The probe should answer quickly; a slow answer is as good as none.
+    private static final int PROBE_TIMEOUT_SECONDS = 10;
+
+    // Throughput is only sampled once this much has been received since the last sample, so
+    // that a few small requests, whose time is mostly latency, don't make it look slow.
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 64*1024;
 
     private final Object mLock = new Object();
 
     private final OpenMrsConnectionDetails mConnectionDetails;
+    private final OkHttpClient mClient;
+    private final NetworkQualityStats mNetworkQuality;
+
+    // Only used on the handler thread.
+    private long mLastResponseBytes;
+    private long mLastResponseMillis;
 
     @GuardedBy("mLock")
     private HandlerThread mHandlerThread;
@@ -76,10 +89,18 @@ public class BuendiaApiHealthCheck extends HealthCheck {
 
     BuendiaApiHealthCheck(
         Application application,
-        OpenMrsConnectionDetails connectionDetails) {
+        OpenMrsConnectionDetails connectionDetails,
+        NetworkQualityStats networkQuality) {
         super(application);
 
         mConnectionDetails = connectionDetails;
+        // Share the connection pool of the app's other requests, so that a probe usually reuses
+        // an open, already authenticated connection instead of setting up a new one.  Probes
+        // are left out of the transfer stats, as their time is mostly latency.
+        mClient = connectionDetails.getVolley().getUncountedOkHttpClient();
+        mClient.setConnectTimeout(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mClient.setReadTimeout(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mNetworkQuality = networkQuality;
     }
 
     @Override protected void startImpl() {
@@ -115,30 +136,54 @@ public class BuendiaApiHealthCheck extends HealthCheck {
             ? CHECK_PERIOD_MS : FAST_CHECK_PERIOD_MS;
     }
 
+    /** Records the throughput of the traffic since the previous probe, if there was enough. */
+    private void sampleThroughput() {
+        TransferStats stats = mConnectionDetails.getTransferStats();
+        long bytes = stats.getResponseWireBytes();
+        long millis = stats.getResponseMillis();
+        if (bytes < mLastResponseBytes || millis < mLastResponseMillis) {
+            // The totals were reset; start again from here.
+        } else if (bytes - mLastResponseBytes >= MIN_THROUGHPUT_SAMPLE_BYTES) {
+            mNetworkQuality.recordTransfer(
+                bytes - mLastResponseBytes, millis - mLastResponseMillis);
+        } else {
+            return;  // keep accumulating until there is enough for a meaningful sample
+        }
+        mLastResponseBytes = bytes;
+        mLastResponseMillis = millis;
+    }
+
     private final Runnable mRunnable = new Runnable() {
         @Override
         public void run() {
             try {
-                Uri uri = Uri.parse(mConnectionDetails.getBuendiaApiUrl() + HEALTH_CHECK_ENDPOINT);
-                HttpClient httpClient = new DefaultHttpClient();
-                HttpGet httpGet = new HttpGet(uri.toString());
-                if (httpGet.getURI().getHost() == null) {
-                    LOG.w("Configured OpenMRS server URL is invalid: %s", uri);
+                sampleThroughput();
+                HttpUrl url = HttpUrl.parse(
+                    mConnectionDetails.getBuendiaApiUrl() + HEALTH_CHECK_ENDPOINT);
+                if (url == null) {
+                    LOG.w("Configured OpenMRS server URL is invalid: %s",
+                        mConnectionDetails.getBuendiaApiUrl());
                     reportIssue(HealthIssue.SERVER_CONFIGURATION_INVALID);
                     return;
                 }
 
+                // This is a GET, not a HEAD: the OpenMRS REST controllers are mapped for GET
+                // only, so a HEAD would get a 405 and look like the server was down.
+                Request request = new Request.Builder()
+                    .url(url)
+                    .header("Authorization", Credentials.basic(
+                        mConnectionDetails.getUser(), mConnectionDetails.getPassword()))
+                    .build();
                 try {
-                    httpGet.addHeader(BasicScheme.authenticate(
-                        new UsernamePasswordCredentials(
-                            mConnectionDetails.getUser(),
-                            mConnectionDetails.getPassword()),
-                        "UTF-8", false));
-                    HttpResponse httpResponse = httpClient.execute(httpGet);
-                    if (httpResponse.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
+                    long startNanos = System.nanoTime();
+                    Response response = mClient.newCall(request).execute();
+                    long rttMillis = (System.nanoTime() - startNanos)/1000000;
+                    response.body().bytes();  // read it all, so the connection can be reused
+                    if (response.code() != HttpURLConnection.HTTP_OK) {
+                        mNetworkQuality.recordFailure();
                         LOG.w("The OpenMRS URL '%1$s' returned unexpected error code: %2$s",
-                            uri, httpResponse.getStatusLine().getStatusCode());
-                        switch (httpResponse.getStatusLine().getStatusCode()) {
+                            url, response.code());
+                        switch (response.code()) {
                             case HttpURLConnection.HTTP_INTERNAL_ERROR:
                                 reportIssue(HealthIssue.SERVER_INTERNAL_ISSUE);
                                 break;
@@ -156,14 +201,18 @@ public class BuendiaApiHealthCheck extends HealthCheck {
                         }
                         return;
                     }
+                    mNetworkQuality.recordSuccess(rttMillis);
                 } catch (UnknownHostException | IllegalArgumentException e) {
-                    LOG.w("OpenMRS server unreachable: %s", uri);
+                    mNetworkQuality.recordFailure();
+                    LOG.w("OpenMRS server unreachable: %s", url);
                     reportIssue(HealthIssue.SERVER_HOST_UNREACHABLE);
                     return;
-                } catch (HttpHostConnectException e) {
-                    LOG.w("OpenMRS server connection refused: %s", e.getHost());
+                } catch (ConnectException e) {
+                    mNetworkQuality.recordFailure();
+                    LOG.w("OpenMRS server connection refused: %s", url.host());
                 } catch (IOException e) {
-                    LOG.w("OpenMRS server health check failed: %s", uri);
+                    mNetworkQuality.recordFailure();
+                    LOG.w("OpenMRS server health check failed: %s", url);
                     return;
                 }
 
@@ -38,15 +38,21 @@ public class DiagnosticsModule {
         return eventBusBuilder.build();
     }
 
+    @Provides
+    @Singleton NetworkQualityStats provideNetworkQualityStats() {
+        return new NetworkQualityStats();
+    }
+
     @Provides
     @Singleton ImmutableSet<HealthCheck> provideHealthChecks(
         Application application,
         OpenMrsConnectionDetails connectionDetails,
-        AppSettings settings) {
+        AppSettings settings,
+        NetworkQualityStats networkQuality) {
         // TODO: restore PackageServerHealthCheck, we'll probably want that again in the future.
         return ImmutableSet.of(
             new WifiHealthCheck(application, settings),
-            new BuendiaApiHealthCheck(application, connectionDetails));
+            new BuendiaApiHealthCheck(application, connectionDetails, networkQuality));
     }
 
     @Provides
@@ -58,7 +64,8 @@ public class DiagnosticsModule {
     @Singleton HealthMonitor provideHealthMonitor(
         @Qualifiers.HealthEventBus EventBus healthEventBus,
         ImmutableSet<HealthCheck> healthChecks,
-        Troubleshooter troubleshooter) {
-        return new HealthMonitor(healthEventBus, healthChecks, troubleshooter);
+        Troubleshooter troubleshooter,
+        NetworkQualityStats networkQuality) {
+        return new HealthMonitor(healthEventBus, healthChecks, troubleshooter, networkQuality);
     }
 }
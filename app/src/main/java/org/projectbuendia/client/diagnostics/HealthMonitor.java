@@ -26,6 +26,7 @@ public class HealthMonitor {
     private final EventBus mHealthEventBus;
     private final ImmutableSet<HealthCheck> mHealthChecks;
     private final Troubleshooter mTroubleshooter;
+    private final NetworkQualityStats mNetworkQuality;
     private boolean mRunning = false;
 
     /** Starts all health checks. */
@@ -77,12 +78,22 @@ public class HealthMonitor {
         return false;
     }
 
+    /**
+     * Returns the recent round-trip times, failure rate, and throughput of requests to the
+     * server, as measured by the API health check.
+     */
+    public NetworkQualityStats getNetworkQuality() {
+        return mNetworkQuality;
+    }
+
     HealthMonitor(
             EventBus healthEventBus,
             ImmutableSet<HealthCheck> healthChecks,
-            Troubleshooter troubleshooter) {
+            Troubleshooter troubleshooter,
+            NetworkQualityStats networkQuality) {
         mHealthEventBus = healthEventBus;
         mHealthChecks = healthChecks;
         mTroubleshooter = troubleshooter;
+        mNetworkQuality = networkQuality;
     }
 }
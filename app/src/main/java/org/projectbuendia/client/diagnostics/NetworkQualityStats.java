@@ -0,0 +1,142 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.diagnostics;
+
+import java.util.Arrays;
+
+/**
+ * A rolling record of the quality of the connection to the server: the round-trip times and
+ * outcomes of the most recent health probes, and the throughput of recent transfers.  Old
+ * samples drop out as new ones arrive, so the figures describe the network as it is now rather
+ * than since the app started.  Safe to use from multiple threads.
+ */
+public class NetworkQualityStats {
+
+    /** Upper bounds, in milliseconds, of the round-trip time histogram buckets. */
+    public static final long[] RTT_BUCKET_BOUNDS_MILLIS = {50, 100, 200, 500, 1000, 2000, 5000};
+
+    /** The number of probes remembered; at the usual probe period this is about half an hour. */
+    static final int MAX_PROBES = 90;
+    /** The number of throughput samples remembered. */
+    static final int MAX_TRANSFERS = 30;
+    /** Marks a probe that failed in the round-trip time buffer. */
+    private static final long FAILED = -1;
+
+    /** Recent probe round-trip times, with {@link #FAILED} for probes that got no response. */
+    private final long[] mRttMillis = new long[MAX_PROBES];
+    private int mNumProbes;
+    private int mNextProbe;
+
+    /** Recent throughput samples, in bytes per second. */
+    private final long[] mBytesPerSecond = new long[MAX_TRANSFERS];
+    private int mNumTransfers;
+    private int mNextTransfer;
+
+    /** Records a probe that got a response after the given round-trip time. */
+    public synchronized void recordSuccess(long rttMillis) {
+        addProbe(Math.max(0, rttMillis));
+    }
+
+    /** Records a probe that got no response, or a response that showed the server is unwell. */
+    public synchronized void recordFailure() {
+        addProbe(FAILED);
+    }
+
+    /** Records that the given number of bytes was received in the given time. */
+    public synchronized void recordTransfer(long bytes, long millis) {
+        if (bytes <= 0 || millis <= 0) return;
+        mBytesPerSecond[mNextTransfer] = bytes*1000/millis;
+        mNextTransfer = (mNextTransfer + 1) % MAX_TRANSFERS;
+        mNumTransfers = Math.min(mNumTransfers + 1, MAX_TRANSFERS);
+    }
+
+    private void addProbe(long rttMillis) {
+        mRttMillis[mNextProbe] = rttMillis;
+        mNextProbe = (mNextProbe + 1) % MAX_PROBES;
+        mNumProbes = Math.min(mNumProbes + 1, MAX_PROBES);
+    }
+
+    /** Returns the number of recent probes, successful or not. */
+    public synchronized int getProbeCount() {
+        return mNumProbes;
+    }
+
+    /** Returns the fraction of recent probes that failed, or 0 if there have been none. */
+    public synchronized double getFailureRate() {
+        if (mNumProbes == 0) return 0;
+        int failures = 0;
+        for (int i = 0; i < mNumProbes; i++) {
+            if (mRttMillis[i] == FAILED) failures++;
+        }
+        return (double) failures/mNumProbes;
+    }
+
+    /**
+     * Returns the number of recent successful probes in each round-trip time bucket.  Element i
+     * counts times up to {@link #RTT_BUCKET_BOUNDS_MILLIS}[i]; the last element counts the rest.
+     */
+    public synchronized int[] getRttHistogram() {
+        int[] counts = new int[RTT_BUCKET_BOUNDS_MILLIS.length + 1];
+        for (int i = 0; i < mNumProbes; i++) {
+            if (mRttMillis[i] != FAILED) {
+                counts[getBucket(mRttMillis[i])]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the given percentile (0 to 100) of recent successful round-trip times, in
+     * milliseconds, or -1 if no probe has succeeded recently.
+     */
+    public synchronized long getRttPercentileMillis(int percentile) {
+        long[] sorted = new long[mNumProbes];
+        int n = 0;
+        for (int i = 0; i < mNumProbes; i++) {
+            if (mRttMillis[i] != FAILED) sorted[n++] = mRttMillis[i];
+        }
+        if (n == 0) return -1;
+        Arrays.sort(sorted, 0, n);
+        int index = (int) Math.ceil(percentile/100.0*n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    /** Returns the median recent throughput in bytes per second, or -1 if none is known. */
+    public synchronized long getMedianBytesPerSecond() {
+        if (mNumTransfers == 0) return -1;
+        long[] sorted = Arrays.copyOf(mBytesPerSecond, mNumTransfers);
+        Arrays.sort(sorted);
+        return sorted[(mNumTransfers - 1)/2];
+    }
+
+    /** Forgets all samples. */
+    public synchronized void reset() {
+        mNumProbes = 0;
+        mNextProbe = 0;
+        mNumTransfers = 0;
+        mNextTransfer = 0;
+    }
+
+    private static int getBucket(long rttMillis) {
+        for (int i = 0; i < RTT_BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (rttMillis <= RTT_BUCKET_BOUNDS_MILLIS[i]) return i;
+        }
+        return RTT_BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    @Override public synchronized String toString() {
+        return String.format("%d probes, %.0f%% failed, RTT median %d ms, p90 %d ms; "
+            + "throughput %d bytes/s", mNumProbes, getFailureRate()*100,
+            getRttPercentileMillis(50), getRttPercentileMillis(90), getMedianBytesPerSecond());
+    }
+}
@@ -0,0 +1,31 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.events.sync;
+
+/**
+ * An event bus event indicating that the server refused a queued write for good, or that a
+ * queued write was abandoned because it depends on an item whose creation was refused.  The
+ * change remains only on this tablet.
+ */
+public class OutboxWriteRejectedEvent {
+    /** The name of the {@link org.projectbuendia.client.sync.OutboxManager.Action}. */
+    public final String action;
+    public final String itemUuid;
+    public final String message;
+
+    public OutboxWriteRejectedEvent(String action, String itemUuid, String message) {
+        this.action = action;
+        this.itemUuid = itemUuid;
+        this.message = message;
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.events.sync;
+
+/**
+ * An event bus event indicating that a single-patient sync has stored new or changed records for
+ * the patient.  Not posted if the sync found nothing new.
+ */
+public class PatientSyncSucceededEvent {
+    public final String patientUuid;
+
+    public PatientSyncSucceededEvent(String patientUuid) {
+        this.patientUuid = patientUuid;
+    }
+}
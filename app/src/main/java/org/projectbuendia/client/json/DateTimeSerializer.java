@@ -11,32 +11,41 @@
 
 package org.projectbuendia.client.json;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import org.joda.time.DateTime;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 /**
  * Utility class for serializing JODA DateTime objects from JSON returned by the OpenMRS Buendia
- * module.
+ * module.  This reads straight from the JSON stream, and parses with {@link Iso8601}, as every
+ * synced observation has a timestamp.
  */
-public class DateTimeSerializer implements JsonSerializer<DateTime>, JsonDeserializer<DateTime> {
+public class DateTimeSerializer extends TypeAdapter<DateTime> {
 
-    @Override
-    public JsonElement serialize(DateTime src, Type typeOfSrc, JsonSerializationContext context) {
-        return new JsonPrimitive(src.toString());
+    @Override public void write(JsonWriter out, DateTime src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+        } else {
+            out.value(src.toString());
+        }
     }
 
-    @Override
-    public DateTime deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-        throws JsonParseException {
-        return DateTime.parse(json.getAsString());
+    @Override public DateTime read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String text = in.nextString();
+        try {
+            return Iso8601.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(e);
+        }
     }
 }
@@ -0,0 +1,142 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.json;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * A fast parser for the ISO 8601 timestamps that the server sends, such as
+ * "2015-06-23T14:48:07.123Z" or "2015-06-23T14:48:07+01:00".  Every synced observation has
+ * one, and Joda's general-purpose parser is slow enough to dominate the time spent decoding a
+ * page of observations.  Any form not handled here is passed on to Joda.
+ */
+public class Iso8601 {
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    /**
+     * Parses a timestamp, with the same result as {@link DateTime#parse(String)}: the returned
+     * DateTime has a fixed time zone with the offset given in the text.
+     * @throws IllegalArgumentException if the text is not a valid ISO 8601 timestamp
+     */
+    public static DateTime parse(String text) {
+        int n = text.length();
+        // yyyy-MM-ddTHH:mm is the shortest form handled here.
+        if (n < 16 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+            || text.charAt(13) != ':') {
+            return DateTime.parse(text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = 0;
+        int millis = 0;
+        int i = 16;
+        if (i < n && text.charAt(i) == ':') {
+            second = digits(text, i + 1, 2);
+            i += 3;
+            if (i < n && (text.charAt(i) == '.' || text.charAt(i) == ',')) {
+                // Keep up to three digits of the fraction; ignore the rest, as Joda does.
+                int scale = 100;
+                i++;
+                int start = i;
+                while (i < n && isDigit(text.charAt(i))) {
+                    millis += (text.charAt(i) - '0') * scale;
+                    scale /= 10;
+                    i++;
+                }
+                if (i == start) millis = -1;  // no digits after the point
+            }
+        }
+        int offsetMinutes = i < n ? parseOffset(text, i) : Integer.MIN_VALUE;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+            || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+            || millis < 0 || offsetMinutes == Integer.MIN_VALUE) {
+            // Leave unusual forms, such as no offset (local time), and errors to Joda.
+            return DateTime.parse(text);
+        }
+        long instant = daysSinceEpoch(year, month, day) * MILLIS_PER_DAY
+            + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+        int offsetMillis = (int) (offsetMinutes * MILLIS_PER_MINUTE);
+        return new DateTime(instant, DateTimeZone.forOffsetMillis(offsetMillis));
+    }
+
+    /** Parses "Z", "+hh", "+hhmm", or "+hh:mm" at the end of text, or returns MIN_VALUE. */
+    private static int parseOffset(String text, int i) {
+        int n = text.length();
+        char c = text.charAt(i);
+        if (c == 'Z') {
+            return i + 1 == n ? 0 : Integer.MIN_VALUE;
+        }
+        if (c != '+' && c != '-') return Integer.MIN_VALUE;
+        int sign = c == '-' ? -1 : 1;
+        int hours;
+        int minutes = 0;
+        if (n == i + 3) {
+            hours = digits(text, i + 1, 2);
+        } else if (n == i + 5) {
+            hours = digits(text, i + 1, 2);
+            minutes = digits(text, i + 3, 2);
+        } else if (n == i + 6 && text.charAt(i + 3) == ':') {
+            hours = digits(text, i + 1, 2);
+            minutes = digits(text, i + 4, 2);
+        } else {
+            return Integer.MIN_VALUE;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) return Integer.MIN_VALUE;
+        return sign * (hours * 60 + minutes);
+    }
+
+    /** Returns the number formed by count decimal digits at start, or -1 if any aren't digits. */
+    private static int digits(String text, int start, int count) {
+        if (start + count > text.length()) return -1;
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /** Returns the number of days from 1970-01-01 to the given date in the Gregorian calendar. */
+    static long daysSinceEpoch(int year, int month, int day) {
+        // Count years from March, so that the leap day is at the end of the year.
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private Iso8601() {}
+}
@@ -11,28 +11,36 @@
 
 package org.projectbuendia.client.json;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 
-import java.lang.reflect.Type;
-
 /**
  * Gson serializers for custom types like Joda DateTime. Largely copied from
  * https://sites.google.com/site/gson/gson-user-guide#TOC-Serializing-and-Deserializing-Generic-Types
  */
 public class Serializers {
+    private static Gson sGson;
 
     public static void registerTo(GsonBuilder gson) {
         gson.registerTypeAdapter(DateTime.class, new DateTimeSerializer());
         gson.registerTypeAdapter(LocalDate.class, new LocalDateSerializer());
+        gson.registerTypeAdapterFactory(new SyncTypeAdapterFactory());
+    }
+
+    /**
+     * Returns a Gson instance with these serializers registered, shared by the whole process.
+     * Gson is thread-safe and caches the adapter for each type it has seen, so building one
+     * per request wastes both the build and the cache.
+     */
+    public static synchronized Gson getGson() {
+        if (sGson == null) {
+            GsonBuilder builder = new GsonBuilder();
+            registerTo(builder);
+            sGson = builder.create();
+        }
+        return sGson;
     }
 }
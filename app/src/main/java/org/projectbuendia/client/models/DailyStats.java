@@ -0,0 +1,67 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.models;
+
+import org.joda.time.LocalDate;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/** Summary statistics on the numeric observations of one concept on one day. */
+public final class DailyStats {
+    /** The local calendar day on which the observations were made. */
+    public final @Nonnull LocalDate date;
+
+    /** The number of observations with numeric values. */
+    public final int count;
+
+    public final double min;
+    public final double max;
+    public final double avg;
+
+    public DailyStats(@Nonnull LocalDate date, int count, double min, double max, double avg) {
+        this.date = date;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject jo = new JSONObject();
+        jo.put("date", date.toString());
+        jo.put("count", count);
+        jo.put("min", min);
+        jo.put("max", max);
+        jo.put("avg", avg);
+        return jo;
+    }
+
+    @Override public String toString() {
+        return "DailyStats(date=" + date + ", count=" + count
+            + ", min=" + min + ", max=" + max + ", avg=" + avg + ")";
+    }
+
+    @Override public boolean equals(Object other) {
+        if (!(other instanceof DailyStats)) return false;
+        DailyStats o = (DailyStats) other;
+        return Objects.equals(date, o.date) && count == o.count
+            && min == o.min && max == o.max && avg == o.avg;
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(date, count, min, max, avg);
+    }
+}
@@ -18,10 +18,12 @@ import org.joda.time.DateTime;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.projectbuendia.client.json.ConceptType;
 import org.projectbuendia.client.json.JsonEncounter;
 import org.projectbuendia.client.json.JsonObservation;
 import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.sync.TypedObsValues;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -94,6 +96,9 @@ public class Encounter extends Base<String> {
     public JSONObject toJson() throws JSONException {
         JSONObject json = new JSONObject();
         json.put(Server.PATIENT_UUID_KEY, patientUuid);
+        if (encounterUuid != null) {
+            json.put(Server.ENCOUNTER_UUID_KEY, encounterUuid);
+        }
         json.put(Server.ENCOUNTER_TIMESTAMP, timestamp.getMillis()/1000);
         if (observations.length > 0) {
             JSONArray observationsJson = new JSONArray();
@@ -129,6 +134,7 @@ public class Encounter extends Base<String> {
             cv.put(Observations.ENCOUNTER_UUID, encounterUuid);
             cv.put(Observations.PATIENT_UUID, patientUuid);
             cv.put(Observations.VALUE, obs.value);
+            TypedObsValues.put(cv, obs.conceptUuid, obs.value);
             cvs[i] = cv;
         }
         for (int i = 0; i < orderUuids.length; i++) {
@@ -138,6 +144,7 @@ public class Encounter extends Base<String> {
             cv.put(Observations.ENCOUNTER_UUID, encounterUuid);
             cv.put(Observations.PATIENT_UUID, patientUuid);
             cv.put(Observations.VALUE, orderUuids[i]);
+            TypedObsValues.put(cv, (ConceptType) null, orderUuids[i]);
             cvs[observations.length + i] = cv;
         }
         return cvs;
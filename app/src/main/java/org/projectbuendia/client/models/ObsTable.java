@@ -0,0 +1,447 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.models;
+
+import org.joda.time.Instant;
+import org.joda.time.LocalDate;
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.utils.Utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import javax.annotation.Nullable;
+
+/**
+ * A compact, immutable table of one patient's observations, stored in columns of primitive
+ * arrays instead of one object per observation.  Concept UUIDs and values are interned, so each
+ * distinct string is held only once.  Rows are sorted by concept and then by time, so all the
+ * observations of a concept within a time range can be found by binary search.
+ * <p/>
+ * {@link Obs}, {@link ObsValue} and {@link ObsPoint} objects are created only when asked for.
+ */
+public final class ObsTable {
+    private static final byte NO_TYPE = -1;
+    private static final ConceptType[] TYPES = ConceptType.values();
+
+    private final int mSize;
+    /** Observation times in epoch millis, by row. */
+    private final long[] mTimes;
+    /** Concept indexes (into mConceptUuids), by row. */
+    private final int[] mConcepts;
+    /** ConceptType ordinals (or NO_TYPE), by row. */
+    private final byte[] mTypes;
+    /** Value indexes (into mStrings), or -1 for no value, by row. */
+    private final int[] mValues;
+    /** Parsed values for NUMERIC and DATETIME rows, or NaN, by row. */
+    private final double[] mNumbers;
+
+    /**
+     * The distinct concept UUIDs; the rows for concept c are
+     * [mConceptStarts[c], mConceptStarts[c + 1]).
+     */
+    private final String[] mConceptUuids;
+    private final int[] mConceptStarts;
+    private final Map<String, Integer> mConceptIndexes;
+
+    /** The distinct values, and the localized name of each value. */
+    private final String[] mStrings;
+    private final String[] mNames;
+
+    /**
+     * The rows that have a value, in row order, keeping only the first row for each concept and
+     * time; the entries for concept c are [mPointStarts[c], mPointStarts[c + 1]).
+     */
+    private final int[] mPointRows;
+    private final int[] mPointStarts;
+
+    private ObsTable(Builder b) {
+        mSize = b.mSize;
+        mConceptUuids = b.mConceptUuids.toArray(new String[0]);
+        mConceptIndexes = b.mConceptIndexes;
+        mStrings = b.mStrings.toArray(new String[0]);
+        mNames = b.mNames.toArray(new String[0]);
+
+        // Sort the rows by concept (a stable counting sort), then by time within each concept.
+        int numConcepts = mConceptUuids.length;
+        mConceptStarts = new int[numConcepts + 1];
+        for (int i = 0; i < mSize; i++) {
+            mConceptStarts[b.mConcepts[i] + 1]++;
+        }
+        for (int c = 0; c < numConcepts; c++) {
+            mConceptStarts[c + 1] += mConceptStarts[c];
+        }
+        int[] order = new int[mSize];
+        int[] next = Arrays.copyOf(mConceptStarts, numConcepts);
+        for (int i = 0; i < mSize; i++) {
+            order[next[b.mConcepts[i]]++] = i;
+        }
+        int[] scratch = new int[mSize];
+        for (int c = 0; c < numConcepts; c++) {
+            sortByTime(order, scratch, mConceptStarts[c], mConceptStarts[c + 1], b.mTimes);
+        }
+
+        mTimes = new long[mSize];
+        mConcepts = new int[mSize];
+        mTypes = new byte[mSize];
+        mValues = new int[mSize];
+        mNumbers = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            int row = order[i];
+            mTimes[i] = b.mTimes[row];
+            mConcepts[i] = b.mConcepts[row];
+            mTypes[i] = b.mTypes[row];
+            mValues[i] = b.mValues[row];
+            mNumbers[i] = b.mNumbers[row];
+        }
+
+        int[] pointRows = new int[mSize];
+        int numPoints = 0;
+        mPointStarts = new int[numConcepts + 1];
+        for (int c = 0; c < numConcepts; c++) {
+            mPointStarts[c] = numPoints;
+            int lastPointRow = -1;
+            for (int row = mConceptStarts[c]; row < mConceptStarts[c + 1]; row++) {
+                if (hasValue(row) && (lastPointRow < 0 || mTimes[lastPointRow] != mTimes[row])) {
+                    pointRows[numPoints++] = row;
+                    lastPointRow = row;
+                }
+            }
+        }
+        mPointStarts[numConcepts] = numPoints;
+        mPointRows = Arrays.copyOf(pointRows, numPoints);
+    }
+
+    /** Stably sorts order[start:stop] by time, skipping the work if it is already sorted. */
+    private static void sortByTime(int[] order, int[] scratch, int start, int stop, long[] times) {
+        boolean sorted = true;
+        for (int i = start + 1; i < stop && sorted; i++) {
+            sorted = times[order[i - 1]] <= times[order[i]];
+        }
+        if (sorted) return;
+
+        // A plain merge sort, since Arrays.sort has no stable primitive sort with a key.
+        int mid = (start + stop) >>> 1;
+        sortByTime(order, scratch, start, mid, times);
+        sortByTime(order, scratch, mid, stop, times);
+        System.arraycopy(order, start, scratch, start, stop - start);
+        int a = start, b = mid;
+        for (int i = start; i < stop; i++) {
+            if (b >= stop || (a < mid && times[scratch[a]] <= times[scratch[b]])) {
+                order[i] = scratch[a++];
+            } else {
+                order[i] = scratch[b++];
+            }
+        }
+    }
+
+    /** Returns the number of observations in the table. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns the time of the observation in the given row, in epoch millis. */
+    public long getMillis(int row) {
+        return mTimes[row];
+    }
+
+    /** Returns the UUID of the concept observed in the given row. */
+    public String getConceptUuid(int row) {
+        return mConceptUuids[mConcepts[row]];
+    }
+
+    /** Returns the type of the concept observed in the given row, or null if it is unknown. */
+    public @Nullable ConceptType getConceptType(int row) {
+        return mTypes[row] == NO_TYPE ? null : TYPES[mTypes[row]];
+    }
+
+    /** Returns the raw value (a string, number as a string, or answer concept UUID), or null. */
+    public @Nullable String getValue(int row) {
+        return mValues[row] < 0 ? null : mStrings[mValues[row]];
+    }
+
+    /** Returns the localized name of the value in the given row, or null. */
+    public @Nullable String getValueName(int row) {
+        return mValues[row] < 0 ? null : mNames[mValues[row]];
+    }
+
+    /** Returns the observation in the given row as an Obs (without its observation UUID). */
+    public Obs getObs(int row) {
+        return new Obs(null, mTimes[row], getConceptUuid(row), getConceptType(row),
+            getValue(row), getValueName(row));
+    }
+
+    /** Returns the value of the observation in the given row as an ObsValue, or null. */
+    public @Nullable ObsValue getObsValue(int row) {
+        if (mValues[row] < 0 || mTypes[row] == NO_TYPE) return null;
+        String value = mStrings[mValues[row]];
+        switch (TYPES[mTypes[row]]) {
+            case CODED:
+                return ObsValue.newCoded(value, mNames[mValues[row]]);
+            case NUMERIC:
+                return Double.isNaN(mNumbers[row]) ? null : ObsValue.newNumber(mNumbers[row]);
+            case TEXT:
+                return ObsValue.newText(value);
+            case BOOLEAN:
+                return ObsValue.newCoded(ConceptUuids.YES_UUID.equals(value));
+            case DATE:
+                LocalDate date = Utils.toLocalDate(value);
+                return date == null ? null : ObsValue.newDate(date);
+            case DATETIME:
+                return Double.isNaN(mNumbers[row]) ? null : ObsValue.newTime((long) mNumbers[row]);
+        }
+        return null;
+    }
+
+    /** Returns the time and value of the observation in the given row, or null. */
+    public @Nullable ObsPoint getObsPoint(int row) {
+        ObsValue value = getObsValue(row);
+        return value == null ? null : new ObsPoint(new Instant(mTimes[row]), value);
+    }
+
+    /** Returns the index of the first row for the given concept, or -1 if there are none. */
+    public int getFirstRow(String conceptUuid) {
+        Integer c = mConceptIndexes.get(conceptUuid);
+        return c == null ? -1 : mConceptStarts[c];
+    }
+
+    /** Returns the index just after the last row for the given concept, or -1 if there are none. */
+    public int getEndRow(String conceptUuid) {
+        Integer c = mConceptIndexes.get(conceptUuid);
+        return c == null ? -1 : mConceptStarts[c + 1];
+    }
+
+    /**
+     * Returns the points observed for a concept in the time range [startMillis, stopMillis),
+     * in time order, with at most one point for each time.  The list is a read-only view that
+     * creates each ObsPoint when it is read.
+     */
+    public List<ObsPoint> getPoints(String conceptUuid, long startMillis, long stopMillis) {
+        Integer c = mConceptIndexes.get(conceptUuid);
+        if (c == null) return Collections.emptyList();
+        int lo = findPoint(mPointStarts[c], mPointStarts[c + 1], startMillis);
+        int hi = findPoint(lo, mPointStarts[c + 1], stopMillis);
+        return new PointList(lo, hi);
+    }
+
+    /** Returns the latest point observed for a concept in [startMillis, stopMillis), or null. */
+    public @Nullable ObsPoint getLatestPoint(String conceptUuid, long startMillis, long stopMillis) {
+        List<ObsPoint> points = getPoints(conceptUuid, startMillis, stopMillis);
+        return points.isEmpty() ? null : points.get(points.size() - 1);
+    }
+
+    /**
+     * Returns the latest observation of each concept, keyed by concept UUID.  If several have the
+     * latest time, the one that was added to the table first is chosen.
+     */
+    public Map<String, Obs> getLatestObs() {
+        Map<String, Obs> result = new HashMap<>();
+        for (int c = 0; c < mConceptUuids.length; c++) {
+            int row = mConceptStarts[c + 1] - 1;
+            while (row > mConceptStarts[c] && mTimes[row - 1] == mTimes[row]) {
+                row--;
+            }
+            result.put(mConceptUuids[c], getObs(row));
+        }
+        return result;
+    }
+
+    /** Returns the first index in mPointRows[start:stop] whose time is at least millis. */
+    private int findPoint(int start, int stop, long millis) {
+        while (start < stop) {
+            int mid = (start + stop) >>> 1;
+            if (mTimes[mPointRows[mid]] < millis) {
+                start = mid + 1;
+            } else {
+                stop = mid;
+            }
+        }
+        return start;
+    }
+
+    private boolean hasValue(int row) {
+        if (mValues[row] < 0 || mTypes[row] == NO_TYPE) return false;
+        switch (TYPES[mTypes[row]]) {
+            case NUMERIC:
+            case DATETIME:
+                return !Double.isNaN(mNumbers[row]);
+            case DATE:
+                return Utils.toLocalDate(mStrings[mValues[row]]) != null;
+            case NONE:
+                return false;
+        }
+        return true;
+    }
+
+    @Override public boolean equals(Object other) {
+        if (other == this) return true;
+        if (!(other instanceof ObsTable)) return false;
+        ObsTable o = (ObsTable) other;
+        if (mSize != o.mSize || !Arrays.equals(mTimes, o.mTimes)
+            || !Arrays.equals(mTypes, o.mTypes)) {
+            return false;
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (!getConceptUuid(i).equals(o.getConceptUuid(i))
+                || !Objects.equals(getValue(i), o.getValue(i))
+                || !Objects.equals(getValueName(i), o.getValueName(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public int hashCode() {
+        return Arrays.hashCode(mTimes) + Arrays.hashCode(mTypes);
+    }
+
+    @Override public String toString() {
+        return "ObsTable(size=" + mSize + ", concepts=" + mConceptUuids.length
+            + ", values=" + mStrings.length + ")";
+    }
+
+    /** A read-only view of a range of mPointRows as ObsPoints. */
+    private class PointList extends AbstractList<ObsPoint> implements RandomAccess {
+        private final int mStart;
+        private final int mStop;
+
+        PointList(int start, int stop) {
+            mStart = start;
+            mStop = stop;
+        }
+
+        @Override public ObsPoint get(int index) {
+            if (index < 0 || index >= mStop - mStart) {
+                throw new IndexOutOfBoundsException("" + index);
+            }
+            return getObsPoint(mPointRows[mStart + index]);
+        }
+
+        @Override public int size() {
+            return mStop - mStart;
+        }
+    }
+
+    /** Accumulates observations, in any order, for an ObsTable. */
+    public static final class Builder {
+        private int mSize;
+        private long[] mTimes;
+        private int[] mConcepts;
+        private byte[] mTypes;
+        private int[] mValues;
+        private double[] mNumbers;
+
+        private final List<String> mConceptUuids = new ArrayList<>();
+        private final Map<String, Integer> mConceptIndexes = new HashMap<>();
+        private final List<String> mStrings = new ArrayList<>();
+        private final List<String> mNames = new ArrayList<>();
+        private final Map<String, Integer> mStringIndexes = new HashMap<>();
+
+        public Builder() {
+            this(16);
+        }
+
+        /** @param capacity the expected number of observations */
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            mTimes = new long[capacity];
+            mConcepts = new int[capacity];
+            mTypes = new byte[capacity];
+            mValues = new int[capacity];
+            mNumbers = new double[capacity];
+        }
+
+        /**
+         * Adds an observation.
+         * @param value     the observed value (a string, number as a string, or answer UUID)
+         * @param valueName the localized name of the value, if it is an answer concept
+         */
+        public Builder add(long millis, String conceptUuid, @Nullable ConceptType conceptType,
+                           @Nullable String value, @Nullable String valueName) {
+            return add(millis, conceptUuid, conceptType, value, valueName,
+                parseNumber(conceptType, value));
+        }
+
+        /**
+         * Adds an observation whose value has already been parsed.
+         * @param number the value of a NUMERIC or DATETIME observation, or NaN if there is none
+         */
+        public Builder add(long millis, String conceptUuid, @Nullable ConceptType conceptType,
+                           @Nullable String value, @Nullable String valueName, double number) {
+            if (mSize == mTimes.length) {
+                int capacity = mSize * 2;
+                mTimes = Arrays.copyOf(mTimes, capacity);
+                mConcepts = Arrays.copyOf(mConcepts, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mValues = Arrays.copyOf(mValues, capacity);
+                mNumbers = Arrays.copyOf(mNumbers, capacity);
+            }
+            Integer concept = mConceptIndexes.get(conceptUuid);
+            if (concept == null) {
+                concept = mConceptUuids.size();
+                mConceptUuids.add(conceptUuid);
+                mConceptIndexes.put(conceptUuid, concept);
+            }
+            mTimes[mSize] = millis;
+            mConcepts[mSize] = concept;
+            mTypes[mSize] = conceptType == null ? NO_TYPE : (byte) conceptType.ordinal();
+            mValues[mSize] = value == null ? -1 : intern(value, valueName);
+            mNumbers[mSize] = number;
+            mSize++;
+            return this;
+        }
+
+        public Builder add(Obs obs) {
+            return add(obs.time.getMillis(), obs.conceptUuid, obs.conceptType,
+                obs.value, obs.valueName);
+        }
+
+        public ObsTable build() {
+            return new ObsTable(this);
+        }
+
+        private int intern(String value, @Nullable String name) {
+            Integer index = mStringIndexes.get(value);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(value);
+                mNames.add(name);
+                mStringIndexes.put(value, index);
+            } else if (mNames.get(index) == null) {
+                mNames.set(index, name);
+            }
+            return index;
+        }
+
+        private static double parseNumber(@Nullable ConceptType type, @Nullable String value) {
+            if (value == null || type == null) return Double.NaN;
+            try {
+                switch (type) {
+                    case NUMERIC:
+                        return Double.parseDouble(value);
+                    case DATETIME:
+                        return Long.parseLong(value);
+                }
+            } catch (NumberFormatException e) {
+                /* unparseable value; treated as no value */
+            }
+            return Double.NaN;
+        }
+    }
+}
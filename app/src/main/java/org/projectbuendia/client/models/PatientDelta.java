@@ -15,6 +15,7 @@ import android.content.ContentValues;
 
 import com.google.common.base.Optional;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -22,9 +23,13 @@ import org.json.JSONObject;
 import org.projectbuendia.client.json.JsonPatient;
 import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.TypedObsValues;
 import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Represents the data to write to a new patient or the data to update on a patient. */
 public class PatientDelta {
 
@@ -64,6 +69,40 @@ public class PatientDelta {
         return cv;
     }
 
+    /**
+     * Returns {@link ContentValues} for temporary observations of the dates changed in the delta,
+     * which stand in locally until the server's observations arrive in a sync.
+     * @param patientUuid   the UUID of the patient
+     * @param encounterUuid the UUID under which to group the observations
+     * @param encounterTime the time to record for the observations
+     */
+    public ContentValues[] toObservationContentValues(
+        String patientUuid, String encounterUuid, DateTime encounterTime) {
+        List<ContentValues> cvs = new ArrayList<>();
+        if (admissionDate.isPresent()) {
+            cvs.add(makeObservation(patientUuid, encounterUuid, encounterTime,
+                ConceptUuids.ADMISSION_DATE_UUID, Utils.toString(admissionDate.get())));
+        }
+        if (firstSymptomDate.isPresent()) {
+            cvs.add(makeObservation(patientUuid, encounterUuid, encounterTime,
+                ConceptUuids.FIRST_SYMPTOM_DATE_UUID, Utils.toString(firstSymptomDate.get())));
+        }
+        return cvs.toArray(new ContentValues[cvs.size()]);
+    }
+
+    private static ContentValues makeObservation(String patientUuid, String encounterUuid,
+                                                 DateTime encounterTime, String conceptUuid,
+                                                 String value) {
+        ContentValues cv = new ContentValues();
+        cv.put(Contracts.Observations.PATIENT_UUID, patientUuid);
+        cv.put(Contracts.Observations.ENCOUNTER_UUID, encounterUuid);
+        cv.put(Contracts.Observations.ENCOUNTER_MILLIS, encounterTime.getMillis());
+        cv.put(Contracts.Observations.CONCEPT_UUID, conceptUuid);
+        cv.put(Contracts.Observations.VALUE, value);
+        TypedObsValues.put(cv, conceptUuid, value);
+        return cv;
+    }
+
     @Override public String toString() {
         JSONObject jsonObject = new JSONObject();
         if (toJson(jsonObject)) {
@@ -15,9 +15,8 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.os.AsyncTask;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.RequestFuture;
-
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.EncounterAddFailedEvent;
 import org.projectbuendia.client.events.data.ItemCreatedEvent;
@@ -27,15 +26,15 @@ import org.projectbuendia.client.filter.db.encounter.EncounterUuidFilter;
 import org.projectbuendia.client.models.Encounter;
 import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.models.LoaderSet;
-import org.projectbuendia.client.net.Server;
-import org.projectbuendia.client.json.JsonEncounter;
 import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.sync.OutboxManager;
 import org.projectbuendia.client.utils.Logger;
 
-import java.util.concurrent.ExecutionException;
+import java.util.UUID;
 
 /**
- * An {@link AsyncTask} that adds a patient encounter to the server.
+ * An {@link AsyncTask} that adds a patient encounter to the local store and queues it for
+ * submission to the server.
  * <p/>
  * <p>If the operation succeeds, a {@link ItemCreatedEvent} is posted on the given
  * {@link CrudEventBus} with the added encounter. If the operation fails, a
@@ -55,7 +54,7 @@ public class AddEncounterTask extends AsyncTask<Void, Void, EncounterAddFailedEv
 
     private final TaskFactory mTaskFactory;
     private final LoaderSet mLoaderSet;
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final Patient mPatient;
     private final Encounter mEncounter;
@@ -67,7 +66,7 @@ public class AddEncounterTask extends AsyncTask<Void, Void, EncounterAddFailedEv
     public AddEncounterTask(
         TaskFactory taskFactory,
         LoaderSet loaderSet,
-        Server server,
+        OutboxManager outboxManager,
         ContentResolver contentResolver,
         Patient patient,
         Encounter encounter,
@@ -75,7 +74,7 @@ public class AddEncounterTask extends AsyncTask<Void, Void, EncounterAddFailedEv
     ) {
         mTaskFactory = taskFactory;
         mLoaderSet = loaderSet;
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mPatient = patient;
         mEncounter = encounter;
@@ -83,50 +82,21 @@ public class AddEncounterTask extends AsyncTask<Void, Void, EncounterAddFailedEv
     }
 
     @Override protected EncounterAddFailedEvent doInBackground(Void... params) {
-        RequestFuture<JsonEncounter> future = RequestFuture.newFuture();
-
-        mServer.addEncounter(mPatient, mEncounter, future, future);
-        JsonEncounter jsonEncounter;
+        // Name the encounter on the client, so that the server can recognize a resubmission.
+        String uuid = UUID.randomUUID().toString();
+        Encounter encounter = new Encounter(mPatient.uuid, uuid, mEncounter.timestamp,
+            mEncounter.observations, mEncounter.orderUuids, mEncounter.userUuid);
+        JSONObject json;
         try {
-            jsonEncounter = future.get();
-        } catch (InterruptedException e) {
-            return new EncounterAddFailedEvent(
-                    mEncounter, EncounterAddFailedEvent.Reason.INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            LOG.e(e, "Server error while adding encounter");
-
-            EncounterAddFailedEvent.Reason reason =
-                EncounterAddFailedEvent.Reason.UNKNOWN_SERVER_ERROR;
-            if (e.getCause() != null) {
-                String errorMessage = e.getCause().getMessage();
-                if (errorMessage.contains("failed to validate")) {
-                    reason = EncounterAddFailedEvent.Reason.FAILED_TO_VALIDATE;
-                } else if (errorMessage.contains("Privileges required")) {
-                    reason = EncounterAddFailedEvent.Reason.FAILED_TO_AUTHENTICATE;
-                }
-            }
-            LOG.e("Error response: %s", ((VolleyError) e.getCause()).networkResponse);
-
+            json = encounter.toJson();
+        } catch (JSONException e) {
+            LOG.e(e, "Unable to serialize the encounter to JSON");
             return new EncounterAddFailedEvent(
-                    mEncounter, reason, (VolleyError) e.getCause());
-        }
-
-        if (jsonEncounter.uuid == null) {
-            LOG.e(
-                "Although the server reported an encounter successfully added, it did not "
-                    + "return a UUID for that encounter. This indicates a server error.");
-
-            return new EncounterAddFailedEvent(mEncounter,
-                    EncounterAddFailedEvent.Reason.FAILED_TO_SAVE_ON_SERVER, null /*exception*/);
+                mEncounter, EncounterAddFailedEvent.Reason.UNKNOWN, e);
         }
 
-        // TODO: the encounter database saving code here doesn't correctly attribute observations to
-        // the user that created them, despite the fact that this data is sent from the server.
-        // This will be remedied on the next sync.
-        // Instead of adding a workaround here, we should unify the code that deals with
-        // observations as part of encounters and the code that deals with observations as entities
-        // that get synced.
-        Encounter encounter = Encounter.fromJson(mPatient.uuid, jsonEncounter);
+        // The observations are saved locally right away, without UUIDs, and replaced by the
+        // server's copies when they arrive in a later sync.
         ContentValues[] values = encounter.toContentValuesArray();
         if (values.length > 0) {
             int inserted = mContentResolver.bulkInsert(Observations.CONTENT_URI, values);
@@ -139,10 +109,11 @@ public class AddEncounterTask extends AsyncTask<Void, Void, EncounterAddFailedEv
                         null /*exception*/);
             }
         } else {
-            LOG.w("Encounter was sent to the server but contained no observations.");
+            LOG.w("Encounter contained no observations.");
         }
+        mOutboxManager.enqueue(OutboxManager.Action.ADD_ENCOUNTER, uuid, json);
 
-        mUuid = jsonEncounter.uuid;
+        mUuid = uuid;
         return null;
     }
 
@@ -12,12 +12,14 @@
 package org.projectbuendia.client.models.tasks;
 
 import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.RequestFuture;
-
+import org.joda.time.DateTime;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.ItemCreatedEvent;
 import org.projectbuendia.client.events.data.ItemFetchFailedEvent;
@@ -28,15 +30,15 @@ import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.models.PatientDelta;
 import org.projectbuendia.client.models.LoaderSet;
 import org.projectbuendia.client.net.Server;
-import org.projectbuendia.client.json.JsonPatient;
-import org.projectbuendia.client.sync.SyncAccountService;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.OutboxManager;
 import org.projectbuendia.client.utils.Logger;
 
-import java.util.concurrent.ExecutionException;
+import java.util.UUID;
 
 /**
- * An {@link AsyncTask} that adds a patient to a server.
+ * An {@link AsyncTask} that adds a patient to the local store and queues it for submission to
+ * the server.
  * <p/>
  * <p>If the operation succeeds, a {@link ItemCreatedEvent} is posted on the given
  * {@link CrudEventBus} with the added patient. If the operation fails, a
@@ -48,7 +50,7 @@ public class AddPatientTask extends AsyncTask<Void, Void, PatientAddFailedEvent>
 
     private final TaskFactory mTaskFactory;
     private final LoaderSet mLoaderSet;
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final PatientDelta mPatientDelta;
     private final CrudEventBus mBus;
@@ -59,73 +61,63 @@ public class AddPatientTask extends AsyncTask<Void, Void, PatientAddFailedEvent>
     public AddPatientTask(
         TaskFactory taskFactory,
         LoaderSet loaderSet,
-        Server server,
+        OutboxManager outboxManager,
         ContentResolver contentResolver,
         PatientDelta patientDelta,
         CrudEventBus bus) {
         mTaskFactory = taskFactory;
         mLoaderSet = loaderSet;
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mPatientDelta = patientDelta;
         mBus = bus;
     }
 
     @Override protected PatientAddFailedEvent doInBackground(Void... params) {
-        RequestFuture<JsonPatient> future = RequestFuture.newFuture();
+        // The server can only reject a duplicate ID once the patient reaches it, so catch the
+        // duplicates we already know about here.
+        if (mPatientDelta.id.isPresent() && isIdInUse(mPatientDelta.id.get())) {
+            return new PatientAddFailedEvent(
+                PatientAddFailedEvent.REASON_DUPLICATE_ID, null /*exception*/);
+        }
 
-        mServer.addPatient(mPatientDelta, future, future);
-        JsonPatient json;
+        // Name the patient on the client, so that the server can recognize a resubmission.
+        String uuid = UUID.randomUUID().toString();
+        JSONObject json = new JSONObject();
         try {
-            json = future.get();
-        } catch (InterruptedException e) {
-            return new PatientAddFailedEvent(PatientAddFailedEvent.REASON_INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            int failureReason = PatientAddFailedEvent.REASON_NETWORK;
-            if (e.getCause() != null && e.getCause() instanceof VolleyError) {
-                String message = e.getCause().getMessage();
-                if (message.contains("could not insert: [org.openmrs.PatientIdentifier]")) {
-                    failureReason = PatientAddFailedEvent.REASON_INVALID_ID;
-                } else if (message.contains("already has the ID")) {
-                    failureReason = PatientAddFailedEvent.REASON_DUPLICATE_ID;
-                } else if (isValidationErrorMessageForField(message, "names[0].givenName")) {
-                    failureReason = PatientAddFailedEvent.REASON_INVALID_GIVEN_NAME;
-                } else if (isValidationErrorMessageForField(message, "names[0].familyName")) {
-                    failureReason = PatientAddFailedEvent.REASON_INVALID_FAMILY_NAME;
-                }
+            if (!mPatientDelta.toJson(json)) {
+                throw new JSONException("Unable to serialize the patient delta to JSON.");
             }
-            return new PatientAddFailedEvent(failureReason, e);
+            json.put(Server.PATIENT_UUID_KEY, uuid);
+        } catch (JSONException e) {
+            return new PatientAddFailedEvent(PatientAddFailedEvent.REASON_CLIENT, e);
         }
 
-        if (json.uuid == null) {
-            LOG.e(
-                "Although the server reported a patient successfully added, it did not return "
-                    + "a UUID for that patient. This indicates a server error.");
-
-            return new PatientAddFailedEvent(
-                PatientAddFailedEvent.REASON_SERVER, null /*exception*/);
-        }
-
-        Patient patient = Patient.fromJson(json);
-        Uri uri = mContentResolver.insert(
-            Contracts.Patients.CONTENT_URI, patient.toContentValues());
-
-        // Perform incremental observation sync so we get admission date.
-        SyncAccountService.startObservationsAndOrdersSync();
-
+        ContentValues values = mPatientDelta.toContentValues();
+        values.put(Contracts.Patients.UUID, uuid);
+        Uri uri = mContentResolver.insert(Contracts.Patients.CONTENT_URI, values);
         if (uri == null || uri.equals(Uri.EMPTY)) {
             return new PatientAddFailedEvent(
                 PatientAddFailedEvent.REASON_CLIENT, null /*exception*/);
         }
+        // Show the admission date right away; the server's copy replaces it after a sync.
+        mContentResolver.bulkInsert(Contracts.Observations.CONTENT_URI,
+            mPatientDelta.toObservationContentValues(uuid, uuid, DateTime.now()));
+        mOutboxManager.enqueue(OutboxManager.Action.ADD_PATIENT, uuid, json);
 
-        mUuid = json.uuid;
-
+        mUuid = uuid;
         return null;
     }
 
-    private boolean isValidationErrorMessageForField(String message, String fieldName) {
-        return message.contains("'Patient#null' failed to validate with reason: "
-            + fieldName);
+    private boolean isIdInUse(String id) {
+        Cursor cursor = mContentResolver.query(
+            Contracts.Patients.CONTENT_URI, new String[] {Contracts.Patients.UUID},
+            Contracts.Patients.ID + " = ?", new String[] {id}, null);
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override protected void onPostExecute(PatientAddFailedEvent event) {
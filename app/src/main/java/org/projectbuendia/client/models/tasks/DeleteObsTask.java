@@ -16,53 +16,37 @@ package org.projectbuendia.client.models.tasks;
 import android.content.ContentResolver;
 import android.os.AsyncTask;
 
-import com.android.volley.toolbox.RequestFuture;
-
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.ItemDeletedEvent;
 import org.projectbuendia.client.events.data.ObsDeleteFailedEvent;
-import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts;
-
-import java.util.concurrent.ExecutionException;
+import org.projectbuendia.client.sync.OutboxManager;
 
 public class DeleteObsTask extends AsyncTask<Void, Void, ObsDeleteFailedEvent> {
 
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final CrudEventBus mBus;
     private final String mObservationUuid;
 
     public DeleteObsTask(
-            Server server,
+            OutboxManager outboxManager,
             ContentResolver contentResolver,
             String observationUuid,
             CrudEventBus bus) {
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mObservationUuid = observationUuid;
         mBus = bus;
     }
 
     @Override protected ObsDeleteFailedEvent doInBackground(Void... params) {
-
-        RequestFuture<Void> future = RequestFuture.newFuture();
-        mServer.deleteObservation(mObservationUuid, future, future);
-
-        try {
-            future.get();
-        } catch (InterruptedException e) {
-            return new ObsDeleteFailedEvent(ObsDeleteFailedEvent.Reason.INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            return new ObsDeleteFailedEvent(ObsDeleteFailedEvent.Reason.UNKNOWN_SERVER_ERROR, e);
-        }
-
         mContentResolver.delete(
                 Contracts.Observations.CONTENT_URI,
                 "uuid = ?",
                 new String[]{mObservationUuid}
         );
-
+        mOutboxManager.enqueue(OutboxManager.Action.DELETE_OBSERVATION, mObservationUuid, null);
         return null;
     }
 
@@ -14,19 +14,16 @@ package org.projectbuendia.client.models.tasks;
 import android.content.ContentResolver;
 import android.os.AsyncTask;
 
-import com.android.volley.toolbox.RequestFuture;
-
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.ItemCreatedEvent;
 import org.projectbuendia.client.events.data.ItemDeletedEvent;
 import org.projectbuendia.client.events.data.OrderDeleteFailedEvent;
-import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts;
-
-import java.util.concurrent.ExecutionException;
+import org.projectbuendia.client.sync.OutboxManager;
 
 /**
- * An {@link AsyncTask} that adds an order, both on the server and in the local store.
+ * An {@link AsyncTask} that deletes an order from the local store and queues the deletion for
+ * submission to the server.
  * <p/>
  * <p>If the operation succeeds, a {@link ItemCreatedEvent} is posted on the
  * given {@link CrudEventBus} with the added order. If the operation fails, an
@@ -34,40 +31,30 @@ import java.util.concurrent.ExecutionException;
  */
 public class DeleteOrderTask extends AsyncTask<Void, Void, OrderDeleteFailedEvent> {
 
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final String mOrderUuid;
     private final CrudEventBus mBus;
 
     /** Creates a new {@link DeleteOrderTask}. */
     public DeleteOrderTask(
-            Server server,
+            OutboxManager outboxManager,
             ContentResolver contentResolver,
             String orderUuid,
             CrudEventBus bus) {
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mOrderUuid = orderUuid;
         mBus = bus;
     }
 
     @Override protected OrderDeleteFailedEvent doInBackground(Void... params) {
-        RequestFuture<Void> future = RequestFuture.newFuture();
-
-        mServer.deleteOrder(mOrderUuid, future, future);
-        try {
-            future.get();
-        } catch (InterruptedException e) {
-            return new OrderDeleteFailedEvent(OrderDeleteFailedEvent.Reason.INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            return new OrderDeleteFailedEvent(OrderDeleteFailedEvent.Reason.UNKNOWN_SERVER_ERROR, e);
-        }
-
         mContentResolver.delete(
             Contracts.Orders.CONTENT_URI,
             "uuid = ?",
             new String[] {mOrderUuid}
         );
+        mOutboxManager.enqueue(OutboxManager.Action.DELETE_ORDER, mOrderUuid, null);
         return null;
     }
 
@@ -15,8 +15,9 @@ import android.content.ContentResolver;
 import android.net.Uri;
 import android.os.AsyncTask;
 
-import com.android.volley.toolbox.RequestFuture;
-
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.projectbuendia.client.App;
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.ItemCreatedEvent;
 import org.projectbuendia.client.events.data.ItemFetchFailedEvent;
@@ -24,17 +25,19 @@ import org.projectbuendia.client.events.data.ItemFetchedEvent;
 import org.projectbuendia.client.events.data.ItemUpdatedEvent;
 import org.projectbuendia.client.events.data.OrderSaveFailedEvent;
 import org.projectbuendia.client.filter.db.patient.UuidFilter;
-import org.projectbuendia.client.json.JsonOrder;
+import org.projectbuendia.client.json.JsonUser;
 import org.projectbuendia.client.models.LoaderSet;
 import org.projectbuendia.client.models.Order;
 import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.OutboxManager;
 import org.projectbuendia.client.utils.Logger;
 
-import java.util.concurrent.ExecutionException;
+import java.util.UUID;
 
 /**
- * An {@link AsyncTask} that adds an order, both on the server and in the local store.
+ * An {@link AsyncTask} that adds or updates an order in the local store and queues the change
+ * for submission to the server.
  * <p/>
  * <p>If the operation succeeds, a {@link ItemCreatedEvent} is posted on the
  * given {@link CrudEventBus} with the added order. If the operation fails, an
@@ -46,7 +49,7 @@ public class SaveOrderTask extends AsyncTask<Void, Void, OrderSaveFailedEvent> {
 
     private final TaskFactory mTaskFactory;
     private final LoaderSet mLoaderSet;
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final Order mOrder;
     private final CrudEventBus mBus;
@@ -57,13 +60,13 @@ public class SaveOrderTask extends AsyncTask<Void, Void, OrderSaveFailedEvent> {
     public SaveOrderTask(
         TaskFactory taskFactory,
         LoaderSet loaderSet,
-        Server server,
+        OutboxManager outboxManager,
         ContentResolver contentResolver,
         Order order,
         CrudEventBus bus) {
         mTaskFactory = taskFactory;
         mLoaderSet = loaderSet;
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mOrder = order;
         mBus = bus;
@@ -84,25 +87,33 @@ public class SaveOrderTask extends AsyncTask<Void, Void, OrderSaveFailedEvent> {
     }
 
     @Override protected OrderSaveFailedEvent doInBackground(Void... params) {
-        RequestFuture<JsonOrder> future = RequestFuture.newFuture();
-        mServer.saveOrder(mOrder, future, future);
-        JsonOrder json;
+        // New orders are named on the client, so that the server can recognize a resubmission.
+        String uuid = mOrder.uuid == null ? UUID.randomUUID().toString() : mOrder.uuid;
+        Order order = new Order(
+            uuid, mOrder.patientUuid, mOrder.instructions, mOrder.start, mOrder.stop);
+        JSONObject json;
         try {
-            json = future.get();
-        } catch (InterruptedException e) {
-            return new OrderSaveFailedEvent(OrderSaveFailedEvent.Reason.INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            return new OrderSaveFailedEvent(OrderSaveFailedEvent.Reason.UNKNOWN_SERVER_ERROR, e);
+            json = order.toJson();
+            JsonUser user = App.getUserManager().getActiveUser();
+            if (user != null) {
+                json.put("orderer_uuid", user.id);
+            }
+            if (mOrder.uuid == null) {
+                json.put(Server.ORDER_UUID_KEY, uuid);
+            }
+        } catch (JSONException e) {
+            return new OrderSaveFailedEvent(OrderSaveFailedEvent.Reason.CLIENT_ERROR, e);
         }
 
         // insert() is implemented as insert or replace, so we use it for both adding and updating.
-        Uri uri = mContentResolver.insert(
-            Contracts.Orders.CONTENT_URI, Order.fromJson(json).toContentValues());
+        Uri uri = mContentResolver.insert(Contracts.Orders.CONTENT_URI, order.toContentValues());
         if (uri == null || uri.equals(Uri.EMPTY)) {
             return new OrderSaveFailedEvent(OrderSaveFailedEvent.Reason.CLIENT_ERROR, null);
         }
+        mOutboxManager.enqueue(mOrder.uuid == null ?
+            OutboxManager.Action.ADD_ORDER : OutboxManager.Action.UPDATE_ORDER, uuid, json);
 
-        mUuid = json.uuid;
+        mUuid = uuid;
         return null;  // no error means success
     }
 
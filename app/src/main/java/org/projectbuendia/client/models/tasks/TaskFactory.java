@@ -26,6 +26,7 @@ import org.projectbuendia.client.models.PatientDelta;
 import org.projectbuendia.client.models.CursorLoader;
 import org.projectbuendia.client.models.LoaderSet;
 import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.sync.OutboxManager;
 
 /**
  * An assisted injection factory that creates {@link AsyncTask}s for performing {@link AppModel}
@@ -35,18 +36,22 @@ public class TaskFactory {
     private final LoaderSet mLoaderSet;
     private final Server mServer;
     private final ContentResolver mContentResolver;
+    private final OutboxManager mOutboxManager;
 
     /** Creates a new {@link TaskFactory}. */
     public TaskFactory(
-        LoaderSet loaderSet, Server server, ContentResolver contentResolver) {
+        LoaderSet loaderSet, Server server, ContentResolver contentResolver,
+        OutboxManager outboxManager) {
         mLoaderSet = loaderSet;
         mServer = server;
         mContentResolver = contentResolver;
+        mOutboxManager = outboxManager;
     }
 
     /** Creates a new {@link AddPatientTask}. */
     public AddPatientTask newAddPatientTask(PatientDelta patientDelta, CrudEventBus bus) {
-        return new AddPatientTask(this, mLoaderSet, mServer, mContentResolver, patientDelta, bus);
+        return new AddPatientTask(
+            this, mLoaderSet, mOutboxManager, mContentResolver, patientDelta, bus);
     }
 
     public DownloadSinglePatientTask newDownloadSinglePatientTask(
@@ -57,31 +62,32 @@ public class TaskFactory {
 
     public DeleteObsTask newDeleteObsTask(CrudEventBus bus, String observationUuid) {
         return new DeleteObsTask(
-                mServer, mContentResolver, observationUuid, bus);
+                mOutboxManager, mContentResolver, observationUuid, bus);
     }
 
     /** Creates a new {@link UpdatePatientTask}. */
     public UpdatePatientTask newUpdatePatientTask(
         String patientUuid, PatientDelta patientDelta, CrudEventBus bus) {
         return new UpdatePatientTask(
-            this, mLoaderSet, mServer, mContentResolver, patientUuid, patientDelta, bus);
+            this, mLoaderSet, mOutboxManager, mContentResolver, patientUuid, patientDelta, bus);
     }
 
     /** Creates a new {@link AddEncounterTask}. */
     public AddEncounterTask newAddEncounterTask(
         Patient patient, Encounter encounter, CrudEventBus bus) {
         return new AddEncounterTask(
-            this, mLoaderSet, mServer, mContentResolver, patient, encounter, bus);
+            this, mLoaderSet, mOutboxManager, mContentResolver, patient, encounter, bus);
     }
 
     /** Creates a new {@link SaveOrderTask}. */
     public SaveOrderTask newSaveOrderTask(Order order, CrudEventBus bus) {
-        return new SaveOrderTask(this, mLoaderSet, mServer, mContentResolver, order, bus);
+        return new SaveOrderTask(
+            this, mLoaderSet, mOutboxManager, mContentResolver, order, bus);
     }
 
     /** Creates a new {@link DeleteOrderTask}. */
     public DeleteOrderTask newDeleteOrderTask(String orderUuid, CrudEventBus bus) {
-        return new DeleteOrderTask(mServer, mContentResolver, orderUuid, bus);
+        return new DeleteOrderTask(mOutboxManager, mContentResolver, orderUuid, bus);
     }
 
     /** Creates a new {@link FetchItemTask}. */
@@ -15,6 +15,7 @@ import android.content.ContentResolver;
 
 import org.projectbuendia.client.models.LoaderSet;
 import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.sync.OutboxManager;
 
 import javax.inject.Singleton;
 
@@ -28,7 +29,8 @@ public class TaskModule {
     @Singleton TaskFactory provideAppAsyncTaskFactory(
         Server server,
         ContentResolver contentResolver,
-        LoaderSet loaderSet) {
-        return new TaskFactory(loaderSet, server, contentResolver);
+        LoaderSet loaderSet,
+        OutboxManager outboxManager) {
+        return new TaskFactory(loaderSet, server, contentResolver, outboxManager);
     }
 }
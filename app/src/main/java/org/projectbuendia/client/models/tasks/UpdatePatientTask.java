@@ -14,9 +14,8 @@ package org.projectbuendia.client.models.tasks;
 import android.content.ContentResolver;
 import android.os.AsyncTask;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.RequestFuture;
-
+import org.joda.time.DateTime;
+import org.json.JSONObject;
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.events.data.ItemFetchFailedEvent;
 import org.projectbuendia.client.events.data.ItemFetchedEvent;
@@ -27,14 +26,12 @@ import org.projectbuendia.client.filter.db.patient.UuidFilter;
 import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.models.PatientDelta;
 import org.projectbuendia.client.models.LoaderSet;
-import org.projectbuendia.client.net.Server;
-import org.projectbuendia.client.json.JsonPatient;
 import org.projectbuendia.client.providers.Contracts;
-
-import java.util.concurrent.ExecutionException;
+import org.projectbuendia.client.sync.OutboxManager;
 
 /**
- * An {@link AsyncTask} that updates a patient on a server.
+ * An {@link AsyncTask} that updates a patient in the local store and queues the change for
+ * submission to the server.
  * <p/>
  * <p>If the operation succeeds, a {@link ItemUpdatedEvent} is posted on the given
  * {@link CrudEventBus} with both the old and updated patient data. If the operation fails, a
@@ -45,7 +42,7 @@ public class UpdatePatientTask extends AsyncTask<Void, Void, PatientUpdateFailed
 
     private final TaskFactory mTaskFactory;
     private final LoaderSet mLoaderSet;
-    private final Server mServer;
+    private final OutboxManager mOutboxManager;
     private final ContentResolver mContentResolver;
     private final String mUuid;
     private final PatientDelta mPatientDelta;
@@ -54,14 +51,14 @@ public class UpdatePatientTask extends AsyncTask<Void, Void, PatientUpdateFailed
     UpdatePatientTask(
         TaskFactory taskFactory,
         LoaderSet loaderSet,
-        Server server,
+        OutboxManager outboxManager,
         ContentResolver contentResolver,
         String patientUuid,
         PatientDelta patientDelta,
         CrudEventBus bus) {
         mTaskFactory = taskFactory;
         mLoaderSet = loaderSet;
-        mServer = server;
+        mOutboxManager = outboxManager;
         mContentResolver = contentResolver;
         mUuid = patientUuid;
         mPatientDelta = patientDelta;
@@ -69,17 +66,10 @@ public class UpdatePatientTask extends AsyncTask<Void, Void, PatientUpdateFailed
     }
 
     @Override protected PatientUpdateFailedEvent doInBackground(Void... params) {
-        RequestFuture<JsonPatient> patientFuture = RequestFuture.newFuture();
-
-        mServer.updatePatient(mUuid, mPatientDelta, patientFuture, patientFuture);
-        try {
-            patientFuture.get();
-        } catch (InterruptedException e) {
-            return new PatientUpdateFailedEvent(PatientUpdateFailedEvent.REASON_INTERRUPTED, e);
-        } catch (ExecutionException e) {
-            // TODO: Parse the VolleyError to see exactly what kind of error was raised.
+        JSONObject json = new JSONObject();
+        if (!mPatientDelta.toJson(json)) {
             return new PatientUpdateFailedEvent(
-                PatientUpdateFailedEvent.REASON_NETWORK, (VolleyError) e.getCause());
+                PatientUpdateFailedEvent.REASON_CLIENT, null /*exception*/);
         }
 
         int count = mContentResolver.update(
@@ -93,6 +83,10 @@ public class UpdatePatientTask extends AsyncTask<Void, Void, PatientUpdateFailed
                 return new PatientUpdateFailedEvent(
                     PatientUpdateFailedEvent.REASON_NO_SUCH_PATIENT, null /*exception*/);
             case 1:
+                // Show changed dates right away; the server's copies replace them after a sync.
+                mContentResolver.bulkInsert(Contracts.Observations.CONTENT_URI,
+                    mPatientDelta.toObservationContentValues(mUuid, mUuid, DateTime.now()));
+                mOutboxManager.enqueue(OutboxManager.Action.UPDATE_PATIENT, mUuid, json);
                 return null;
             default:
                 return new PatientUpdateFailedEvent(
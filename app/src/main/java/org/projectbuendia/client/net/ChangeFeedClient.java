@@ -0,0 +1,281 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.net;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.projectbuendia.client.diagnostics.HealthMonitor;
+import org.projectbuendia.client.json.JsonChanges;
+import org.projectbuendia.client.utils.Logger;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Subscribes to the server's change feed by long-polling {@code <Buendia API>/changes}.  The
+ * server holds each request open until some resource (observations, orders, patients, etc.)
+ * changes after the given token, or until the wait time expires, and then responds with the
+ * names of the changed resource types and a new token.  Changed resource types are passed to a
+ * {@link Listener}, which is expected to start the matching sync phases.
+ * <p>
+ * Failed requests are retried with exponential backoff.  While the {@link HealthMonitor}
+ * reports that the API is unavailable, no requests are made at all.  A server that doesn't
+ * have the change feed (HTTP 404, 405, or 501) stops the polling, and other client errors, such
+ * as bad credentials, are retried only after a long wait; the periodic sync carries on either way.
+ * <p>
+ * The token is kept only in memory, so the first request after {@link #start()} just establishes
+ * the starting point; the periodic sync is responsible for anything that changed before then.
+ */
+public class ChangeFeedClient {
+
+    private static final Logger LOG = Logger.create();
+
+    /** How long the server is asked to hold a request open, waiting for changes. */
+    static final int WAIT_SECONDS = 60;
+    /** Extra time allowed beyond WAIT_SECONDS before a request is considered to have timed out. */
+    private static final int READ_TIMEOUT_MARGIN_SECONDS = 15;
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    /** Matches the shortest check period of the BuendiaApiHealthCheck. */
+    private static final long API_UNAVAILABLE_WAIT_MILLIS = 10000;
+    /** How long to wait after a client error that retrying soon won't fix. */
+    private static final long CLIENT_ERROR_WAIT_MILLIS = 30 * 60 * 1000;
+
+    /** Receives notification of changes on the server. */
+    public interface Listener {
+        /**
+         * Called on the polling thread with the resource types (e.g. "observations") that
+         * have changed on the server.
+         */
+        void onChanged(Set<String> resourceTypes);
+    }
+
+    private final OpenMrsConnectionDetails mConnectionDetails;
+    private final HealthMonitor mHealthMonitor;
+    private final OkHttpClient mClient;
+    private final Gson mGson;
+    private final Listener mListener;
+    private final long mMinBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mApiUnavailableWaitMillis;
+    private final long mClientErrorWaitMillis;
+
+    /** The polling thread; a thread stops polling when it is no longer mThread. */
+    private volatile Thread mThread;
+    private volatile Call mCurrentCall;
+    @Nullable private String mSyncToken;
+
+    public ChangeFeedClient(
+        OpenMrsConnectionDetails connectionDetails,
+        HealthMonitor healthMonitor,
+        OkHttpClient client,
+        Gson gson,
+        Listener listener) {
+        this(connectionDetails, healthMonitor, client, gson, listener,
+            MIN_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS, API_UNAVAILABLE_WAIT_MILLIS,
+            CLIENT_ERROR_WAIT_MILLIS);
+    }
+
+    ChangeFeedClient(
+        OpenMrsConnectionDetails connectionDetails,
+        HealthMonitor healthMonitor,
+        OkHttpClient client,
+        Gson gson,
+        Listener listener,
+        long minBackoffMillis,
+        long maxBackoffMillis,
+        long apiUnavailableWaitMillis,
+        long clientErrorWaitMillis) {
+        mConnectionDetails = connectionDetails;
+        mHealthMonitor = healthMonitor;
+        // Share the connection pool of the given client, but allow for the long wait.
+        mClient = client.clone();
+        mClient.setReadTimeout(WAIT_SECONDS + READ_TIMEOUT_MARGIN_SECONDS, TimeUnit.SECONDS);
+        mGson = gson;
+        mListener = listener;
+        mMinBackoffMillis = minBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mApiUnavailableWaitMillis = apiUnavailableWaitMillis;
+        mClientErrorWaitMillis = clientErrorWaitMillis;
+    }
+
+    /** Starts polling on a background thread.  Does nothing if already started. */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                pollUntilStopped();
+            }
+        }, "ChangeFeedClient");
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+    }
+
+    /** Stops polling, aborting any request in flight.  Does nothing if not started. */
+    public synchronized void stop() {
+        Thread thread = mThread;
+        if (thread == null) {
+            return;
+        }
+        mThread = null;
+        Call call = mCurrentCall;
+        if (call != null) {
+            call.cancel();
+        }
+        thread.interrupt();
+    }
+
+    private boolean isStopped() {
+        return mThread != Thread.currentThread();
+    }
+
+    private void pollUntilStopped() {
+        long backoffMillis = mMinBackoffMillis;
+        while (!isStopped()) {
+            try {
+                if (mHealthMonitor.isApiUnavailable()) {
+                    LOG.d("Buendia API is unavailable; waiting before polling for changes.");
+                    Thread.sleep(mApiUnavailableWaitMillis);
+                    continue;
+                }
+                try {
+                    pollOnce();
+                    backoffMillis = mMinBackoffMillis;
+                } catch (HttpStatusException e) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    if (isUnsupported(e.code)) {
+                        LOG.w("Server has no change feed (HTTP %d); relying on periodic sync",
+                            e.code);
+                        stopFromPollingThread();
+                        break;
+                    }
+                    long waitMillis = isClientError(e.code) ? mClientErrorWaitMillis : backoffMillis;
+                    LOG.w(e, "Change feed request failed; retrying in %d ms", waitMillis);
+                    Thread.sleep(waitMillis);
+                    backoffMillis = isClientError(e.code)
+                        ? mMinBackoffMillis : Math.min(backoffMillis * 2, mMaxBackoffMillis);
+                } catch (IOException | RuntimeException e) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    LOG.w(e, "Change feed request failed; retrying in %d ms", backoffMillis);
+                    Thread.sleep(backoffMillis);
+                    backoffMillis = Math.min(backoffMillis * 2, mMaxBackoffMillis);
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by stop(); the loop condition will end the loop.
+            }
+        }
+        LOG.i("Change feed polling stopped");
+    }
+
+    /** Ends polling from the polling thread itself, so that {@link #start()} can start it again. */
+    private synchronized void stopFromPollingThread() {
+        if (mThread == Thread.currentThread()) {
+            mThread = null;
+        }
+    }
+
+    /** Returns true if the status means that the server doesn't offer the change feed. */
+    private static boolean isUnsupported(int code) {
+        return code == 404 || code == 405 || code == 501;
+    }
+
+    /** Returns true if the status is a client error that won't go away by retrying soon. */
+    private static boolean isClientError(int code) {
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+    /** Makes one long-poll request and notifies the listener of any changes. */
+    private void pollOnce() throws IOException {
+        HttpUrl baseUrl = HttpUrl.parse(mConnectionDetails.getBuendiaApiUrl());
+        if (baseUrl == null) {
+            throw new IOException(
+                "Invalid Buendia API URL: " + mConnectionDetails.getBuendiaApiUrl());
+        }
+        HttpUrl.Builder url = baseUrl.newBuilder()
+            .addPathSegment("changes")
+            .addQueryParameter("wait", String.valueOf(WAIT_SECONDS));
+        if (mSyncToken != null) {
+            url.addQueryParameter("since", mSyncToken);
+        }
+        Request request = new Request.Builder()
+            .url(url.build())
+            .header("Authorization", Credentials.basic(
+                mConnectionDetails.getUser(), mConnectionDetails.getPassword()))
+            .build();
+
+        Call call = mClient.newCall(request);
+        mCurrentCall = call;
+        JsonChanges changes;
+        try {
+            Response response = call.execute();
+            try {
+                if (!response.isSuccessful()) {
+                    throw new HttpStatusException(response.code());
+                }
+                changes = mGson.fromJson(response.body().charStream(), JsonChanges.class);
+            } finally {
+                response.body().close();
+            }
+        } finally {
+            mCurrentCall = null;
+        }
+
+        // An empty body means the wait expired with nothing new; keep the same token.
+        if (changes == null) {
+            return;
+        }
+        if (changes.syncToken != null) {
+            mSyncToken = changes.syncToken;
+        }
+        if (changes.changed != null && changes.changed.length > 0) {
+            Set<String> resourceTypes = new HashSet<>();
+            Collections.addAll(resourceTypes, changes.changed);
+            LOG.i("Change feed reports changes to %s", resourceTypes);
+            try {
+                mListener.onChanged(Collections.unmodifiableSet(resourceTypes));
+            } catch (RuntimeException e) {
+                // The token has already advanced, so don't treat this as a failed poll.
+                LOG.e(e, "Change feed listener failed");
+            }
+        }
+    }
+
+    /** A response with an unsuccessful HTTP status. */
+    private static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code) {
+            super("Change feed returned HTTP " + code);
+            this.code = code;
+        }
+    }
+}
@@ -17,13 +17,15 @@ import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.toolbox.HttpHeaderParser;
+import com.google.common.base.Charsets;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 
-import org.apache.http.protocol.HTTP;
+import org.projectbuendia.client.json.Serializers;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.Map;
 
@@ -31,7 +33,7 @@ import javax.annotation.Nullable;
 
 /** A {@link Request} with a JSON response parsed by {@link Gson}. */
 public class GsonRequest<T> extends Request<T> {
-    private final GsonBuilder mGson = new GsonBuilder();
+    private final Gson mGson = Serializers.getGson();
     private final Type mType;
     private final Map<String, String> mHeaders;
     private final Response.Listener<T> mListener;
@@ -85,10 +87,6 @@ public class GsonRequest<T> extends Request<T> {
         return mHeaders != null ? mHeaders : super.getHeaders();
     }
 
-    public GsonBuilder getGson() {
-        return mGson;
-    }
-
     @Override protected void deliverResponse(T response) {
         mListener.onResponse(response);
     }
@@ -98,17 +96,15 @@ public class GsonRequest<T> extends Request<T> {
     }
 
     @Override protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        // Parse straight from the bytes, rather than copying the whole body into a String first.
+        // TODO: HttpHeaderParser.parseCharset(response.mHeaders).
+        Reader reader = new InputStreamReader(
+            new ByteArrayInputStream(response.data), Charsets.UTF_8);
         try {
-            String json = new String(
-                response.data,
-                HTTP.UTF_8);  // TODO: HttpHeaderParser.parseCharset(response.mHeaders).
-            Gson gsonParser = mGson.create();
             //noinspection unchecked
             return (Response<T>) Response.success(
-                gsonParser.fromJson(json, mType),
+                mGson.fromJson(reader, mType),
                 HttpHeaderParser.parseCacheHeaders(response));
-        } catch (UnsupportedEncodingException e) {
-            return Response.error(new ParseError(e));
         } catch (JsonSyntaxException e) {
             return Response.error(new ParseError(e));
         } catch (Exception e) {
@@ -0,0 +1,70 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzip-compresses large request bodies, such as xform submissions.  This is off until enabled
+ * with {@link #setEnabled}, because the server has to be set up to accept compressed bodies.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+
+    /** Bodies smaller than this aren't worth compressing. */
+    public static final long MIN_COMPRESSED_BYTES = 4096;
+
+    private volatile boolean mEnabled;
+
+    /** Sets whether large request bodies should be compressed. */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    @Override public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (!mEnabled || body == null || request.header("Content-Encoding") != null
+            || body.contentLength() < MIN_COMPRESSED_BYTES) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+            .header("Content-Encoding", "gzip")
+            .method(request.method(), gzip(body))
+            .build());
+    }
+
+    /**
+     * Compresses a body up front rather than streaming it, so that the compressed length can be
+     * sent in Content-Length instead of falling back to a chunked upload.
+     */
+    static RequestBody gzip(RequestBody body) throws IOException {
+        Buffer compressed = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(compressed));
+        body.writeTo(sink);
+        sink.close();
+        return RequestBody.create(body.contentType(), compressed.readByteString());
+    }
+}
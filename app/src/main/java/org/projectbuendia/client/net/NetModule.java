@@ -14,11 +14,12 @@ package org.projectbuendia.client.net;
 import android.app.Application;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import org.projectbuendia.client.AppSettings;
 import org.projectbuendia.client.debug.StethoInitializer;
+import org.projectbuendia.client.diagnostics.HealthMonitor;
 import org.projectbuendia.client.json.Serializers;
+import org.projectbuendia.client.sync.SyncManager;
 
 import javax.inject.Singleton;
 
@@ -39,7 +40,12 @@ public class NetModule {
     @Provides
     @Singleton OpenMrsConnectionDetails provideOpenMrsConnectionDetails(
         VolleyRequestQueue volley, AppSettings settings) {
-        return new OpenMrsConnectionDetails(volley, settings);
+        OpenMrsConnectionDetails details = new OpenMrsConnectionDetails(volley, settings);
+        // Keep enough idle connections for every Volley network thread to reuse one.
+        details.setConnectionPool(8 /*max idle connections*/, 5*60*1000 /*keep-alive ms*/);
+        // The server doesn't decode compressed request bodies unless configured to.
+        details.setRequestCompressionEnabled(false);
+        return details;
     }
 
     @Provides
@@ -55,9 +61,7 @@ public class NetModule {
 
     @Provides
     @Singleton Gson provideGson() {
-        GsonBuilder builder = new GsonBuilder();
-        Serializers.registerTo(builder);
-        return builder.create();
+        return Serializers.getGson();
     }
 
     @Provides
@@ -67,4 +71,15 @@ public class NetModule {
         Gson gson) {
         return new OpenMrsServer(connectionDetails, requestFactory, gson);
     }
+
+    @Provides
+    @Singleton ChangeFeedClient provideChangeFeedClient(
+        OpenMrsConnectionDetails connectionDetails,
+        HealthMonitor healthMonitor,
+        VolleyRequestQueue volley,
+        Gson gson,
+        SyncManager syncManager) {
+        return new ChangeFeedClient(
+            connectionDetails, healthMonitor, volley.getUncountedOkHttpClient(), gson, syncManager);
+    }
 }
@@ -68,41 +68,7 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
         for (final OpenMrsXformIndexEntry formInfo : formInfos) {
             final File proposedPath = formInfo.makeFileForForm();
 
-            // Check if the uuid already exists in the database.
-            Cursor cursor = null;
-            boolean isNew;
-            try {
-                cursor = getCursorForFormFile(proposedPath, new String[] {
-                    FormsProviderAPI.FormsColumns.DATE
-                });
-                boolean isInDatabase = cursor.getCount() > 0;
-                if (isInDatabase) {
-                    if (cursor.getCount() != 1) {
-                        LOG.e("Saw " + cursor.getCount() + " rows for " + proposedPath.getPath());
-                        // In a fail-fast environment we would crash here, but we will keep going
-                        // to lead the code more robust to errors in the field.
-                    }
-                    Preconditions.checkArgument(cursor.getColumnCount() == 1);
-                    cursor.moveToNext();
-                    long existingTimestamp = cursor.getLong(0);
-                    isNew = (existingTimestamp < formInfo.dateChanged);
-
-                    if (isNew) {
-                        LOG.i("Form " + formInfo.uuid + " requires an update."
-                            + " (Local creation date: " + existingTimestamp
-                            + ", (Latest version: " + formInfo.dateChanged + ")");
-                    }
-                } else {
-                    LOG.i("Form " + formInfo.uuid + " not found in database.");
-                    isNew = true;
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
-
-            if (!isNew) {
+            if (!needsUpdate(formInfo, proposedPath)) {
                 LOG.i("Using form " + formInfo.uuid + " from local cache.");
                 if (mFormWrittenListener != null) {
                     mFormWrittenListener.formWritten(proposedPath, formInfo.uuid);
@@ -117,6 +83,46 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
         return null;
     }
 
+    /**
+     * Checks whether the given form is missing from ODK storage or older than the server's copy.
+     * @param formInfo     the index entry for the form on the server
+     * @param proposedPath the path where the form is stored locally
+     */
+    public static boolean needsUpdate(OpenMrsXformIndexEntry formInfo, File proposedPath) {
+        // Check if the uuid already exists in the database.
+        Cursor cursor = null;
+        try {
+            cursor = getCursorForFormFile(proposedPath, new String[] {
+                FormsProviderAPI.FormsColumns.DATE
+            });
+            boolean isInDatabase = cursor.getCount() > 0;
+            if (!isInDatabase) {
+                LOG.i("Form " + formInfo.uuid + " not found in database.");
+                return true;
+            }
+            if (cursor.getCount() != 1) {
+                LOG.e("Saw " + cursor.getCount() + " rows for " + proposedPath.getPath());
+                // In a fail-fast environment we would crash here, but we will keep going
+                // to lead the code more robust to errors in the field.
+            }
+            Preconditions.checkArgument(cursor.getColumnCount() == 1);
+            cursor.moveToNext();
+            long existingTimestamp = cursor.getLong(0);
+            boolean isNew = (existingTimestamp < formInfo.dateChanged);
+
+            if (isNew) {
+                LOG.i("Form " + formInfo.uuid + " requires an update."
+                    + " (Local creation date: " + existingTimestamp
+                    + ", (Latest version: " + formInfo.dateChanged + ")");
+            }
+            return isNew;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     /**
      * Fetches the requested xform from the server and adds it into db.
      * @param uuid      UUID of the form to be fetched
@@ -143,6 +149,43 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
         });
     }
 
+    /**
+     * Writes a fetched xform into ODK's forms directory and adds it to ODK's forms database.
+     * @param form         the xform XML
+     * @param proposedPath the path where the form should be stored
+     * @return true if the form was written
+     */
+    public static boolean writeFormToDb(String form, File proposedPath) {
+        // Write file into OpenMRS forms directory.
+        if (!writeStringToFile(form, proposedPath)) {
+            // we failed to load it, just skip for now
+            return false;
+        }
+
+        // do the equivalent of DownloadFormsTask.findExistingOrCreateNewUri() or
+        // DiskSyncTask step 4 to insert the file into the database
+        ContentValues cv;
+        try {
+            cv = DiskSyncTask.buildContentValues(proposedPath);
+        } catch (IllegalArgumentException e) {
+            // yuck, but this is what it throws on a bad parse
+            LOG.e(e, "Failed to parse: " + proposedPath);
+            return false;
+        }
+
+        // insert into content provider
+        try {
+            ContentResolver contentResolver =
+                Collect.getInstance().getApplication().getContentResolver();
+            // Always replace existing forms.
+            cv.put(FormsProviderAPI.SQL_INSERT_OR_REPLACE, true);
+            contentResolver.insert(FormsProviderAPI.FormsColumns.CONTENT_URI, cv);
+        } catch (SQLException e) {
+            LOG.i(e, "failed to insert fetched file");
+        }
+        return true;
+    }
+
     /**
      * Get a Cursor for the form from the filename. If there is more than one they are ordered
      * descending by id, so most recent is first.
@@ -162,6 +205,29 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
                 selectionArgs, FormsProviderAPI.FormsColumns._ID + " DESC");
     }
 
+    private static boolean writeStringToFile(String response, File proposedPath) {
+        //Create OKD dirs if necessary
+        Collect.getInstance().createODKDirs();
+
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(proposedPath);
+            writer.write(response);
+            return true;
+        } catch (IOException e) {
+            LOG.e(e, "failed to write downloaded xform to ODK forms directory");
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOG.e(e, "failed to close writer into ODK directory");
+                }
+            }
+        }
+    }
+
     private static class FormToWrite {
         public final String form;
         public final File path;
@@ -190,36 +256,8 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
         @Override protected File doInBackground(FormToWrite[] params) {
             Preconditions.checkArgument(params.length != 0);
 
-            String form = params[0].form;
             File proposedPath = params[0].path;
-            // Write file into OpenMRS forms directory.
-            if (!writeStringToFile(form, proposedPath)) {
-                // we failed to load it, just skip for now
-                return null;
-            }
-
-            // do the equivalent of DownloadFormsTask.findExistingOrCreateNewUri() or
-            // DiskSyncTask step 4 to insert the file into the database
-            ContentValues cv;
-            try {
-                cv = DiskSyncTask.buildContentValues(proposedPath);
-            } catch (IllegalArgumentException e) {
-                // yuck, but this is what it throws on a bad parse
-                LOG.e(e, "Failed to parse: " + proposedPath);
-                return null;
-            }
-
-            // insert into content provider
-            try {
-                ContentResolver contentResolver =
-                    Collect.getInstance().getApplication().getContentResolver();
-                // Always replace existing forms.
-                cv.put(FormsProviderAPI.SQL_INSERT_OR_REPLACE, true);
-                contentResolver.insert(FormsProviderAPI.FormsColumns.CONTENT_URI, cv);
-            } catch (SQLException e) {
-                LOG.i(e, "failed to insert fetched file");
-            }
-            return proposedPath;
+            return writeFormToDb(params[0].form, proposedPath) ? proposedPath : null;
         }
 
         @Override protected void onPostExecute(File path) {
@@ -229,28 +267,5 @@ public class OdkXformSyncTask extends AsyncTask<OpenMrsXformIndexEntry, Void, Vo
             }
             mEventBus.post(new FetchXformSucceededEvent());
         }
-
-        private static boolean writeStringToFile(String response, File proposedPath) {
-            //Create OKD dirs if necessary
-            Collect.getInstance().createODKDirs();
-
-            FileWriter writer = null;
-            try {
-                writer = new FileWriter(proposedPath);
-                writer.write(response);
-                return true;
-            } catch (IOException e) {
-                LOG.e(e, "failed to write downloaded xform to ODK forms directory");
-                return false;
-            } finally {
-                if (writer != null) {
-                    try {
-                        writer.close();
-                    } catch (IOException e) {
-                        LOG.e(e, "failed to close writer into ODK directory");
-                    }
-                }
-            }
-        }
     }
 }
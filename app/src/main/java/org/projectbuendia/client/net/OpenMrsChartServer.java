@@ -55,7 +55,7 @@ public class OpenMrsChartServer {
             successListener, errorListener) {
         };
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_LONG, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 
     /**
@@ -74,6 +74,6 @@ public class OpenMrsChartServer {
             successListener, errorListener) {
         };
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_LONG, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 }
@@ -38,6 +38,27 @@ public class OpenMrsConnectionDetails {
         return mVolley;
     }
 
+    /**
+     * Sets how many idle connections to the server are kept open, and for how long, so that
+     * bursts of requests (e.g. during a sync) don't each pay for a new connection.
+     */
+    public void setConnectionPool(int maxIdleConnections, long keepAliveMillis) {
+        mVolley.setConnectionPool(maxIdleConnections, keepAliveMillis);
+    }
+
+    /**
+     * Sets whether large request bodies (e.g. xform submissions) are sent gzip-compressed.  Only
+     * enable this if the server decodes requests with {@code Content-Encoding: gzip}.
+     */
+    public void setRequestCompressionEnabled(boolean enabled) {
+        mVolley.setRequestCompressionEnabled(enabled);
+    }
+
+    /** Gets the byte counts, on the wire and decoded, of requests made so far. */
+    public TransferStats getTransferStats() {
+        return mVolley.getTransferStats();
+    }
+
     /** Gets the URL to the API served by the Buendia module in OpenMRS. */
     public String getBuendiaApiUrl() {
         // The default value is set by setDefaultValues, not specified here.
@@ -43,7 +43,6 @@ import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /** Implementation of {@link Server} that sends RPC's to OpenMRS. */
@@ -71,34 +70,22 @@ public class OpenMrsServer implements Server {
         mGson = gson;
     }
 
-    @Override public void logToServer(List<String> pairs) {
+    @Override public void logToServer(
+        List<String> events,
+        Response.Listener<JSONObject> successListener,
+        Response.ErrorListener errorListener) {
         // To avoid filling the server logs with big messy stack traces, let's make a dummy
         // request that succeeds.  We assume "Pulse" will always be present on the server.
         // Conveniently, extra data after ";" in the URL is included in request logs, but
         // ignored by the REST resource handler, which just returns the "Pulse" concept.
+        // Events are separated by an empty parameter, i.e. ";;".
         final String urlPath = "/concepts/" + ConceptUuids.PULSE_UUID;
-        List<String> params = new ArrayList<>();
-        params.add("time=" + (new Date().getTime()));
-        JsonUser user = App.getUserManager().getActiveUser();
-        if (user != null) {
-            params.add("user_id=" + user.id);
-            if (user.isGuestUser()) {
-                params.add("guest_user=1");
-            }
-        }
-        for (int i = 0; i + 1 < pairs.size(); i += 2) {
-            params.add(Utils.urlEncode(pairs.get(i)) + "=" + Utils.urlEncode(pairs.get(i + 1)));
-        }
-
-        LOG.i("Logging to server: %s", params);
+        LOG.i("Logging %d events to server", events.size());
         OpenMrsJsonRequest request = mRequestFactory.newOpenMrsJsonRequest(
-            mConnectionDetails, urlPath + ";" + Joiner.on(";").join(params), null,
-            new Response.Listener<JSONObject>() {
-                @Override public void onResponse(JSONObject response) {
-                }
-            }, null);
+            mConnectionDetails, urlPath + ";" + Joiner.on(";;").join(events), null,
+            successListener, errorListener);
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_SHORT, 0, 1));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.BACKGROUND);
     }
 
     @Override public void addPatient(
@@ -276,12 +263,13 @@ public class OpenMrsServer implements Server {
                 new Response.Listener<String>() {
                     @Override
                     public void onResponse(String response) {
+                        // Any success status means the observation is gone; a body is
+                        // unexpected but doesn't change that, and callers (such as the
+                        // outbox) wait for one of the listeners to be called.
                         if (!TextUtils.isEmpty(response)) {
-                            // TODO: Didn't expect this, pass it through to the client.
                             LOG.w("Delete observation response returned a non-blank response.");
-                        } else {
-                            successListener.onResponse(null);
                         }
+                        successListener.onResponse(null);
                     }
                 },
                 wrapErrorListener(errorListener));
@@ -354,6 +342,28 @@ public class OpenMrsServer implements Server {
         mConnectionDetails.getVolley().addToRequestQueue(request);
     }
 
+    @Override public void submitWrite(int method,
+                                      String urlSuffix,
+                                      @Nullable JSONObject body,
+                                      final Response.Listener<Void> successListener,
+                                      Response.ErrorListener errorListener) {
+        LOG.v("Submitting queued write to %s: %s", urlSuffix, body);
+        OpenMrsJsonRequest request = mRequestFactory.newOpenMrsJsonRequest(
+            mConnectionDetails,
+            method,
+            urlSuffix,
+            body,
+            new Response.Listener<JSONObject>() {
+                @Override public void onResponse(JSONObject response) {
+                    successListener.onResponse(null);
+                }
+            },
+            wrapErrorListener(errorListener));
+        // The outbox does its own retrying with backoff, so Volley shouldn't retry.
+        request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 0, 1f));
+        mConnectionDetails.getVolley().addToRequestQueue(request);
+    }
+
     @Override public void getPatient(final String patientId,
                            final Response.Listener<JsonPatient> successListener,
                            final Response.ErrorListener errorListener) {
@@ -528,7 +538,7 @@ public class OpenMrsServer implements Server {
             wrapErrorListener(errorListener)
         );
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 
     @Override public void listForms(final Response.Listener<List<JsonForm>> successListener,
@@ -555,7 +565,7 @@ public class OpenMrsServer implements Server {
             wrapErrorListener(errorListener)
         );
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 
     @Override public void cancelPendingRequests() {
@@ -71,7 +71,7 @@ public class OpenMrsXformsConnection {
         // Typical response times should be close to 10s, but as the number of users grows, this
         // number scales up quickly, so use a 30s timeout to be safe.
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 
     /**
@@ -122,23 +122,16 @@ public class OpenMrsXformsConnection {
             errorListener
         );
         request.setRetryPolicy(new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f));
-        mConnectionDetails.getVolley().addToRequestQueue(request);
+        mConnectionDetails.getVolley().addToRequestQueue(request, VolleyRequestQueue.Lane.SYNC);
     }
 
     /**
-     * Send a single Xform to the OpenMRS server.
-     * @param patientUuid    null if this is to add a new patient, non-null for observation on existing
-     *                       patient
-     * @param resultListener the listener to be informed of the form asynchronously
-     * @param errorListener  a listener to be informed of any errors
+     * Returns the request body for submitting a filled-in Xform to the OpenMRS server.
+     * @param patientUuid null if this is to add a new patient, non-null for observation on existing
+     *                    patient
      */
-    public void postXformInstance(
-        @Nullable String patientUuid,
-        String entererUuid,
-        String xform,
-        final Response.Listener<JSONObject> resultListener,
-        Response.ErrorListener errorListener) {
-
+    public static JSONObject createXformInstanceBody(
+        @Nullable String patientUuid, String entererUuid, String xform) throws JSONException {
         // The JsonObject members in the API as written at the moment.
         // int "patient_id"
         // int "enterer_id"
@@ -153,11 +146,28 @@ public class OpenMrsXformsConnection {
         post.addProperty("enterer_uuid", entererUuid);
 
         post.addProperty("date_entered", ISODateTimeFormat.dateTime().print(new DateTime()));
+        return new JSONObject(post.toString());
+    }
+
+    /**
+     * Send a single Xform to the OpenMRS server.
+     * @param patientUuid    null if this is to add a new patient, non-null for observation on existing
+     *                       patient
+     * @param resultListener the listener to be informed of the form asynchronously
+     * @param errorListener  a listener to be informed of any errors
+     */
+    public void postXformInstance(
+        @Nullable String patientUuid,
+        String entererUuid,
+        String xform,
+        final Response.Listener<JSONObject> resultListener,
+        Response.ErrorListener errorListener) {
+
         JSONObject postBody = null;
         try {
-            postBody = new JSONObject(post.toString());
+            postBody = createXformInstanceBody(patientUuid, entererUuid, xform);
         } catch (JSONException e) {
-            LOG.e(e, "This should never happen converting one JSON object to another. " + post);
+            LOG.e(e, "This should never happen converting one JSON object to another.");
             errorListener.onErrorResponse(new VolleyError("failed to convert to JSON", e));
         }
         OpenMrsJsonRequest request = new OpenMrsJsonRequest(
@@ -0,0 +1,56 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.net;
+
+/**
+ * Running statistics on how long requests waited in a {@link VolleyRequestQueue} lane before a
+ * network thread picked them up.  Safe to use from multiple threads.
+ */
+public class QueueTimeStats {
+    private long mCount;
+    private long mTotalMillis;
+    private long mMaxMillis;
+
+    /** Records one request that waited the given number of milliseconds. */
+    public synchronized void record(long queueMillis) {
+        mCount++;
+        mTotalMillis += queueMillis;
+        mMaxMillis = Math.max(mMaxMillis, queueMillis);
+    }
+
+    /** Returns the number of requests recorded. */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /** Returns the mean queue time in milliseconds, or 0 if nothing has been recorded. */
+    public synchronized long getMeanMillis() {
+        return mCount == 0 ? 0 : mTotalMillis/mCount;
+    }
+
+    /** Returns the longest queue time recorded, in milliseconds. */
+    public synchronized long getMaxMillis() {
+        return mMaxMillis;
+    }
+
+    /** Clears all recorded statistics. */
+    public synchronized void reset() {
+        mCount = 0;
+        mTotalMillis = 0;
+        mMaxMillis = 0;
+    }
+
+    @Override public synchronized String toString() {
+        return String.format("%d requests, mean %d ms, max %d ms",
+            mCount, getMeanMillis(), mMaxMillis);
+    }
+}
@@ -15,6 +15,7 @@ import android.support.annotation.Nullable;
 
 import com.android.volley.Response;
 
+import org.json.JSONObject;
 import org.projectbuendia.client.json.JsonEncounter;
 import org.projectbuendia.client.json.JsonForm;
 import org.projectbuendia.client.json.JsonLocation;
@@ -43,16 +44,20 @@ public interface Server {
     public static final String ENCOUNTER_TIMESTAMP = "timestamp";
     public static final String ENCOUNTER_ORDER_UUIDS = "order_uuids";
     public static final String ENCOUNTER_USER_UUID = "enterer_uuid";
+    public static final String ENCOUNTER_UUID_KEY = "encounter_uuid";
+    public static final String ORDER_UUID_KEY = "uuid";
     public static final String OBSERVATION_QUESTION_UUID = "question_uuid";
     public static final String OBSERVATION_ANSWER = "answer_value";
 
     /**
-     * Logs an event by sending a dummy request to the server.  (The server logs
+     * Logs a batch of events by sending a dummy request to the server.  (The server logs
      * can then be scanned later to produce analytics for the client app.)
-     * @param pairs An even number of arguments providing key-value pairs of
-     *              arbitrary data to record with the event.
+     * @param events Each event as URL-encoded key=value pairs separated by ";".
      */
-    void logToServer(List<String> pairs);
+    void logToServer(
+        List<String> events,
+        Response.Listener<JSONObject> successListener,
+        Response.ErrorListener errorListener);
 
     /** Adds a patient. */
     void addPatient(
@@ -166,6 +171,19 @@ public interface Server {
                      Response.Listener<Void> successListener,
                      Response.ErrorListener errorListener);
 
+    /**
+     * Submits a write that has already been applied locally and was queued in the outbox.
+     * Such writes carry client-generated UUIDs, so the server can recognize a resubmission.
+     * @param method    the HTTP method, one of {@link com.android.volley.Request.Method}
+     * @param urlSuffix the API URL, relative to the API root
+     * @param body      the JSON request body, or null for none
+     */
+    void submitWrite(int method,
+                     String urlSuffix,
+                     @Nullable JSONObject body,
+                     Response.Listener<Void> successListener,
+                     Response.ErrorListener errorListener);
+
     /** Cancels all pending requests. */
     public void cancelPendingRequests();
 }
@@ -0,0 +1,155 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.projectbuendia.client.utils.Logger;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Counts the body bytes of each request and response into a {@link TransferStats}.  Install this
+ * as an application interceptor and {@link #getNetworkInterceptor()} as a network interceptor:
+ * the application interceptor sees bodies as the app reads and writes them, while the network
+ * interceptor sees them as they go over the wire, before OkHttp's transparent gzip decoding.
+ * <p>The counts feed the throughput estimate, so leave this off clients whose requests spend
+ * most of their time waiting rather than transferring, such as long polls and health probes.
+ */
+public class TransferCountingInterceptor implements Interceptor {
+
+    private static final Logger LOG = Logger.create();
+
+    private final TransferStats mStats;
+    /** Passes the counter for the current call down to the network interceptor. */
+    private final ThreadLocal<TransferStats.Counter> mCurrentCounter = new ThreadLocal<>();
+    private final Interceptor mNetworkInterceptor = new Interceptor() {
+        @Override public Response intercept(Chain chain) throws IOException {
+            final TransferStats.Counter counter = mCurrentCounter.get();
+            if (counter == null) {
+                return chain.proceed(chain.request());
+            }
+            Request request = chain.request();
+            if (request.body() != null) {
+                counter.requestWireBytes += Math.max(0, request.body().contentLength());
+            }
+            Response response = chain.proceed(request);
+            return response.newBuilder()
+                .body(new CountingResponseBody(response.body()) {
+                    @Override void onRead(long byteCount) {
+                        counter.responseWireBytes += byteCount;
+                    }
+                })
+                .build();
+        }
+    };
+
+    public TransferCountingInterceptor(TransferStats stats) {
+        mStats = stats;
+    }
+
+    /** Returns the interceptor to install as a network interceptor on the same client. */
+    public Interceptor getNetworkInterceptor() {
+        return mNetworkInterceptor;
+    }
+
+    @Override public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        final TransferStats.Counter counter = new TransferStats.Counter(request.urlString());
+        if (request.body() != null) {
+            counter.requestDecodedBytes = Math.max(0, request.body().contentLength());
+        }
+        Response response;
+        mStats.start(counter);
+        mCurrentCounter.set(counter);
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            counter.endNanos = System.nanoTime();
+            mStats.abandon(counter);
+            throw e;
+        } finally {
+            mCurrentCounter.remove();
+        }
+        return response.newBuilder()
+            .body(new CountingResponseBody(response.body()) {
+                @Override void onRead(long byteCount) {
+                    counter.responseDecodedBytes += byteCount;
+                }
+
+                @Override void onClosed() {
+                    counter.endNanos = System.nanoTime();
+                    mStats.record(counter);
+                    LOG.v("%s", counter);
+                }
+            })
+            .build();
+    }
+
+    /** A {@link ResponseBody} that reports the bytes read from it and when it is closed. */
+    private abstract static class CountingResponseBody extends ResponseBody {
+        private final ResponseBody mBody;
+        private BufferedSource mSource;
+
+        CountingResponseBody(ResponseBody body) {
+            mBody = body;
+        }
+
+        /** Called on the reading thread with the number of bytes just read. */
+        abstract void onRead(long byteCount);
+
+        /** Called once, after the body has been closed. */
+        void onClosed() {}
+
+        @Override public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override public long contentLength() throws IOException {
+            return mBody.contentLength();
+        }
+
+        @Override public synchronized BufferedSource source() throws IOException {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mBody.source()) {
+                    private boolean mClosed;
+
+                    @Override public long read(Buffer sink, long byteCount) throws IOException {
+                        long count = super.read(sink, byteCount);
+                        if (count > 0) {
+                            onRead(count);
+                        }
+                        return count;
+                    }
+
+                    @Override public void close() throws IOException {
+                        super.close();
+                        if (!mClosed) {
+                            mClosed = true;
+                            onClosed();
+                        }
+                    }
+                });
+            }
+            return mSource;
+        }
+    }
+}
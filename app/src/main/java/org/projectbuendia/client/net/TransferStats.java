@@ -0,0 +1,135 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.net;
+
+/**
+ * Running totals of the body bytes sent and received over HTTP, both as they were on the wire
+ * (possibly gzip-compressed) and as they were decoded, so that the savings from compression can
+ * be measured, and the time during which responses were arriving, so that the throughput of the
+ * link can be estimated.  Safe to use from multiple threads.
+ */
+public class TransferStats {
+    private long mRequestCount;
+    private long mRequestDecodedBytes;
+    private long mRequestWireBytes;
+    private long mResponseDecodedBytes;
+    private long mResponseWireBytes;
+    private long mResponseMillis;
+    private int mActiveCount;  // requests started but not yet recorded
+    private long mBusySinceNanos;  // when mActiveCount last rose from zero
+
+    /** The byte counts for a single request. */
+    public static class Counter {
+        public final String url;
+        final long startNanos;
+        /** When the response body was closed, or the request failed. */
+        volatile long endNanos;
+        volatile long requestDecodedBytes;
+        volatile long requestWireBytes;
+        volatile long responseDecodedBytes;
+        volatile long responseWireBytes;
+
+        public Counter(String url) {
+            this(url, System.nanoTime());
+        }
+
+        Counter(String url, long startNanos) {
+            this.url = url;
+            this.startNanos = startNanos;
+        }
+
+        @Override public String toString() {
+            return String.format("%s: sent %d bytes (%d on the wire), received %d bytes "
+                + "(%d on the wire)", url, requestDecodedBytes, requestWireBytes,
+                responseDecodedBytes, responseWireBytes);
+        }
+    }
+
+    /** Notes that a request has started; call {@link #record} or {@link #abandon} when done. */
+    public synchronized void start(Counter counter) {
+        if (mActiveCount++ == 0) {
+            mBusySinceNanos = counter.startNanos;
+        }
+    }
+
+    /** Adds the byte counts for a completed request to the totals. */
+    public synchronized void record(Counter counter) {
+        mRequestCount++;
+        mRequestDecodedBytes += counter.requestDecodedBytes;
+        mRequestWireBytes += counter.requestWireBytes;
+        mResponseDecodedBytes += counter.responseDecodedBytes;
+        mResponseWireBytes += counter.responseWireBytes;
+        finish(counter);
+    }
+
+    /** Notes that a started request failed without a response. */
+    public synchronized void abandon(Counter counter) {
+        finish(counter);
+    }
+
+    /**
+     * Ends a request's share of the busy time.  Requests in progress at the same time, such as
+     * those of parallel sync lanes, share one stretch of busy time instead of adding up.
+     */
+    private void finish(Counter counter) {
+        if (mActiveCount > 0 && --mActiveCount == 0) {
+            mResponseMillis += Math.max(0, (counter.endNanos - mBusySinceNanos)/1000000);
+        }
+    }
+
+    public synchronized long getRequestCount() {
+        return mRequestCount;
+    }
+
+    public synchronized long getRequestDecodedBytes() {
+        return mRequestDecodedBytes;
+    }
+
+    public synchronized long getRequestWireBytes() {
+        return mRequestWireBytes;
+    }
+
+    public synchronized long getResponseDecodedBytes() {
+        return mResponseDecodedBytes;
+    }
+
+    public synchronized long getResponseWireBytes() {
+        return mResponseWireBytes;
+    }
+
+    /**
+     * Returns the total time, in milliseconds, during which at least one request was in progress,
+     * from its start until its response body was closed; together with
+     * {@link #getResponseWireBytes()} this gives the throughput.  Time that is still in progress
+     * is added once the requests finish.
+     */
+    public synchronized long getResponseMillis() {
+        return mResponseMillis;
+    }
+
+    /** Clears all totals, e.g. before recording a sync. */
+    public synchronized void reset() {
+        mRequestCount = 0;
+        mRequestDecodedBytes = 0;
+        mRequestWireBytes = 0;
+        mResponseDecodedBytes = 0;
+        mResponseWireBytes = 0;
+        mResponseMillis = 0;
+        mBusySinceNanos = System.nanoTime();
+    }
+
+    @Override public synchronized String toString() {
+        return String.format("%d requests: sent %d bytes (%d on the wire), received %d bytes "
+            + "(%d on the wire)", mRequestCount, mRequestDecodedBytes, mRequestWireBytes,
+            mResponseDecodedBytes, mResponseWireBytes);
+    }
+}
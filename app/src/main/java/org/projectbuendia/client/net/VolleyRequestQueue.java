@@ -13,29 +13,128 @@ package org.projectbuendia.client.net;
 
 import android.content.Context;
 
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.NoCache;
 import com.circle.android.api.OkHttpStack;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 
 import org.projectbuendia.client.debug.StethoInitializer;
+import org.projectbuendia.client.utils.Logger;
 
-/** Wraps Volley up into a single request queue. */
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Wraps Volley up into request queues, one for each {@link Lane}.  Each lane has its own pool of
+ * network threads, so a burst of sync traffic can't hold up a request that a user is waiting on.
+ */
 public class VolleyRequestQueue {
 
-    private final RequestQueue mRequestQueue;
+    private static final Logger LOG = Logger.create();
+
+    /** Directory (under the app's cache directory) for Volley's response cache. */
+    private static final String CACHE_DIR = "volley";
+
+    /** Requests that wait longer than this for a network thread are logged. */
+    private static final long SLOW_QUEUE_MILLIS = 2000;
+
+    /** Priority classes for requests, each served by its own pool of network threads. */
+    public enum Lane {
+        /** Requests a user is waiting on, such as saving an encounter or an order. */
+        INTERACTIVE(4),
+        /** Sync page downloads and other bulk transfers. */
+        SYNC(2),
+        /** Housekeeping such as update checks and server logging. */
+        BACKGROUND(1);
+
+        public final int numThreads;
+
+        Lane(int numThreads) {
+            this.numThreads = numThreads;
+        }
+    }
+
+    private final OkHttpClient mClient;
+    private final TransferStats mTransferStats = new TransferStats();
+    private final GzipRequestInterceptor mGzipRequestInterceptor = new GzipRequestInterceptor();
+    private final TransferCountingInterceptor mTransferCounter;
+    private final Map<Lane, RequestQueue> mRequestQueues = new EnumMap<>(Lane.class);
+    private final Map<Lane, QueueTimeStats> mQueueTimeStats = new EnumMap<>(Lane.class);
+    /** Times (from System.nanoTime()) at which requests not yet dispatched were queued. */
+    private final Map<Request<?>, Long> mEnqueueNanos = new WeakHashMap<>();
 
     /**
      * A convenience method for adding a request to the Volley request queue getting all contexts
-     * correct.
+     * correct.  The request goes in the {@link Lane#INTERACTIVE} lane.
      */
     public <T> void addToRequestQueue(Request<T> req) {
-        getRequestQueue().add(req);
+        addToRequestQueue(req, Lane.INTERACTIVE);
     }
 
+    /** Adds a request to the request queue for the given lane. */
+    public <T> void addToRequestQueue(Request<T> req, Lane lane) {
+        synchronized (mEnqueueNanos) {
+            mEnqueueNanos.put(req, System.nanoTime());
+        }
+        mRequestQueues.get(lane).add(req);
+    }
+
+    /** Returns the request queue for the {@link Lane#INTERACTIVE} lane. */
     public RequestQueue getRequestQueue() {
-        return mRequestQueue;
+        return mRequestQueues.get(Lane.INTERACTIVE);
+    }
+
+    /** Returns statistics on how long requests in a lane waited for a network thread. */
+    public QueueTimeStats getQueueTimeStats(Lane lane) {
+        return mQueueTimeStats.get(lane);
+    }
+
+    /**
+     * Returns the underlying HTTP client, for requests that don't fit Volley's model but should
+     * still share its connection pool and interceptors.
+     */
+    public OkHttpClient getOkHttpClient() {
+        return mClient;
+    }
+
+    /**
+     * Returns a copy of the underlying HTTP client that shares its connection pool but leaves
+     * its requests out of the {@link TransferStats}.  Use this for requests that mostly wait,
+     * such as long polls and health probes, which would otherwise make the link look slow.
+     */
+    public OkHttpClient getUncountedOkHttpClient() {
+        OkHttpClient client = mClient.clone();
+        client.interceptors().remove(mTransferCounter);
+        client.networkInterceptors().remove(mTransferCounter.getNetworkInterceptor());
+        return client;
+    }
+
+    /** Returns the byte counts, on the wire and decoded, of all requests made so far. */
+    public TransferStats getTransferStats() {
+        return mTransferStats;
+    }
+
+    /** Sets whether large request bodies should be sent gzip-compressed. */
+    public void setRequestCompressionEnabled(boolean enabled) {
+        mGzipRequestInterceptor.setEnabled(enabled);
+    }
+
+    /**
+     * Sets how many idle connections are kept open for reuse, and for how long.  Clients already
+     * cloned from {@link #getOkHttpClient()} keep the pool they had.
+     */
+    public void setConnectionPool(int maxIdleConnections, long keepAliveMillis) {
+        mClient.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis));
     }
 
     public VolleyRequestQueue(StethoInitializer stetho, Context context) {
@@ -44,9 +143,54 @@ public class VolleyRequestQueue {
         // Let Stetho inspect all our network requests.
         stetho.registerInterceptors(client);
 
+        // OkHttp asks for gzip-compressed responses and decodes them transparently, below the
+        // application interceptors, so counting at both levels gives the wire and decoded sizes.
+        mTransferCounter = new TransferCountingInterceptor(mTransferStats);
+        client.interceptors().add(mTransferCounter);
+        client.interceptors().add(mGzipRequestInterceptor);
+        client.networkInterceptors().add(mTransferCounter.getNetworkInterceptor());
+        mClient = client;
+
         // getApplicationContext() is key, it keeps you from leaking the
         // Activity or BroadcastReceiver if someone passes one in.
-        mRequestQueue = Volley.newRequestQueue(
-            context.getApplicationContext(), new OkHttpStack(client));
+        File cacheDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        Network network = new BasicNetwork(new OkHttpStack(client));
+        for (Lane lane : Lane.values()) {
+            mQueueTimeStats.put(lane, new QueueTimeStats());
+            // Only the interactive lane keeps a response cache; sync pages and housekeeping
+            // requests are never worth serving from one.
+            Cache cache = lane == Lane.INTERACTIVE ? new DiskBasedCache(cacheDir) : new NoCache();
+            RequestQueue queue = new RequestQueue(
+                cache, new TimedNetwork(network, lane), lane.numThreads);
+            queue.start();
+            mRequestQueues.put(lane, queue);
+        }
+    }
+
+    /** A {@link Network} that records how long each request waited before being sent. */
+    private class TimedNetwork implements Network {
+        private final Network mNetwork;
+        private final Lane mLane;
+
+        TimedNetwork(Network network, Lane lane) {
+            mNetwork = network;
+            mLane = lane;
+        }
+
+        @Override public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+            Long enqueueNanos;
+            synchronized (mEnqueueNanos) {
+                enqueueNanos = mEnqueueNanos.remove(request);
+            }
+            if (enqueueNanos != null) {
+                long queueMillis = (System.nanoTime() - enqueueNanos)/1000000;
+                mQueueTimeStats.get(mLane).record(queueMillis);
+                if (queueMillis > SLOW_QUEUE_MILLIS) {
+                    LOG.w("%s request waited %d ms to be sent: %s",
+                        mLane, queueMillis, request.getUrl());
+                }
+            }
+            return mNetwork.performRequest(request);
+        }
     }
 }
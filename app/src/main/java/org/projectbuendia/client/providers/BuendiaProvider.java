@@ -34,6 +34,11 @@ public class BuendiaProvider extends DelegatingProvider<Database> {
 
         // TODO/cleanup: Factor out all the repetitive code below.
         // Providers for groups of things (e.g., all charts).
+        registry.registerDelegate(
+            Contracts.ArchivedPatients.CONTENT_URI.getPath(),
+            new GroupProviderDelegate(
+                Contracts.ArchivedPatients.GROUP_CONTENT_TYPE,
+                Table.ARCHIVED_PATIENTS));
         registry.registerDelegate(
             Contracts.ChartItems.CONTENT_URI.getPath(),
             new GroupProviderDelegate(
@@ -74,11 +79,26 @@ public class BuendiaProvider extends DelegatingProvider<Database> {
             new GroupProviderDelegate(
                 Contracts.Orders.GROUP_CONTENT_TYPE,
                 Table.ORDERS));
+        registry.registerDelegate(
+            Contracts.EventLog.CONTENT_URI.getPath(),
+            new GroupProviderDelegate(
+                Contracts.EventLog.GROUP_CONTENT_TYPE,
+                Table.EVENT_LOG));
+        registry.registerDelegate(
+            Contracts.Outbox.CONTENT_URI.getPath(),
+            new GroupProviderDelegate(
+                Contracts.Outbox.GROUP_CONTENT_TYPE,
+                Table.OUTBOX));
         registry.registerDelegate(
             Contracts.Patients.CONTENT_URI.getPath(),
             new GroupProviderDelegate(
                 Contracts.Patients.GROUP_CONTENT_TYPE,
                 Table.PATIENTS));
+        registry.registerDelegate(
+            Contracts.SyncMetrics.CONTENT_URI.getPath(),
+            new GroupProviderDelegate(
+                Contracts.SyncMetrics.GROUP_CONTENT_TYPE,
+                Table.SYNC_METRICS));
         registry.registerDelegate(
             Contracts.Users.CONTENT_URI.getPath(),
             new GroupProviderDelegate(
@@ -122,6 +142,12 @@ public class BuendiaProvider extends DelegatingProvider<Database> {
                 Contracts.Orders.ITEM_CONTENT_TYPE,
                 Table.ORDERS,
                 Contracts.Orders.UUID));
+        registry.registerDelegate(
+            Contracts.Outbox.CONTENT_URI.getPath() + "/*",
+            new ItemProviderDelegate(
+                Contracts.Outbox.ITEM_CONTENT_TYPE,
+                Table.OUTBOX,
+                Contracts.Outbox.ROWID));
         registry.registerDelegate(
             Contracts.Patients.CONTENT_URI.getPath() + "/*",
             new ItemProviderDelegate(
@@ -139,6 +165,12 @@ public class BuendiaProvider extends DelegatingProvider<Database> {
         registry.registerDelegate(
             Contracts.PatientCounts.CONTENT_URI.getPath(),
             new PatientCountsDelegate());
+        registry.registerDelegate(
+            Contracts.ObservationDailyStats.CONTENT_URI.getPath(),
+            new ObservationDailyStatsDelegate());
+        registry.registerDelegate(
+            Contracts.OrderExecutions.CONTENT_URI.getPath(),
+            new OrderExecutionsDelegate());
         registry.registerDelegate(
             Contracts.LocalizedLocations.CONTENT_URI.getPath() + "/*",
             new LocalizedLocationsDelegate());
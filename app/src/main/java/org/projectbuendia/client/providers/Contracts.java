@@ -22,20 +22,31 @@ public class Contracts {
     public static final String CONTENT_AUTHORITY = BuildConfig.CONTENT_AUTHORITY;
     private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     private static final String TYPE_PACKAGE_PREFIX = "/vnd.projectbuendia.client.";
+    /** Query parameter on a group URI that limits the number of rows a query returns. */
+    public static final String LIMIT_PARAMETER = "limit";
 
     /** Names of tables in the local datastore. */
     public enum Table {
+        ARCHIVED_PATIENTS("archived_patients"),
         CHART_ITEMS("chart_items"),
         CONCEPT_NAMES("concept_names"),
         CONCEPTS("concepts"),
+        EVENT_LOG("event_log"),
         FORMS("forms"),
         LOCATION_NAMES("location_names"),
         LOCATIONS("locations"),
         MISC("misc"),
+        OBSERVATION_ROWS("observation_rows"),
         OBSERVATIONS("observations"),
+        ORDER_EXECUTIONS("order_executions"),
+        ORDER_ROWS("order_rows"),
         ORDERS("orders"),
+        OUTBOX("outbox"),
+        PATIENT_ROWS("patient_rows"),
         PATIENTS("patients"),
         USERS("users"),
+        UUIDS("uuids"),
+        SYNC_METRICS("sync_metrics"),
         SYNC_TOKENS("sync_tokens");
 
         public String name;
@@ -51,6 +62,21 @@ public class Contracts {
 
     // Each interface below corresponds to one SQLite table in the local datastore.  The column
     // names defined in the constants should exactly match the schemas defined in Database.java.
+    // Observations, orders, and patients are views that look like tables; their UUID columns
+    // are stored as ids in the uuids table (see EncodedTable).
+
+    /**
+     * Patients whose observation history has been removed from the local database to save
+     * space, keeping only the latest observation of each concept; see PatientArchiver.
+     */
+    public interface ArchivedPatients {
+        Uri CONTENT_URI = buildContentUri("archived-patients");
+        String GROUP_CONTENT_TYPE = buildGroupType("archived-patient");
+
+        String PATIENT_UUID = "patient_uuid";
+        String ARCHIVED_MILLIS = "archived_millis";  // milliseconds since epoch
+        String OBSERVATIONS_REMOVED = "observations_removed";
+    }
 
     public interface ChartItems {
         Uri CONTENT_URI = buildContentUri("chart-items");
@@ -176,6 +202,25 @@ public class Contracts {
         String CONCEPT_UUID = "concept_uuid";
         String ENTERER_UUID = "enterer_uuid";
         String VALUE = "value";  // concept value or order UUID
+        // The value again, typed according to the concept's type; null for other types.
+        String VALUE_NUMBER = "value_number";  // NUMERIC values
+        String VALUE_CODED = "value_coded";  // answer concept UUID for CODED and BOOLEAN values
+        String VALUE_MILLIS = "value_millis";  // DATETIME values, milliseconds since epoch
+    }
+
+    /**
+     * The number of times each order was executed on each local calendar day.  The database
+     * keeps this up to date from the order execution observations (see Database.TRIGGERS),
+     * so it is read-only.
+     */
+    public interface OrderExecutions {
+        Uri CONTENT_URI = buildContentUri("order-executions");
+        String GROUP_CONTENT_TYPE = buildGroupType("order-execution");
+
+        String ORDER_UUID = "order_uuid";
+        String PATIENT_UUID = "patient_uuid";
+        String DATE = "date";  // local date in yyyy-mm-dd format
+        String COUNT = "count";
     }
 
     public interface Orders {
@@ -204,6 +249,59 @@ public class Contracts {
         String GENDER = "gender";
     }
 
+    public interface EventLog {
+        Uri CONTENT_URI = buildContentUri("event-log");
+        String GROUP_CONTENT_TYPE = buildGroupType("event-log-entry");
+        String ITEM_CONTENT_TYPE = buildItemType("event-log-entry");
+
+        // Each row is a logged user action or event not yet sent to the server.  Rows are sent
+        // in rowid order and deleted once the server has them; only the newest are kept.
+        String ROWID = "rowid";
+        String TIME_MILLIS = "time_millis";
+        String PARAMS = "params";  // URL-encoded key=value pairs separated by ";"
+    }
+
+    public interface Outbox {
+        Uri CONTENT_URI = buildContentUri("outbox");
+        String GROUP_CONTENT_TYPE = buildGroupType("outbox-entry");
+        String ITEM_CONTENT_TYPE = buildItemType("outbox-entry");
+
+        // Each row is a write that has been applied locally but not yet accepted by the
+        // server.  Rows are submitted in rowid order and deleted once the server accepts them
+        // or the user discards them.
+        String ROWID = "rowid";
+        String ACTION = "action";  // name of an OutboxManager.Action
+        String ITEM_UUID = "item_uuid";  // client-generated UUID of the item written
+        String BODY = "body";  // JSON request body, or null for deletions
+        String CREATED_MILLIS = "created_millis";
+        String ATTEMPTS = "attempts";  // number of failed submission attempts so far
+        String NEXT_ATTEMPT_MILLIS = "next_attempt_millis";  // don't retry before this time
+        String LAST_ERROR = "last_error";
+        String REJECTED = "rejected";  // 1 if the server refused the write; retried only on request
+    }
+
+    public interface SyncMetrics {
+        Uri CONTENT_URI = buildContentUri("sync-metrics");
+        String GROUP_CONTENT_TYPE = buildGroupType("sync-metric");
+        String ITEM_CONTENT_TYPE = buildItemType("sync-metric");
+
+        // Each row measures one phase of a sync (page 0) or one page fetched during a phase
+        // (pages 1, 2, ...).  Only the newest rows are kept; see SyncTelemetry.
+        String ROWID = "rowid";
+        String SYNC_START_MILLIS = "sync_start_millis";  // identifies the sync
+        String PHASE = "phase";  // name of a SyncAdapter.SyncPhase
+        String PAGE = "page";
+        String ROWS = "rows";  // records fetched (pages), or rows changed locally (phases)
+        String DECODED_BYTES = "decoded_bytes";  // response bytes after decompression
+        String WIRE_BYTES = "wire_bytes";  // response bytes as received
+        String NETWORK_MILLIS = "network_millis";
+        String PARSE_MILLIS = "parse_millis";
+        String DB_MILLIS = "db_millis";
+        String NOTIFICATIONS = "notifications";  // content change notifications fired
+        String TOTAL_MILLIS = "total_millis";
+        String SUCCEEDED = "succeeded";  // 1 if the phase or page completed
+    }
+
     public interface Users {
         Uri CONTENT_URI = buildContentUri("users");
         String GROUP_CONTENT_TYPE = buildGroupType("user");
@@ -238,6 +336,19 @@ public class Contracts {
         String PATIENT_COUNT = "patient_count";
     }
 
+    /** Statistics on the numeric observations of each concept for each day. */
+    public interface ObservationDailyStats {
+        Uri CONTENT_URI = buildContentUri("observation-daily-stats");
+        String GROUP_CONTENT_TYPE = buildGroupType("observation-daily-stat");
+
+        String CONCEPT_UUID = "concept_uuid";
+        String DATE = "date";  // local date in yyyy-mm-dd format
+        String COUNT = "count";
+        String MIN = "min";
+        String MAX = "max";
+        String AVG = "avg";
+    }
+
     public static Uri buildContentUri(String path) {
         return BASE_CONTENT_URI.buildUpon().appendPath(path).build();
     }
@@ -19,6 +19,7 @@ import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 
 import org.projectbuendia.client.sync.Database;
+import org.projectbuendia.client.sync.EncodedTable;
 import org.projectbuendia.client.sync.QueryBuilder;
 
 /**
@@ -45,6 +46,7 @@ class GroupProviderDelegate implements ProviderDelegate<Database> {
         String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         Cursor cursor = new QueryBuilder(mTable).where(selection, selectionArgs)
             .orderBy(sortOrder)
+            .limit(uri.getQueryParameter(Contracts.LIMIT_PARAMETER))
             .select(dbHelper.getReadableDatabase(), projection);
         cursor.setNotificationUri(contentResolver, uri);
         return cursor;
@@ -53,7 +55,11 @@ class GroupProviderDelegate implements ProviderDelegate<Database> {
     @Override public Uri insert(
         Database dbHelper, ContentResolver contentResolver, Uri uri,
         ContentValues values) {
-        long id = dbHelper.getWritableDatabase().replaceOrThrow(mTable.name, null, values);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        EncodedTable encoded = EncodedTable.get(mTable);
+        long id = encoded != null
+            ? encoded.insert(db, "OR REPLACE", values)
+            : db.replaceOrThrow(mTable.name, null, values);
         contentResolver.notifyChange(uri, null, false);
         return uri.buildUpon().appendPath(Long.toString(id)).build();
     }
@@ -70,9 +76,15 @@ class GroupProviderDelegate implements ProviderDelegate<Database> {
 
         ContentValues first = allValues[0];
         String[] columns = first.keySet().toArray(new String[first.size()]);
-        SQLiteStatement statement = makeInsertStatement(db, mTable.name, columns);
+        EncodedTable encoded = EncodedTable.get(mTable);
+        SQLiteStatement statement = encoded != null
+            ? encoded.compileInsert(db, "OR REPLACE", columns)
+            : makeInsertStatement(db, mTable.name, columns);
         dbTransactionHelper.startNamedTransaction(BULK_INSERT_SAVEPOINT);
         try {
+            if (encoded != null) {
+                encoded.intern(db, allValues);
+            }
             Object[] bindings = new Object[first.size()];
             for (ContentValues values : allValues) {
                 statement.clearBindings();
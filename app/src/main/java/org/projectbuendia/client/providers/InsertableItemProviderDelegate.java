@@ -17,6 +17,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 
 import org.projectbuendia.client.sync.Database;
+import org.projectbuendia.client.sync.EncodedTable;
 
 import java.util.List;
 
@@ -34,16 +35,23 @@ public class InsertableItemProviderDelegate extends ItemProviderDelegate {
         Database dbHelper, ContentResolver contentResolver, Uri uri,
         ContentValues values) {
         // Perform an upsert operation, updating only the columns specified in values.
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        EncodedTable encoded = EncodedTable.get(mTable);
         int done = 0;
         if (mIdColumn != null) {
             values.put(mIdColumn, uri.getLastPathSegment());
-            done = dbHelper.getWritableDatabase().updateWithOnConflict(
-                mTable.name, values, mIdColumn + "= ?", new String[] {uri.getLastPathSegment()},
-                SQLiteDatabase.CONFLICT_IGNORE);
+            String[] args = new String[] {uri.getLastPathSegment()};
+            done = encoded != null
+                ? encoded.update(db, "OR IGNORE", values, mIdColumn + "= ?", args)
+                : db.updateWithOnConflict(
+                    mTable.name, values, mIdColumn + "= ?", args, SQLiteDatabase.CONFLICT_IGNORE);
         }
         if (done == 0) {
-            dbHelper.getWritableDatabase().insertWithOnConflict(
-                mTable.name, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            if (encoded != null) {
+                encoded.insert(db, "OR IGNORE", values);
+            } else {
+                db.insertWithOnConflict(mTable.name, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
         }
         contentResolver.notifyChange(uri, null, false);
         return getPrefixUriBuilder(uri).appendPath(uri.getLastPathSegment()).build();
@@ -0,0 +1,100 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.providers;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import org.projectbuendia.client.providers.Contracts.ObservationDailyStats;
+import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.providers.Contracts.Table;
+import org.projectbuendia.client.sync.Database;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ProviderDelegate} that provides query access to the count, minimum, maximum, and
+ * average of the numeric observations of each concept on each local calendar day.  The
+ * selection applies to the observations table, e.g. to choose a patient.
+ */
+public class ObservationDailyStatsDelegate implements ProviderDelegate<Database> {
+
+    // SQLite's 'localtime' uses the time zone of this process, which is the device's.
+    private static final String DATE_EXPR =
+        "date(" + Observations.ENCOUNTER_MILLIS + " / 1000, 'unixepoch', 'localtime')";
+
+    @Override public String getType() {
+        return ObservationDailyStats.GROUP_CONTENT_TYPE;
+    }
+
+    @Override public Cursor query(
+        Database dbHelper, ContentResolver contentResolver, Uri uri, String[] projection,
+        String selection, String[] selectionArgs, String sortOrder) {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+            getQuerySql(selection, sortOrder), selectionArgs);
+        // Changes to the observations change the statistics.
+        cursor.setNotificationUri(contentResolver, Observations.CONTENT_URI);
+        return cursor;
+    }
+
+    /** Gets the SQL for the statistics on the observations that match a selection. */
+    static String getQuerySql(@Nullable String selection, @Nullable String sortOrder) {
+        String where = Observations.VALUE_NUMBER + " is not null";
+        if (selection != null && !selection.isEmpty()) {
+            where = "(" + selection + ") and " + where;
+        }
+        return SQLiteQueryBuilder.buildQueryString(
+            false, Table.OBSERVATIONS.name,
+            new String[] {
+                Observations.CONCEPT_UUID,
+                DATE_EXPR + " as " + ObservationDailyStats.DATE,
+                "count(*) as " + ObservationDailyStats.COUNT,
+                "min(" + Observations.VALUE_NUMBER + ") as " + ObservationDailyStats.MIN,
+                "max(" + Observations.VALUE_NUMBER + ") as " + ObservationDailyStats.MAX,
+                "avg(" + Observations.VALUE_NUMBER + ") as " + ObservationDailyStats.AVG
+            },
+            where,
+            Observations.CONCEPT_UUID + ", " + ObservationDailyStats.DATE,
+            null,
+            sortOrder != null ? sortOrder
+                : Observations.CONCEPT_UUID + ", " + ObservationDailyStats.DATE,
+            null);
+    }
+
+    @Override public Uri insert(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues values) {
+        throw new UnsupportedOperationException("Insert is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int bulkInsert(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues[] values) {
+        throw new UnsupportedOperationException(
+            "Bulk insert is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int delete(
+        Database dbHelper, ContentResolver contentResolver, Uri uri, String selection,
+        String[] selectionArgs) {
+        throw new UnsupportedOperationException("Delete is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int update(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Update is not supported for URI '" + uri + "'.");
+    }
+}
@@ -0,0 +1,72 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.providers;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.providers.Contracts.OrderExecutions;
+import org.projectbuendia.client.providers.Contracts.Table;
+import org.projectbuendia.client.sync.Database;
+import org.projectbuendia.client.sync.QueryBuilder;
+
+/**
+ * A {@link ProviderDelegate} that provides query access to the number of times each order was
+ * executed on each local calendar day.  The database maintains these counts from the
+ * observations, so they cannot be written directly.
+ */
+public class OrderExecutionsDelegate implements ProviderDelegate<Database> {
+
+    @Override public String getType() {
+        return OrderExecutions.GROUP_CONTENT_TYPE;
+    }
+
+    @Override public Cursor query(
+        Database dbHelper, ContentResolver contentResolver, Uri uri, String[] projection,
+        String selection, String[] selectionArgs, String sortOrder) {
+        Cursor cursor = new QueryBuilder(Table.ORDER_EXECUTIONS)
+            .where(selection, selectionArgs)
+            .orderBy(sortOrder)
+            .select(dbHelper.getReadableDatabase(), projection);
+        // The counts change when the observations change.
+        cursor.setNotificationUri(contentResolver, Observations.CONTENT_URI);
+        return cursor;
+    }
+
+    @Override public Uri insert(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues values) {
+        throw new UnsupportedOperationException("Insert is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int bulkInsert(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues[] values) {
+        throw new UnsupportedOperationException(
+            "Bulk insert is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int delete(
+        Database dbHelper, ContentResolver contentResolver, Uri uri, String selection,
+        String[] selectionArgs) {
+        throw new UnsupportedOperationException("Delete is not supported for URI '" + uri + "'.");
+    }
+
+    @Override public int update(
+        Database dbHelper, ContentResolver contentResolver, Uri uri,
+        ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Update is not supported for URI '" + uri + "'.");
+    }
+}
@@ -17,25 +17,30 @@ import android.database.Cursor;
 import com.google.common.collect.ImmutableSet;
 
 import org.apache.commons.lang3.StringUtils;
+import org.joda.time.LocalDate;
+import org.projectbuendia.client.App;
 import org.projectbuendia.client.json.ConceptType;
 import org.projectbuendia.client.models.Chart;
 import org.projectbuendia.client.models.ChartItem;
 import org.projectbuendia.client.models.ChartSection;
 import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.Form;
 import org.projectbuendia.client.models.Obs;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.models.Order;
 import org.projectbuendia.client.providers.Contracts;
 import org.projectbuendia.client.providers.Contracts.ChartItems;
-import org.projectbuendia.client.providers.Contracts.ConceptNames;
-import org.projectbuendia.client.providers.Contracts.Concepts;
+import org.projectbuendia.client.providers.Contracts.ObservationDailyStats;
 import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.providers.Contracts.OrderExecutions;
 import org.projectbuendia.client.providers.Contracts.Orders;
 import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,56 +70,20 @@ public class ChartDataHelper {
 
     private static final Logger LOG = Logger.create();
 
-    /** When non-null, sConceptNames and sConceptTypes contain valid data for this locale. */
-    private static final Object sLoadingLock = new Object();
-    private static String sLoadedLocale;
-
-    private static Map<String, String> sConceptNames;
-    private static Map<String, ConceptType> sConceptTypes;
+    private final ConceptRegistry mConcepts;
 
     public ChartDataHelper(ContentResolver contentResolver) {
-        mContentResolver = checkNotNull(contentResolver);
+        this(contentResolver, App.getConceptRegistry());
     }
 
-    /** Marks in-memory concept data out of date.  Call this when concepts change in the app db. */
-    public static void invalidateLoadedConceptData() {
-        sLoadedLocale = null;
+    public ChartDataHelper(ContentResolver contentResolver, ConceptRegistry concepts) {
+        mContentResolver = checkNotNull(contentResolver);
+        mConcepts = checkNotNull(concepts);
     }
 
-    /** Returns the loaded concept name for the specified concept UUID */
+    /** Returns the English name for the specified concept UUID, or null if it has none. */
     public @Nullable String getConceptNameByUuid(String uuid) {
-        if(sConceptNames == null) return "";
-
-        return sConceptNames.get(uuid);
-    }
-
-    /** Loads concept names and types from the app db into HashMaps in memory. */
-    public void loadConceptData(String locale) {
-        synchronized (sLoadingLock) {
-            if (!locale.equals(sLoadedLocale)) {
-                sConceptNames = new HashMap<>();
-                try (Cursor c = mContentResolver.query(
-                    ConceptNames.CONTENT_URI, new String[] {ConceptNames.CONCEPT_UUID, ConceptNames.NAME},
-                    ConceptNames.LOCALE + " = ?", new String[] {locale}, null)) {
-                    while (c.moveToNext()) {
-                        sConceptNames.put(c.getString(0), c.getString(1));
-                    }
-                }
-                sConceptTypes = new HashMap<>();
-                try (Cursor c = mContentResolver.query(
-                    Concepts.CONTENT_URI, new String[] {Concepts.UUID, Concepts.CONCEPT_TYPE},
-                    null, null, null)) {
-                    while (c.moveToNext()) {
-                        try {
-                            sConceptTypes.put(c.getString(0), ConceptType.valueOf(c.getString(1)));
-                        } catch (IllegalArgumentException e) { /* bad concept type name */ }
-                    }
-                }
-                // Special case: we know this is a date even if it's not in any forms or charts.
-                sConceptTypes.put(ConceptUuids.ADMISSION_DATE_UUID, ConceptType.DATE);
-                sLoadedLocale = locale;
-            }
-        }
+        return mConcepts.getName(uuid, ENGLISH_LOCALE);
     }
 
     /** Gets all the orders for a given patient. */
@@ -136,21 +105,47 @@ public class ChartDataHelper {
         return orders;
     }
 
+    /**
+     * Gets the number of times each of a patient's orders was executed on each local calendar
+     * day, from the counts that the database keeps, without reading the observations.
+     * @return the counts for each order that has been executed, keyed by order UUID, each
+     *     keyed by date with entries only for days that have executions
+     */
+    public Map<String, Map<LocalDate, Integer>> getOrderExecutionCounts(String patientUuid) {
+        Map<String, Map<LocalDate, Integer>> result = new HashMap<>();
+        try (Cursor c = mContentResolver.query(
+            OrderExecutions.CONTENT_URI, null,
+            OrderExecutions.PATIENT_UUID + " = ?", new String[] {patientUuid},
+            null)) {
+            while (c.moveToNext()) {
+                String orderUuid = Utils.getString(c, OrderExecutions.ORDER_UUID);
+                Map<LocalDate, Integer> counts = result.get(orderUuid);
+                if (counts == null) {
+                    counts = new HashMap<>();
+                    result.put(orderUuid, counts);
+                }
+                counts.put(LocalDate.parse(Utils.getString(c, OrderExecutions.DATE)),
+                    c.getInt(c.getColumnIndex(OrderExecutions.COUNT)));
+            }
+        }
+        return result;
+    }
+
     /** Gets all observations for a given patient from the local cache, localized to English. */
     // TODO/cleanup: Consider returning a SortedSet<Obs> or a Map<String, SortedSet<ObsPoint>>.
     public List<Obs> getObservations(String patientUuid) {
         return getObservations(patientUuid, ENGLISH_LOCALE);
     }
 
-    private Obs obsFromCursor(Cursor c) {
+    private Obs obsFromCursor(Cursor c, String locale) {
         String uuid = c.getString(c.getColumnIndex(Observations.UUID));
         long millis = c.getLong(c.getColumnIndex(Observations.ENCOUNTER_MILLIS));
         String conceptUuid = c.getString(c.getColumnIndex(Observations.CONCEPT_UUID));
-        ConceptType conceptType = sConceptTypes.get(conceptUuid);
+        ConceptType conceptType = mConcepts.getType(conceptUuid);
         String value = c.getString(c.getColumnIndex(Observations.VALUE));
         String localizedValue = value;
         if (ConceptType.CODED.equals(conceptType)) {
-            localizedValue = sConceptNames.get(value);
+            localizedValue = mConcepts.getName(value, locale);
         }
         return new Obs(uuid, millis, conceptUuid, conceptType, value, localizedValue);
     }
@@ -158,19 +153,60 @@ public class ChartDataHelper {
     /** Gets all observations for a given patient, localized for a given locale. */
     // TODO/cleanup: Consider returning a SortedSet<Obs> or a Map<String, SortedSet<ObsPoint>>.
     public List<Obs> getObservations(String patientUuid, String locale) {
-        loadConceptData(locale);
         List<Obs> results = new ArrayList<>();
         try (Cursor c = mContentResolver.query(
             Observations.CONTENT_URI, null,
             Observations.PATIENT_UUID + " = ?",
             new String[] {patientUuid}, null)) {
             while (c.moveToNext()) {
-                results.add(obsFromCursor(c));
+                results.add(obsFromCursor(c, locale));
             }
         }
         return results;
     }
 
+    /** Gets all observations for a given patient as a compact table, localized to English. */
+    public ObsTable getObservationTable(String patientUuid) {
+        return getObservationTable(patientUuid, ENGLISH_LOCALE);
+    }
+
+    /**
+     * Gets all observations for a given patient as a compact table, localized for a given
+     * locale.  This avoids creating objects for each observation, so prefer it to
+     * {@link #getObservations} for patients with long histories.
+     */
+    public ObsTable getObservationTable(String patientUuid, String locale) {
+        try (Cursor c = mContentResolver.query(
+            Observations.CONTENT_URI,
+            new String[] {Observations.ENCOUNTER_MILLIS, Observations.CONCEPT_UUID,
+                Observations.VALUE, Observations.VALUE_NUMBER, Observations.VALUE_MILLIS},
+            Observations.PATIENT_UUID + " = ?", new String[] {patientUuid},
+            Observations.ENCOUNTER_MILLIS)) {
+            ObsTable.Builder builder = new ObsTable.Builder(c.getCount());
+            Map<String, String> names = mConcepts.getNames(locale);
+            while (c.moveToNext()) {
+                String conceptUuid = c.getString(1);
+                ConceptType conceptType = mConcepts.getType(conceptUuid);
+                String value = c.getString(2);
+                String localizedValue = value;
+                if (ConceptType.CODED.equals(conceptType)) {
+                    localizedValue = names.get(value);
+                }
+                // Use the typed values stored with the row, if any, rather than parsing again.
+                if (!c.isNull(3)) {
+                    builder.add(c.getLong(0), conceptUuid, conceptType, value, localizedValue,
+                        c.getDouble(3));
+                } else if (!c.isNull(4)) {
+                    builder.add(c.getLong(0), conceptUuid, conceptType, value, localizedValue,
+                        c.getLong(4));
+                } else {
+                    builder.add(c.getLong(0), conceptUuid, conceptType, value, localizedValue);
+                }
+            }
+            return builder.build();
+        }
+    }
+
     /**
      * Retrieve the observations for a given patient by concept and time, sorted from oldest to
      * newest.
@@ -186,7 +222,6 @@ public class ChartDataHelper {
             String patientUuid, String conceptUuid,
             @Nullable Long startMillis, @Nullable Long endMillis) {
         // TODO: localize.
-        loadConceptData(ENGLISH_LOCALE);
         ArrayList<String> conditions = new ArrayList<>();
         ArrayList<String> values = new ArrayList<>();
         conditions.add(Observations.PATIENT_UUID + " = ?");
@@ -216,12 +251,50 @@ public class ChartDataHelper {
                 throw new AssertionError();
             }
             while (c.moveToNext()) {
-                results.add(obsFromCursor(c));
+                results.add(obsFromCursor(c, ENGLISH_LOCALE));
             }
         }
         return results;
     }
 
+    /**
+     * Gets the count, minimum, maximum, and average of the numeric observations of the given
+     * concepts for a patient on each local calendar day, computed by the database.
+     * @return the statistics for each concept that has numeric observations, keyed by concept
+     *     UUID, each a list sorted by date with entries only for days that have observations
+     */
+    public Map<String, List<DailyStats>> getDailyStats(
+        String patientUuid, Collection<String> conceptUuids) {
+        Map<String, List<DailyStats>> result = new HashMap<>();
+        if (conceptUuids.isEmpty()) return result;
+        List<String> args = new ArrayList<>();
+        args.add(patientUuid);
+        args.addAll(conceptUuids);
+        try (Cursor c = mContentResolver.query(
+            ObservationDailyStats.CONTENT_URI,
+            null,
+            Observations.PATIENT_UUID + " = ? and " + Observations.CONCEPT_UUID + " in ("
+                + StringUtils.repeat("?", ",", conceptUuids.size()) + ")",
+            args.toArray(new String[args.size()]),
+            null)) {
+            while (c.moveToNext()) {
+                String conceptUuid = Utils.getString(c, ObservationDailyStats.CONCEPT_UUID);
+                List<DailyStats> stats = result.get(conceptUuid);
+                if (stats == null) {
+                    stats = new ArrayList<>();
+                    result.put(conceptUuid, stats);
+                }
+                stats.add(new DailyStats(
+                    LocalDate.parse(Utils.getString(c, ObservationDailyStats.DATE)),
+                    c.getInt(c.getColumnIndex(ObservationDailyStats.COUNT)),
+                    c.getDouble(c.getColumnIndex(ObservationDailyStats.MIN)),
+                    c.getDouble(c.getColumnIndex(ObservationDailyStats.MAX)),
+                    c.getDouble(c.getColumnIndex(ObservationDailyStats.AVG))));
+            }
+        }
+        return result;
+    }
+
     /** Gets the latest observation of each concept for a given patient, localized to English. */
     // TODO/cleanup: Have this return a Map<String, ObsPoint>.
     public Map<String, Obs> getLatestObservations(String patientUuid) {
@@ -232,21 +305,13 @@ public class ChartDataHelper {
     /** Gets the latest observation of each concept for a given patient from the app db. */
     // TODO/cleanup: Have this return a Map<String, ObsPoint>.
     public Map<String, Obs> getLatestObservations(String patientUuid, String locale) {
-        Map<String, Obs> result = new HashMap<>();
-        for (Obs obs : getObservations(patientUuid, locale)) {
-            Obs existing = result.get(obs.conceptUuid);
-            if (existing == null || obs.time.isAfter(existing.time)) {
-                result.put(obs.conceptUuid, obs);
-            }
-        }
-        return result;
+        return getObservationTable(patientUuid, locale).getLatestObs();
     }
 
     /** Gets the latest observation of the specified concept for all patients. */
     // TODO/cleanup: Have this return a Map<String, ObsPoint>.
     public Map<String, Obs> getLatestObservationsForConcept(
         String conceptUuid, String locale) {
-        loadConceptData(locale);
         try (Cursor c = mContentResolver.query(
             Observations.CONTENT_URI, null,
                     Observations.CONCEPT_UUID + " = ?",
@@ -256,7 +321,7 @@ public class ChartDataHelper {
             while (c.moveToNext()) {
                 String patientUuid = Utils.getString(c, Observations.PATIENT_UUID);
                 if (result.containsKey(patientUuid)) continue;
-                result.put(patientUuid, obsFromCursor(c));
+                result.put(patientUuid, obsFromCursor(c, locale));
             }
             return result;
         }
@@ -0,0 +1,271 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.providers.Contracts.ConceptNames;
+import org.projectbuendia.client.providers.Contracts.Concepts;
+import org.projectbuendia.client.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An in-memory copy of the concepts in the app db: the mapping between xform IDs and concept
+ * UUIDs, the concept types, and the concept names for each locale that has been asked for, so
+ * lookups don't touch the database.
+ * <p/>
+ * All the maps are immutable and replaced whole, so readers never wait on a lock.  After a
+ * concept sync, {@link #update} patches in only the concepts that changed, instead of reloading
+ * everything from the database.
+ */
+public class ConceptRegistry {
+    private static final Logger LOG = Logger.create();
+
+    private final ContentResolver mContentResolver;
+    private final Executor mExecutor;
+
+    /** The concept IDs and types, or null if they need to be loaded. */
+    private volatile Snapshot mSnapshot;
+    /** Concept names by concept UUID, for each locale that has been loaded. */
+    private final ConcurrentMap<String, Map<String, String>> mNamesByLocale =
+        new ConcurrentHashMap<>();
+    /** Incremented on every change, so a load that started before one is discarded. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /** An immutable set of the concept ID mappings and types, loaded together. */
+    private static class Snapshot {
+        final Map<String, String> uuidsByXformId;
+        final Map<String, String> xformIdsByUuid;
+        final Map<String, ConceptType> typesByUuid;
+
+        Snapshot(Map<String, String> uuidsByXformId, Map<String, String> xformIdsByUuid,
+                 Map<String, ConceptType> typesByUuid) {
+            this.uuidsByXformId = Collections.unmodifiableMap(uuidsByXformId);
+            this.xformIdsByUuid = Collections.unmodifiableMap(xformIdsByUuid);
+            this.typesByUuid = Collections.unmodifiableMap(typesByUuid);
+        }
+    }
+
+    /**
+     * @param contentResolver the resolver for the app db
+     * @param executor        an executor for reloading data in the background
+     */
+    public ConceptRegistry(ContentResolver contentResolver, Executor executor) {
+        mContentResolver = checkNotNull(contentResolver);
+        mExecutor = checkNotNull(executor);
+    }
+
+    /**
+     * Loads the concepts and their names in the given locale in the background, so that the
+     * first lookups don't have to wait for the database.
+     */
+    public void preload(final String locale) {
+        mExecutor.execute(new Runnable() {
+            @Override public void run() {
+                getSnapshot();
+                getNames(locale);
+            }
+        });
+    }
+
+    /**
+     * Discards all loaded data and reloads it in the background.  Call this when concepts change
+     * in the app db in some way other than a concept sync.  Until the reload is done, lookups
+     * read from the database themselves.
+     */
+    public void invalidate() {
+        List<String> locales = new ArrayList<>(mNamesByLocale.keySet());
+        synchronized (this) {
+            mGeneration.incrementAndGet();
+            mSnapshot = null;
+            mNamesByLocale.clear();
+        }
+        for (String locale : locales) {
+            preload(locale);
+        }
+    }
+
+    /**
+     * Applies a set of concepts just written to the app db by a concept sync, replacing only the
+     * maps that actually changed.  Data that hasn't been loaded yet is left to load on demand.
+     */
+    public synchronized void update(Collection<JsonConcept> concepts) {
+        mGeneration.incrementAndGet();
+
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            Map<String, String> uuidsByXformId = null;
+            Map<String, String> xformIdsByUuid = null;
+            Map<String, ConceptType> typesByUuid = null;
+            for (JsonConcept concept : concepts) {
+                String xformId = concept.xform_id == null ? null : concept.xform_id.toString();
+                if (xformId != null && !xformId.equals(snapshot.xformIdsByUuid.get(concept.uuid))) {
+                    if (uuidsByXformId == null) {
+                        uuidsByXformId = new HashMap<>(snapshot.uuidsByXformId);
+                        xformIdsByUuid = new HashMap<>(snapshot.xformIdsByUuid);
+                    }
+                    String oldXformId = xformIdsByUuid.get(concept.uuid);
+                    if (oldXformId != null && concept.uuid.equals(uuidsByXformId.get(oldXformId))) {
+                        uuidsByXformId.remove(oldXformId);
+                    }
+                    uuidsByXformId.put(xformId, concept.uuid);
+                    xformIdsByUuid.put(concept.uuid, xformId);
+                }
+                if (concept.type != null && concept.type != snapshot.typesByUuid.get(concept.uuid)) {
+                    if (typesByUuid == null) {
+                        typesByUuid = new HashMap<>(snapshot.typesByUuid);
+                    }
+                    typesByUuid.put(concept.uuid, concept.type);
+                }
+            }
+            if (uuidsByXformId != null || typesByUuid != null) {
+                mSnapshot = new Snapshot(
+                    uuidsByXformId != null ? uuidsByXformId : snapshot.uuidsByXformId,
+                    xformIdsByUuid != null ? xformIdsByUuid : snapshot.xformIdsByUuid,
+                    typesByUuid != null ? typesByUuid : snapshot.typesByUuid);
+            }
+        }
+
+        for (Map.Entry<String, Map<String, String>> entry : mNamesByLocale.entrySet()) {
+            String locale = entry.getKey();
+            Map<String, String> names = entry.getValue();
+            Map<String, String> updated = null;
+            int count = 0;
+            for (JsonConcept concept : concepts) {
+                String name = concept.names == null ? null : concept.names.get(locale);
+                if (name != null && !name.equals(names.get(concept.uuid))) {
+                    if (updated == null) {
+                        updated = new HashMap<>(names);
+                    }
+                    updated.put(concept.uuid, name);
+                    count++;
+                }
+            }
+            if (updated != null) {
+                LOG.i("Updated %d concept names for locale %s", count, locale);
+                mNamesByLocale.put(locale, Collections.unmodifiableMap(updated));
+            }
+        }
+    }
+
+    /** Returns the UUID of the concept with the given xform ID, or null if there is none. */
+    public @Nullable String getUuidForXformId(String xformId) {
+        return getSnapshot().uuidsByXformId.get(xformId);
+    }
+
+    /** Returns the xform ID of the concept with the given UUID, or null if there is none. */
+    public @Nullable String getXformIdForUuid(String uuid) {
+        return getSnapshot().xformIdsByUuid.get(uuid);
+    }
+
+    /** Returns the type of the concept with the given UUID, or null if it is unknown. */
+    public @Nullable ConceptType getType(String uuid) {
+        return getSnapshot().typesByUuid.get(uuid);
+    }
+
+    /** Returns the name of the concept with the given UUID in the given locale, or null. */
+    public @Nullable String getName(String uuid, String locale) {
+        return getNames(locale).get(uuid);
+    }
+
+    /** Returns the names of all concepts in the given locale, keyed by concept UUID. */
+    public Map<String, String> getNames(String locale) {
+        Map<String, String> names = mNamesByLocale.get(locale);
+        if (names == null) {
+            // Concurrent callers may both load; either result is equally valid.
+            int generation = mGeneration.get();
+            names = Collections.unmodifiableMap(loadNames(locale));
+            synchronized (this) {
+                if (mGeneration.get() == generation) {
+                    Map<String, String> existing = mNamesByLocale.putIfAbsent(locale, names);
+                    if (existing != null) {
+                        names = existing;
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            // Concurrent callers may both load; either result is equally valid.
+            int generation = mGeneration.get();
+            snapshot = loadSnapshot();
+            synchronized (this) {
+                if (mGeneration.get() == generation && mSnapshot == null) {
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private Snapshot loadSnapshot() {
+        Map<String, String> uuidsByXformId = new HashMap<>();
+        Map<String, String> xformIdsByUuid = new HashMap<>();
+        Map<String, ConceptType> typesByUuid = new HashMap<>();
+        try (Cursor c = mContentResolver.query(
+            Concepts.CONTENT_URI,
+            new String[] {Concepts.UUID, Concepts.XFORM_ID, Concepts.CONCEPT_TYPE},
+            null, null, null)) {
+            while (c.moveToNext()) {
+                String uuid = c.getString(0);
+                String xformId = c.getString(1);
+                if (xformId != null) {
+                    uuidsByXformId.put(xformId, uuid);
+                    xformIdsByUuid.put(uuid, xformId);
+                }
+                try {
+                    typesByUuid.put(uuid, ConceptType.valueOf(c.getString(2)));
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    /* bad concept type name */
+                }
+            }
+        }
+        // Special case: we know this is a date even if it's not in any forms or charts.
+        typesByUuid.put(ConceptUuids.ADMISSION_DATE_UUID, ConceptType.DATE);
+        return new Snapshot(uuidsByXformId, xformIdsByUuid, typesByUuid);
+    }
+
+    private Map<String, String> loadNames(String locale) {
+        Map<String, String> names = new HashMap<>();
+        try (Cursor c = mContentResolver.query(
+            ConceptNames.CONTENT_URI,
+            new String[] {ConceptNames.CONCEPT_UUID, ConceptNames.NAME},
+            ConceptNames.LOCALE + " = ?", new String[] {locale}, null)) {
+            while (c.moveToNext()) {
+                names.put(c.getString(0), c.getString(1));
+            }
+        }
+        return names;
+    }
+}
@@ -12,14 +12,19 @@
 package org.projectbuendia.client.sync;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import org.projectbuendia.client.models.AppModel;
 import org.projectbuendia.client.providers.Contracts.Table;
 import org.projectbuendia.client.utils.Logger;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,7 +36,7 @@ public class Database extends SQLiteOpenHelper {
     private static final Logger LOG = Logger.create();
 
     /** Schema version. */
-    public static final int DATABASE_VERSION = 29;
+    public static final int DATABASE_VERSION = 36;
 
     /** Filename for SQLite file. */
     public static final String DATABASE_FILENAME = "buendia.db";
@@ -39,19 +44,25 @@ public class Database extends SQLiteOpenHelper {
     File file;
 
     /**
-     * A map of SQL table schemas, with one entry per table.  The values should
-     * be strings that take the place of X in a "CREATE TABLE foo (X)" statement.
+     * A map of SQL table schemas, with one entry per table (the views in ENCODED_TABLES have
+     * none).  The values should be strings that take the place of X in a "CREATE TABLE foo (X)"
+     * statement.
      */
     static final Map<Table, String> SCHEMAS = new HashMap<>();
 
     // For descriptions of these tables and the meanings of their columns, see Contracts.java.
     static {
-        SCHEMAS.put(Table.PATIENTS, ""
+        // Every UUID that appears in the observation, order, and patient rows, once.
+        SCHEMAS.put(Table.UUIDS, ""
+            + "id INTEGER PRIMARY KEY NOT NULL,"
+            + "uuid TEXT UNIQUE NOT NULL");
+
+        SCHEMAS.put(Table.PATIENT_ROWS, ""
             + "uuid TEXT PRIMARY KEY NOT NULL,"
             + "id TEXT,"
             + "given_name TEXT,"
             + "family_name TEXT,"
-            + "location_uuid TEXT,"
+            + "location_id INTEGER,"
             + "birthdate TEXT,"
             + "gender TEXT");
 
@@ -81,27 +92,59 @@ public class Database extends SQLiteOpenHelper {
             + "name TEXT,"
             + "UNIQUE (location_uuid, locale)");
 
-        SCHEMAS.put(Table.OBSERVATIONS, ""
+        SCHEMAS.put(Table.OBSERVATION_ROWS, ""
             // uuid intentionally allows null values, because temporary observations inserted
             // locally after submitting a form don't have UUIDs. Note that PRIMARY KEY in SQLite
             // (and many other databases) treats all NULL values as different from all other values,
             // so it's still ok to insert multiple records with a NULL UUID.
             + "uuid TEXT PRIMARY KEY,"
-            + "patient_uuid TEXT,"
-            + "encounter_uuid TEXT,"
+            + "patient_id INTEGER NOT NULL,"
+            + "encounter_id INTEGER,"
             + "encounter_millis INTEGER,"
-            + "concept_uuid TEXT,"
-            + "enterer_uuid TEXT,"
+            + "concept_id INTEGER NOT NULL,"
+            + "enterer_id INTEGER,"
             + "value STRING,"
-            + "UNIQUE (patient_uuid, encounter_uuid, concept_uuid)");
+            + "value_number REAL,"
+            + "value_coded_id INTEGER,"
+            + "value_millis INTEGER,"
+            + "UNIQUE (patient_id, encounter_id, concept_id)");
 
-        SCHEMAS.put(Table.ORDERS, ""
+        SCHEMAS.put(Table.ORDER_EXECUTIONS, ""
+            + "order_uuid TEXT NOT NULL,"
+            + "patient_uuid TEXT NOT NULL,"
+            + "date TEXT NOT NULL,"
+            + "count INTEGER NOT NULL DEFAULT 0,"
+            // The patient comes first so that a patient's counts can be read from the index.
+            + "PRIMARY KEY (patient_uuid, order_uuid, date)");
+
+        SCHEMAS.put(Table.ORDER_ROWS, ""
             + "uuid TEXT PRIMARY KEY NOT NULL,"
-            + "patient_uuid TEXT,"
+            + "patient_id INTEGER,"
             + "instructions TEXT,"
             + "start_millis INTEGER,"
             + "stop_millis INTEGER");
 
+        SCHEMAS.put(Table.OUTBOX, ""
+            + "rowid INTEGER PRIMARY KEY NOT NULL,"
+            + "action TEXT NOT NULL,"
+            + "item_uuid TEXT NOT NULL,"
+            + "body TEXT,"
+            + "created_millis INTEGER,"
+            + "attempts INTEGER NOT NULL DEFAULT 0,"
+            + "next_attempt_millis INTEGER NOT NULL DEFAULT 0,"
+            + "last_error TEXT,"
+            + "rejected INTEGER NOT NULL DEFAULT 0");
+
+        SCHEMAS.put(Table.EVENT_LOG, ""
+            + "rowid INTEGER PRIMARY KEY NOT NULL,"
+            + "time_millis INTEGER NOT NULL,"
+            + "params TEXT NOT NULL");
+
+        SCHEMAS.put(Table.ARCHIVED_PATIENTS, ""
+            + "patient_uuid TEXT PRIMARY KEY NOT NULL,"
+            + "archived_millis INTEGER NOT NULL,"
+            + "observations_removed INTEGER");
+
         SCHEMAS.put(Table.CHART_ITEMS, ""
             + "rowid INTEGER PRIMARY KEY NOT NULL,"
             + "chart_uuid TEXT,"
@@ -128,37 +171,171 @@ public class Database extends SQLiteOpenHelper {
             + "full_sync_start_millis INTEGER,"
             + "full_sync_end_millis INTEGER");
 
+        SCHEMAS.put(Table.SYNC_METRICS, ""
+            + "rowid INTEGER PRIMARY KEY NOT NULL,"
+            + "sync_start_millis INTEGER NOT NULL,"
+            + "phase TEXT NOT NULL,"
+            + "page INTEGER NOT NULL,"
+            + "rows INTEGER,"
+            + "decoded_bytes INTEGER,"
+            + "wire_bytes INTEGER,"
+            + "network_millis INTEGER,"
+            + "parse_millis INTEGER,"
+            + "db_millis INTEGER,"
+            + "notifications INTEGER,"
+            + "total_millis INTEGER,"
+            + "succeeded INTEGER NOT NULL DEFAULT 0");
+
         SCHEMAS.put(Table.SYNC_TOKENS, ""
             + "table_name TEXT PRIMARY KEY NOT NULL,"
             + "sync_token TEXT NOT NULL");
     }
 
+    /**
+     * Tables whose UUID columns are stored as ids into the uuids table, keyed by the view
+     * that presents them with their UUIDs; see {@link EncodedTable}.
+     */
+    static final Map<Table, EncodedTable> ENCODED_TABLES = new LinkedHashMap<>();
+
+    static {
+        ENCODED_TABLES.put(Table.OBSERVATIONS, new EncodedTable(
+            Table.OBSERVATIONS, Table.OBSERVATION_ROWS,
+            new String[] {"patient_uuid", "concept_uuid"},
+            new String[] {"encounter_uuid", "enterer_uuid", "value_coded"}));
+        ENCODED_TABLES.put(Table.ORDERS, new EncodedTable(
+            Table.ORDERS, Table.ORDER_ROWS,
+            new String[] {},
+            new String[] {"patient_uuid"}));
+        ENCODED_TABLES.put(Table.PATIENTS, new EncodedTable(
+            Table.PATIENTS, Table.PATIENT_ROWS,
+            new String[] {},
+            new String[] {"location_uuid"}));
+    }
+
+    /**
+     * Triggers that keep the order_executions table in step with the order execution
+     * observations, so that it is right however the observations are written: by sync, by
+     * recording an execution locally, or by deleting temporary observations.
+     */
+    static final List<String> TRIGGERS = new ArrayList<>();
+
+    static {
+        String executed = "concept_id = (SELECT id FROM " + Table.UUIDS
+            + " WHERE uuid = '" + AppModel.ORDER_EXECUTED_CONCEPT_UUID + "')";
+        TRIGGERS.add("order_executions_insert AFTER INSERT ON " + Table.OBSERVATION_ROWS
+            + " WHEN new." + executed + " BEGIN "
+            + addExecution("new", "1")
+            + " END");
+        TRIGGERS.add("order_executions_delete AFTER DELETE ON " + Table.OBSERVATION_ROWS
+            + " WHEN old." + executed + " BEGIN "
+            + removeExecution("old", "1")
+            + " END");
+        TRIGGERS.add("order_executions_update AFTER UPDATE ON " + Table.OBSERVATION_ROWS
+            + " WHEN old." + executed + " OR new." + executed + " BEGIN "
+            + removeExecution("old", "old." + executed)
+            + addExecution("new", "new." + executed)
+            + " END");
+    }
+
+    /**
+     * Returns SQL statements for a trigger that count the execution observed in the given row
+     * ("new" or "old"), if the given SQL condition holds.
+     */
+    private static String addExecution(String row, String condition) {
+        String match = " WHERE " + condition + " AND patient_uuid = " + patientUuid(row)
+            + " AND order_uuid = " + row + ".value AND date = " + localDate(row);
+        // The conflict clause of the statement that fires a trigger overrides the ones in the
+        // trigger, so INSERT OR IGNORE here would become INSERT OR REPLACE during sync.
+        return "INSERT INTO " + Table.ORDER_EXECUTIONS
+            + " (order_uuid, patient_uuid, date, count) SELECT "
+            + row + ".value, " + patientUuid(row) + ", " + localDate(row) + ", 0"
+            + " WHERE " + condition + " AND " + row + ".value IS NOT NULL"
+            + " AND " + patientUuid(row) + " IS NOT NULL"
+            + " AND NOT EXISTS (SELECT 1 FROM " + Table.ORDER_EXECUTIONS + match + "); "
+            + "UPDATE " + Table.ORDER_EXECUTIONS + " SET count = count + 1" + match + "; ";
+    }
+
+    /**
+     * Returns SQL statements for a trigger that uncount the execution observed in the given row
+     * ("new" or "old"), if the given SQL condition holds.
+     */
+    private static String removeExecution(String row, String condition) {
+        String match = " WHERE " + condition + " AND patient_uuid = " + patientUuid(row)
+            + " AND order_uuid = " + row + ".value AND date = " + localDate(row);
+        return "UPDATE " + Table.ORDER_EXECUTIONS + " SET count = count - 1" + match + "; "
+            + "DELETE FROM " + Table.ORDER_EXECUTIONS + match + " AND count <= 0; ";
+    }
+
+    /** Returns SQL for the UUID of the patient in the given row. */
+    private static String patientUuid(String row) {
+        return "(SELECT uuid FROM " + Table.UUIDS + " WHERE id = " + row + ".patient_id)";
+    }
+
+    /** Returns SQL for the local calendar day of the observation in the given row. */
+    private static String localDate(String row) {
+        // SQLite's 'localtime' uses the time zone of this process, which is the device's.
+        return "date(" + row + ".encounter_millis / 1000, 'unixepoch', 'localtime')";
+    }
+
     public Database(Context context) {
         super(context, DATABASE_FILENAME, null, DATABASE_VERSION);
         file = context.getDatabasePath(DATABASE_FILENAME);
     }
 
     @Override public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // This database is only a cache of data on the server, so its upgrade
-        // policy is to discard all the data and start over.
-        clear(db);
+        // This database is mostly a cache of data on the server, so its upgrade
+        // policy is to discard all the data and start over.  The outbox and the
+        // event log are the exceptions: they hold data that hasn't reached the server yet.
+        LOG.i("Upgrading database from version %d to %d.", oldVersion, newVersion);
+        for (Table table : Table.values()) {
+            if (table != Table.OUTBOX && table != Table.EVENT_LOG) {
+                drop(db, table);
+            }
+        }
+        onCreate(db);
     }
 
     public void clear(SQLiteDatabase db) {
         LOG.i("Clearing database.");
         for (Table table : Table.values()) {
-            db.execSQL("DROP TABLE IF EXISTS " + table);
+            drop(db, table);
         }
         onCreate(db);
     }
 
+    /** Drops a table or view, if it exists. */
+    private static void drop(SQLiteDatabase db, Table table) {
+        // Some names, like "observations", were tables in older versions and are views now.
+        try (Cursor c = db.rawQuery("SELECT type FROM sqlite_master WHERE name = ?",
+            new String[] {table.name})) {
+            if (c.moveToFirst()) {
+                db.execSQL("DROP " + c.getString(0) + " " + table);
+            }
+        }
+    }
+
     @Override public void onCreate(SQLiteDatabase db) {
         LOG.i("Initializing database");
         for (Table table : Table.values()) {
-            db.execSQL("CREATE TABLE " + table + " (" + SCHEMAS.get(table) + ");");
+            if (SCHEMAS.containsKey(table)) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + table + " (" + SCHEMAS.get(table) + ");");
+            }
+        }
+        for (EncodedTable encoded : ENCODED_TABLES.values()) {
+            db.execSQL("CREATE VIEW IF NOT EXISTS " + encoded.table + " AS "
+                + encoded.getViewSql() + ";");
+        }
+        for (String trigger : TRIGGERS) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + trigger + ";");
         }
     }
 
+    @Override public void onOpen(SQLiteDatabase db) {
+        // Observations are often written with INSERT OR REPLACE, which deletes the row it
+        // replaces without firing delete triggers unless recursive triggers are on.
+        db.execSQL("PRAGMA recursive_triggers = ON;");
+    }
+
     public void clear() {
         // Never call zero-argument clear() from onUpgrade, as getWritableDatabase
         // can trigger onUpgrade, leading to endless recursion.
@@ -0,0 +1,208 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.google.common.base.Joiner;
+
+import org.projectbuendia.client.providers.Contracts.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A table whose UUID columns are stored as integer ids into the uuids table, so that a UUID
+ * that appears in thousands of rows, such as a patient's or a concept's, is stored only once.
+ * The rows are kept in a table of their own (e.g. "observation_rows"), and a view with the
+ * table's usual name (e.g. "observations") joins the UUIDs back in, so queries are written as
+ * if the UUIDs were stored in place.  A view can't be written to, so inserts, updates, and
+ * deletes go through the methods here; {@link QueryBuilder} and the provider delegates do
+ * that for their callers.
+ */
+public class EncodedTable {
+    private static final String LOOKUP_ID = "(SELECT id FROM " + Table.UUIDS + " WHERE uuid = ?)";
+
+    /** The view, which has the columns that callers use. */
+    public final Table table;
+    /** The table in which the rows are stored. */
+    public final Table rowsTable;
+    /** The id column in which each UUID column is stored, e.g. "patient_uuid" in "patient_id". */
+    private final Map<String, String> mIdColumns = new LinkedHashMap<>();
+    private final Set<String> mRequiredColumns = new HashSet<>();
+
+    /**
+     * @param required UUID columns that are never null.  The view uses inner joins for these,
+     *     which lets SQLite find the rows for a given UUID through an index on its id.
+     * @param optional UUID columns that may be null.
+     */
+    EncodedTable(Table table, Table rowsTable, String[] required, String[] optional) {
+        this.table = table;
+        this.rowsTable = rowsTable;
+        for (String column : required) {
+            mIdColumns.put(column, getIdColumn(column));
+        }
+        for (String column : optional) {
+            mIdColumns.put(column, getIdColumn(column));
+        }
+        mRequiredColumns.addAll(Arrays.asList(required));
+    }
+
+    /** Returns the encoding of the given table, or null if it's an ordinary table. */
+    public static @Nullable EncodedTable get(Table table) {
+        return Database.ENCODED_TABLES.get(table);
+    }
+
+    /** Gets the name of the id column for a UUID column, e.g. "patient_id" for "patient_uuid". */
+    static String getIdColumn(String uuidColumn) {
+        return uuidColumn.endsWith("_uuid")
+            ? uuidColumn.substring(0, uuidColumn.length() - "_uuid".length()) + "_id"
+            : uuidColumn + "_id";
+    }
+
+    /** Gets the SELECT statement that defines the view. */
+    String getViewSql() {
+        StringBuilder select = new StringBuilder("SELECT r.rowid AS rowid, r.*");
+        StringBuilder from = new StringBuilder(" FROM " + rowsTable + " r");
+        int n = 0;
+        for (Map.Entry<String, String> entry : mIdColumns.entrySet()) {
+            String alias = "u" + (n++);
+            select.append(", ").append(alias).append(".uuid AS ").append(entry.getKey());
+            from.append(mRequiredColumns.contains(entry.getKey()) ? " JOIN " : " LEFT JOIN ")
+                .append(Table.UUIDS).append(' ').append(alias)
+                .append(" ON ").append(alias).append(".id = r.").append(entry.getValue());
+        }
+        return select.append(from).toString();
+    }
+
+    /** Adds any UUIDs in the given rows that aren't already in the uuids table. */
+    public void intern(SQLiteDatabase db, ContentValues... allValues) {
+        Set<String> interned = new HashSet<>();
+        SQLiteStatement statement = db.compileStatement(
+            "INSERT OR IGNORE INTO " + Table.UUIDS + " (uuid) VALUES (?)");
+        try {
+            for (ContentValues values : allValues) {
+                for (String column : mIdColumns.keySet()) {
+                    String uuid = values.getAsString(column);
+                    if (uuid != null && interned.add(uuid)) {
+                        statement.bindString(1, uuid);
+                        statement.executeInsert();
+                    }
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Compiles an INSERT statement that takes one parameter for each of the given columns of
+     * the view, in order.  Call {@link #intern} on the values before executing it.
+     * @param conflict a conflict clause, such as "OR REPLACE", or ""
+     */
+    public SQLiteStatement compileInsert(SQLiteDatabase db, String conflict, String... columns) {
+        List<String> stored = new ArrayList<>();
+        List<String> params = new ArrayList<>();
+        for (String column : columns) {
+            stored.add(getStoredColumn(column));
+            params.add(getParameter(column));
+        }
+        return db.compileStatement("INSERT " + conflict + " INTO " + rowsTable
+            + " (" + Joiner.on(", ").join(stored) + ")"
+            + " VALUES (" + Joiner.on(", ").join(params) + ")");
+    }
+
+    /**
+     * Inserts a row given in terms of the view's columns.
+     * @param conflict a conflict clause, such as "OR REPLACE", or ""
+     * @return the rowid of the new row, or -1 if the conflict clause ignored it
+     */
+    public long insert(SQLiteDatabase db, String conflict, ContentValues values) {
+        intern(db, values);
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        SQLiteStatement statement = compileInsert(db, conflict, columns);
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i]));
+            }
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Updates the rows that match a condition on the view's columns.
+     * @param conflict a conflict clause, such as "OR IGNORE", or ""
+     * @return the number of rows updated
+     */
+    public int update(SQLiteDatabase db, String conflict, ContentValues values,
+                      @Nullable String where, @Nullable String[] args) {
+        if (values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        intern(db, values);
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns) {
+            assignments.add(getStoredColumn(column) + " = " + getParameter(column));
+        }
+        SQLiteStatement statement = db.compileStatement("UPDATE " + conflict + " " + rowsTable
+            + " SET " + Joiner.on(", ").join(assignments) + " WHERE " + matchRows(where));
+        try {
+            int index = 1;
+            for (String column : columns) {
+                DatabaseUtils.bindObjectToProgram(statement, index++, values.get(column));
+            }
+            for (String arg : args == null ? new String[0] : args) {
+                DatabaseUtils.bindObjectToProgram(statement, index++, arg);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Deletes the rows that match a condition on the view's columns.
+     * @return the number of rows deleted
+     */
+    public int delete(SQLiteDatabase db, @Nullable String where, @Nullable String[] args) {
+        return db.delete(rowsTable.name, matchRows(where), args);
+    }
+
+    /** Gets a condition on the stored rows that selects the rows of the view that match. */
+    private String matchRows(@Nullable String where) {
+        return "rowid IN (SELECT rowid FROM " + table
+            + (where == null || where.isEmpty() ? "" : " WHERE " + where) + ")";
+    }
+
+    private String getStoredColumn(String column) {
+        String idColumn = mIdColumns.get(column);
+        return idColumn != null ? idColumn : column;
+    }
+
+    private String getParameter(String column) {
+        return mIdColumns.containsKey(column) ? LOOKUP_ID : "?";
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.RequestFuture;
+
+import org.json.JSONObject;
+import org.projectbuendia.client.diagnostics.HealthMonitor;
+import org.projectbuendia.client.json.JsonUser;
+import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects logged user actions and events in the event log table and sends them to the server
+ * in batches, so that they don't each cost a request competing with clinical traffic, and so
+ * that they aren't lost while the server is unreachable.
+ * <p/>
+ * <p>A batch is sent once {@link #FLUSH_COUNT} events are waiting, or {@link #FLUSH_DELAY_MILLIS}
+ * after the first of them was logged.  While the API is unavailable or batches are failing,
+ * sending backs off exponentially.  Only the newest {@link #MAX_STORED_EVENTS} are kept.
+ */
+public class EventLogShipper {
+
+    private static final Logger LOG = Logger.create();
+
+    /** Number of waiting events that triggers a batch to be sent right away. */
+    static final int FLUSH_COUNT = 20;
+
+    /** Longest time an event waits to be sent, if the server is reachable. */
+    static final long FLUSH_DELAY_MILLIS = 60*1000;
+
+    /** Most events kept in the table; older ones are dropped when it fills. */
+    static final int MAX_STORED_EVENTS = 5000;
+
+    /** Longest batch, in characters of URL, so that it fits within servers' URL limits. */
+    static final int MAX_BATCH_CHARS = 6000;
+
+    /** Most events in a batch, and so the most rows read from the table at a time. */
+    static final int MAX_BATCH_EVENTS = 50;
+
+    /** Delay before the first retry of a failed batch; each further retry doubles it. */
+    static final long MIN_RETRY_DELAY_MILLIS = 30*1000;
+
+    /** Maximum delay between retries of a failed batch. */
+    static final long MAX_RETRY_DELAY_MILLIS = 10*60*1000;
+
+    /** The table is trimmed after every this many inserts, rather than after each one. */
+    private static final int TRIM_INTERVAL = 100;
+
+    private static final String[] PROJECTION = new String[] {
+        Contracts.EventLog.ROWID,
+        Contracts.EventLog.PARAMS
+    };
+
+    private final ContentResolver mContentResolver;
+    private final Server mServer;
+    private final HealthMonitor mHealthMonitor;
+    private final ScheduledExecutorService mExecutor;
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override public void run() {
+            flush();
+        }
+    };
+    private ScheduledFuture<?> mScheduledFlush;
+
+    // Only used on the executor thread.
+    private int mNumWaiting;
+    private int mNumFailures;
+    private long mNextAttemptMillis;
+
+    public EventLogShipper(
+        ContentResolver contentResolver,
+        Server server,
+        HealthMonitor healthMonitor,
+        ScheduledExecutorService executor) {
+        mContentResolver = contentResolver;
+        mServer = server;
+        mHealthMonitor = healthMonitor;
+        mExecutor = executor;
+    }
+
+    /** Sends anything left in the event log from earlier. */
+    public void start() {
+        scheduleFlush(0);
+    }
+
+    /**
+     * Logs an event for sending to the server.  This returns right away, so it's fine to call
+     * on the UI thread.
+     * @param user  the active user, or null if none
+     * @param pairs an even number of strings giving key-value pairs to record
+     */
+    public void log(@Nullable JsonUser user, List<String> pairs) {
+        final long timeMillis = System.currentTimeMillis();
+        final String params = formatEvent(timeMillis, user, pairs);
+        mExecutor.execute(new Runnable() {
+            @Override public void run() {
+                store(timeMillis, params);
+            }
+        });
+    }
+
+    /** Formats an event as URL-encoded key=value pairs separated by ";". */
+    static String formatEvent(long timeMillis, @Nullable JsonUser user, List<String> pairs) {
+        StringBuilder params = new StringBuilder("time=").append(timeMillis);
+        if (user != null) {
+            params.append(";user_id=").append(Utils.urlEncode(user.id));
+            if (user.isGuestUser()) {
+                params.append(";guest_user=1");
+            }
+        }
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            params.append(';').append(Utils.urlEncode(pairs.get(i)))
+                .append('=').append(Utils.urlEncode(pairs.get(i + 1)));
+        }
+        return params.toString();
+    }
+
+    private void store(long timeMillis, String params) {
+        ContentValues values = new ContentValues();
+        values.put(Contracts.EventLog.TIME_MILLIS, timeMillis);
+        values.put(Contracts.EventLog.PARAMS, params);
+        Uri uri = mContentResolver.insert(Contracts.EventLog.CONTENT_URI, values);
+        long rowid = uri == null ? 0 : ContentUris.parseId(uri);
+        if (rowid > MAX_STORED_EVENTS && rowid % TRIM_INTERVAL == 0) {
+            int numDropped = mContentResolver.delete(Contracts.EventLog.CONTENT_URI,
+                Contracts.EventLog.ROWID + " <= ?",
+                new String[] {String.valueOf(rowid - MAX_STORED_EVENTS)});
+            if (numDropped > 0) {
+                LOG.w("Event log is full; dropped the %d oldest events", numDropped);
+            }
+        }
+        mNumWaiting++;
+        scheduleFlush(mNumWaiting >= FLUSH_COUNT ? 0 : FLUSH_DELAY_MILLIS);
+    }
+
+    private synchronized void scheduleFlush(long delayMillis) {
+        if (mScheduledFlush != null && !mScheduledFlush.isDone()) {
+            if (mScheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+                return;  // a flush is already due no later than requested
+            }
+            mScheduledFlush.cancel(false);
+        }
+        mScheduledFlush = mExecutor.schedule(mFlushRunnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends batches of waiting events until none are left or a batch fails. */
+    private void flush() {
+        synchronized (this) {
+            mScheduledFlush = null;  // this flush is running; later requests need a new one
+        }
+        long waitMillis = mNextAttemptMillis - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            scheduleFlush(waitMillis);  // still backing off from an earlier failure
+            return;
+        }
+        if (mHealthMonitor.isApiUnavailable()) {
+            backOff("API is unavailable");
+            return;
+        }
+        List<String> events = new ArrayList<>();
+        long lastRowid = 0;
+        while ((lastRowid = readBatch(events, lastRowid)) > 0) {
+            VolleyError error = send(events);
+            if (error != null) {
+                backOff(String.valueOf(error.getMessage()));
+                return;
+            }
+            mContentResolver.delete(Contracts.EventLog.CONTENT_URI,
+                Contracts.EventLog.ROWID + " <= ?", new String[] {String.valueOf(lastRowid)});
+            mNumFailures = 0;
+            events.clear();
+        }
+        mNumWaiting = 0;
+    }
+
+    private void backOff(String reason) {
+        mNumFailures++;
+        long delayMillis = getRetryDelayMillis(mNumFailures);
+        mNextAttemptMillis = System.currentTimeMillis() + delayMillis;
+        LOG.w("Can't send the event log (%s); retrying in %d ms", reason, delayMillis);
+        scheduleFlush(delayMillis);
+    }
+
+    /**
+     * Reads the oldest waiting events after the given rowid, up to {@link #MAX_BATCH_EVENTS} of
+     * them and {@link #MAX_BATCH_CHARS} in total, into events.  Returns the rowid of the last
+     * one read, or 0 if there are none.
+     */
+    private long readBatch(List<String> events, long afterRowid) {
+        long lastRowid = 0;
+        int numChars = 0;
+        Uri uri = Contracts.EventLog.CONTENT_URI.buildUpon().appendQueryParameter(
+            Contracts.LIMIT_PARAMETER, String.valueOf(MAX_BATCH_EVENTS)).build();
+        Cursor cursor = mContentResolver.query(uri, PROJECTION,
+            Contracts.EventLog.ROWID + " > ?", new String[] {String.valueOf(afterRowid)},
+            Contracts.EventLog.ROWID);
+        try {
+            while (cursor.moveToNext()) {
+                String params = Utils.getString(cursor, Contracts.EventLog.PARAMS);
+                numChars += params.length() + 2;
+                if (!events.isEmpty() && numChars > MAX_BATCH_CHARS) {
+                    break;
+                }
+                events.add(params);
+                lastRowid = Utils.getLong(cursor, Contracts.EventLog.ROWID, 0L);
+            }
+        } finally {
+            cursor.close();
+        }
+        return lastRowid;
+    }
+
+    /** Sends one batch and waits for the result; returns null if it succeeded. */
+    private @Nullable VolleyError send(List<String> events) {
+        RequestFuture<JSONObject> future = RequestFuture.newFuture();
+        mServer.logToServer(events, future, future);
+        try {
+            future.get();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new VolleyError("Interrupted while sending", e);
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof VolleyError ?
+                (VolleyError) e.getCause() : new VolleyError(e.getCause());
+        }
+    }
+
+    /** Returns the delay before retrying after the given number of consecutive failures. */
+    static long getRetryDelayMillis(int numFailures) {
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        for (int i = 1; i < numFailures && delay < MAX_RETRY_DELAY_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+}
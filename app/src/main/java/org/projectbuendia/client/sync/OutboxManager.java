@@ -0,0 +1,547 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.RequestFuture;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.projectbuendia.client.diagnostics.HealthMonitor;
+import org.projectbuendia.client.events.diagnostics.TroubleshootingActionsChangedEvent;
+import org.projectbuendia.client.events.sync.OutboxWriteRejectedEvent;
+import org.projectbuendia.client.net.Common;
+import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.SyncAdapter.SyncPhase;
+import org.projectbuendia.client.utils.EventBusInterface;
+import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Queues writes that have already been applied to the local database and submits them to the
+ * server in the background, so that data entry never has to wait for the network.
+ * <p/>
+ * <p>Writes are kept in the outbox table until the server accepts them, so they survive
+ * restarts.  They are submitted one request at a time, in the order they were made, whenever the
+ * server appears to be reachable.  A write that fails for a transient reason blocks the writes
+ * behind it and is retried with exponential backoff; a write that the server refuses is marked
+ * as rejected and skipped, and an {@link OutboxWriteRejectedEvent} is posted so that the user
+ * finds out.  If the refused write created an item, such as a patient, the later writes that
+ * refer to that item are rejected along with it.  Rejected writes stay in the outbox until the
+ * user chooses to {@link #retryRejected() retry} or {@link #discardRejected() discard} them;
+ * discarding also undoes them in the local database.  Every write names its item by a UUID
+ * generated on the client, so submitting the same write twice has no further effect on the
+ * server.
+ */
+public class OutboxManager {
+
+    private static final Logger LOG = Logger.create();
+
+    /**
+     * Maximum number of outbox entries read from the database at a time.  Each entry is still
+     * submitted in a request of its own.
+     */
+    static final int READ_SIZE = 20;
+
+    /** Delay before the first retry of a failed write; each further retry doubles it. */
+    static final long MIN_RETRY_DELAY_MILLIS = 5000;
+
+    /** Maximum delay between retries of a failed write. */
+    static final long MAX_RETRY_DELAY_MILLIS = 10*60*1000;
+
+    /**
+     * Number of times we try a write that the server answers with an error before giving up on
+     * it, so that one bad write can't hold up the rest of the outbox forever.
+     */
+    static final int MAX_SERVER_ERROR_ATTEMPTS = 10;
+
+    /**
+     * Longest we wait for the result of one write, including Volley's own retries and time in
+     * its queue.  A write that takes longer is treated like a network failure and retried, so
+     * that a lost callback can't stall the whole outbox.
+     */
+    static final long SUBMIT_TIMEOUT_MILLIS = Common.REQUEST_TIMEOUT_MS_VERY_LONG;
+
+    private static final String[] PROJECTION = new String[] {
+        Contracts.Outbox.ROWID,
+        Contracts.Outbox.ACTION,
+        Contracts.Outbox.ITEM_UUID,
+        Contracts.Outbox.BODY,
+        Contracts.Outbox.ATTEMPTS,
+        Contracts.Outbox.NEXT_ATTEMPT_MILLIS
+    };
+
+    /** The kinds of writes that can be queued, with the API request that carries out each one. */
+    public enum Action {
+        ADD_PATIENT(Request.Method.POST, "/patients", true),
+        UPDATE_PATIENT(Request.Method.POST, "/patients/%s", false),
+        ADD_ENCOUNTER(Request.Method.POST, "/encounters", true),
+        SUBMIT_XFORM(Request.Method.POST, "/xforminstances", false),
+        // Goes through Server.deleteObservation.
+        DELETE_OBSERVATION(Request.Method.DELETE, null, false),
+        ADD_ORDER(Request.Method.POST, "/orders", true),
+        UPDATE_ORDER(Request.Method.POST, "/orders/%s", false),
+        DELETE_ORDER(Request.Method.DELETE, "/orders/%s", false);
+
+        public final int method;
+        private final String mUrlFormat;
+        /** Whether the write creates its item, so that later writes may depend on it. */
+        public final boolean creates;
+
+        Action(int method, String urlFormat, boolean creates) {
+            this.method = method;
+            mUrlFormat = urlFormat;
+            this.creates = creates;
+        }
+
+        /** Returns the API URL for this action on a given item, relative to the API root. */
+        public String getUrlSuffix(String itemUuid) {
+            return String.format(mUrlFormat, itemUuid);
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Server mServer;
+    private final HealthMonitor mHealthMonitor;
+    private final EventBusInterface mEventBus;
+    private final ScheduledExecutorService mExecutor;
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+    };
+    private ScheduledFuture<?> mScheduledDrain;
+
+    public OutboxManager(
+        ContentResolver contentResolver,
+        Server server,
+        HealthMonitor healthMonitor,
+        EventBusInterface eventBus,
+        ScheduledExecutorService executor) {
+        mContentResolver = contentResolver;
+        mServer = server;
+        mHealthMonitor = healthMonitor;
+        mEventBus = eventBus;
+        mExecutor = executor;
+    }
+
+    /** Starts listening for server health changes and submits anything left from earlier. */
+    public void start() {
+        mEventBus.register(this);
+        requestDrain();
+    }
+
+    /**
+     * Queues a write for submission to the server.  Call this after the write has been applied
+     * to the local database.  This touches the database, so don't call it on the UI thread.
+     * @param action   the kind of write
+     * @param itemUuid the client-generated UUID of the item being written
+     * @param body     the JSON request body, or null for deletions
+     */
+    public void enqueue(Action action, String itemUuid, @Nullable JSONObject body) {
+        ContentValues values = new ContentValues();
+        values.put(Contracts.Outbox.ACTION, action.name());
+        values.put(Contracts.Outbox.ITEM_UUID, itemUuid);
+        values.put(Contracts.Outbox.BODY, body == null ? null : body.toString());
+        values.put(Contracts.Outbox.CREATED_MILLIS, System.currentTimeMillis());
+        mContentResolver.insert(Contracts.Outbox.CONTENT_URI, values);
+        LOG.i("Queued %s of %s", action, itemUuid);
+        requestDrain();
+    }
+
+    /**
+     * Puts every rejected write back in the queue, as if it had never been tried, and submits
+     * them again in their original order.
+     */
+    public void retryRejected() {
+        mExecutor.execute(new Runnable() {
+            @Override public void run() {
+                ContentValues values = new ContentValues();
+                values.put(Contracts.Outbox.ATTEMPTS, 0);
+                values.put(Contracts.Outbox.NEXT_ATTEMPT_MILLIS, 0);
+                values.putNull(Contracts.Outbox.LAST_ERROR);
+                values.put(Contracts.Outbox.REJECTED, 0);
+                int count = mContentResolver.update(Contracts.Outbox.CONTENT_URI, values,
+                    Contracts.Outbox.REJECTED + " = 1", null);
+                LOG.i("Retrying %d rejected writes", count);
+                requestDrain();
+            }
+        });
+    }
+
+    /**
+     * Removes every rejected write from the outbox and undoes it in the local database, so that
+     * the tablet agrees with the server again.  Items that the writes created are deleted;
+     * tables that the other writes changed are fetched again from the start.
+     */
+    public void discardRejected() {
+        mExecutor.execute(new Runnable() {
+            @Override public void run() {
+                discardRejectedNow();
+            }
+        });
+    }
+
+    private void discardRejectedNow() {
+        Set<SyncPhase> phasesToRefetch = EnumSet.noneOf(SyncPhase.class);
+        Cursor cursor = mContentResolver.query(
+            Contracts.Outbox.CONTENT_URI, PROJECTION,
+            Contracts.Outbox.REJECTED + " = 1", null, Contracts.Outbox.ROWID);
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                Action action = Action.valueOf(Utils.getString(cursor, Contracts.Outbox.ACTION));
+                String itemUuid = Utils.getString(cursor, Contracts.Outbox.ITEM_UUID);
+                SyncPhase phase = rollBack(action, itemUuid);
+                if (phase != null) {
+                    phasesToRefetch.add(phase);
+                }
+                mContentResolver.delete(ContentUris.withAppendedId(Contracts.Outbox.CONTENT_URI,
+                    Utils.getLong(cursor, Contracts.Outbox.ROWID, 0L)), null, null);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        LOG.i("Discarded %d rejected writes", count);
+        if (!phasesToRefetch.isEmpty()) {
+            for (SyncPhase phase : phasesToRefetch) {
+                // Without a sync token, the next sync of the table fetches every record again,
+                // replacing the local copies that were changed or deleted.
+                mContentResolver.delete(Contracts.SyncTokens.CONTENT_URI,
+                    Contracts.SyncTokens.TABLE_NAME + " = ?",
+                    new String[] {getSyncedTable(phase).name});
+            }
+            SyncAccountService.startIncrementalSync(phasesToRefetch);
+        }
+    }
+
+    /**
+     * Undoes a write in the local database if it created an item; otherwise returns the sync
+     * phase that will restore the server's copy of the item.
+     */
+    private @Nullable SyncPhase rollBack(Action action, String itemUuid) {
+        String[] args = new String[] {itemUuid};
+        switch (action) {
+            case ADD_PATIENT:
+                mContentResolver.delete(Contracts.Patients.CONTENT_URI,
+                    Contracts.Patients.UUID + " = ?", args);
+                return null;
+            case ADD_ENCOUNTER:
+            case SUBMIT_XFORM:
+                mContentResolver.delete(Contracts.Observations.CONTENT_URI,
+                    Contracts.Observations.ENCOUNTER_UUID + " = ?", args);
+                return null;
+            case ADD_ORDER:
+                mContentResolver.delete(Contracts.Orders.CONTENT_URI,
+                    Contracts.Orders.UUID + " = ?", args);
+                return null;
+            case UPDATE_PATIENT:
+                return SyncPhase.SYNC_PATIENTS;
+            case DELETE_OBSERVATION:
+                return SyncPhase.SYNC_OBSERVATIONS;
+            default:  // UPDATE_ORDER, DELETE_ORDER
+                return SyncPhase.SYNC_ORDERS;
+        }
+    }
+
+    /** Returns the table whose sync token a sync phase keeps. */
+    private static Contracts.Table getSyncedTable(SyncPhase phase) {
+        switch (phase) {
+            case SYNC_PATIENTS:
+                return Contracts.Table.PATIENTS;
+            case SYNC_OBSERVATIONS:
+                return Contracts.Table.OBSERVATIONS;
+            default:
+                return Contracts.Table.ORDERS;
+        }
+    }
+
+    /** Submits queued writes in the background as soon as possible. */
+    public void requestDrain() {
+        scheduleDrain(0);
+    }
+
+    /** Drains the outbox once the server looks reachable again. */
+    @SuppressWarnings("unused") // Called by reflection from EventBus.
+    public void onEvent(TroubleshootingActionsChangedEvent event) {
+        if (event.actions.isEmpty()) {
+            requestDrain();
+        }
+    }
+
+    private synchronized void scheduleDrain(long delayMillis) {
+        if (mScheduledDrain != null && !mScheduledDrain.isDone()) {
+            if (mScheduledDrain.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+                return;  // a drain is already due no later than requested
+            }
+            mScheduledDrain.cancel(false);
+        }
+        mScheduledDrain = mExecutor.schedule(mDrainRunnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Submits queued writes in order until the outbox is empty or a write must wait. */
+    private void drain() {
+        synchronized (this) {
+            mScheduledDrain = null;  // this drain is running; later requests need a new one
+        }
+        if (mHealthMonitor.isApiUnavailable()) {
+            LOG.i("API is unavailable; the outbox will be drained when it comes back");
+            return;
+        }
+        int numSubmitted = 0;
+        Set<String> rejectedItems = readRejectedItems();
+        List<Entry> entries;
+        while (!(entries = readNextEntries()).isEmpty()) {
+            for (Entry entry : entries) {
+                String rejectedItem = findRejectedItem(entry.itemUuid, entry.body, rejectedItems);
+                if (rejectedItem != null) {
+                    LOG.e("%s of %s refers to %s, which the server refused; giving up on it",
+                        entry.action, entry.itemUuid, rejectedItem);
+                    reject(entry, new VolleyError(
+                        "Refers to " + rejectedItem + ", which the server refused"),
+                        rejectedItems);
+                    continue;
+                }
+                long waitMillis = entry.nextAttemptMillis - System.currentTimeMillis();
+                if (waitMillis > 0) {
+                    scheduleDrain(waitMillis);
+                    finishDrain(numSubmitted);
+                    return;
+                }
+                VolleyError error = submit(entry);
+                int status = getStatusCode(error);
+                if (error == null || isAlreadyApplied(entry.action, status)) {
+                    mContentResolver.delete(getUri(entry), null, null);
+                    numSubmitted++;
+                } else if (isRejection(status)
+                    || (status > 0 && entry.attempts + 1 >= MAX_SERVER_ERROR_ATTEMPTS)) {
+                    LOG.e(error, "Server refused %s of %s; giving up on it",
+                        entry.action, entry.itemUuid);
+                    reject(entry, error, rejectedItems);
+                } else {
+                    long delayMillis = getRetryDelayMillis(entry.attempts + 1);
+                    LOG.w("Failed to submit %s of %s (attempt %d); retrying in %d ms: %s",
+                        entry.action, entry.itemUuid, entry.attempts + 1, delayMillis, error);
+                    recordFailure(entry, error, false);
+                    scheduleDrain(delayMillis);
+                    finishDrain(numSubmitted);
+                    return;
+                }
+            }
+        }
+        finishDrain(numSubmitted);
+    }
+
+    private void finishDrain(int numSubmitted) {
+        if (numSubmitted > 0) {
+            LOG.i("Submitted %d queued writes", numSubmitted);
+            // Fetch the server's authoritative copies of what we just wrote.
+            SyncAccountService.startIncrementalSync(EnumSet.of(
+                SyncPhase.SYNC_PATIENTS, SyncPhase.SYNC_OBSERVATIONS, SyncPhase.SYNC_ORDERS));
+        }
+    }
+
+    /** Reads the items whose creation the server has refused. */
+    private Set<String> readRejectedItems() {
+        Set<String> items = new HashSet<>();
+        Cursor cursor = mContentResolver.query(
+            Contracts.Outbox.CONTENT_URI, PROJECTION,
+            Contracts.Outbox.REJECTED + " = 1", null, Contracts.Outbox.ROWID);
+        try {
+            while (cursor.moveToNext()) {
+                Action action = Action.valueOf(Utils.getString(cursor, Contracts.Outbox.ACTION));
+                if (action.creates) {
+                    items.add(Utils.getString(cursor, Contracts.Outbox.ITEM_UUID));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    /**
+     * Returns the rejected item that a write refers to, by its own UUID or in its body, or null
+     * if it refers to none of them.
+     */
+    static @Nullable String findRejectedItem(
+        String itemUuid, @Nullable String body, Set<String> rejectedItems) {
+        if (rejectedItems.contains(itemUuid)) {
+            return itemUuid;
+        }
+        if (body != null) {
+            for (String item : rejectedItems) {
+                if (body.contains(item)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Marks a write as rejected and tells the user that it didn't reach the server. */
+    private void reject(Entry entry, VolleyError error, Set<String> rejectedItems) {
+        recordFailure(entry, error, true);
+        if (entry.action.creates) {
+            rejectedItems.add(entry.itemUuid);
+        }
+        mEventBus.post(new OutboxWriteRejectedEvent(
+            entry.action.name(), entry.itemUuid, String.valueOf(error.getMessage())));
+    }
+
+    private List<Entry> readNextEntries() {
+        List<Entry> entries = new ArrayList<>();
+        Cursor cursor = mContentResolver.query(
+            Contracts.Outbox.CONTENT_URI, PROJECTION,
+            Contracts.Outbox.REJECTED + " = 0", null, Contracts.Outbox.ROWID);
+        try {
+            while (entries.size() < READ_SIZE && cursor.moveToNext()) {
+                Entry entry = new Entry();
+                entry.rowid = Utils.getLong(cursor, Contracts.Outbox.ROWID, 0L);
+                entry.action = Action.valueOf(Utils.getString(cursor, Contracts.Outbox.ACTION));
+                entry.itemUuid = Utils.getString(cursor, Contracts.Outbox.ITEM_UUID);
+                entry.body = Utils.getString(cursor, Contracts.Outbox.BODY);
+                entry.attempts = Utils.getLong(cursor, Contracts.Outbox.ATTEMPTS, 0L).intValue();
+                entry.nextAttemptMillis =
+                    Utils.getLong(cursor, Contracts.Outbox.NEXT_ATTEMPT_MILLIS, 0L);
+                entries.add(entry);
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    /** Sends one queued write and waits for the result; returns null if it succeeded. */
+    private @Nullable VolleyError submit(Entry entry) {
+        RequestFuture<Void> future = RequestFuture.newFuture();
+        try {
+            if (entry.action == Action.DELETE_OBSERVATION) {
+                mServer.deleteObservation(entry.itemUuid, future, future);
+            } else {
+                JSONObject body = entry.body == null ? null : new JSONObject(entry.body);
+                mServer.submitWrite(entry.action.method,
+                    entry.action.getUrlSuffix(entry.itemUuid), body, future, future);
+            }
+            future.get(SUBMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return null;
+        } catch (JSONException e) {
+            return new VolleyError("Queued request body is not valid JSON", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new VolleyError("Interrupted while submitting", e);
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof VolleyError ?
+                (VolleyError) e.getCause() : new VolleyError(e.getCause());
+        } catch (TimeoutException e) {
+            // Carries no response, so the write is retried rather than rejected.
+            return new VolleyError("No result from the server after "
+                + SUBMIT_TIMEOUT_MILLIS + " ms", e);
+        }
+    }
+
+    private void recordFailure(Entry entry, VolleyError error, boolean rejected) {
+        ContentValues values = new ContentValues();
+        values.put(Contracts.Outbox.ATTEMPTS, entry.attempts + 1);
+        values.put(Contracts.Outbox.NEXT_ATTEMPT_MILLIS,
+            System.currentTimeMillis() + getRetryDelayMillis(entry.attempts + 1));
+        values.put(Contracts.Outbox.LAST_ERROR, String.valueOf(error.getMessage()));
+        values.put(Contracts.Outbox.REJECTED, rejected ? 1 : 0);
+        mContentResolver.update(getUri(entry), values, null, null);
+    }
+
+    private static Uri getUri(Entry entry) {
+        return ContentUris.withAppendedId(Contracts.Outbox.CONTENT_URI, entry.rowid);
+    }
+
+    /** Returns the delay before retrying a write that has failed the given number of times. */
+    static long getRetryDelayMillis(int numFailures) {
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        for (int i = 1; i < numFailures && delay < MAX_RETRY_DELAY_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Returns the HTTP status code of the server's response to a failed request, or 0 if the
+     * request failed without getting a response (e.g. a timeout or a network error).
+     */
+    static int getStatusCode(@Nullable Throwable error) {
+        // OpenMrsServer wraps errors to improve their messages, so look along the cause chain.
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof VolleyError) {
+                NetworkResponse response = ((VolleyError) t).networkResponse;
+                if (response != null) {
+                    return response.statusCode;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if an error status indicates that the write had already taken effect, which
+     * happens when a write is resubmitted after its response was lost.
+     */
+    static boolean isAlreadyApplied(Action action, int status) {
+        return status == HttpURLConnection.HTTP_CONFLICT
+            || (action.method == Request.Method.DELETE
+                && status == HttpURLConnection.HTTP_NOT_FOUND);
+    }
+
+    /**
+     * Returns true if an error status means the server will never accept the write, so there
+     * is no point in retrying it.  Authentication failures and timeouts can clear up on their
+     * own, so they don't count.
+     */
+    static boolean isRejection(int status) {
+        return status >= 400 && status < 500
+            && status != HttpURLConnection.HTTP_UNAUTHORIZED
+            && status != HttpURLConnection.HTTP_FORBIDDEN
+            && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+            && status != 429;  // Too Many Requests
+    }
+
+    /** A row of the outbox table. */
+    private static class Entry {
+        long rowid;
+        Action action;
+        String itemUuid;
+        String body;
+        int attempts;
+        long nextAttemptMillis;
+    }
+}
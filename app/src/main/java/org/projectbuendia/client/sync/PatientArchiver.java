@@ -0,0 +1,264 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.projectbuendia.client.AppSettings;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.Zones;
+import org.projectbuendia.client.providers.Contracts.ArchivedPatients;
+import org.projectbuendia.client.providers.Contracts.Locations;
+import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.providers.Contracts.Patients;
+import org.projectbuendia.client.providers.Contracts.SyncTokens;
+import org.projectbuendia.client.providers.Contracts.Table;
+import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the local database from growing without bound by archiving patients who have been
+ * discharged or have died: once such a patient has had no observations for the number of days
+ * set in {@link AppSettings#getArchiveAfterDays}, all but the latest observation of each
+ * concept are removed, which is all that the patient lists and chart tiles show.  The
+ * patient's full history is fetched again when their chart is opened; see
+ * {@link SyncManager#startPatientSync}.
+ */
+public class PatientArchiver {
+
+    private static final Logger LOG = Logger.create();
+
+    /** Zones whose patients are no longer being treated. */
+    static final List<String> INACTIVE_ZONE_UUIDS =
+        Arrays.asList(Zones.DISCHARGED_ZONE_UUID, Zones.MORGUE_ZONE_UUID);
+
+    /** Shortest time between archiving passes, as each one reads some observations. */
+    static final long MIN_INTERVAL_MILLIS = 6 * 60 * 60 * 1000L;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final ContentResolver mContentResolver;
+    private final AppSettings mSettings;
+    private final File mDatabaseFile;
+    private long mLastRunMillis;
+
+    public PatientArchiver(
+        ContentResolver contentResolver, AppSettings settings, File databaseFile) {
+        mContentResolver = contentResolver;
+        mSettings = settings;
+        mDatabaseFile = databaseFile;
+    }
+
+    /**
+     * Archives any inactive patients that are due, unless archiving is turned off or was done
+     * recently.  Reports the size of the database and the time of a typical query before and
+     * after.  Call this after a sync, outside its transaction.
+     * @return the number of patients archived
+     */
+    public synchronized int archiveInactivePatients() {
+        int days = mSettings.getArchiveAfterDays();
+        long now = System.currentTimeMillis();
+        if (days <= 0 || now - mLastRunMillis < MIN_INTERVAL_MILLIS) return 0;
+        mLastRunMillis = now;
+
+        List<String> candidates = getUnarchivedPatients(
+            getLocationsWithin(INACTIVE_ZONE_UUIDS, getParentsByLocation()));
+        long cutoffMillis = now - days * DAY_MILLIS;
+        List<String> due = new ArrayList<>();
+        for (String patientUuid : candidates) {
+            Long lastMillis = getLastObservationMillis(patientUuid);
+            if (lastMillis != null && lastMillis < cutoffMillis) {
+                due.add(patientUuid);
+            }
+        }
+        LOG.i("%d of %d inactive patients have had no observations for %d days",
+            due.size(), candidates.size(), days);
+        if (due.isEmpty()) return 0;
+
+        StorageStats before = measure();
+        int removed = 0;
+        for (String patientUuid : due) {
+            removed += archive(patientUuid, now);
+        }
+        StorageStats after = measure();
+        LOG.i("Archived %d patients, removing %d observations; before: %s; after: %s",
+            due.size(), removed, before, after);
+        Utils.logEvent("patients_archived",
+            "patients", "" + due.size(),
+            "observations_removed", "" + removed,
+            "observations_before", "" + before.observations,
+            "observations_after", "" + after.observations,
+            "database_bytes_before", "" + before.databaseBytes,
+            "database_bytes_after", "" + after.databaseBytes,
+            "scan_millis_before", "" + before.scanMillis,
+            "scan_millis_after", "" + after.scanMillis);
+        return due.size();
+    }
+
+    /** Returns true if the patient's observation history has been archived. */
+    public boolean isArchived(String patientUuid) {
+        try (Cursor c = mContentResolver.query(ArchivedPatients.CONTENT_URI,
+            new String[] {ArchivedPatients.PATIENT_UUID},
+            ArchivedPatients.PATIENT_UUID + " = ?", new String[] {patientUuid}, null)) {
+            return c.moveToFirst();
+        }
+    }
+
+    /** Records that the patient's full observation history has been fetched again. */
+    public void markRestored(String patientUuid) {
+        mContentResolver.delete(ArchivedPatients.CONTENT_URI,
+            ArchivedPatients.PATIENT_UUID + " = ?", new String[] {patientUuid});
+    }
+
+    /**
+     * Removes all but the latest observation of each concept for a patient, keeping any
+     * observations that haven't been confirmed by the server yet.
+     * @return the number of observations removed
+     */
+    private int archive(String patientUuid, long nowMillis) {
+        // SQLite takes the bare rowid from the row with the maximum encounter_millis.
+        int removed = mContentResolver.delete(Observations.CONTENT_URI,
+            Observations.PATIENT_UUID + " = ? AND " + Observations.UUID + " IS NOT NULL"
+                + " AND rowid NOT IN (SELECT rowid FROM (SELECT rowid, max("
+                + Observations.ENCOUNTER_MILLIS + ") FROM " + Table.OBSERVATIONS
+                + " WHERE " + Observations.PATIENT_UUID + " = ?"
+                + " GROUP BY " + Observations.CONCEPT_UUID + "))",
+            new String[] {patientUuid, patientUuid});
+        ContentValues values = new ContentValues();
+        values.put(ArchivedPatients.PATIENT_UUID, patientUuid);
+        values.put(ArchivedPatients.ARCHIVED_MILLIS, nowMillis);
+        values.put(ArchivedPatients.OBSERVATIONS_REMOVED, removed);
+        mContentResolver.insert(ArchivedPatients.CONTENT_URI, values);
+        // The patient's whole history is fetched when it is restored, so its per-patient sync
+        // tokens (keyed "<table>:<patient UUID>") won't be used again.
+        mContentResolver.delete(SyncTokens.CONTENT_URI,
+            SyncTokens.TABLE_NAME + " GLOB ?", new String[] {"*:" + patientUuid});
+        return removed;
+    }
+
+    /** Gets the parent of every location, keyed by location UUID. */
+    private Map<String, String> getParentsByLocation() {
+        Map<String, String> parents = new HashMap<>();
+        try (Cursor c = mContentResolver.query(Locations.CONTENT_URI,
+            new String[] {Locations.UUID, Locations.PARENT_UUID}, null, null, null)) {
+            while (c.moveToNext()) {
+                parents.put(Utils.getString(c, Locations.UUID),
+                    Utils.getString(c, Locations.PARENT_UUID));
+            }
+        }
+        return parents;
+    }
+
+    /** Gets the patients in the given locations whose histories have not been archived. */
+    private List<String> getUnarchivedPatients(Collection<String> locationUuids) {
+        List<String> patientUuids = new ArrayList<>();
+        if (locationUuids.isEmpty()) return patientUuids;
+        try (Cursor c = mContentResolver.query(Patients.CONTENT_URI,
+            new String[] {Patients.UUID},
+            Patients.LOCATION_UUID + " IN ("
+                + StringUtils.repeat("?", ",", locationUuids.size()) + ") AND "
+                + Patients.UUID + " NOT IN (SELECT " + ArchivedPatients.PATIENT_UUID
+                + " FROM " + Table.ARCHIVED_PATIENTS + ")",
+            locationUuids.toArray(new String[locationUuids.size()]), null)) {
+            while (c.moveToNext()) {
+                patientUuids.add(Utils.getString(c, Patients.UUID));
+            }
+        }
+        return patientUuids;
+    }
+
+    /** Gets the time of a patient's latest observation, or null if they have none. */
+    private Long getLastObservationMillis(String patientUuid) {
+        try (Cursor c = mContentResolver.query(Observations.CONTENT_URI,
+            new String[] {"max(" + Observations.ENCOUNTER_MILLIS + ")"},
+            Observations.PATIENT_UUID + " = ?", new String[] {patientUuid}, null)) {
+            return c.moveToFirst() && !c.isNull(0) ? c.getLong(0) : null;
+        }
+    }
+
+    private StorageStats measure() {
+        long startNanos = System.nanoTime();
+        // Finding every patient's latest general condition, as the patient lists do, has to
+        // scan the whole observations table, so it shows what the archived rows cost.
+        int conditionRows;
+        try (Cursor c = mContentResolver.query(Observations.CONTENT_URI,
+            new String[] {Observations.PATIENT_UUID, Observations.VALUE},
+            Observations.CONCEPT_UUID + " = ?",
+            new String[] {ConceptUuids.GENERAL_CONDITION_UUID}, null)) {
+            conditionRows = c.getCount();
+        }
+        long scanMillis = (System.nanoTime() - startNanos)/1000000;
+        int observations;
+        try (Cursor c = mContentResolver.query(Observations.CONTENT_URI,
+            new String[] {"count(*)"}, null, null, null)) {
+            observations = c.moveToFirst() ? c.getInt(0) : 0;
+        }
+        LOG.d("Scanned %d general condition observations in %d ms", conditionRows, scanMillis);
+        return new StorageStats(observations, mDatabaseFile.length(), scanMillis);
+    }
+
+    /**
+     * Returns the given locations and all the locations within them.
+     * @param parentsByLocation the parent UUID of each location, keyed by location UUID
+     */
+    static Set<String> getLocationsWithin(
+        Collection<String> rootUuids, Map<String, String> parentsByLocation) {
+        Set<String> within = new HashSet<>(rootUuids);
+        for (String uuid : parentsByLocation.keySet()) {
+            // Walk up to a root, stopping at a location already known to be inside one.
+            List<String> path = new ArrayList<>();
+            String ancestor = uuid;
+            while (ancestor != null && !within.contains(ancestor) && !path.contains(ancestor)) {
+                path.add(ancestor);
+                ancestor = parentsByLocation.get(ancestor);
+            }
+            if (ancestor != null && within.contains(ancestor)) {
+                within.addAll(path);
+            }
+        }
+        return within;
+    }
+
+    /** The size of the local database, measured before and after archiving. */
+    static class StorageStats {
+        final int observations;
+        /** The size of the database file, which only shrinks when SQLite vacuums it. */
+        final long databaseBytes;
+        /** The time taken to scan the observations for every patient's general condition. */
+        final long scanMillis;
+
+        StorageStats(int observations, long databaseBytes, long scanMillis) {
+            this.observations = observations;
+            this.databaseBytes = databaseBytes;
+            this.scanMillis = scanMillis;
+        }
+
+        @Override public String toString() {
+            return observations + " observations, " + databaseBytes + " bytes, "
+                + scanMillis + " ms to scan";
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class QueryBuilder {
     String[] mArgs = {};
     String mOrderBy = null;
     String mGroupBy = null;
+    String mLimit = null;
 
     public QueryBuilder(Contracts.Table table) {
         mTable = table;
@@ -51,6 +52,12 @@ public class QueryBuilder {
         return this;
     }
 
+    /** Sets the maximum number of rows in the LIMIT clause, or removes it if null. */
+    public QueryBuilder limit(String limit) {
+        mLimit = limit;
+        return this;
+    }
+
     /** Sets the group key in the GROUP BY clause. */
     public QueryBuilder groupBy(String key) {
         mGroupBy = key;
@@ -59,16 +66,24 @@ public class QueryBuilder {
 
     /** Executes a SELECT query. */
     public Cursor select(SQLiteDatabase db, String... columns) {
-        return db.query(mTable.name, columns, mCondition, mArgs, mGroupBy, null, mOrderBy, null);
+        return db.query(mTable.name, columns, mCondition, mArgs, mGroupBy, null, mOrderBy, mLimit);
     }
 
     /** Executes an UPDATE query. */
     public int update(SQLiteDatabase db, ContentValues values) {
+        EncodedTable encoded = EncodedTable.get(mTable);
+        if (encoded != null) {
+            return encoded.update(db, "", values, mCondition, mArgs);
+        }
         return db.update(mTable.name, values, mCondition, mArgs);
     }
 
     /** Executes a DELETE query. */
     public int delete(SQLiteDatabase db) {
+        EncodedTable encoded = EncodedTable.get(mTable);
+        if (encoded != null) {
+            return encoded.delete(db, mCondition, mArgs);
+        }
         return db.delete(mTable.name, mCondition, mArgs);
     }
 }
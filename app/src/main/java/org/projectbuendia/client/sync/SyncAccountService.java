@@ -32,6 +32,8 @@ import org.projectbuendia.client.sync.SyncAdapter.SyncPhase;
 import org.projectbuendia.client.providers.Contracts;
 import org.projectbuendia.client.utils.Logger;
 
+import java.util.Collection;
+
 import javax.inject.Inject;
 
 /**
@@ -111,6 +113,21 @@ public class SyncAccountService extends Service {
         ContentResolver.requestSync(getAccount(), Contracts.CONTENT_AUTHORITY, b);
     }
 
+    /**
+     * Starts a sync of just the given phases, without interrupting any sync in progress, since
+     * that may be a full sync that we don't want to starve.
+     */
+    public static void startIncrementalSync(Collection<SyncPhase> phases) {
+        Bundle b = new Bundle();
+        b.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        b.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        for (SyncPhase phase : phases) {
+            b.putBoolean(phase.name(), true);
+        }
+        LOG.i("Requesting incremental sync of %s", phases);
+        ContentResolver.requestSync(getAccount(), Contracts.CONTENT_AUTHORITY, b);
+    }
+
     @Override public void onCreate() {
         LOG.i("Service created");
         mAuthenticator = new Authenticator(this);
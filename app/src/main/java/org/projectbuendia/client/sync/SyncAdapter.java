@@ -72,6 +72,9 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
     private final EventBus mEventBus;
 
+    private final SyncTelemetry mTelemetry;
+    private final PatientArchiver mArchiver;
+
     /**
      * Keys in the extras bundle used to select which sync phases to do.
      * Select a phase by setting a boolean value of true for the appropriate key.
@@ -105,10 +108,13 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         FULL_SYNC
     }
 
-    public SyncAdapter(Context context, EventBus eventBus, boolean autoInitialize) {
+    public SyncAdapter(Context context, EventBus eventBus, SyncTelemetry telemetry,
+                       PatientArchiver archiver, boolean autoInitialize) {
         super(context, autoInitialize);
         mContentResolver = context.getContentResolver();
         mEventBus = eventBus;
+        mTelemetry = telemetry;
+        mArchiver = archiver;
     }
 
     @Override public void onSyncCanceled() {
@@ -166,6 +172,7 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         dbTransactionHelper.startNamedTransaction(SYNC_SAVEPOINT_NAME);
 
         TimingLogger timings = new TimingLogger(LOG.tag, "onPerformSync");
+        SyncTelemetry.Recorder recorder = mTelemetry.startSync();
 
         try {
             if (fullSync) {
@@ -184,7 +191,15 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
                 LOG.i("--- Begin %s ---", phase);
                 reportProgress((int) (completedPhases * progressIncrement), phase.message);
 
-                phase.runnable.sync(mContentResolver, syncResult, provider);
+                long rowsBefore = countRowsChanged(syncResult);
+                recorder.startPhase(phase.name());
+                boolean succeeded = false;
+                try {
+                    phase.runnable.sync(mContentResolver, syncResult, provider);
+                    succeeded = true;
+                } finally {
+                    recorder.endPhase(countRowsChanged(syncResult) - rowsBefore, succeeded);
+                }
 
                 timings.addSplit(phase.name() + " phase completed");
                 completedPhases++;
@@ -218,9 +233,20 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             LOG.i("Releasing savepoint %s", SYNC_SAVEPOINT_NAME);
             dbTransactionHelper.releaseNamedTransaction(SYNC_SAVEPOINT_NAME);
             dbTransactionHelper.close();
+            // Saved outside the savepoint, so that failed syncs are measured too.
+            mTelemetry.finishSync(recorder);
         }
         timings.dumpToLog();
 
+        if (phases.contains(SyncPhase.SYNC_OBSERVATIONS)) {
+            try {
+                mArchiver.archiveInactivePatients();
+            } catch (RuntimeException e) {
+                // The data is all there; it just takes more space than it needs to.
+                LOG.w(e, "Failed to archive inactive patients");
+            }
+        }
+
         // Fire a broadcast indicating that sync has completed.
         mEventBus.post(new SyncSucceededEvent());
     }
@@ -237,6 +263,12 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /** Returns the number of local rows inserted, updated, or deleted during a sync so far. */
+    private static long countRowsChanged(SyncResult syncResult) {
+        return syncResult.stats.numInserts + syncResult.stats.numUpdates
+            + syncResult.stats.numDeletes;
+    }
+
     private void reportProgress(int progress, @StringRes int message) {
         String label = getContext().getResources().getString(message);
         mEventBus.post(new SyncProgressEvent(progress, label));
@@ -265,8 +297,19 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     @Nullable
     public static String getLastSyncToken(ContentProviderClient provider, Contracts.Table table)
             throws RemoteException {
+        return getLastSyncToken(provider, table.name);
+    }
+
+    /**
+     * Returns the last sync token stored under the given key.  Keys are usually table names, but
+     * narrower syncs (e.g. of a single patient's records) may store their own tokens under
+     * other keys.
+     */
+    @Nullable
+    public static String getLastSyncToken(ContentProviderClient provider, String key)
+            throws RemoteException {
         try(Cursor c = provider.query(
-                SyncTokens.CONTENT_URI.buildUpon().appendPath(table.name).build(),
+                SyncTokens.CONTENT_URI.buildUpon().appendPath(key).build(),
                 new String[] {SyncTokens.SYNC_TOKEN}, null, null, null)) {
             // Make the linter happy, there's no way that the cursor can be null without throwing
             // an exception.
@@ -287,8 +330,18 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     public static void storeSyncToken(
             ContentProviderClient provider, Contracts.Table table, String syncToken)
             throws RemoteException {
+        storeSyncToken(provider, table.name, syncToken);
+    }
+
+    /**
+     * Stores a sync token under the given key.
+     * See {@link #getLastSyncToken(ContentProviderClient, String)}.
+     */
+    public static void storeSyncToken(
+            ContentProviderClient provider, String key, String syncToken)
+            throws RemoteException {
         ContentValues cv = new ContentValues();
-        cv.put(SyncTokens.TABLE_NAME, table.name);
+        cv.put(SyncTokens.TABLE_NAME, key);
         cv.put(SyncTokens.SYNC_TOKEN, syncToken);
         provider.insert(SyncTokens.CONTENT_URI, cv);
     }
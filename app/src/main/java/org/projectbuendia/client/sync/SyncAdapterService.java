@@ -29,10 +29,17 @@ public class SyncAdapterService extends Service {
     @Inject
     EventBus mEventBus;
 
+    @Inject
+    SyncTelemetry mTelemetry;
+
+    @Inject
+    PatientArchiver mArchiver;
+
     @Override public void onCreate() {
         super.onCreate();
         App.getInstance().inject(this);
-        mSyncAdapter = new SyncAdapter(getApplicationContext(), mEventBus, true);
+        mSyncAdapter = new SyncAdapter(
+            getApplicationContext(), mEventBus, mTelemetry, mArchiver, true);
     }
 
     @Override public IBinder onBind(Intent intent) {
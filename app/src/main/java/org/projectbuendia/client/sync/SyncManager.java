@@ -11,22 +11,49 @@
 
 package org.projectbuendia.client.sync;
 
+import android.content.ContentProviderClient;
 import android.content.ContentResolver;
+import android.content.SyncResult;
 
+import org.projectbuendia.client.App;
+import org.projectbuendia.client.events.sync.PatientSyncSucceededEvent;
 import org.projectbuendia.client.events.sync.SyncCanceledEvent;
+import org.projectbuendia.client.net.ChangeFeedClient;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.SyncAdapter.SyncPhase;
+import org.projectbuendia.client.sync.controllers.IncrementalSyncPhaseRunnable;
+import org.projectbuendia.client.sync.controllers.ObservationsSyncPhaseRunnable;
+import org.projectbuendia.client.sync.controllers.OrdersSyncPhaseRunnable;
 import org.projectbuendia.client.utils.EventBusInterface;
 import org.projectbuendia.client.utils.Logger;
 
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
 /** Manages the sync process and responds to sync events. */
-public class SyncManager {
+public class SyncManager implements ChangeFeedClient.Listener {
 
     private static final Logger LOG = Logger.create();
 
     private final EventBusInterface mEventBus;
+    private final ContentResolver mContentResolver;
+    private final PatientArchiver mArchiver;
+    private final Executor mExecutor;
+    private final ObservationsSyncPhaseRunnable mObservationsRunnable =
+        new ObservationsSyncPhaseRunnable();
+    private final OrdersSyncPhaseRunnable mOrdersRunnable = new OrdersSyncPhaseRunnable();
+    /** UUIDs of the patients for which a single-patient sync is queued or running. */
+    private final Set<String> mPatientSyncsInFlight = new HashSet<>();
 
-    public SyncManager(EventBusInterface eventBus) {
+    public SyncManager(
+        EventBusInterface eventBus, ContentResolver contentResolver, PatientArchiver archiver,
+        Executor executor) {
         mEventBus = eventBus;
+        mContentResolver = contentResolver;
+        mArchiver = archiver;
+        mExecutor = executor;
     }
 
     /** Cancels an in-flight, non-periodic sync. */
@@ -64,4 +91,86 @@ public class SyncManager {
         SyncAccountService.startObservationsAndOrdersSync();
     }
 
+    /** Starts the incremental sync phases for the resource types that changed on the server. */
+    @Override public void onChanged(Set<String> resourceTypes) {
+        Set<SyncPhase> phases = EnumSet.noneOf(SyncPhase.class);
+        for (SyncPhase phase : SyncPhase.values()) {
+            if (phase.runnable instanceof IncrementalSyncPhaseRunnable
+                && resourceTypes.contains(
+                    ((IncrementalSyncPhaseRunnable<?>) phase.runnable).getResourceType())) {
+                phases.add(phase);
+            }
+        }
+        if (!phases.isEmpty()) {
+            SyncAccountService.startIncrementalSync(phases);
+        }
+    }
+
+    /**
+     * Fetches new observations and orders for a single patient in the background, bypassing the
+     * sync framework.  Only that patient's records are requested and written, so this is cheap
+     * enough to run frequently while the patient's chart is open.  If the patient has been
+     * archived by {@link PatientArchiver}, their entire history is fetched again.  Posts a
+     * {@link PatientSyncSucceededEvent} if anything changed.  Does nothing if a sync for the same
+     * patient is already in flight.
+     */
+    public void startPatientSync(final String patientUuid) {
+        synchronized (mPatientSyncsInFlight) {
+            if (!mPatientSyncsInFlight.add(patientUuid)) {
+                LOG.d("Sync of patient %s is already in flight", patientUuid);
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    syncPatient(patientUuid);
+                } finally {
+                    synchronized (mPatientSyncsInFlight) {
+                        mPatientSyncsInFlight.remove(patientUuid);
+                    }
+                }
+            }
+        });
+    }
+
+    private void syncPatient(String patientUuid) {
+        if (App.getInstance().getHealthMonitor().isApiUnavailable()) {
+            LOG.w("Skipping sync of patient %s: Buendia API is unavailable.", patientUuid);
+            return;
+        }
+        // A running sync holds a savepoint on the database, so our writes would only queue up
+        // behind it; it will also bring in this patient's data and post a SyncSucceededEvent.
+        if (isSyncActive()) {
+            LOG.i("Skipping sync of patient %s: a full sync is in progress.", patientUuid);
+            return;
+        }
+
+        ContentProviderClient client =
+            mContentResolver.acquireContentProviderClient(Contracts.CONTENT_AUTHORITY);
+        SyncResult syncResult = new SyncResult();
+        try {
+            boolean archived = mArchiver.isArchived(patientUuid);
+            if (archived) {
+                LOG.i("Restoring the archived history of patient %s", patientUuid);
+            }
+            mObservationsRunnable.syncPatient(
+                mContentResolver, syncResult, client, patientUuid, archived);
+            mOrdersRunnable.syncPatient(mContentResolver, syncResult, client, patientUuid);
+            if (archived) {
+                mArchiver.markRestored(patientUuid);
+            }
+        } catch (Throwable t) {
+            LOG.e(t, "Error during sync of patient %s", patientUuid);
+            return;
+        } finally {
+            client.release();
+        }
+
+        long numChanges = syncResult.stats.numInserts + syncResult.stats.numDeletes;
+        LOG.i("Sync of patient %s made %d changes", patientUuid, numChanges);
+        if (numChanges > 0) {
+            mEventBus.post(new PatientSyncSucceededEvent(patientUuid));
+        }
+    }
 }
@@ -0,0 +1,65 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+/**
+ * The measurements of one phase of a sync, or of one page fetched during a phase; a row of the
+ * sync metrics table.  Times are in milliseconds.
+ */
+public final class SyncMeasurement {
+    /** The start time of the sync, which identifies it. */
+    public final long syncStartMillis;
+    public final String phase;
+    /** 0 for the phase as a whole; 1, 2, ... for the pages fetched during the phase. */
+    public final int page;
+    /** Records fetched, for a page; rows changed in the local database, for a phase. */
+    public final long rows;
+    public final long decodedBytes;
+    public final long wireBytes;
+    public final long networkMillis;
+    public final long parseMillis;
+    public final long dbMillis;
+    public final long notifications;
+    public final long totalMillis;
+    public final boolean succeeded;
+
+    public SyncMeasurement(long syncStartMillis, String phase, int page, long rows,
+                           long decodedBytes, long wireBytes, long networkMillis,
+                           long parseMillis, long dbMillis, long notifications,
+                           long totalMillis, boolean succeeded) {
+        this.syncStartMillis = syncStartMillis;
+        this.phase = phase;
+        this.page = page;
+        this.rows = rows;
+        this.decodedBytes = decodedBytes;
+        this.wireBytes = wireBytes;
+        this.networkMillis = networkMillis;
+        this.parseMillis = parseMillis;
+        this.dbMillis = dbMillis;
+        this.notifications = notifications;
+        this.totalMillis = totalMillis;
+        this.succeeded = succeeded;
+    }
+
+    /** Returns true if this measures a whole phase rather than one page. */
+    public boolean isPhase() {
+        return page == 0;
+    }
+
+    @Override public String toString() {
+        return String.format("%s page %d: %d rows, %d bytes (%d on the wire), network %d ms, "
+                + "parse %d ms, db %d ms, %d notifications, total %d ms%s",
+            phase, page, rows, decodedBytes, wireBytes, networkMillis, parseMillis, dbMillis,
+            notifications, totalMillis, succeeded ? "" : " (failed)");
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import org.projectbuendia.client.net.Common;
+
+/**
+ * Chooses the number of records to request in each page of an incremental sync, and how long to
+ * wait for it, from the measured time and outcome of previous pages.  On a good link pages grow
+ * so that fewer round trips are needed; on a slow or lossy one they shrink so that each page
+ * arrives well within its timeout and a failed page is cheap to retry.  Safe to use from
+ * multiple threads.
+ */
+public class SyncPageSizer {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int MIN_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 4000;
+
+    /** How long we'd like each page to take. */
+    static final long DEFAULT_TARGET_PAGE_MILLIS = 4000;
+    /** A page's timeout is this many times the time the page is expected to take. */
+    private static final int TIMEOUT_FACTOR = 4;
+    /** The weight of the newest page in the running estimate of time per record. */
+    private static final double SMOOTHING = 0.5;
+
+    private final long mTargetPageMillis;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    /** Smoothed milliseconds per record, including each page's share of the round trip. */
+    private double mMillisPerRecord = -1;
+    private long mPageCount;
+    private long mFailureCount;
+    private long mRecordCount;
+    private long mByteCount;
+
+    public SyncPageSizer() {
+        this(DEFAULT_TARGET_PAGE_MILLIS);
+    }
+
+    SyncPageSizer(long targetPageMillis) {
+        mTargetPageMillis = targetPageMillis;
+    }
+
+    /** Returns the number of records to request in the next page. */
+    public synchronized int getPageSize() {
+        return mPageSize;
+    }
+
+    /** Returns how long to wait for the next page before giving up on it. */
+    public synchronized int getTimeoutMillis() {
+        if (mMillisPerRecord < 0) {
+            return Common.REQUEST_TIMEOUT_MS_MEDIUM;
+        }
+        long expected = (long) (mMillisPerRecord*mPageSize)*TIMEOUT_FACTOR;
+        return (int) Math.max(Common.REQUEST_TIMEOUT_MS_SHORT,
+            Math.min(Common.REQUEST_TIMEOUT_MS_VERY_LONG, expected));
+    }
+
+    /**
+     * Records a page that arrived.  Only full pages change the estimate and the page size: a
+     * short page (the last one, or a whole small sync) spends most of its time on the round
+     * trip, which charged to a handful of records would make them look slow.
+     */
+    public synchronized void recordPage(int records, long bytes, long millis) {
+        mPageCount++;
+        mRecordCount += records;
+        mByteCount += bytes;
+        if (records <= 0 || records < mPageSize) return;
+        double millisPerRecord = (double) Math.max(1, millis)/records;
+        mMillisPerRecord = mMillisPerRecord < 0 ? millisPerRecord
+            : SMOOTHING*millisPerRecord + (1 - SMOOTHING)*mMillisPerRecord;
+        int ideal = (int) Math.min(MAX_PAGE_SIZE, mTargetPageMillis/mMillisPerRecord);
+        if (ideal > mPageSize) {
+            // Grow gradually, in case the link was only briefly good.
+            mPageSize = Math.min(ideal, mPageSize*2);
+        } else {
+            mPageSize = Math.max(MIN_PAGE_SIZE, ideal);
+        }
+    }
+
+    /** Records a page that failed to arrive; the next page asked for is half the size. */
+    public synchronized void recordFailure() {
+        mPageCount++;
+        mFailureCount++;
+        mPageSize = Math.max(MIN_PAGE_SIZE, mPageSize/2);
+    }
+
+    @Override public synchronized String toString() {
+        return String.format("page size %d, timeout %d ms, %.1f ms/record; "
+                + "%d pages (%d failed), %d records, %d bytes",
+            mPageSize, getTimeoutMillis(), mMillisPerRecord, mPageCount, mFailureCount,
+            mRecordCount, mByteCount);
+    }
+}
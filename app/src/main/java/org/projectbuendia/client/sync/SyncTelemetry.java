@@ -0,0 +1,374 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.providers.Contracts.SyncMetrics;
+import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long each phase of a sync, and each page fetched during a phase, spends on the
+ * network, parsing, and the database, and keeps the measurements of recent syncs in the sync
+ * metrics table so that slow syncs in the field can be diagnosed.  Also summarizes and exports
+ * the measurements for the diagnostics screen.
+ */
+public class SyncTelemetry {
+
+    private static final Logger LOG = Logger.create();
+
+    /** Most measurements kept in the table; older ones are dropped. */
+    static final int MAX_ROWS = 5000;
+
+    /** Number of recent runs of a phase compared with the runs before them to find a trend. */
+    static final int TREND_RUNS = 5;
+
+    private static final String[] COLUMNS = {
+        SyncMetrics.SYNC_START_MILLIS,
+        SyncMetrics.PHASE,
+        SyncMetrics.PAGE,
+        SyncMetrics.ROWS,
+        SyncMetrics.DECODED_BYTES,
+        SyncMetrics.WIRE_BYTES,
+        SyncMetrics.NETWORK_MILLIS,
+        SyncMetrics.PARSE_MILLIS,
+        SyncMetrics.DB_MILLIS,
+        SyncMetrics.NOTIFICATIONS,
+        SyncMetrics.TOTAL_MILLIS,
+        SyncMetrics.SUCCEEDED
+    };
+
+    /** The recorder for the sync running on each thread, if any. */
+    private static final ThreadLocal<Recorder> sRecorders = new ThreadLocal<>();
+
+    private final ContentResolver mContentResolver;
+
+    public SyncTelemetry(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Starts recording a sync that runs on the calling thread.  Content change notifications
+     * are counted from now until {@link #finishSync}.
+     */
+    public Recorder startSync() {
+        final Recorder recorder = new Recorder(System.currentTimeMillis());
+        recorder.mObserver = new ContentObserver(null) {
+            @Override public void onChange(boolean selfChange) {
+                recorder.countNotification();
+            }
+        };
+        mContentResolver.registerContentObserver(
+            Uri.parse("content://" + Contracts.CONTENT_AUTHORITY), true, recorder.mObserver);
+        sRecorders.set(recorder);
+        return recorder;
+    }
+
+    /**
+     * Stops recording and saves the measurements.  Call this outside any database transaction
+     * that the sync used, so that the measurements are kept even if the sync was rolled back.
+     */
+    public void finishSync(Recorder recorder) {
+        sRecorders.remove();
+        mContentResolver.unregisterContentObserver(recorder.mObserver);
+        try {
+            save(recorder.getMeasurements());
+        } catch (RuntimeException e) {
+            // Losing the measurements is no reason to fail the sync.
+            LOG.w(e, "Failed to save sync measurements");
+        }
+    }
+
+    /** Returns the recorder for the sync running on the calling thread, or null if none. */
+    public static @Nullable Recorder getRecorder() {
+        return sRecorders.get();
+    }
+
+    private void save(List<SyncMeasurement> measurements) {
+        ContentValues[] allValues = new ContentValues[measurements.size()];
+        for (int i = 0; i < allValues.length; i++) {
+            SyncMeasurement m = measurements.get(i);
+            ContentValues values = new ContentValues();
+            values.put(SyncMetrics.SYNC_START_MILLIS, m.syncStartMillis);
+            values.put(SyncMetrics.PHASE, m.phase);
+            values.put(SyncMetrics.PAGE, m.page);
+            values.put(SyncMetrics.ROWS, m.rows);
+            values.put(SyncMetrics.DECODED_BYTES, m.decodedBytes);
+            values.put(SyncMetrics.WIRE_BYTES, m.wireBytes);
+            values.put(SyncMetrics.NETWORK_MILLIS, m.networkMillis);
+            values.put(SyncMetrics.PARSE_MILLIS, m.parseMillis);
+            values.put(SyncMetrics.DB_MILLIS, m.dbMillis);
+            values.put(SyncMetrics.NOTIFICATIONS, m.notifications);
+            values.put(SyncMetrics.TOTAL_MILLIS, m.totalMillis);
+            values.put(SyncMetrics.SUCCEEDED, m.succeeded ? 1 : 0);
+            allValues[i] = values;
+        }
+        mContentResolver.bulkInsert(SyncMetrics.CONTENT_URI, allValues);
+        mContentResolver.delete(SyncMetrics.CONTENT_URI, SyncMetrics.ROWID + " <= (SELECT MAX("
+            + SyncMetrics.ROWID + ") FROM " + Contracts.Table.SYNC_METRICS + ") - " + MAX_ROWS,
+            null);
+        LOG.i("Saved %d sync measurements", allValues.length);
+    }
+
+    /** Loads all kept measurements, oldest first.  Don't call this on the UI thread. */
+    public List<SyncMeasurement> getMeasurements() {
+        List<SyncMeasurement> measurements = new ArrayList<>();
+        Cursor cursor = mContentResolver.query(
+            SyncMetrics.CONTENT_URI, COLUMNS, null, null, SyncMetrics.ROWID);
+        try {
+            while (cursor.moveToNext()) {
+                measurements.add(new SyncMeasurement(
+                    Utils.getLong(cursor, SyncMetrics.SYNC_START_MILLIS, 0L),
+                    Utils.getString(cursor, SyncMetrics.PHASE),
+                    Utils.getLong(cursor, SyncMetrics.PAGE, 0L).intValue(),
+                    Utils.getLong(cursor, SyncMetrics.ROWS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.DECODED_BYTES, 0L),
+                    Utils.getLong(cursor, SyncMetrics.WIRE_BYTES, 0L),
+                    Utils.getLong(cursor, SyncMetrics.NETWORK_MILLIS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.PARSE_MILLIS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.DB_MILLIS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.NOTIFICATIONS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.TOTAL_MILLIS, 0L),
+                    Utils.getLong(cursor, SyncMetrics.SUCCEEDED, 0L) != 0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return measurements;
+    }
+
+    /** Formats measurements as CSV, with a header row of column names, for offline analysis. */
+    public static String toCsv(List<SyncMeasurement> measurements) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            csv.append(i > 0 ? "," : "").append(COLUMNS[i]);
+        }
+        csv.append('\n');
+        for (SyncMeasurement m : measurements) {
+            csv.append(m.syncStartMillis).append(',').append(m.phase).append(',')
+                .append(m.page).append(',').append(m.rows).append(',')
+                .append(m.decodedBytes).append(',').append(m.wireBytes).append(',')
+                .append(m.networkMillis).append(',').append(m.parseMillis).append(',')
+                .append(m.dbMillis).append(',').append(m.notifications).append(',')
+                .append(m.totalMillis).append(',').append(m.succeeded ? 1 : 0).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /** Summarizes each sync in the measurements, newest first. */
+    public static List<SyncSummary> summarizeSyncs(List<SyncMeasurement> measurements) {
+        Map<Long, SyncSummary> syncs = new LinkedHashMap<>();
+        for (SyncMeasurement m : measurements) {
+            if (!m.isPhase()) continue;
+            SyncSummary sync = syncs.get(m.syncStartMillis);
+            if (sync == null) {
+                sync = new SyncSummary(m.syncStartMillis);
+                syncs.put(m.syncStartMillis, sync);
+            }
+            sync.phases.add(m.phase);
+            sync.rows += m.rows;
+            sync.wireBytes += m.wireBytes;
+            sync.totalMillis += m.totalMillis;
+            sync.succeeded &= m.succeeded;
+        }
+        List<SyncSummary> result = new ArrayList<>(syncs.values());
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Summarizes the runs of each phase in the measurements, in the order the phases first
+     * appear.  Times are taken from successful runs only.
+     */
+    public static List<PhaseSummary> summarizePhases(List<SyncMeasurement> measurements) {
+        Map<String, List<SyncMeasurement>> runsByPhase = new LinkedHashMap<>();
+        for (SyncMeasurement m : measurements) {
+            if (!m.isPhase()) continue;
+            List<SyncMeasurement> runs = runsByPhase.get(m.phase);
+            if (runs == null) {
+                runs = new ArrayList<>();
+                runsByPhase.put(m.phase, runs);
+            }
+            runs.add(m);
+        }
+        List<PhaseSummary> result = new ArrayList<>();
+        for (Map.Entry<String, List<SyncMeasurement>> entry : runsByPhase.entrySet()) {
+            List<Long> totals = new ArrayList<>();
+            List<Long> network = new ArrayList<>();
+            List<Long> parse = new ArrayList<>();
+            List<Long> db = new ArrayList<>();
+            int numFailed = 0;
+            for (SyncMeasurement run : entry.getValue()) {
+                if (!run.succeeded) {
+                    numFailed++;
+                    continue;
+                }
+                totals.add(run.totalMillis);
+                network.add(run.networkMillis);
+                parse.add(run.parseMillis);
+                db.add(run.dbMillis);
+            }
+            PhaseSummary summary = new PhaseSummary(entry.getKey());
+            summary.numRuns = entry.getValue().size();
+            summary.numFailed = numFailed;
+            summary.p50Millis = percentile(totals, 50);
+            summary.p90Millis = percentile(totals, 90);
+            summary.medianNetworkMillis = percentile(network, 50);
+            summary.medianParseMillis = percentile(parse, 50);
+            summary.medianDbMillis = percentile(db, 50);
+            if (totals.size() >= 2*TREND_RUNS) {
+                int n = totals.size();
+                long recent = percentile(totals.subList(n - TREND_RUNS, n), 50);
+                long before = percentile(totals.subList(n - 2*TREND_RUNS, n - TREND_RUNS), 50);
+                if (before > 0) {
+                    summary.trendPercent = (int) Math.round(100.0*(recent - before)/before);
+                }
+            }
+            result.add(summary);
+        }
+        return result;
+    }
+
+    /** Returns the given percentile (0 to 100) of the values, or -1 if there are none. */
+    static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) return -1;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile/100.0*sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    /**
+     * Collects the measurements of one sync.  Phases and pages are recorded on the sync's
+     * thread; only the notification count is updated from other threads.
+     */
+    public static class Recorder {
+        private final long mSyncStartMillis;
+        private final List<SyncMeasurement> mMeasurements = new ArrayList<>();
+        private final AtomicLong mNotifications = new AtomicLong();
+        private ContentObserver mObserver;
+
+        // Totals for the phase in progress.
+        private String mPhase;
+        private long mPhaseStartNanos;
+        private long mPhaseStartNotifications;
+        private int mNumPages;
+        private long mDecodedBytes;
+        private long mWireBytes;
+        private long mNetworkMillis;
+        private long mParseMillis;
+        private long mDbMillis;
+
+        Recorder(long syncStartMillis) {
+            mSyncStartMillis = syncStartMillis;
+        }
+
+        /** Starts measuring a phase. */
+        public void startPhase(String phase) {
+            mPhase = phase;
+            mPhaseStartNanos = System.nanoTime();
+            mPhaseStartNotifications = mNotifications.get();
+            mNumPages = 0;
+            mDecodedBytes = mWireBytes = mNetworkMillis = mParseMillis = mDbMillis = 0;
+        }
+
+        /** Records a page fetched during the current phase. */
+        public void recordPage(long rows, long decodedBytes, long wireBytes,
+                               long networkMillis, long parseMillis, long dbMillis) {
+            if (mPhase == null) return;
+            mNumPages++;
+            mDecodedBytes += decodedBytes;
+            mWireBytes += wireBytes;
+            mNetworkMillis += networkMillis;
+            mParseMillis += parseMillis;
+            mDbMillis += dbMillis;
+            mMeasurements.add(new SyncMeasurement(
+                mSyncStartMillis, mPhase, mNumPages, rows, decodedBytes, wireBytes,
+                networkMillis, parseMillis, dbMillis, 0,
+                networkMillis + parseMillis + dbMillis, true));
+        }
+
+        /**
+         * Finishes measuring the current phase.
+         * @param rowsChanged the number of local rows inserted, updated, or deleted
+         * @param succeeded   whether the phase completed
+         */
+        public void endPhase(long rowsChanged, boolean succeeded) {
+            if (mPhase == null) return;
+            mMeasurements.add(new SyncMeasurement(
+                mSyncStartMillis, mPhase, 0, rowsChanged, mDecodedBytes, mWireBytes,
+                mNetworkMillis, mParseMillis, mDbMillis,
+                mNotifications.get() - mPhaseStartNotifications,
+                (System.nanoTime() - mPhaseStartNanos)/1000000, succeeded));
+            mPhase = null;
+        }
+
+        void countNotification() {
+            mNotifications.incrementAndGet();
+        }
+
+        /** Returns everything recorded so far, in order. */
+        public List<SyncMeasurement> getMeasurements() {
+            return new ArrayList<>(mMeasurements);
+        }
+    }
+
+    /** A summary of one sync. */
+    public static class SyncSummary {
+        public final long startMillis;
+        public final List<String> phases = new ArrayList<>();
+        public long rows;
+        public long wireBytes;
+        public long totalMillis;
+        public boolean succeeded = true;
+
+        SyncSummary(long startMillis) {
+            this.startMillis = startMillis;
+        }
+    }
+
+    /** A summary of the recent runs of one phase.  Times are -1 if there were none. */
+    public static class PhaseSummary {
+        public final String phase;
+        public int numRuns;
+        public int numFailed;
+        public long p50Millis;
+        public long p90Millis;
+        public long medianNetworkMillis;
+        public long medianParseMillis;
+        public long medianDbMillis;
+        /**
+         * How much slower (positive) or faster (negative), in percent, the latest runs were than
+         * the runs before them, or null if there aren't enough runs to tell.
+         */
+        public @Nullable Integer trendPercent;
+
+        PhaseSummary(String phase) {
+            this.phase = phase;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+
+import com.google.common.base.Joiner;
+
+import org.projectbuendia.client.App;
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Fills in the typed value columns of an observation row (value_number, value_coded, and
+ * value_millis) from its string value, so that queries can use the values without parsing.
+ */
+public class TypedObsValues {
+    private static final Logger LOG = Logger.create();
+    // SQLite allows at most 999 arguments in one statement.
+    private static final int MAX_SELECTION_ARGS = 500;
+
+    /**
+     * Puts the typed values for an observation of the given concept, looking up the concept's
+     * type in the {@link ConceptRegistry}.  All three columns are always put, null if they
+     * don't apply, so that rows built this way can be bulk inserted together.
+     */
+    public static void put(ContentValues values, String conceptUuid, @Nullable String value) {
+        ConceptRegistry registry = App.getConceptRegistry();
+        put(values, registry == null ? null : registry.getType(conceptUuid), value);
+    }
+
+    /** Puts the typed values for an observation of a concept with the given type. */
+    public static void put(
+        ContentValues values, @Nullable ConceptType type, @Nullable String value) {
+        values.putNull(Observations.VALUE_NUMBER);
+        values.putNull(Observations.VALUE_CODED);
+        values.putNull(Observations.VALUE_MILLIS);
+        if (type == null || value == null) return;
+        try {
+            switch (type) {
+                case NUMERIC:
+                    values.put(Observations.VALUE_NUMBER, Double.parseDouble(value));
+                    break;
+                case CODED:
+                case BOOLEAN:
+                    values.put(Observations.VALUE_CODED, value);
+                    break;
+                case DATETIME:
+                    values.put(Observations.VALUE_MILLIS, Long.parseLong(value));
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // An unparseable value has no typed value; the string value is still kept.
+        }
+    }
+
+    /**
+     * Fills in the typed values of stored observations whose concepts were unknown when they
+     * were written, and rewrites those of concepts whose type has changed.  Call this after
+     * the concepts have been synced.
+     * @param concepts the concepts just synced
+     * @param retypedUuids the UUIDs of the concepts whose type this sync changed
+     * @return the number of distinct values updated
+     */
+    public static int backfill(
+        ContentProviderClient client, Collection<JsonConcept> concepts, Set<String> retypedUuids)
+        throws RemoteException, OperationApplicationException {
+        Map<String, ConceptType> types = new HashMap<>();
+        for (JsonConcept concept : concepts) {
+            types.put(concept.uuid, concept.type);
+        }
+
+        // Collect the distinct (concept, value) pairs to fix, so each is updated only once.
+        Map<String, Set<String>> valuesByConcept = new HashMap<>();
+        // Only concepts with a typed form can have typed values to fill in, so text and date
+        // observations, which never get one, aren't read again on every concept sync.
+        List<String> typedUuids = getTypedConceptUuids(concepts);
+        for (int start = 0; start < typedUuids.size(); start += MAX_SELECTION_ARGS) {
+            List<String> uuids = typedUuids.subList(
+                start, Math.min(start + MAX_SELECTION_ARGS, typedUuids.size()));
+            readValues(client, Observations.CONCEPT_UUID + " in ("
+                    + Joiner.on(", ").join(Collections.nCopies(uuids.size(), "?")) + ") and "
+                    + Observations.VALUE + " is not null and "
+                    + Observations.VALUE_NUMBER + " is null and "
+                    + Observations.VALUE_CODED + " is null and "
+                    + Observations.VALUE_MILLIS + " is null",
+                uuids.toArray(new String[uuids.size()]), valuesByConcept);
+        }
+        for (String uuid : retypedUuids) {
+            readValues(client, Observations.CONCEPT_UUID + " = ? and "
+                + Observations.VALUE + " is not null", new String[] {uuid}, valuesByConcept);
+        }
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : valuesByConcept.entrySet()) {
+            String conceptUuid = entry.getKey();
+            for (String value : entry.getValue()) {
+                ContentValues values = getBackfillValues(
+                    types.get(conceptUuid), value, retypedUuids.contains(conceptUuid));
+                if (values != null) {
+                    ops.add(ContentProviderOperation.newUpdate(Observations.CONTENT_URI)
+                        .withValues(values)
+                        .withSelection(Observations.CONCEPT_UUID + " = ? and "
+                            + Observations.VALUE + " = ?", new String[] {conceptUuid, value})
+                        .build());
+                }
+            }
+        }
+        if (!ops.isEmpty()) {
+            client.applyBatch(ops);
+            LOG.i("Backfilled typed values for %d distinct observation values", ops.size());
+        }
+        return ops.size();
+    }
+
+    /** Gets the UUIDs of the given concepts whose values have a typed form. */
+    static List<String> getTypedConceptUuids(Collection<JsonConcept> concepts) {
+        List<String> uuids = new ArrayList<>();
+        for (JsonConcept concept : concepts) {
+            if (concept.type == null) continue;
+            switch (concept.type) {
+                case NUMERIC:
+                case CODED:
+                case BOOLEAN:
+                case DATETIME:
+                    uuids.add(concept.uuid);
+                    break;
+            }
+        }
+        return uuids;
+    }
+
+    /**
+     * Gets the typed values to write for stored observations of a concept with the given type
+     * and value, or null if there is nothing to write.  Values that have no typed form are
+     * written only for retyped concepts, to clear the columns for their old type.
+     */
+    static @Nullable ContentValues getBackfillValues(
+        @Nullable ConceptType type, String value, boolean retyped) {
+        ContentValues values = new ContentValues();
+        put(values, type, value);
+        if (!retyped && values.get(Observations.VALUE_NUMBER) == null
+            && values.get(Observations.VALUE_CODED) == null
+            && values.get(Observations.VALUE_MILLIS) == null) {
+            return null;
+        }
+        return values;
+    }
+
+    private static void readValues(
+        ContentProviderClient client, String selection, @Nullable String[] args,
+        Map<String, Set<String>> valuesByConcept) throws RemoteException {
+        try (Cursor c = client.query(Observations.CONTENT_URI,
+            new String[] {Observations.CONCEPT_UUID, Observations.VALUE},
+            selection, args, null)) {
+            while (c.moveToNext()) {
+                String conceptUuid = Utils.getString(c, Observations.CONCEPT_UUID);
+                Set<String> values = valuesByConcept.get(conceptUuid);
+                if (values == null) {
+                    values = new HashSet<>();
+                    valuesByConcept.put(conceptUuid, values);
+                }
+                values.add(Utils.getString(c, Observations.VALUE));
+            }
+        }
+    }
+
+    private TypedObsValues() {}
+}
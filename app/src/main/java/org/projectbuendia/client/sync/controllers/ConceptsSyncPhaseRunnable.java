@@ -4,6 +4,8 @@ import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.SyncResult;
+import android.database.Cursor;
+import android.os.RemoteException;
 
 import com.android.volley.toolbox.RequestFuture;
 
@@ -12,11 +14,17 @@ import org.projectbuendia.client.json.JsonConcept;
 import org.projectbuendia.client.json.JsonConceptResponse;
 import org.projectbuendia.client.net.OpenMrsChartServer;
 import org.projectbuendia.client.providers.Contracts;
-import org.projectbuendia.client.sync.ChartDataHelper;
+import org.projectbuendia.client.sync.TypedObsValues;
 import org.projectbuendia.client.utils.Logger;
+import org.projectbuendia.client.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Handles syncing concepts. All concepts are fetched everytime. This is okay because concepts are
@@ -34,7 +42,9 @@ public class ConceptsSyncPhaseRunnable implements SyncPhaseRunnable {
         chartServer.getConcepts(future, future); // errors handled by caller
         ArrayList<ContentValues> conceptInserts = new ArrayList<>();
         ArrayList<ContentValues> conceptNameInserts = new ArrayList<>();
-        for (JsonConcept concept : future.get().results) {
+        List<JsonConcept> concepts = Arrays.asList(future.get().results);
+        Set<String> retypedUuids = getRetypedConcepts(providerClient, concepts);
+        for (JsonConcept concept : concepts) {
             // This is safe because we have implemented insert on the content provider
             // with replace.
             ContentValues conceptInsert = new ContentValues();
@@ -67,6 +77,32 @@ public class ConceptsSyncPhaseRunnable implements SyncPhaseRunnable {
         providerClient.bulkInsert(Contracts.ConceptNames.CONTENT_URI,
                 conceptNameInserts.toArray(new ContentValues[conceptNameInserts.size()]));
 
-        ChartDataHelper.invalidateLoadedConceptData();
+        App.getConceptRegistry().update(concepts);
+
+        // Observations stored before their concepts were known, or under an old type, lack
+        // the typed values that the chart's statistics are computed from.
+        TypedObsValues.backfill(providerClient, concepts, retypedUuids);
+    }
+
+    /** Gets the UUIDs of the given concepts whose type differs from the one in the app db. */
+    private static Set<String> getRetypedConcepts(
+        ContentProviderClient providerClient, List<JsonConcept> concepts) throws RemoteException {
+        Map<String, String> oldTypes = new HashMap<>();
+        try (Cursor c = providerClient.query(Contracts.Concepts.CONTENT_URI,
+            new String[] {Contracts.Concepts.UUID, Contracts.Concepts.CONCEPT_TYPE},
+            null, null, null)) {
+            while (c.moveToNext()) {
+                oldTypes.put(Utils.getString(c, Contracts.Concepts.UUID),
+                    Utils.getString(c, Contracts.Concepts.CONCEPT_TYPE));
+            }
+        }
+        Set<String> retyped = new HashSet<>();
+        for (JsonConcept concept : concepts) {
+            String oldType = oldTypes.get(concept.uuid);
+            if (oldType != null && concept.type != null && !oldType.equals(concept.type.name())) {
+                retyped.add(concept.uuid);
+            }
+        }
+        return retyped;
     }
 }
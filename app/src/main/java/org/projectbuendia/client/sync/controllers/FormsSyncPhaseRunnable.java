@@ -10,15 +10,21 @@ import android.net.Uri;
 
 import com.android.volley.toolbox.RequestFuture;
 
+import org.odk.collect.android.logic.FormDefCache;
 import org.projectbuendia.client.App;
 import org.projectbuendia.client.json.JsonForm;
 import org.projectbuendia.client.models.Form;
+import org.projectbuendia.client.net.OdkXformSyncTask;
+import org.projectbuendia.client.net.OpenMrsXformIndexEntry;
+import org.projectbuendia.client.net.OpenMrsXformsConnection;
 import org.projectbuendia.client.providers.Contracts;
 import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -40,8 +46,59 @@ public class FormsSyncPhaseRunnable implements SyncPhaseRunnable {
         LOG.i("Finished updating forms (" + ops.size() + " db ops)");
         contentResolver.notifyChange(Contracts.Forms.CONTENT_URI, null, false);
 
-        // TODO: Re-enable prefetching all forms when we work out what to do with the EventBus.
-        //OdkActivityLauncher.fetchAndCacheAllXforms();
+        prefetchXforms();
+    }
+
+    /**
+     * Fetches any new or changed xforms into ODK storage and prepares them to open quickly, so
+     * that opening a form doesn't have to wait for a download or an XML parse.  Preparing only
+     * warms forms into {@link FormDefCache} while it has room, so the forms that clinicians have
+     * been opening stay warm; the rest just get their .formdef files written.  This is done
+     * here rather than with {@link OdkXformSyncTask}, which reports to the UI via the EventBus.
+     * Failures are only logged; the forms will be fetched when they are opened instead.
+     */
+    private static void prefetchXforms() throws InterruptedException {
+        OpenMrsXformsConnection connection = new OpenMrsXformsConnection(
+            App.getConnectionDetails());
+        RequestFuture<List<OpenMrsXformIndexEntry>> listFuture = RequestFuture.newFuture();
+        connection.listXforms(listFuture, listFuture);
+        List<OpenMrsXformIndexEntry> entries;
+        try {
+            entries = listFuture.get();
+        } catch (ExecutionException e) {
+            LOG.w(e, "Failed to list xforms; skipping prefetch");
+            return;
+        }
+
+        // Request all the changed forms at once, so they download in parallel.
+        Map<OpenMrsXformIndexEntry, RequestFuture<String>> fetches = new LinkedHashMap<>();
+        List<File> unchangedForms = new ArrayList<>();
+        for (OpenMrsXformIndexEntry entry : entries) {
+            File path = entry.makeFileForForm();
+            if (OdkXformSyncTask.needsUpdate(entry, path)) {
+                RequestFuture<String> future = RequestFuture.newFuture();
+                connection.getXform(entry.uuid, future, future);
+                fetches.put(entry, future);
+            } else {
+                unchangedForms.add(path);
+            }
+        }
+
+        for (Map.Entry<OpenMrsXformIndexEntry, RequestFuture<String>> fetch : fetches.entrySet()) {
+            OpenMrsXformIndexEntry entry = fetch.getKey();
+            File path = entry.makeFileForForm();
+            try {
+                if (OdkXformSyncTask.writeFormToDb(fetch.getValue().get(), path)) {
+                    LOG.i("Prefetched xform " + entry.uuid);
+                    FormDefCache.prepare(path);
+                }
+            } catch (ExecutionException e) {
+                LOG.w(e, "Failed to prefetch xform " + entry.uuid);
+            }
+        }
+        for (File path : unchangedForms) {
+            FormDefCache.prepare(path);
+        }
     }
 
     private static List<ContentProviderOperation> getFormUpdateOps(SyncResult syncResult)
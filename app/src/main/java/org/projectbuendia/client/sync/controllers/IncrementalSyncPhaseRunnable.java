@@ -21,23 +21,31 @@ import android.net.Uri;
 import android.support.annotation.Nullable;
 
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Response;
+import com.android.volley.TimeoutError;
 import com.android.volley.toolbox.RequestFuture;
 
 import org.projectbuendia.client.App;
 import org.projectbuendia.client.json.IncrementalSyncResponse;
-import org.projectbuendia.client.json.Serializers;
-import org.projectbuendia.client.net.Common;
 import org.projectbuendia.client.net.GsonRequest;
 import org.projectbuendia.client.net.OpenMrsConnectionDetails;
+import org.projectbuendia.client.net.TransferStats;
+import org.projectbuendia.client.net.VolleyRequestQueue;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.providers.Contracts.SyncTokens;
 import org.projectbuendia.client.sync.SyncAdapter;
+import org.projectbuendia.client.sync.SyncPageSizer;
+import org.projectbuendia.client.sync.SyncTelemetry;
 import org.projectbuendia.client.utils.Logger;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import static org.projectbuendia.client.net.OpenMrsServer.wrapErrorListener;
 
@@ -57,6 +65,15 @@ public abstract class IncrementalSyncPhaseRunnable<T> implements SyncPhaseRunnab
 
     private static final Logger LOG = Logger.create();
 
+    /** The most times to request a page that keeps getting lost before giving up the sync. */
+    private static final int MAX_PAGE_ATTEMPTS = 4;
+
+    /**
+     * Page sizers by resource type, shared by all syncs so that what is learned is kept.
+     * Single-patient syncs have sizers of their own, as their pages are mostly small.
+     */
+    private static final Map<String, SyncPageSizer> sPageSizers = new HashMap<>();
+
     private final String resourceType;
     private final Contracts.Table dbTable;
     private final Class<T> clazz;
@@ -81,6 +98,11 @@ public abstract class IncrementalSyncPhaseRunnable<T> implements SyncPhaseRunnab
         this.clazz = clazz;
     }
 
+    /** Returns the type of resource fetched by this phase, e.g. "observations". */
+    public String getResourceType() {
+        return resourceType;
+    }
+
     @Override
     public final void sync(ContentResolver contentResolver, SyncResult syncResult,
         ContentProviderClient providerClient) throws Throwable {
@@ -88,27 +110,148 @@ public abstract class IncrementalSyncPhaseRunnable<T> implements SyncPhaseRunnab
         beforeSyncStarted(contentResolver, syncResult, providerClient);
 
         String syncToken = SyncAdapter.getLastSyncToken(providerClient, dbTable);
+        fetchAndApply(providerClient, syncResult, dbTable.name, syncToken, null);
+        // The table-wide token is now past every patient's token, so they're no longer needed;
+        // a patient sync without a token of its own starts from the table-wide one.
+        int deleted = providerClient.delete(SyncTokens.CONTENT_URI,
+            SyncTokens.TABLE_NAME + " GLOB ?", new String[] {getPatientSyncTokenKey("*")});
+        if (deleted > 0) {
+            LOG.i("Deleted %d per-patient sync tokens for %s", deleted, dbTable);
+        }
+
+        afterSyncFinished(contentResolver, syncResult, providerClient);
+    }
+
+    /**
+     * Fetches and applies only the records belonging to one patient.  Progress is tracked with a
+     * sync token stored under a patient-specific key, so repeated calls only transfer what has
+     * changed for that patient.  If there is no such token yet, we start from the table-wide
+     * token, as everything before it is already in the local database.
+     * <p>
+     * Unlike {@link #sync(ContentResolver, SyncResult, ContentProviderClient)}, this doesn't call
+     * the {@link #beforeSyncStarted} hook, which may act on the whole table.
+     */
+    public final void syncPatient(ContentResolver contentResolver, SyncResult syncResult,
+        ContentProviderClient providerClient, String patientUuid) throws Throwable {
+        syncPatient(contentResolver, syncResult, providerClient, patientUuid, false);
+    }
+
+    /**
+     * Like {@link #syncPatient(ContentResolver, SyncResult, ContentProviderClient, String)},
+     * but if entireHistory is true, fetches all of the patient's records from the beginning,
+     * e.g. to restore a history that was removed locally by {@link
+     * org.projectbuendia.client.sync.PatientArchiver}.
+     */
+    public final void syncPatient(ContentResolver contentResolver, SyncResult syncResult,
+        ContentProviderClient providerClient, String patientUuid, boolean entireHistory)
+        throws Throwable {
+
+        String tokenKey = getPatientSyncTokenKey(patientUuid);
+        String syncToken = null;
+        if (!entireHistory) {
+            syncToken = SyncAdapter.getLastSyncToken(providerClient, tokenKey);
+            if (syncToken == null) {
+                syncToken = SyncAdapter.getLastSyncToken(providerClient, dbTable);
+            }
+        }
+        fetchAndApply(providerClient, syncResult, tokenKey, syncToken, patientUuid);
+
+        afterSyncFinished(contentResolver, syncResult, providerClient);
+    }
+
+    /** Returns the key under which the sync token for a single patient's records is stored. */
+    public String getPatientSyncTokenKey(String patientUuid) {
+        return dbTable.name + ":" + patientUuid;
+    }
+
+    private void fetchAndApply(
+            ContentProviderClient providerClient,
+            SyncResult syncResult,
+            String tokenKey,
+            @Nullable String syncToken,
+            @Nullable String patientUuid) throws Throwable {
         LOG.i("Using sync token `%s`", syncToken);
 
+        SyncPageSizer sizer = getPageSizer(
+            patientUuid != null ? resourceType + ":patient" : resourceType);
         IncrementalSyncResponse<T> response;
+        int failedAttempts = 0;
 
-        do {
+        while (true) {
+            int pageSize = sizer.getPageSize();
             RequestFuture<IncrementalSyncResponse<T>> future = RequestFuture.newFuture();
-            createRequest(syncToken, future, future);
-            response = future.get();
+            PageStats page = new PageStats();
+            TransferStats transferStats = App.getConnectionDetails().getTransferStats();
+            long startWireBytes = transferStats.getResponseWireBytes();
+            long startNanos = System.nanoTime();
+            createRequest(syncToken, patientUuid, pageSize, sizer.getTimeoutMillis(), page,
+                future, future);
+            try {
+                response = future.get();
+            } catch (ExecutionException e) {
+                if (!isPageLost(e) || ++failedAttempts >= MAX_PAGE_ATTEMPTS) {
+                    throw e;
+                }
+                sizer.recordFailure();
+                LOG.w("Page of %s was lost (attempt %d); retrying with %s",
+                    resourceType, failedAttempts, sizer);
+                continue;
+            }
+            failedAttempts = 0;
+            long pageMillis = (System.nanoTime() - startNanos)/1000000;
+            // Other requests may have finished meanwhile, but sync pages dominate the traffic.
+            long wireBytes = transferStats.getResponseWireBytes() - startWireBytes;
+            int numRecords = response.results == null ? 0 : response.results.length;
+            sizer.recordPage(numRecords, page.decodedBytes, pageMillis);
+            long dbStartNanos = System.nanoTime();
             ArrayList<ContentProviderOperation> ops =
                     getUpdateOps(response.results, syncResult);
             providerClient.applyBatch(ops);
-            LOG.i("Updated page of %s (%d db ops)", resourceType, ops.size());
+            long dbMillis = (System.nanoTime() - dbStartNanos)/1000000;
+            LOG.i("Updated page of %s (%d of %d records requested, %d bytes, %d ms, %d db ops "
+                + "in %d ms); now %s", resourceType, numRecords, pageSize, page.decodedBytes,
+                pageMillis, ops.size(), dbMillis, sizer);
+            SyncTelemetry.Recorder recorder = SyncTelemetry.getRecorder();
+            if (recorder != null) {
+                recorder.recordPage(numRecords, page.decodedBytes, Math.max(0, wireBytes),
+                    Math.max(0, pageMillis - page.parseMillis), page.parseMillis, dbMillis);
+            }
 
             // Update sync token
             syncToken = response.syncToken;
-        } while (response.more);
+            if (!response.more) {
+                break;
+            }
+        }
 
-        LOG.i("Saving new sync token `%s`", syncToken);
-        SyncAdapter.storeSyncToken(providerClient, dbTable, response.syncToken);
+        LOG.i("Saving new sync token `%s` as %s", syncToken, tokenKey);
+        SyncAdapter.storeSyncToken(providerClient, tokenKey, response.syncToken);
+    }
 
-        afterSyncFinished(contentResolver, syncResult, providerClient);
+    /** Returns the page sizer with the given key, which lasts as long as the process. */
+    private static SyncPageSizer getPageSizer(String key) {
+        synchronized (sPageSizers) {
+            SyncPageSizer sizer = sPageSizers.get(key);
+            if (sizer == null) {
+                sizer = new SyncPageSizer();
+                sPageSizers.put(key, sizer);
+            }
+            return sizer;
+        }
+    }
+
+    /**
+     * Returns true if a page request failed without a response, as happens on a slow or lossy
+     * link, rather than being refused by the server.
+     */
+    private static boolean isPageLost(ExecutionException e) {
+        // OpenMrsServer wraps errors to improve their messages, so look along the cause chain.
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof TimeoutError || t instanceof NetworkError) {
+                return true;
+            }
+        }
+        return false;
     }
 
     // Mandatory callback
@@ -138,6 +281,10 @@ public abstract class IncrementalSyncPhaseRunnable<T> implements SyncPhaseRunnab
 
     private void createRequest(
             @Nullable String lastSyncToken,
+            @Nullable String patientUuid,
+            int pageSize,
+            int timeoutMillis,
+            final PageStats page,
             Response.Listener<IncrementalSyncResponse<T>> successListener,
             final Response.ErrorListener errorListener) {
         OpenMrsConnectionDetails connectionDetails = App.getConnectionDetails();
@@ -146,16 +293,39 @@ public abstract class IncrementalSyncPhaseRunnable<T> implements SyncPhaseRunnab
         if (lastSyncToken != null) {
             url.appendQueryParameter("since", lastSyncToken);
         }
-        GsonRequest<IncrementalSyncResponse<T>> request = new GsonRequest<>(
+        if (patientUuid != null) {
+            url.appendQueryParameter("patient", patientUuid);
+        }
+        url.appendQueryParameter("limit", String.valueOf(pageSize));
+        GsonRequest<IncrementalSyncResponse<T>> request =
+            new GsonRequest<IncrementalSyncResponse<T>>(
                 url.build().toString(),
                 new IncrementalSyncResponseType(clazz),
                 connectionDetails.addAuthHeader(new HashMap<String, String>()),
                 successListener,
-                wrapErrorListener(errorListener));
-        Serializers.registerTo(request.getGson());
-        request.setRetryPolicy(
-                new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f));
-        connectionDetails.getVolley().addToRequestQueue(request);
+                wrapErrorListener(errorListener)) {
+                @Override protected Response<IncrementalSyncResponse<T>> parseNetworkResponse(
+                        NetworkResponse response) {
+                    long startNanos = System.nanoTime();
+                    Response<IncrementalSyncResponse<T>> result =
+                        super.parseNetworkResponse(response);
+                    page.decodedBytes = response.data.length;
+                    page.parseMillis = (System.nanoTime() - startNanos)/1000000;
+                    return result;
+                }
+            };
+        // Lost pages are retried in fetchAndApply, with a smaller page, rather than by Volley.
+        request.setRetryPolicy(new DefaultRetryPolicy(timeoutMillis, 0, 1f));
+        // A single patient's records are fetched while a user has that patient's chart open, so
+        // they shouldn't wait behind a full sync.
+        connectionDetails.getVolley().addToRequestQueue(request, patientUuid != null
+            ? VolleyRequestQueue.Lane.INTERACTIVE : VolleyRequestQueue.Lane.SYNC);
+    }
+
+    /** Measurements of a page, taken on the network thread that fetched it. */
+    private static class PageStats {
+        volatile long decodedBytes;
+        volatile long parseMillis;
     }
 
     private static class IncrementalSyncResponseType implements ParameterizedType {
@@ -21,6 +21,7 @@ import android.net.Uri;
 import org.projectbuendia.client.json.JsonObservation;
 import org.projectbuendia.client.providers.Contracts;
 import org.projectbuendia.client.providers.Contracts.Observations;
+import org.projectbuendia.client.sync.TypedObsValues;
 import org.projectbuendia.client.utils.Logger;
 
 import java.util.ArrayList;
@@ -73,7 +74,10 @@ public class ObservationsSyncPhaseRunnable extends IncrementalSyncPhaseRunnable<
                 .withSelection(
                         Observations.PATIENT_UUID + " =? AND " +
                         Observations.CONCEPT_UUID + " =? AND " +
-                        Observations.UUID + " IS NULL",
+                        Observations.UUID + " IS NULL AND " +
+                        // Keep observations whose encounter is still waiting in the outbox.
+                        Observations.ENCOUNTER_UUID + " NOT IN (SELECT " +
+                        Contracts.Outbox.ITEM_UUID + " FROM " + Contracts.Table.OUTBOX + ")",
                         new String[] { observation.patient_uuid, observation.concept_uuid })
                 .build();
     }
@@ -89,6 +93,7 @@ public class ObservationsSyncPhaseRunnable extends IncrementalSyncPhaseRunnable<
         cvs.put(Observations.CONCEPT_UUID, observation.concept_uuid);
         cvs.put(Observations.ENTERER_UUID, observation.enterer_uuid);
         cvs.put(Observations.VALUE, observation.value);
+        TypedObsValues.put(cvs, observation.concept_uuid, observation.value);
 
         return cvs;
     }
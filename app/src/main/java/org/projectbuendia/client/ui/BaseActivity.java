@@ -31,6 +31,7 @@ import org.projectbuendia.client.R;
 import org.projectbuendia.client.diagnostics.HealthIssue;
 import org.projectbuendia.client.diagnostics.TroubleshootingAction;
 import org.projectbuendia.client.events.diagnostics.TroubleshootingActionsChangedEvent;
+import org.projectbuendia.client.events.sync.OutboxWriteRejectedEvent;
 import org.projectbuendia.client.updater.AvailableUpdateInfo;
 import org.projectbuendia.client.updater.DownloadedUpdateInfo;
 import org.projectbuendia.client.utils.Logger;
@@ -368,6 +369,41 @@ public abstract class BaseActivity extends FragmentActivity {
         }
     }
 
+    /** Called when a queued write has been refused by the server and exists only locally. */
+    public void onEventMainThread(final OutboxWriteRejectedEvent event) {
+        snackBar(R.string.outbox_write_rejected, R.string.troubleshoot_action_more_info,
+            new View.OnClickListener() {
+                @Override public void onClick(View view) {
+                    showRejectedWriteDialog(event);
+                }
+            }, 998, true);
+    }
+
+    /** Explains a refused write and lets the user send the refused writes again or undo them. */
+    private void showRejectedWriteDialog(OutboxWriteRejectedEvent event) {
+        new AlertDialog.Builder(BaseActivity.this)
+            .setIcon(android.R.drawable.ic_dialog_info)
+            .setTitle(R.string.outbox_write_rejected)
+            .setMessage(getString(R.string.outbox_write_rejected_details,
+                event.action, event.itemUuid, event.message))
+            .setNeutralButton(android.R.string.ok, null)
+            .setPositiveButton(R.string.outbox_retry_rejected,
+                new DialogInterface.OnClickListener() {
+                    @Override public void onClick(DialogInterface dialog, int which) {
+                        App.getOutboxManager().retryRejected();
+                        snackBarDismiss(R.string.outbox_write_rejected);
+                    }
+                })
+            .setNegativeButton(R.string.outbox_discard_rejected,
+                new DialogInterface.OnClickListener() {
+                    @Override public void onClick(DialogInterface dialog, int which) {
+                        App.getOutboxManager().discardRejected();
+                        snackBarDismiss(R.string.outbox_write_rejected);
+                    }
+                })
+            .show();
+    }
+
     private void showMoreInfoDialog(String title, String message,
                                     boolean includeSettingsButton) {
         AlertDialog.Builder builder = new AlertDialog.Builder(BaseActivity.this)
@@ -24,15 +24,13 @@ import com.android.volley.Response;
 import com.android.volley.TimeoutError;
 import com.android.volley.VolleyError;
 import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import org.javarosa.core.model.data.IAnswerData;
 import org.javarosa.core.model.instance.TreeElement;
 import org.javarosa.xform.parse.XFormParser;
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.odk.collect.android.activities.FormEntryActivity;
 import org.odk.collect.android.application.Collect;
@@ -46,15 +44,16 @@ import org.projectbuendia.client.events.FetchXformFailedEvent;
 import org.projectbuendia.client.events.SubmitXformFailedEvent;
 import org.projectbuendia.client.events.SubmitXformSucceededEvent;
 import org.projectbuendia.client.exception.ValidationException;
-import org.projectbuendia.client.json.JsonEncounter;
 import org.projectbuendia.client.json.JsonUser;
-import org.projectbuendia.client.json.Serializers;
-import org.projectbuendia.client.models.Encounter;
 import org.projectbuendia.client.net.OdkDatabase;
 import org.projectbuendia.client.net.OdkXformSyncTask;
 import org.projectbuendia.client.net.OpenMrsXformIndexEntry;
 import org.projectbuendia.client.net.OpenMrsXformsConnection;
+import org.projectbuendia.client.net.Server;
 import org.projectbuendia.client.providers.Contracts;
+import org.projectbuendia.client.sync.ConceptRegistry;
+import org.projectbuendia.client.sync.OutboxManager;
+import org.projectbuendia.client.sync.TypedObsValues;
 import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
@@ -64,11 +63,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -336,26 +333,31 @@ public class OdkActivityLauncher {
             // get the root of the saved and template instances
             final TreeElement savedRoot = XFormParser.restoreDataModel(fileBytes, null).getRoot();
 
-            sendFormToServer(patientUuid, xml,
+            if (patientUuid != null) {
+                // Save the observations locally right away and let the outbox submit the form,
+                // so that data entry never waits on the network.  Naming the encounter here lets
+                // the server recognize the form if it is submitted twice.
+                String encounterUuid = UUID.randomUUID().toString();
+                JSONObject body = OpenMrsXformsConnection.createXformInstanceBody(
+                    patientUuid, App.getUserManager().getActiveUser().id, xml);
+                body.put(Server.ENCOUNTER_UUID_KEY, encounterUuid);
+                updateObservationCacheFromXformData(
+                    patientUuid, encounterUuid, savedRoot, context.getContentResolver());
+                App.getOutboxManager().enqueue(
+                    OutboxManager.Action.SUBMIT_XFORM, encounterUuid, body);
+                if (!settings.getKeepFormInstancesLocally()) {
+                    deleteLocalFormInstances(formIdToDelete);
+                }
+                eventBus.post(new SubmitXformSucceededEvent());
+                return;
+            }
+
+            // Forms that create a new patient still go straight to the server, which creates
+            // the patient from the form.
+            sendFormToServer(null, xml,
                 new Response.Listener<JSONObject>() {
                     @Override public void onResponse(JSONObject response) {
                         LOG.i("Created new encounter successfully on server" + response.toString());
-                        // Only locally cache new observations, not new patients.
-                        if (patientUuid != null) {
-                            if (!updateObservationCache(
-                                    response,
-                                    context.getContentResolver())) {
-                                LOG.w("Couldn't update observations from Xforms response, " +
-                                        "updating from local form instance instead.");
-                                updateObservationCacheFromXformData(
-                                        patientUuid,
-                                        savedRoot,
-                                        context.getContentResolver());
-                            }
-                        } else {
-                            LOG.i("Didn't update observations cache, encounter didn't have a " +
-                                    "patient UUID.");
-                        }
                         if (!settings.getKeepFormInstancesLocally()) {
                             deleteLocalFormInstances(formIdToDelete);
                         }
@@ -371,6 +373,10 @@ public class OdkActivityLauncher {
             LOG.e(ve.getMessage());
             eventBus.post(
                     new SubmitXformFailedEvent(SubmitXformFailedEvent.Reason.CLIENT_ERROR));
+        } catch (JSONException e) {
+            LOG.e(e, "Failed to build the form submission request");
+            eventBus.post(
+                    new SubmitXformFailedEvent(SubmitXformFailedEvent.Reason.CLIENT_ERROR));
         }
     }
 
@@ -578,31 +584,12 @@ public class OdkActivityLauncher {
         }
     }
 
-    /**
-     * Updates observations locally from a JSON response. Returns {@code true} if any observations
-     * were added.
-     */
-    private static boolean updateObservationCache(JSONObject response, ContentResolver resolver) {
-        // TODO: don't parse this here or do a roundtrip text --> JSON --> text --> GSON conversion
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        Serializers.registerTo(gsonBuilder);
-        Gson gson = gsonBuilder.create();
-        JsonEncounter jsonEncounter = gson.fromJson(response.toString(), JsonEncounter.class);
-        Encounter encounter = Encounter.fromJson(jsonEncounter.patient_uuid, jsonEncounter);
-        ContentValues[] values = encounter.toContentValuesArray();
-        if (values.length > 0) {
-            resolver.bulkInsert(Contracts.Observations.CONTENT_URI, values);
-        }
-        return values.length > 0;
-    }
-
     /**
      * Updates observations locally from an Xforms XML document. Use this when observations need to
      * be updated locally, and haven't been sent to a server yet.
-     * TODO: remove this once the server reliably sends Encounter data back with Xform submission.
      */
-    private static void updateObservationCacheFromXformData(
-            String patientUuid, TreeElement savedRoot, ContentResolver resolver) {
+    private static void updateObservationCacheFromXformData(String patientUuid,
+            String encounterUuid, TreeElement savedRoot, ContentResolver resolver) {
         ContentValues common = new ContentValues();
         // It's critical that UUID is {@code null} for temporary observations, so we make it
         // explicit here. See {@link Contracts.Observations.UUID} for details.
@@ -612,59 +599,46 @@ public class OdkActivityLauncher {
         final DateTime encounterTime = getEncounterAnswerDateTime(savedRoot);
         if(encounterTime == null) return;
         common.put(Contracts.Observations.ENCOUNTER_MILLIS, encounterTime.getMillis());
-        common.put(Contracts.Observations.ENCOUNTER_UUID, UUID.randomUUID().toString());
+        common.put(Contracts.Observations.ENCOUNTER_UUID, encounterUuid);
 
-        Set<Integer> xformConceptIds = new HashSet<>();
-        List<ContentValues> toInsert = getAnsweredObservations(common, savedRoot, xformConceptIds);
-        Map<String, String> xformIdToUuid = mapFormConceptIdToUuid(xformConceptIds, resolver);
+        Set<String> codedConceptIds = new HashSet<>();
+        List<ContentValues> toInsert =
+            getAnsweredObservations(common, savedRoot, codedConceptIds);
+        ConceptRegistry concepts = App.getConceptRegistry();
 
-        // Remap concept ids to uuids, skipping anything we can't remap.
+        // Remap concept ids to uuids, skipping anything we can't remap.  Only the answers to
+        // coded questions are concept ids; any other answer is stored as it is, even if it
+        // happens to look like one.
         for (Iterator<ContentValues> i = toInsert.iterator(); i.hasNext(); ) {
             ContentValues values = i.next();
-            if (!mapIdToUuid(xformIdToUuid, values, Contracts.Observations.CONCEPT_UUID)) {
+            boolean coded = codedConceptIds.contains(
+                values.getAsString(Contracts.Observations.CONCEPT_UUID));
+            if (!mapIdToUuid(concepts, values, Contracts.Observations.CONCEPT_UUID)) {
                 i.remove();
+                continue;
+            }
+            if (coded) {
+                mapIdToUuid(concepts, values, Contracts.Observations.VALUE);
             }
-            mapIdToUuid(xformIdToUuid, values, Contracts.Observations.VALUE);
+            TypedObsValues.put(values, values.getAsString(Contracts.Observations.CONCEPT_UUID),
+                values.getAsString(Contracts.Observations.VALUE));
         }
 
         resolver.bulkInsert(Contracts.Observations.CONTENT_URI,
                 toInsert.toArray(new ContentValues[toInsert.size()]));
     }
 
-    /** Get a map from XForm ids to UUIDs from our local concept database. */
-    private static Map<String, String> mapFormConceptIdToUuid(Set<Integer> xformConceptIds,
-                                                              ContentResolver resolver) {
-        String inClause = Joiner.on(",").join(xformConceptIds);
-
-        HashMap<String, String> xformIdToUuid = new HashMap<>();
-        Cursor cursor = resolver.query(Contracts.Concepts.CONTENT_URI,
-                new String[] {Contracts.Concepts.UUID, Contracts.Concepts.XFORM_ID},
-                Contracts.Concepts.XFORM_ID + " IN (" + inClause + ")",
-                null, null);
-
-        try {
-            while (cursor.moveToNext()) {
-                xformIdToUuid.put(Utils.getString(cursor, Contracts.Concepts.XFORM_ID),
-                        Utils.getString(cursor, Contracts.Concepts.UUID));
-            }
-        } finally {
-            cursor.close();
-        }
-
-        return xformIdToUuid;
-    }
-
     /**
      * Returns a {@link ContentValues} list containing the id concept and the answer valeu from
      * all answered observations. Returns a empty {@link List} if no observation was answered.
      *
      * @param common                        the current content values.
      * @param savedRoot                     the root tree form element
-     * @param xformConceptIdsAccumulator    the set to store the form concept ids found
+     * @param codedConceptIdsAccumulator    the set to store the ids of coded questions found
      */
     private static List<ContentValues> getAnsweredObservations(ContentValues common,
                                                                TreeElement savedRoot,
-                                                               Set<Integer> xformConceptIdsAccumulator) {
+                                                               Set<String> codedConceptIdsAccumulator) {
         List<ContentValues> answeredObservations = new ArrayList<>();
         for (int i = 0; i < savedRoot.getNumChildren(); i++) {
             TreeElement group = savedRoot.getChildAt(i);
@@ -678,7 +652,7 @@ public class OdkActivityLauncher {
                 // Get the concept for the question.
                 // eg "5088^Temperature (C)^99DCT"
                 String encodedConcept = (String) openmrsConcept.getValue().getValue();
-                Integer id = getConceptId(xformConceptIdsAccumulator, encodedConcept);
+                Integer id = getConceptId(encodedConcept);
                 if (id == null) continue;
 
                 // Also get for the answer if a coded question
@@ -689,7 +663,8 @@ public class OdkActivityLauncher {
                 Object answerObject = answer.getValue();
                 String value;
                 if ("CWE".equals(openmrsDatatype.getValue().getValue())) {
-                    value = getConceptId(xformConceptIdsAccumulator, answerObject.toString()).toString();
+                    value = getConceptId(answerObject.toString()).toString();
+                    codedConceptIdsAccumulator.add(id.toString());
                 } else {
                     value = answerObject.toString();
                 }
@@ -731,18 +706,10 @@ public class OdkActivityLauncher {
         }
     }
 
-    private static Integer getConceptId(Set<Integer> accumulator, String encodedConcept) {
-        Integer id = getConceptId(encodedConcept);
-        if (id != null) {
-            accumulator.add(id);
-        }
-        return id;
-    }
-
     private static boolean mapIdToUuid(
-            Map<String, String> idToUuid, ContentValues values, String key) {
+            ConceptRegistry concepts, ContentValues values, String key) {
         String id = (String) values.get(key);
-        String uuid = idToUuid.get(id);
+        String uuid = concepts.getUuidForXformId(id);
         if (uuid == null) {
             return false;
         }
@@ -59,11 +59,14 @@ public class SettingsActivity extends PreferenceActivity {
         "openmrs_root_url",
         "package_server_root_url",
         "apk_update_interval_secs",
+        "archive_after_days",
         "keep_form_instances_locally",
         "xform_update_client_cache",
         "incremental_observation_update",
         "require_wifi"
     };
+    /** The key of the item that opens {@link SyncDiagnosticsActivity}; it has no value. */
+    static final String SYNC_DIAGNOSTICS_KEY = "sync_diagnostics";
     static boolean updatingPrefValues = false;
     /** A listener that performs updates when any preference's value changes. */
     static final Preference.OnPreferenceChangeListener sPrefListener =
@@ -174,6 +177,19 @@ public class SettingsActivity extends PreferenceActivity {
         for (String key : prefKeys) {
             initPref(fragment.findPreference(key));
         }
+        initSyncDiagnosticsPref(fragment.findPreference(SYNC_DIAGNOSTICS_KEY));
+    }
+
+    /** Makes the sync diagnostics item, which has no value, open the diagnostics screen. */
+    private static void initSyncDiagnosticsPref(@Nullable Preference pref) {
+        if (pref != null) {
+            pref.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override public boolean onPreferenceClick(Preference preference) {
+                    SyncDiagnosticsActivity.start(preference.getContext());
+                    return true;
+                }
+            });
+        }
     }
 
     /** Sets up the listener and summary for a preference. */
@@ -193,6 +209,7 @@ public class SettingsActivity extends PreferenceActivity {
             case "openmrs_root_url":
             case "package_server_root_url":
             case "apk_update_interval_secs":
+            case "archive_after_days":
                 pref.setSummary(str);
         }
     }
@@ -252,6 +269,7 @@ public class SettingsActivity extends PreferenceActivity {
         for (String key : prefKeys) {
             initPref(activity.findPreference(key));
         }
+        initSyncDiagnosticsPref(activity.findPreference(SYNC_DIAGNOSTICS_KEY));
     }
 
     /** Checks if the screen is extra-large (e.g. a 10" tablet is extra-large). */
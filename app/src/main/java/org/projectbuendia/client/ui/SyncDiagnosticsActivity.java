@@ -0,0 +1,172 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+
+package org.projectbuendia.client.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.projectbuendia.client.R;
+import org.projectbuendia.client.sync.SyncMeasurement;
+import org.projectbuendia.client.sync.SyncTelemetry;
+import org.projectbuendia.client.sync.SyncTelemetry.PhaseSummary;
+import org.projectbuendia.client.sync.SyncTelemetry.SyncSummary;
+import org.projectbuendia.client.utils.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import javax.inject.Inject;
+
+/**
+ * Shows how long recent syncs took and where the time went (network, parsing, or the database),
+ * phase by phase, and exports the underlying measurements as CSV for offline analysis.
+ */
+public class SyncDiagnosticsActivity extends BaseActivity {
+
+    private static final Logger LOG = Logger.create();
+
+    /** Number of recent syncs listed. */
+    private static final int NUM_RECENT_SYNCS = 20;
+
+    private static final DateTimeFormatter START_FORMAT =
+        DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Inject SyncTelemetry mTelemetry;
+
+    private TextView mReportView;
+
+    public static void start(Context caller) {
+        caller.startActivity(new Intent(caller, SyncDiagnosticsActivity.class));
+    }
+
+    @Override protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_diagnostics);
+        mReportView = (TextView) findViewById(R.id.sync_diagnostics_report);
+        getActionBar().setDisplayHomeAsUpEnabled(true);
+    }
+
+    @Override protected void onResume() {
+        super.onResume();
+        new LoadTask().execute();
+    }
+
+    @Override public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.sync_diagnostics, menu);
+        return true;
+    }
+
+    @Override public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                finish();
+                return true;
+            case R.id.action_export:
+                new ExportTask().execute();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /** Formats a plain-text report of the recent syncs and of each phase. */
+    static String formatReport(List<SyncMeasurement> measurements) {
+        StringBuilder report = new StringBuilder();
+        report.append("Recent syncs\n");
+        report.append(String.format("%-19s %9s %8s %10s  %s\n",
+            "Started", "Time", "Rows", "Received", "Result"));
+        List<SyncSummary> syncs = SyncTelemetry.summarizeSyncs(measurements);
+        for (SyncSummary sync : syncs.subList(0, Math.min(NUM_RECENT_SYNCS, syncs.size()))) {
+            report.append(String.format("%-19s %9s %8d %10s  %s\n",
+                START_FORMAT.print(sync.startMillis), formatMillis(sync.totalMillis), sync.rows,
+                formatBytes(sync.wireBytes), sync.succeeded ? "ok" : "failed"));
+        }
+
+        report.append("\nPhases (medians of successful runs)\n");
+        report.append(String.format("%-18s %4s %4s %9s %9s %9s %9s %9s %6s\n",
+            "Phase", "Runs", "Fail", "p50", "p90", "Network", "Parse", "DB", "Trend"));
+        for (PhaseSummary phase : SyncTelemetry.summarizePhases(measurements)) {
+            report.append(String.format("%-18s %4d %4d %9s %9s %9s %9s %9s %6s\n",
+                phase.phase, phase.numRuns, phase.numFailed, formatMillis(phase.p50Millis),
+                formatMillis(phase.p90Millis), formatMillis(phase.medianNetworkMillis),
+                formatMillis(phase.medianParseMillis), formatMillis(phase.medianDbMillis),
+                phase.trendPercent == null ? "-" : String.format("%+d%%", phase.trendPercent)));
+        }
+        return report.toString();
+    }
+
+    private static String formatMillis(long millis) {
+        if (millis < 0) return "-";
+        return millis < 1000 ? millis + " ms" : String.format("%.1f s", millis/1000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 1024 ? bytes + " B" : String.format("%.0f kB", bytes/1024.0);
+    }
+
+    /** Loads the measurements and shows the report. */
+    private class LoadTask extends AsyncTask<Void, Void, List<SyncMeasurement>> {
+        @Override protected List<SyncMeasurement> doInBackground(Void... params) {
+            return mTelemetry.getMeasurements();
+        }
+
+        @Override protected void onPostExecute(List<SyncMeasurement> measurements) {
+            mReportView.setText(measurements.isEmpty()
+                ? getString(R.string.sync_diagnostics_empty) : formatReport(measurements));
+        }
+    }
+
+    /** Writes the measurements to a CSV file and offers to share it. */
+    private class ExportTask extends AsyncTask<Void, Void, File> {
+        @Override protected File doInBackground(Void... params) {
+            File file = new File(getExternalFilesDir(null),
+                "sync-metrics-" + System.currentTimeMillis() + ".csv");
+            try {
+                Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                try {
+                    writer.write(SyncTelemetry.toCsv(mTelemetry.getMeasurements()));
+                } finally {
+                    writer.close();
+                }
+                return file;
+            } catch (IOException e) {
+                LOG.e(e, "Failed to export sync measurements to %s", file);
+                return null;
+            }
+        }
+
+        @Override protected void onPostExecute(File file) {
+            if (file == null) {
+                BigToast.show(
+                    SyncDiagnosticsActivity.this, R.string.sync_diagnostics_export_failed);
+                return;
+            }
+            Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("text/csv")
+                .putExtra(Intent.EXTRA_SUBJECT, file.getName())
+                .putExtra(Intent.EXTRA_STREAM, Uri.fromFile(file));
+            startActivity(Intent.createChooser(intent, getString(R.string.action_export)));
+        }
+    }
+}
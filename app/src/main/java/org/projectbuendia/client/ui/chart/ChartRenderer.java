@@ -4,41 +4,56 @@ import android.annotation.SuppressLint;
 import android.content.res.Resources;
 import android.util.DisplayMetrics;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 
-import com.google.common.collect.Lists;
+import com.google.common.base.Charsets;
 import com.mitchellbosecke.pebble.PebbleEngine;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.Instant;
 import org.joda.time.LocalDate;
-import org.joda.time.ReadableInstant;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.projectbuendia.client.R;
-import org.projectbuendia.client.models.AppModel;
 import org.projectbuendia.client.models.Chart;
 import org.projectbuendia.client.models.ChartItem;
 import org.projectbuendia.client.models.ChartSection;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.Obs;
 import org.projectbuendia.client.models.ObsPoint;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.models.Order;
+import org.projectbuendia.client.utils.LocalDayIndex;
 import org.projectbuendia.client.utils.Logger;
 import org.projectbuendia.client.utils.Utils;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
 
 /** Renders a patient's chart to HTML displayed in a WebView. */
 public class ChartRenderer {
@@ -47,10 +62,54 @@ public class ChartRenderer {
 
     WebView mView;  // view into which the HTML table will be rendered
     Resources mResources;  // resources used for localizing the rendering
-    private List<Obs> mLastRenderedObs;  // last set of observations rendered
+    /** Number of day columns before and after today's that are shown when the chart opens. */
+    static final int INITIAL_COLUMNS_BEFORE = 14;
+    static final int INITIAL_COLUMNS_AFTER = 7;
+    /** Number of columns added to the ones shown each time more days are requested. */
+    static final int COLUMNS_PER_PAGE = 28;
+
+    private ObsTable mLastRenderedObs;  // last set of observations rendered
     private List<Order> mLastRenderedOrders;  // last set of orders rendered
+    private Map<String, Map<LocalDate, Integer>> mLastExecutionCounts;  // their executions by day
+    private Map<String, List<DailyStats>> mLastDailyStats;  // daily stats by concept UUID
     private String lastChart = "";
 
+    // The rest of the inputs to the last render, for re-rendering with more days shown.
+    private Chart mLastChart;
+    private Map<String, Obs> mLastLatestObservations;
+    private LocalDate mLastAdmissionDate;
+    private LocalDate mLastFirstSymptomsDate;
+
+    // Only mColumnsBefore columns before today's column and mColumnsAfter columns after it are
+    // rendered, so a long stay doesn't make the page slow to build and lay out.
+    int mColumnsBefore = INITIAL_COLUMNS_BEFORE;
+    int mColumnsAfter = INITIAL_COLUMNS_AFTER;
+
+    /** The virtual URL at which the chart page is served; see shouldInterceptRequest. */
+    static final String CHART_PAGE_URL = "file:///android_asset/chart-page.html";
+    /** The name by which the page's scripts call the GridJsInterface. */
+    static final String JS_INTERFACE_NAME = "controller";
+    private static final int PIPE_BUFFER_SIZE = 64*1024;
+    /** Writes chart pages into the pipes that the WebView reads them from. */
+    private static final ExecutorService sTemplateExecutor = Executors.newSingleThreadExecutor();
+    private volatile PendingPage mPendingPage;  // the page to serve at CHART_PAGE_URL
+    private int mPageNumber;  // makes each page's URL unique
+
+    /**
+     * Renders the pages of charts that aren't on screen.  This is separate from sTemplateExecutor
+     * so that the page the user is waiting for never queues behind pages they may never look at.
+     */
+    private static final ExecutorService sPrerenderExecutor = Executors.newSingleThreadExecutor();
+    // Pages rendered ahead of time from mLastRenderedObs and mLastRenderedOrders with the current
+    // day window, as UTF-8 HTML keyed by chart name.  Guarded by itself for invalidation.
+    private final Map<String, byte[]> mPrerenderedPages = new ConcurrentHashMap<>();
+    private int mPrerenderGeneration;  // incremented whenever mPrerenderedPages is invalidated
+    private List<Chart> mPrerenderCharts;  // the charts last asked to be prerendered
+
+    // The column to keep in place after more days are rendered, or null if there is none.
+    private Long mScrollAnchorMillis;
+    private int mScrollAnchorX;
+
     public interface GridJsInterface {
         @android.webkit.JavascriptInterface
         void onNewOrderPressed();
@@ -68,6 +127,14 @@ public class ChartRenderer {
 
         @android.webkit.JavascriptInterface
         void onPageUnload(int scrollX, int scrollY);
+
+        /**
+         * Requests that more days be shown, before or after the ones shown now.  The column
+         * starting at anchorMillis, which is anchorX pixels from the left edge of the grid's
+         * visible area, should stay where it is.
+         */
+        @android.webkit.JavascriptInterface
+        void onMoreDaysRequested(boolean earlier, long anchorMillis, int anchorX);
     }
 
     public ChartRenderer(WebView view, Resources resources) {
@@ -77,9 +144,10 @@ public class ChartRenderer {
 
     /** Renders a patient's history of observations to an HTML table in the WebView. */
     // TODO/cleanup: Have this take the types that getObservations and getLatestObservations return.
-    @SuppressLint("SetJavaScriptEnabled")
     public void render(Chart chart, Map<String, Obs> latestObservations,
-                       List<Obs> observations, List<Order> orders,
+                       ObsTable observations, List<Order> orders,
+                       Map<String, Map<LocalDate, Integer>> orderExecutionCounts,
+                       Map<String, List<DailyStats>> dailyStats,
                        LocalDate admissionDate, LocalDate firstSymptomsDate,
                        GridJsInterface controllerInterface) {
         if (chart == null) {
@@ -87,36 +155,217 @@ public class ChartRenderer {
             return;
         }
 
-        if (observations.equals(mLastRenderedObs)
-                && orders.equals(mLastRenderedOrders)
-                && Objects.equals(lastChart, chart.name)) {
+        boolean sameData = observations.equals(mLastRenderedObs)
+            && orders.equals(mLastRenderedOrders)
+            && orderExecutionCounts.equals(mLastExecutionCounts)
+            && dailyStats.equals(mLastDailyStats);
+        if (sameData && Objects.equals(lastChart, chart.name)) {
             return;  // nothing has changed; no need to render again
         }
+        if (!sameData) {
+            invalidatePrerenderedPages();
+        }
         lastChart = chart.name;
+        mLastChart = chart;
+        mLastLatestObservations = latestObservations;
+        mLastAdmissionDate = admissionDate;
+        mLastFirstSymptomsDate = firstSymptomsDate;
+
+        mView.addJavascriptInterface(controllerInterface, JS_INTERFACE_NAME);
+        mLastRenderedObs = observations;
+        mLastRenderedOrders = orders;
+        mLastExecutionCounts = orderExecutionCounts;
+        mLastDailyStats = dailyStats;
+        byte[] prerendered = mPrerenderedPages.get(chart.name);
+        if (prerendered != null) {
+            showPage(new PendingPage(null, prerendered));
+        } else {
+            renderGrid();
+        }
+    }
 
+    /**
+     * Sets up a WebView for showing charts.  This is done once when a view is created for
+     * {@link ChartWebViewPool}, and again when it is reused, in case the font scale changed.
+     */
+    @SuppressLint("SetJavaScriptEnabled")
+    static void configure(WebView view, Resources resources) {
         // setDefaultFontSize is supposed to take a size in sp, but in practice
         // the fonts don't change size when the user font size preference changes.
         // So, we apply the scaling factor explicitly, defining 1 em to be 10 sp.
-        DisplayMetrics metrics = mResources.getDisplayMetrics();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
         float defaultFontSize = 10*metrics.scaledDensity/metrics.density;
-        mView.getSettings().setDefaultFontSize((int) defaultFontSize);
-
-        mView.getSettings().setJavaScriptEnabled(true);
-        mView.addJavascriptInterface(controllerInterface, "controller");
-        mView.setWebChromeClient(new WebChromeClient());
-        String html = new GridHtmlGenerator(chart, latestObservations, observations, orders,
-                                            admissionDate, firstSymptomsDate).getHtml();
-        mView.loadDataWithBaseURL("file:///android_asset/", html,
-            "text/html; charset=utf-8", "utf-8", null);
+        view.getSettings().setDefaultFontSize((int) defaultFontSize);
+
+        view.getSettings().setJavaScriptEnabled(true);
+        view.setWebChromeClient(new WebChromeClient());
         WebView.setWebContentsDebuggingEnabled(true);
+    }
 
-        mLastRenderedObs = observations;
-        mLastRenderedOrders = orders;
+    /**
+     * Renders the pages of the given charts in the background from the same data as the chart
+     * on screen, so that switching to one of them shows it without waiting.  The pages are kept
+     * until the data or the range of days shown changes.  Call this after {@link #render}.
+     */
+    public void prerender(List<Chart> charts) {
+        mPrerenderCharts = charts;
+        if (mLastRenderedObs == null) return;
+        final int columnsBefore = mColumnsBefore;
+        final int columnsAfter = mColumnsAfter;
+        final int generation;
+        synchronized (mPrerenderedPages) {
+            generation = mPrerenderGeneration;
+        }
+        for (final Chart chart : charts) {
+            if (chart == null || chart.name.equals(lastChart)
+                || mPrerenderedPages.containsKey(chart.name)) continue;
+            final Map<String, Obs> latestObservations = mLastLatestObservations;
+            final ObsTable observations = mLastRenderedObs;
+            final List<Order> orders = mLastRenderedOrders;
+            final Map<String, Map<LocalDate, Integer>> executionCounts = mLastExecutionCounts;
+            final Map<String, List<DailyStats>> dailyStats = mLastDailyStats;
+            final LocalDate admissionDate = mLastAdmissionDate;
+            final LocalDate firstSymptomsDate = mLastFirstSymptomsDate;
+            sPrerenderExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    synchronized (mPrerenderedPages) {
+                        if (generation != mPrerenderGeneration) return;  // already stale
+                    }
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(bytes, Charsets.UTF_8));
+                    try {
+                        new GridHtmlGenerator(chart, latestObservations, observations, orders,
+                            executionCounts, dailyStats, admissionDate, firstSymptomsDate,
+                            columnsBefore, columnsAfter)
+                            .writeHtml(writer);
+                        writer.close();
+                    } catch (IOException e) {
+                        LOG.w(e, "Could not prerender chart %s", chart.name);
+                        return;
+                    }
+                    synchronized (mPrerenderedPages) {
+                        if (generation == mPrerenderGeneration) {
+                            mPrerenderedPages.put(chart.name, bytes.toByteArray());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /** Discards all prerendered pages, including any still being rendered. */
+    private void invalidatePrerenderedPages() {
+        synchronized (mPrerenderedPages) {
+            mPrerenderGeneration++;
+            mPrerenderedPages.clear();
+        }
+    }
+
+    /**
+     * Shows COLUMNS_PER_PAGE more columns, before or after the ones shown now, and renders the
+     * chart again, keeping the given column in place.
+     */
+    public void showMoreDays(boolean earlier, long anchorMillis, int anchorX) {
+        if (mLastRenderedObs == null) return;
+        if (earlier) {
+            mColumnsBefore += COLUMNS_PER_PAGE;
+        } else {
+            mColumnsAfter += COLUMNS_PER_PAGE;
+        }
+        mScrollAnchorMillis = anchorMillis;
+        mScrollAnchorX = anchorX;
+        invalidatePrerenderedPages();
+        renderGrid();
+        if (mPrerenderCharts != null) {
+            prerender(mPrerenderCharts);
+        }
+    }
+
+    /**
+     * Scrolls the column that was on screen when more days were requested back to where it was.
+     * Call this after the page has finished loading.
+     */
+    public void restoreScrollAnchor() {
+        if (mScrollAnchorMillis != null) {
+            mView.loadUrl("javascript:scrollToColumn(" + mScrollAnchorMillis + ", "
+                + mScrollAnchorX + ");");
+            mScrollAnchorMillis = null;
+        }
+    }
+
+    private void renderGrid() {
+        showPage(new PendingPage(new GridHtmlGenerator(
+            mLastChart, mLastLatestObservations, mLastRenderedObs, mLastRenderedOrders,
+            mLastExecutionCounts, mLastDailyStats, mLastAdmissionDate, mLastFirstSymptomsDate,
+            mColumnsBefore, mColumnsAfter), null));
+    }
+
+    private void showPage(PendingPage page) {
+        mPendingPage = page;
+        mView.loadUrl(CHART_PAGE_URL + "?page=" + (++mPageNumber));
+    }
+
+    /** A page to serve at CHART_PAGE_URL: either one to render, or one already rendered. */
+    private static class PendingPage {
+        final GridHtmlGenerator generator;
+        final byte[] html;
+
+        PendingPage(GridHtmlGenerator generator, byte[] html) {
+            this.generator = generator;
+            this.html = html;
+        }
+    }
+
+    /**
+     * Serves the chart page when the WebView requests CHART_PAGE_URL; call this from
+     * {@link android.webkit.WebViewClient#shouldInterceptRequest}.  The template is evaluated
+     * on a background thread straight into a pipe that the WebView reads from, so the page is
+     * never held in memory as a whole and the WebView can start parsing it right away.
+     * Prerendered pages are served straight from memory.
+     * @return the response, or null if the URL is not the chart page
+     */
+    public @Nullable WebResourceResponse shouldInterceptRequest(String url) {
+        PendingPage pending = mPendingPage;
+        if (pending == null || !url.startsWith(CHART_PAGE_URL)) return null;
+        if (pending.html != null) {
+            return new WebResourceResponse(
+                "text/html", "utf-8", new ByteArrayInputStream(pending.html));
+        }
+        final GridHtmlGenerator page = pending.generator;
+
+        final PipedOutputStream output = new PipedOutputStream();
+        PipedInputStream input;
+        try {
+            input = new PipedInputStream(output, PIPE_BUFFER_SIZE);
+        } catch (IOException e) {
+            LOG.e(e, "Could not create a pipe for the chart page");
+            return null;
+        }
+        sTemplateExecutor.execute(new Runnable() {
+            @Override public void run() {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, Charsets.UTF_8));
+                try {
+                    page.writeHtml(writer);
+                    writer.flush();
+                } catch (IOException e) {
+                    // The WebView stopped reading, e.g. because another page was loaded.
+                    LOG.w(e, "Chart page was not completely written");
+                } finally {
+                    try {
+                        writer.close();
+                    } catch (IOException e) { /* ignore */ }
+                }
+            }
+        });
+        return new WebResourceResponse("text/html", "utf-8", input);
     }
 
     class GridHtmlGenerator {
+        ObsTable mObsTable;
         List<Order> mOrders;
         DateTime mNow;
+        int mNumColumnsBefore;  // passed in, as the page may be written on another thread
+        int mNumColumnsAfter;
         Column mNowColumn;
         LocalDate mAdmissionDate;
         LocalDate mFirstSymptomsDate;
@@ -124,17 +373,37 @@ public class ChartRenderer {
         List<List<Tile>> mTileRows = new ArrayList<>();
         List<org.projectbuendia.client.ui.chart.Row> mRows = new ArrayList<>();
         Map<String, org.projectbuendia.client.ui.chart.Row> mRowsByUuid = new HashMap<>();  // unordered, keyed by concept UUID
-        SortedMap<Long, Column> mColumnsByStartMillis = new TreeMap<>();  // ordered by start millis
+        LocalDayIndex mDays;  // local calendar days, numbered from today
+        // Which days get a column, over the whole stay; indexed by day number minus mFirstDay.
+        // Columns are only created for the ones in the rendered window, from mFirstShownDay
+        // through mLastShownDay, so a long stay doesn't cost a Column per day on every render.
+        boolean[] mDaysWithColumns = new boolean[0];
+        int mFirstDay;
+        int mFirstShownDay;
+        int mLastShownDay;
+        Column[] mShownColumns;  // indexed by day number minus mFirstShownDay
+        boolean mHasEarlierDays;
+        boolean mHasLaterDays;
         Set<String> mConceptsToDump = new HashSet<>();  // concepts whose data to dump in JSON
 
         GridHtmlGenerator(Chart chart, Map<String, Obs> latestObservations,
-                          List<Obs> observations, List<Order> orders,
-                          LocalDate admissionDate, LocalDate firstSymptomsDate) {
+                          ObsTable observations, List<Order> orders,
+                          Map<String, Map<LocalDate, Integer>> orderExecutionCounts,
+                          Map<String, List<DailyStats>> dailyStats,
+                          LocalDate admissionDate, LocalDate firstSymptomsDate,
+                          int numColumnsBefore, int numColumnsAfter) {
+            mObsTable = observations;
+            mNumColumnsBefore = numColumnsBefore;
+            mNumColumnsAfter = numColumnsAfter;
             mAdmissionDate = admissionDate;
             mFirstSymptomsDate = firstSymptomsDate;
             mOrders = orders;
             mNow = DateTime.now();
-            mNowColumn = getColumnContainingTime(mNow); // ensure there's a column for today
+            mDays = new LocalDayIndex(DateTimeZone.getDefault(), mNow.toLocalDate());
+            markDaysWithColumns(orders, orderExecutionCounts, dailyStats);
+            markEmptyColumns();
+            createShownColumns();
+            mNowColumn = getColumn(0);  // today always has a column, and it's always shown
 
             for (ChartSection tileGroup : chart.tileGroups) {
                 List<Tile> tileRow = new ArrayList<>();
@@ -146,7 +415,9 @@ public class ChartRenderer {
                             points[i] = obs.getObsPoint();
                         }
                     }
-                    tileRow.add(new Tile(item, points));
+                    List<DailyStats> trend = dailyStats.get(item.conceptUuids.get(0));
+                    tileRow.add(new Tile(item, points,
+                        trend != null ? trend : Collections.<DailyStats>emptyList()));
                     if (!item.script.trim().isEmpty()) {
                         mConceptsToDump.addAll(item.conceptUuids);
                     }
@@ -163,73 +434,212 @@ public class ChartRenderer {
                     }
                 }
             }
-            addObservations(observations);
-            addOrders(orders);
-            insertEmptyColumns();
+            addOrderExecutions(orderExecutionCounts);
+            addDailyStats(dailyStats);
         }
 
-        void addObservations(List<Obs> observations) {
-            for (Obs obs : observations) {
-                if (obs == null) continue;
-                Column column = getColumnContainingTime(obs.time);
-
-                if (obs.conceptUuid.equals(AppModel.ORDER_EXECUTED_CONCEPT_UUID)) {
-                    Integer count = column.executionCountsByOrderUuid.get(obs.value);
-                    column.executionCountsByOrderUuid.put(
-                        obs.value, count == null ? 1 : count + 1);
-                } else {
-                    addObs(column, obs);
+        /**
+         * Marks the days that get a column: today, and any days with observations, prescribed
+         * orders, order executions, or daily statistics.  The points themselves are read from
+         * mObsTable as needed.
+         */
+        void markDaysWithColumns(List<Order> orders,
+                                 Map<String, Map<LocalDate, Integer>> executionCounts,
+                                 Map<String, List<DailyStats>> dailyStats) {
+            // Find the range of days first, so that the array is allocated only once.
+            int firstDay = 0;
+            int lastDay = 0;
+            for (int row = 0; row < mObsTable.size(); row++) {
+                int day = mDays.getDay(mObsTable.getMillis(row));
+                firstDay = Math.min(firstDay, day);
+                lastDay = Math.max(lastDay, day);
+            }
+            for (Order order : orders) {
+                if (order.stop != null) {
+                    firstDay = Math.min(firstDay, getFirstOrderDay(order));
+                    lastDay = Math.max(lastDay, getLastOrderDay(order));
+                }
+            }
+            for (Map<LocalDate, Integer> counts : executionCounts.values()) {
+                for (LocalDate date : counts.keySet()) {
+                    int day = getDay(date);
+                    firstDay = Math.min(firstDay, day);
+                    lastDay = Math.max(lastDay, day);
+                }
+            }
+            for (List<DailyStats> statsList : dailyStats.values()) {
+                for (DailyStats stats : statsList) {
+                    int day = getDay(stats.date);
+                    firstDay = Math.min(firstDay, day);
+                    lastDay = Math.max(lastDay, day);
                 }
             }
-        }
 
-        /** Ensures that columns are shown for any days in which an order is prescribed. */
-        void addOrders(List<Order> orders) {
+            mFirstDay = firstDay;
+            mDaysWithColumns = new boolean[lastDay - firstDay + 1];
+            mDaysWithColumns[-firstDay] = true;  // today
+            for (int row = 0; row < mObsTable.size(); row++) {
+                mDaysWithColumns[mDays.getDay(mObsTable.getMillis(row)) - firstDay] = true;
+            }
             for (Order order : orders) {
                 if (order.stop != null) {
-                    for (DateTime dt = order.start; !dt.isAfter(order.stop.plusDays(1)); dt = dt.plusDays(1)) {
-                        getColumnContainingTime(dt); // creates the column if it doesn't exist
+                    // Every day from the start through the day after the stop.
+                    int lastOrderDay = getLastOrderDay(order);
+                    for (int day = getFirstOrderDay(order); day <= lastOrderDay; day++) {
+                        mDaysWithColumns[day - firstDay] = true;
+                    }
+                }
+            }
+            for (Map<LocalDate, Integer> counts : executionCounts.values()) {
+                for (LocalDate date : counts.keySet()) {
+                    mDaysWithColumns[getDay(date) - firstDay] = true;
+                }
+            }
+            for (List<DailyStats> statsList : dailyStats.values()) {
+                for (DailyStats stats : statsList) {
+                    mDaysWithColumns[getDay(stats.date) - firstDay] = true;
+                }
+            }
+        }
+
+        int getFirstOrderDay(Order order) {
+            return mDays.getDay(order.start.getMillis());
+        }
+
+        int getLastOrderDay(Order order) {
+            return getFirstOrderDay(order)
+                + Days.daysBetween(order.start, order.stop.plusDays(1)).getDays();
+        }
+
+        int getDay(LocalDate date) {
+            return mDays.getDay(date.toDateTimeAtStartOfDay().getMillis());
+        }
+
+        /**
+         * Marks empty columns to fill in the gaps between the marked days, wherever the gap
+         * can be filled by inserting fewer than 3 adjacent empty columns.
+         */
+        void markEmptyColumns() {
+            int prev = -1;
+            for (int i = 0; i < mDaysWithColumns.length; i++) {
+                if (!mDaysWithColumns[i]) continue;
+                if (prev >= 0 && i - prev <= 3) {
+                    for (int j = prev + 1; j < i; j++) {
+                        mDaysWithColumns[j] = true;
                     }
                 }
+                prev = i;
+            }
+        }
+
+        /**
+         * Creates the columns for the mNumColumnsBefore marked days before today's, today's,
+         * and the mNumColumnsAfter marked days after it.  These are the only columns rendered;
+         * the rest are loaded when the user scrolls to them.
+         */
+        void createShownColumns() {
+            int today = -mFirstDay;
+            int first = today;
+            for (int i = today - 1, count = 0; i >= 0 && count < mNumColumnsBefore; i--) {
+                if (mDaysWithColumns[i]) {
+                    first = i;
+                    count++;
+                }
+            }
+            int last = today;
+            for (int i = today + 1, count = 0;
+                 i < mDaysWithColumns.length && count < mNumColumnsAfter; i++) {
+                if (mDaysWithColumns[i]) {
+                    last = i;
+                    count++;
+                }
+            }
+            for (int i = 0; i < first && !mHasEarlierDays; i++) {
+                mHasEarlierDays = mDaysWithColumns[i];
+            }
+            for (int i = last + 1; i < mDaysWithColumns.length && !mHasLaterDays; i++) {
+                mHasLaterDays = mDaysWithColumns[i];
+            }
+
+            mFirstShownDay = mFirstDay + first;
+            mLastShownDay = mFirstDay + last;
+            mShownColumns = new Column[last - first + 1];
+            for (int i = first; i <= last; i++) {
+                if (mDaysWithColumns[i]) {
+                    mShownColumns[i - first] = createColumn(mFirstDay + i);
+                }
             }
         }
 
-        /** Returns the column that contains the given instant, creating it if it doesn't exist. */
-        Column getColumnContainingTime(ReadableInstant instant) {
-            LocalDate date = new DateTime(instant).toLocalDate();  // a day in the local time zone
-            DateTime start = date.toDateTimeAtStartOfDay();
-            long startMillis = start.getMillis();
-            if (!mColumnsByStartMillis.containsKey(startMillis)) {
-                int admitDay = Utils.dayNumberSince(mAdmissionDate, date);
-                String admitDayLabel = (admitDay >= 1) ?
-                    mResources.getString(R.string.day_n, admitDay) : "–";
-                String dateLabel = date.toString("d MMM");
-                mColumnsByStartMillis.put(startMillis, new Column(
-                    start, start.plusDays(1), admitDayLabel + "<br>" + dateLabel));
+        /**
+         * Puts the number of times each order was executed on each shown day into the columns,
+         * from the counts kept by the database, keyed by order UUID and then by local date.
+         */
+        void addOrderExecutions(Map<String, Map<LocalDate, Integer>> executionCounts) {
+            for (Map.Entry<String, Map<LocalDate, Integer>> order : executionCounts.entrySet()) {
+                for (Map.Entry<LocalDate, Integer> day : order.getValue().entrySet()) {
+                    Column column = getColumn(getDay(day.getKey()));
+                    if (column != null) {
+                        column.executionCountsByOrderUuid.put(order.getKey(), day.getValue());
+                    }
+                }
             }
-            return mColumnsByStartMillis.get(startMillis);
         }
 
-        void addObs(Column column, Obs obs) {
-            if (!column.pointSetByConceptUuid.containsKey(obs.conceptUuid)) {
-                column.pointSetByConceptUuid.put(obs.conceptUuid, new TreeSet<ObsPoint>());
+        /**
+         * Puts the statistics on each concept's numeric observations for each shown day into
+         * the columns, from the ones computed by the database, keyed by concept UUID.
+         */
+        void addDailyStats(Map<String, List<DailyStats>> dailyStats) {
+            for (Map.Entry<String, List<DailyStats>> concept : dailyStats.entrySet()) {
+                for (DailyStats stats : concept.getValue()) {
+                    Column column = getColumn(getDay(stats.date));
+                    if (column != null) {
+                        column.statsByConceptUuid.put(concept.getKey(), stats);
+                    }
+                }
             }
-            ObsPoint point = obs.getObsPoint();
-            if (point != null) {
-                column.pointSetByConceptUuid.get(obs.conceptUuid).add(point);
+        }
+
+        /** Returns the shown column for the given day number, or null if it isn't shown. */
+        @Nullable Column getColumn(int day) {
+            if (day < mFirstShownDay || day > mLastShownDay) return null;
+            return mShownColumns[day - mFirstShownDay];
+        }
+
+        Column createColumn(int day) {
+            LocalDate date = mDays.getDate(day);
+            int admitDay = Utils.dayNumberSince(mAdmissionDate, date);
+            String admitDayLabel = (admitDay >= 1) ?
+                mResources.getString(R.string.day_n, admitDay) : "–";
+            String dateLabel = date.toString("d MMM");
+            return new Column(
+                new Instant(mDays.getStartMillis(day)), new Instant(mDays.getStopMillis(day)),
+                admitDayLabel + "<br>" + dateLabel, mObsTable);
+        }
+
+        /** Returns the shown columns, in time order. */
+        List<Column> getColumns() {
+            List<Column> columns = new ArrayList<>();
+            for (Column column : mShownColumns) {
+                if (column != null) {
+                    columns.add(column);
+                }
             }
+            return columns;
         }
 
         /** Exports a map of concept IDs to arrays of [columnStart, points] pairs. */
         JSONObject getJsonDataDump() {
             JSONObject dump = new JSONObject();
+            List<Column> columns = getColumns();
             for (String uuid : mConceptsToDump) {
                 try {
                     JSONArray pointGroups = new JSONArray();
-                    for (Column column : mColumnsByStartMillis.values()) {
+                    for (Column column : columns) {
                         JSONArray pointArray = new JSONArray();
-                        SortedSet<ObsPoint> points = column.pointSetByConceptUuid.get(uuid);
-                        if (points != null && points.size() > 0) {
+                        List<ObsPoint> points = column.getPoints(uuid);
+                        if (points.size() > 0) {
                             for (ObsPoint point : points) {
                                 pointArray.put(point.toJson());
                             }
@@ -237,6 +647,10 @@ public class ChartRenderer {
                             pointGroup.put("start", column.start.getMillis());
                             pointGroup.put("stop", column.stop.getMillis());
                             pointGroup.put("points", pointArray);
+                            DailyStats stats = column.getStats(uuid);
+                            if (stats != null) {
+                                pointGroup.put("stats", stats.toJson());
+                            }
                             pointGroups.put(pointGroup);
                         }
                     }
@@ -250,53 +664,41 @@ public class ChartRenderer {
 
         // TODO: grouped coded concepts (for select-multiple, e.g. types of bleeding, types of pain)
         // TODO: concept tags for formatting hints (e.g. none/mild/moderate/severe, abbreviated)
-        String getHtml() {
+        void writeHtml(Writer writer) throws IOException {
             Map<String, Object> context = new HashMap<>();
             context.put("tileRows", mTileRows);
             context.put("rows", mRows);
-            context.put("columns", Lists.newArrayList(mColumnsByStartMillis.values()));
+            // Only the columns around today's are rendered; the rest are loaded on request.
+            context.put("columns", getColumns());
+            context.put("hasEarlierDays", mHasEarlierDays);
+            context.put("hasLaterDays", mHasLaterDays);
             context.put("nowColumnStart", mNowColumn.start);
             context.put("orders", mOrders);
             context.put("dataCellsByConceptId", getJsonDataDump());
-            return renderTemplate("assets/chart.html", context);
+            renderTemplate("assets/chart.html", context, writer);
         }
 
-        /**
-         * Inserts empty columns to fill in the gaps between the existing columns, wherever
-         * the gap can be filled by inserting fewer than 3 adjacent empty columns.
-         */
-        void insertEmptyColumns() {
-            List<DateTime> starts = new ArrayList<>();
-            for (Long startMillis : mColumnsByStartMillis.keySet()) {
-                starts.add(new DateTime(startMillis));
-            }
-            DateTime prev = starts.get(0);
-            for (DateTime next : starts) {
-                if (!next.isAfter(prev.plusDays(3))) {
-                    for (DateTime dt = prev.plusDays(1); dt.isBefore(next); dt = dt.plusDays(1)) {
-                        getColumnContainingTime(dt); // creates a column if it doesn't exist yet
-                    }
+        /** Renders a Pebble template to the given writer. */
+        void renderTemplate(String filename, Map<String, Object> context, Writer writer)
+            throws IOException {
+            PebbleEngine engine;
+            synchronized (ChartRenderer.class) {  // pages may be rendered on two threads
+                if (sEngine == null) {
+                    // PebbleEngine caches compiled templates by filename, so as long as we keep using the
+                    // same engine instance, it's okay to call getTemplate(filename) on each render.
+                    sEngine = new PebbleEngine();
+                    sEngine.addExtension(new PebbleExtension());
                 }
-                prev = next;
-            }
-        }
-
-        /** Renders a Pebble template. */
-        String renderTemplate(String filename, Map<String, Object> context) {
-            if (sEngine == null) {
-                // PebbleEngine caches compiled templates by filename, so as long as we keep using the
-                // same engine instance, it's okay to call getTemplate(filename) on each render.
-                sEngine = new PebbleEngine();
-                sEngine.addExtension(new PebbleExtension());
+                engine = sEngine;
             }
             try {
-                StringWriter writer = new StringWriter();
-                sEngine.getTemplate(filename).evaluate(writer, context);
-                return writer.toString();
+                engine.getTemplate(filename).evaluate(writer, context);
+            } catch (IOException e) {
+                throw e;
             } catch (Exception e) {
-                StringWriter writer = new StringWriter();
-                e.printStackTrace(new PrintWriter(writer));
-                return "<div style=\"font-size: 150%\">" + writer.toString().replace("&", "&amp;").replace("<", "&lt;").replace("\n", "<br>");
+                StringWriter trace = new StringWriter();
+                e.printStackTrace(new PrintWriter(trace));
+                writer.write("<div style=\"font-size: 150%\">" + trace.toString().replace("&", "&amp;").replace("<", "&lt;").replace("\n", "<br>"));
             }
         }
     }
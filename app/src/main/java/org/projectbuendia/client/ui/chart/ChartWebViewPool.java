@@ -0,0 +1,117 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.ui.chart;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import org.projectbuendia.client.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps WebViews for patient charts ready for the life of the application.  Creating a WebView
+ * and loading the chart's scripts and stylesheets into it for the first time is slow, so every
+ * view in the pool has already been set up and has loaded a page that uses the same assets as
+ * the chart; opening a patient's chart then only has to load that patient's data.
+ * All methods must be called on the main thread.
+ */
+public class ChartWebViewPool {
+    private static final Logger LOG = Logger.create();
+
+    /** A page that loads the chart's stylesheets and scripts, to warm up a WebView. */
+    static final String WARM_UP_URL = "file:///android_asset/chart-warmup.html";
+    /** The most idle views to keep; each holds on to several megabytes. */
+    private static final int MAX_IDLE_VIEWS = 2;
+
+    private final Application mApp;
+    private final List<WebView> mIdleViews = new ArrayList<>();
+    private boolean mPrewarmScheduled;
+
+    public ChartWebViewPool(Application app) {
+        mApp = app;
+    }
+
+    /**
+     * Makes sure there will be a warm view in the pool, creating one the next time the main
+     * thread is idle so that it doesn't hold up whatever is being shown.
+     */
+    public void prewarm() {
+        if (mPrewarmScheduled || !mIdleViews.isEmpty()) return;
+        mPrewarmScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override public boolean queueIdle() {
+                mPrewarmScheduled = false;
+                if (mIdleViews.isEmpty()) {
+                    mIdleViews.add(createView());
+                }
+                return false;  // run only once
+            }
+        });
+    }
+
+    /** Returns true if the next call to {@link #acquire} will get a warm view. */
+    public boolean hasIdleView() {
+        return !mIdleViews.isEmpty();
+    }
+
+    /**
+     * Takes a view from the pool for use in the given activity, or creates one if the pool is
+     * empty.  The view has no parent; give it back with {@link #release} when done.
+     */
+    public WebView acquire(Context context) {
+        WebView view = mIdleViews.isEmpty()
+            ? createView() : mIdleViews.remove(mIdleViews.size() - 1);
+        // Dialogs opened by the page, such as alert(), need an activity context.
+        ((MutableContextWrapper) view.getContext()).setBaseContext(context);
+        ChartRenderer.configure(view, context.getResources());  // the font scale may have changed
+        prewarm();  // so that the next chart opened gets a warm view too
+        return view;
+    }
+
+    /**
+     * Gives a view back to the pool.  It is detached from its activity and loads the warm-up
+     * page again, which also frees the patient's page.
+     */
+    public void release(WebView view) {
+        if (view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        view.stopLoading();
+        view.setWebViewClient(new WebViewClient());
+        view.removeJavascriptInterface(ChartRenderer.JS_INTERFACE_NAME);
+        ((MutableContextWrapper) view.getContext()).setBaseContext(mApp);
+        if (mIdleViews.size() >= MAX_IDLE_VIEWS) {
+            view.destroy();
+            return;
+        }
+        view.loadUrl(WARM_UP_URL);
+        mIdleViews.add(view);
+    }
+
+    private WebView createView() {
+        long startMillis = SystemClock.elapsedRealtime();
+        WebView view = new WebView(new MutableContextWrapper(mApp));
+        ChartRenderer.configure(view, mApp.getResources());
+        view.loadUrl(WARM_UP_URL);
+        LOG.i("Created a chart WebView in %d ms", SystemClock.elapsedRealtime() - startMillis);
+        return view;
+    }
+}
@@ -3,28 +3,50 @@ package org.projectbuendia.client.ui.chart;
 import org.joda.time.Instant;
 import org.joda.time.Interval;
 import org.joda.time.ReadableInstant;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.ObsPoint;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.utils.Utils;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
+
+import javax.annotation.Nullable;
 
 /** A column (containing the data for its observations) in the patient history grid. */
 public class Column {
     public Instant start;
     public Instant stop;
     public String headingHtml;
-    public Map<String, SortedSet<ObsPoint>> pointSetByConceptUuid = new HashMap<>();
     public Map<String, Integer> executionCountsByOrderUuid = new HashMap<>();
+    public Map<String, DailyStats> statsByConceptUuid = new HashMap<>();
+    private final ObsTable mObsTable;
 
-    public Column(ReadableInstant start, ReadableInstant stop, String headingHtml) {
+    public Column(ReadableInstant start, ReadableInstant stop, String headingHtml,
+                  ObsTable obsTable) {
         this.start = new Instant(start);
         this.stop = new Instant(stop);
         this.headingHtml = headingHtml;
+        mObsTable = obsTable;
     }
 
     public Interval getInterval() {
         return Utils.toInterval(start, stop);
     }
+
+    /** Returns the points observed for a concept within this column, in time order. */
+    public List<ObsPoint> getPoints(String conceptUuid) {
+        return mObsTable.getPoints(conceptUuid, start.getMillis(), stop.getMillis());
+    }
+
+    /** Returns the database's statistics on a concept's numeric values in this column, or null. */
+    public @Nullable DailyStats getStats(String conceptUuid) {
+        return statsByConceptUuid.get(conceptUuid);
+    }
+
+    /** Returns the latest point observed for a concept within this column, or null. */
+    public @Nullable ObsPoint getLatestPoint(String conceptUuid) {
+        return mObsTable.getLatestPoint(conceptUuid, start.getMillis(), stop.getMillis());
+    }
 }
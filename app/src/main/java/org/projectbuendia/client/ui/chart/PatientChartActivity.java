@@ -11,13 +11,16 @@
 
 package org.projectbuendia.client.ui.chart;
 
+import android.annotation.TargetApi;
 import android.app.ActionBar;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Point;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.Menu;
@@ -27,6 +30,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.EditText;
@@ -48,11 +52,13 @@ import org.projectbuendia.client.R;
 import org.projectbuendia.client.events.CrudEventBus;
 import org.projectbuendia.client.models.AppModel;
 import org.projectbuendia.client.models.Chart;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.ConceptUuids;
 import org.projectbuendia.client.models.Form;
 import org.projectbuendia.client.models.Location;
 import org.projectbuendia.client.models.LocationTree;
 import org.projectbuendia.client.models.Obs;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.models.Order;
 import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.sync.ChartDataHelper;
@@ -104,6 +110,9 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
     private ProgressDialog mFormLoadingDialog;
     private ProgressDialog mFormSubmissionDialog;
     private ChartRenderer mChartRenderer;
+    private WebView mGridWebView;  // taken from mChartWebViewPool
+    private long mOpenedMillis;  // when this activity was created, for timing the first paint
+    private boolean mFirstPaintLogged;
 
     @Inject AppModel mAppModel;
     @Inject EventBus mEventBus;
@@ -111,13 +120,14 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
     @Inject SyncManager mSyncManager;
     @Inject ChartDataHelper mChartDataHelper;
     @Inject AppSettings mSettings;
+    @Inject ChartWebViewPool mChartWebViewPool;
     @InjectView(R.id.patient_chart_root) SlidingUpPanelLayout mRootView;
     @InjectView(R.id.attribute_location) PatientAttributeView mPatientLocationView;
     @InjectView(R.id.attribute_admission_days) PatientAttributeView mAdmissionDaysView;
     @InjectView(R.id.attribute_weight) PatientAttributeView mWeightView;
     @InjectView(R.id.attribute_pcr) PatientAttributeView mPcr;
     @InjectView(R.id.patient_chart_pregnant) TextView mPatientPregnantOrIvView;
-    @InjectView(R.id.chart_webview) WebView mGridWebView;
+    @InjectView(R.id.chart_webview_container) ViewGroup mGridWebViewContainer;
     @InjectView(R.id.slide_up_notes_panel) View mSlideUpNotesPanel;
     @InjectView(R.id.notes_panel_list) ListView mNotesList;
     @InjectView(R.id.notes_panel_text_entry) EditText mAddNoteEntryText;
@@ -246,14 +256,34 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
         mFormSubmissionDialog.setIndeterminate(true);
         mFormSubmissionDialog.setCancelable(false);
 
+        mOpenedMillis = SystemClock.elapsedRealtime();
+        final boolean warmWebView = mChartWebViewPool.hasIdleView();
+        mGridWebView = mChartWebViewPool.acquire(this);
+        mGridWebView.setId(R.id.chart_webview);
+        mGridWebViewContainer.addView(mGridWebView, new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
         // Remembering scroll position and applying it after the chart finished loading.
         mGridWebView.setWebViewClient(new WebViewClient() {
+            @SuppressWarnings("deprecation")  // the replacement needs API 21
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+                WebResourceResponse response = mChartRenderer.shouldInterceptRequest(url);
+                return response != null ? response : super.shouldInterceptRequest(view, url);
+            }
+
             public void onPageFinished(WebView view, String url) {
                 Point scrollPosition = mController.getLastScrollPosition();
                 if (scrollPosition != null) {
                     view.loadUrl("javascript:$('#grid-scroller').scrollLeft(" + scrollPosition.x + ");");
                     view.loadUrl("javascript:$(window).scrollTop(" + scrollPosition.y + ");");
                 }
+                // After more days are loaded, keep the same day columns in view.
+                mChartRenderer.restoreScrollAnchor();
+                if (!mFirstPaintLogged && url.startsWith(ChartRenderer.CHART_PAGE_URL)) {
+                    mFirstPaintLogged = true;
+                    logTimeToFirstPaint(view, warmWebView);
+                }
             }
         });
         mChartRenderer = new ChartRenderer(mGridWebView, getResources());
@@ -443,7 +473,7 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
             ActionBar.TabListener tabListener = new ActionBar.TabListener() {
                 @Override
                 public void onTabSelected(ActionBar.Tab tab, android.app.FragmentTransaction ft) {
-                    mController.updatePatientObsUi(tab.getPosition());
+                    mController.showChart(tab.getPosition());
                 }
 
                 @Override
@@ -476,6 +506,35 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
         super.onStopImpl();
     }
 
+    @Override protected void onDestroy() {
+        if (mGridWebView != null) {
+            mChartWebViewPool.release(mGridWebView);
+            mGridWebView = null;
+        }
+        super.onDestroy();
+    }
+
+    /** Logs how long the chart took to appear, to compare warm and newly created WebViews. */
+    private void logTimeToFirstPaint(WebView view, final boolean warm) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            postFirstPaintCallback(view, warm);
+        } else {
+            LOG.i("Chart page loaded %d ms after opening (%s WebView)",
+                SystemClock.elapsedRealtime() - mOpenedMillis, warm ? "warm" : "new");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private void postFirstPaintCallback(WebView view, final boolean warm) {
+        // Called back once the loaded page is ready to be drawn on the next frame.
+        view.postVisualStateCallback(0, new WebView.VisualStateCallback() {
+            @Override public void onComplete(long requestId) {
+                LOG.i("Chart first painted %d ms after opening (%s WebView)",
+                    SystemClock.elapsedRealtime() - mOpenedMillis, warm ? "warm" : "new");
+            }
+        });
+    }
+
     @Override protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         mIsFetchingXform = false;
         mController.onXFormResult(requestCode, resultCode, data);
@@ -611,15 +670,26 @@ public final class PatientChartActivity extends BaseLoggedInActivity {
         @Override public void updateTilesAndGrid(
             Chart chart,
             Map<String, Obs> latestObservations,
-            List<Obs> observations,
+            ObsTable observations,
             List<Order> orders,
+            Map<String, Map<LocalDate, Integer>> orderExecutionCounts,
+            Map<String, List<DailyStats>> dailyStats,
             LocalDate admissionDate,
             LocalDate firstSymptomsDate) {
             mChartRenderer.render(chart, latestObservations, observations, orders,
-                                  admissionDate, firstSymptomsDate, mController);
+                                  orderExecutionCounts, dailyStats, admissionDate,
+                                  firstSymptomsDate, mController);
             mRootView.invalidate();
         }
 
+        @Override public void prerenderCharts(List<Chart> charts) {
+            mChartRenderer.prerender(charts);
+        }
+
+        @Override public void showMoreChartDays(boolean earlier, long anchorMillis, int anchorX) {
+            mChartRenderer.showMoreDays(earlier, anchorMillis, anchorX);
+        }
+
         public void updatePatientLocationUi(LocationTree locationTree, Patient patient) {
             Location location = locationTree.findByUuid(patient.locationUuid);
             String locationText = location == null ? "Unknown" : location.toString(); // TODO/i18n
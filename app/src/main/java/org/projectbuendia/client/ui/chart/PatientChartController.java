@@ -44,15 +44,20 @@ import org.projectbuendia.client.events.data.ItemFetchedEvent;
 import org.projectbuendia.client.events.data.OrderDeleteFailedEvent;
 import org.projectbuendia.client.events.data.PatientUpdateFailedEvent;
 import org.projectbuendia.client.events.data.ObsDeleteFailedEvent;
+import org.projectbuendia.client.events.sync.PatientSyncSucceededEvent;
 import org.projectbuendia.client.events.sync.SyncSucceededEvent;
 import org.projectbuendia.client.json.JsonUser;
 import org.projectbuendia.client.models.AppModel;
 import org.projectbuendia.client.models.Chart;
+import org.projectbuendia.client.models.ChartItem;
+import org.projectbuendia.client.models.ChartSection;
 import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.Encounter;
 import org.projectbuendia.client.models.Encounter.Observation;
 import org.projectbuendia.client.models.LocationTree;
 import org.projectbuendia.client.models.Obs;
+import org.projectbuendia.client.models.ObsTable;
 import org.projectbuendia.client.models.Order;
 import org.projectbuendia.client.models.Patient;
 import org.projectbuendia.client.models.PatientDelta;
@@ -67,8 +72,10 @@ import org.projectbuendia.client.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -83,13 +90,11 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
     static final String EBOLA_LAB_TEST_FORM_UUID = "buendia-form-ebola_lab_test";
 
     /**
-     * Period between observation syncs while the chart view is active.  It would be nice for
-     * this to be even shorter (20 s? 10 s?) but currently the table scroll position resets on
-     * each sync, if any data has changed.
-     * TODO: Try reducing this period to improve responsiveness, but be wary of the table scrolling
-     * whenever data is refreshed.
+     * Period between observation syncs while the chart view is active.  Each of these syncs
+     * fetches only this patient's new observations and orders, and the chart is redrawn only if
+     * something changed, so this can be much shorter than the period of the full sync.
      */
-    private static final int OBSERVATION_SYNC_PERIOD_MILLIS = 60000;
+    private static final int OBSERVATION_SYNC_PERIOD_MILLIS = 20000;
 
     // TODO: Get rid of mPatientUuids, mNextIndex etc. now that we have mFormRequests.
     /** Maximum concurrent ODK forms assigned request codes. */
@@ -105,7 +110,14 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
     private LocationTree mLocationTree;
     private String mPatientUuid = "";
     private Map<String, Order> mOrdersByUuid;
-    private List<Obs> mObservations;
+    // The observations and orders last loaded, shared by all the charts until the data changes.
+    private ObsTable mObservations;
+    private Map<String, Obs> mLatestObservations;
+    private List<Order> mOrders;
+    private Map<String, Map<LocalDate, Integer>> mOrderExecutionCounts;  // by order UUID and day
+    private Map<String, List<DailyStats>> mDailyStats;  // by concept UUID, for the charts' items
+    private LocalDate mAdmissionDate;
+    private LocalDate mFirstSymptomsDate;
 
     // This value is incremented whenever the controller is activated or suspended.
     // A "phase" is a period of time between such transition points.
@@ -163,11 +175,25 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
         void updateTilesAndGrid(
             Chart chart,
             Map<String, Obs> latestObservations,
-            List<Obs> observations,
+            ObsTable observations,
             List<Order> orders,
+            Map<String, Map<LocalDate, Integer>> orderExecutionCounts,
+            Map<String, List<DailyStats>> dailyStats,
             LocalDate admissionDate,
             LocalDate firstSymptomsDate);
 
+        /**
+         * Renders the given charts in the background from the data last passed to
+         * updateTilesAndGrid, so that they can be shown without delay.
+         */
+        void prerenderCharts(List<Chart> charts);
+
+        /**
+         * Shows more days in the history grid, before or after the ones shown, keeping the
+         * column that starts at anchorMillis anchorX pixels from the left of the grid.
+         */
+        void showMoreChartDays(boolean earlier, long anchorMillis, int anchorX);
+
         /** Updates the UI with the patient's personal details (name, gender, etc.). */
         void updatePatientDetailsUi(Patient patient);
 
@@ -274,7 +300,7 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
                 // controller is suspended the cycle stops; and also since mCurrentPhaseId can
                 // only have one value, only one such cycle can be active at any given time.
                 if (mCurrentPhaseId == phaseId) {
-                    mSyncManager.startObservationsAndOrdersSync();
+                    mSyncManager.startPatientSync(mPatientUuid);
                     handler.postDelayed(this, OBSERVATION_SYNC_PERIOD_MILLIS);
                 }
             }
@@ -487,10 +513,11 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
         DateTime start = new DateTime(startMillis);
         Interval interval = new Interval(start, start.plusDays(1));
         List<DateTime> executionTimes = new ArrayList<>();
-        for (Obs obs : mObservations) {
-            if (AppModel.ORDER_EXECUTED_CONCEPT_UUID.equals(obs.conceptUuid) &&
-                order.uuid.equals(obs.value)) {
-                executionTimes.add(obs.time);
+        int end = mObservations.getEndRow(AppModel.ORDER_EXECUTED_CONCEPT_UUID);
+        for (int row = mObservations.getFirstRow(AppModel.ORDER_EXECUTED_CONCEPT_UUID);
+             row >= 0 && row < end; row++) {
+            if (order.uuid.equals(mObservations.getValue(row))) {
+                executionTimes.add(new DateTime(mObservations.getMillis(row)));
             }
         }
         mUi.showOrderExecutionDialog(order, interval, executionTimes);
@@ -502,6 +529,18 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
         mLastScrollPosition.set(scrollX, scrollY);
     }
 
+    @android.webkit.JavascriptInterface
+    @Override
+    public void onMoreDaysRequested(
+        final boolean earlier, final long anchorMillis, final int anchorX) {
+        // JavaScript interface methods are called on a background thread.
+        mMainThreadHandler.post(new Runnable() {
+            @Override public void run() {
+                mUi.showMoreChartDays(earlier, anchorMillis, anchorX);
+            }
+        });
+    }
+
     public void showAssignGeneralConditionDialog(
         Context context, final String generalConditionUuid) {
         AssignGeneralConditionDialog.ConditionSelectedCallback callback =
@@ -566,35 +605,65 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
         mAssignLocationDialog.show();
     }
 
-    /** Gets the latest observation values and displays them on the UI. */
+    /** Loads the latest observations and orders and displays them on the UI. */
     public synchronized void updatePatientObsUi(int chartNum) {
         // Get the observations and orders
         // TODO: Background thread this, or make this call async-like.
-        mObservations = mChartHelper.getObservations(mPatientUuid);
-        Map<String, Obs> latestObservations =
-            new HashMap<>(mChartHelper.getLatestObservations(mPatientUuid));
-        List<Order> orders = mChartHelper.getOrders(mPatientUuid);
+        mObservations = mChartHelper.getObservationTable(mPatientUuid);
+        mLatestObservations = new HashMap<>(mObservations.getLatestObs());
+        mOrders = mChartHelper.getOrders(mPatientUuid);
+        mOrderExecutionCounts = mChartHelper.getOrderExecutionCounts(mPatientUuid);
+        mDailyStats = mChartHelper.getDailyStats(mPatientUuid, getChartConceptUuids());
         mOrdersByUuid = new HashMap<>();
-        for (Order order : orders) {
+        for (Order order : mOrders) {
             mOrdersByUuid.put(order.uuid, order);
         }
         LOG.d("Showing " + mObservations.size() + " observations and "
-            + orders.size() + " orders");
+            + mOrders.size() + " orders");
 
-        LocalDate admissionDate = getObservedDate(
-            latestObservations, ConceptUuids.ADMISSION_DATE_UUID);
-        LocalDate firstSymptomsDate = getObservedDate(
-            latestObservations, ConceptUuids.FIRST_SYMPTOM_DATE_UUID);
-        mUi.updateAdmissionDateAndFirstSymptomsDateUi(admissionDate, firstSymptomsDate);
-        mUi.updateWeightUi(latestObservations);
-        mUi.updateEbolaPcrTestResultUi(latestObservations);
-        mUi.updatePregnancyAndIvStatusUi(latestObservations);
+        mAdmissionDate = getObservedDate(
+            mLatestObservations, ConceptUuids.ADMISSION_DATE_UUID);
+        mFirstSymptomsDate = getObservedDate(
+            mLatestObservations, ConceptUuids.FIRST_SYMPTOM_DATE_UUID);
+        mUi.updateAdmissionDateAndFirstSymptomsDateUi(mAdmissionDate, mFirstSymptomsDate);
+        mUi.updateWeightUi(mLatestObservations);
+        mUi.updateEbolaPcrTestResultUi(mLatestObservations);
+        mUi.updatePregnancyAndIvStatusUi(mLatestObservations);
 
+        showChart(chartNum);
+    }
+
+    /**
+     * Shows the given chart using the observations and orders already loaded, which are
+     * loaded first if they haven't been yet; then prerenders the other charts.
+     */
+    public synchronized void showChart(int chartNum) {
+        if (mObservations == null) {
+            updatePatientObsUi(chartNum);  // calls back here once the data is loaded
+            return;
+        }
         lastChartIndex = chartNum;
         mUi.updateTilesAndGrid(
             mCharts.get(chartNum),
-            latestObservations, mObservations, orders,
-            admissionDate, firstSymptomsDate);
+            mLatestObservations, mObservations, mOrders, mOrderExecutionCounts, mDailyStats,
+            mAdmissionDate, mFirstSymptomsDate);
+        mUi.prerenderCharts(mCharts);
+    }
+
+    /** Gets the UUIDs of the concepts shown in the tiles and rows of all the charts. */
+    private Set<String> getChartConceptUuids() {
+        Set<String> uuids = new HashSet<>();
+        for (Chart chart : mCharts) {
+            if (chart == null) continue;
+            List<ChartSection> sections = new ArrayList<>(chart.tileGroups);
+            sections.addAll(chart.rowGroups);
+            for (ChartSection section : sections) {
+                for (ChartItem item : section.items) {
+                    uuids.addAll(item.conceptUuids);
+                }
+            }
+        }
+        return uuids;
     }
 
     public List<Chart> getCharts(){
@@ -642,6 +711,12 @@ final class PatientChartController implements ChartRenderer.GridJsInterface {
             updatePatientObsUi(lastChartIndex);
         }
 
+        public void onEventMainThread(PatientSyncSucceededEvent event) {
+            if (event.patientUuid.equals(mPatientUuid)) {
+                updatePatientObsUi(lastChartIndex);
+            }
+        }
+
         public void onEventMainThread(EncounterAddFailedEvent event) {
             if (event.encounter == mPendingNotesEncounter) {
                 mUi.indicateNoteSubmissionFailed();
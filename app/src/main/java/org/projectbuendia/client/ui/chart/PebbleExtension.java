@@ -16,6 +16,7 @@ import org.joda.time.LocalDate;
 import org.joda.time.ReadableInstant;
 import org.joda.time.format.DateTimeFormat;
 import org.projectbuendia.client.App;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.ObsPoint;
 import org.projectbuendia.client.models.ObsValue;
 import org.projectbuendia.client.utils.Logger;
@@ -29,7 +30,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
 
 import javax.annotation.Nullable;
 
@@ -62,6 +62,7 @@ public class PebbleExtension extends AbstractExtension {
     static {
         functions.put("get_latest_point", new GetLatestPointFunction());
         functions.put("get_all_points", new GetAllPointsFunction());
+        functions.put("get_daily_stats", new GetDailyStatsFunction());
         functions.put("get_order_execution_count", new GetOrderExecutionCountFunction());
         functions.put("intervals_overlap", new IntervalsOverlapFunction());
         functions.put("string_resource", new StringResourceFunction());
@@ -83,28 +84,67 @@ public class PebbleExtension extends AbstractExtension {
         }
     }
 
+    /**
+     * Computes the minimum of a collection, or takes it from the statistics computed by the
+     * database for one day ({@link DailyStats}) or for several (a collection of them).
+     */
     private static class MinFilter extends ZeroArgFilter {
         @Override public @Nullable Object apply(Object input, Map<String, Object> args) {
+            if (input instanceof DailyStats) {
+                return ((DailyStats) input).min;
+            }
+            List<DailyStats> stats = getDailyStatsList(input);
+            if (stats != null) {
+                double min = Double.POSITIVE_INFINITY;
+                for (DailyStats day : stats) {
+                    min = Math.min(min, day.min);
+                }
+                return min;
+            }
             if (input instanceof Collection) {
                 return ((Collection) input).isEmpty() ? null : Collections.min((Collection) input);
             } else return null;
         }
     }
 
+    /** Like the min filter, but for the maximum. */
     private static class MaxFilter extends ZeroArgFilter {
         @Override public @Nullable Object apply(Object input, Map<String, Object> args) {
+            if (input instanceof DailyStats) {
+                return ((DailyStats) input).max;
+            }
+            List<DailyStats> stats = getDailyStatsList(input);
+            if (stats != null) {
+                double max = Double.NEGATIVE_INFINITY;
+                for (DailyStats day : stats) {
+                    max = Math.max(max, day.max);
+                }
+                return max;
+            }
             if (input instanceof Collection) {
                 return ((Collection) input).isEmpty() ? null : Collections.max((Collection) input);
             } else return null;
         }
     }
 
-    /** Computes the average of a set of numbers or numeric ObsValues. */
+    /**
+     * Computes the average of a set of numbers or numeric ObsValues, or takes it from the
+     * statistics computed by the database for one day or for several.
+     */
     private static class AvgFilter extends ZeroArgFilter {
         @Override public @Nullable Object apply(Object input, Map<String, Object> args) {
+            if (input instanceof DailyStats) {
+                return ((DailyStats) input).avg;
+            }
             double sum = 0;
             int count = 0;
-            if (input instanceof Collection) {
+            List<DailyStats> stats = getDailyStatsList(input);
+            if (stats != null) {
+                for (DailyStats day : stats) {
+                    sum += day.avg*day.count;
+                    count += day.count;
+                }
+            } else if (input instanceof Collection) {
                 for (Object item : (Collection) input) {
                     if (item instanceof ObsValue) {
                         Double number = ((ObsValue) item).number;
@@ -122,6 +162,17 @@ public class PebbleExtension extends AbstractExtension {
         }
     }
 
+    /** Returns the input as a list of DailyStats if it is a non-empty one, otherwise null. */
+    private static @Nullable List<DailyStats> getDailyStatsList(Object input) {
+        if (!(input instanceof Collection) || ((Collection) input).isEmpty()) return null;
+        List<DailyStats> stats = new ArrayList<>();
+        for (Object item : (Collection) input) {
+            if (!(item instanceof DailyStats)) return null;
+            stats.add((DailyStats) item);
+        }
+        return stats;
+    }
+
     /** Converts a Java null, boolean, integer, double, string, or DateTime to a JS expression. */
     private static class JsFilter extends ZeroArgFilter {
         @Override public Object apply(Object input, Map<String, Object> args) {
@@ -294,7 +345,24 @@ public class PebbleExtension extends AbstractExtension {
             // TODO/robustness: Check types before casting.
             Row row = (Row) args.get("row");
             Column column = (Column) args.get("column");
-            return column.pointSetByConceptUuid.get(row.item.conceptUuids.get(0));
+            return column.getPoints(row.item.conceptUuids.get(0));
+        }
+    }
+
+    /**
+     * get_daily_stats(row, column) -> the database's DailyStats on the numeric values of concept 1
+     * in a given cell, or null
+     */
+    private static class GetDailyStatsFunction implements Function {
+        @Override public List<String> getArgumentNames() {
+            return ImmutableList.of("row", "column");
+        }
+
+        @Override public @Nullable Object execute(Map<String, Object> args) {
+            // TODO/robustness: Check types before casting.
+            Row row = (Row) args.get("row");
+            Column column = (Column) args.get("column");
+            return column.getStats(row.item.conceptUuids.get(0));
         }
     }
 
@@ -308,9 +376,7 @@ public class PebbleExtension extends AbstractExtension {
             // TODO/robustness: Check types before casting.
             Row row = (Row) args.get("row");
             Column column = (Column) args.get("column");
-            SortedSet<ObsPoint> obsSet =
-                    column.pointSetByConceptUuid.get(row.item.conceptUuids.get(0));
-            return obsSet.isEmpty() ? null : obsSet.last();
+            return column.getLatestPoint(row.item.conceptUuids.get(0));
         }
     }
 
@@ -1,9 +1,11 @@
 package org.projectbuendia.client.ui.chart;
 
 import org.projectbuendia.client.models.ChartItem;
+import org.projectbuendia.client.models.DailyStats;
 import org.projectbuendia.client.models.ObsPoint;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -12,6 +14,8 @@ import javax.annotation.Nonnull;
 public class Tile {
     public final ChartItem item;
     public final ObsPoint[] points;
+    /** The database's daily statistics on the first concept, oldest first, for trends. */
+    public final List<DailyStats> dailyStats;
 
     static Map<String, ChartItem> DEFAULTS = new HashMap<>();
     static {
@@ -24,8 +28,10 @@ public class Tile {
         DEFAULTS.put("time", new ChartItem("", "", false, null, "{1,time,HH:mm}", "", "", "", ""));
     }
     
-    public Tile(@Nonnull ChartItem item, @Nonnull ObsPoint[] points) {
+    public Tile(@Nonnull ChartItem item, @Nonnull ObsPoint[] points,
+                @Nonnull List<DailyStats> dailyStats) {
         this.item = item.withDefaults(DEFAULTS.get(item.type));
         this.points = points;
+        this.dailyStats = dailyStats;
     }
 }
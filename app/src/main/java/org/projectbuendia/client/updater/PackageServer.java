@@ -62,6 +62,7 @@ public class PackageServer {
                 listener,
                 errorListener
             ).setRetryPolicy(
-                new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f)));
+                new DefaultRetryPolicy(Common.REQUEST_TIMEOUT_MS_MEDIUM, 1, 1f)),
+            VolleyRequestQueue.Lane.BACKGROUND);
     }
 }
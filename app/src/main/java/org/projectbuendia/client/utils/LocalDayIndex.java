@@ -0,0 +1,119 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.client.utils;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.Arrays;
+
+/**
+ * Maps instants to calendar days in a time zone, numbered relative to an origin date (day 0).
+ * The start of each day is computed once with Joda and kept in a sorted array, which grows as
+ * needed; after that, finding the day of an instant is a little arithmetic and no allocation.
+ * Days need not be 24 hours long, so daylight saving transitions are handled correctly.
+ */
+public class LocalDayIndex {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final DateTimeZone mZone;
+    private final LocalDate mOrigin;
+    /** mStarts[i] is the start of day (mFirstDay + i); the last entry ends the last day. */
+    private long[] mStarts;
+    private int mFirstDay;
+
+    public LocalDayIndex(DateTimeZone zone, LocalDate origin) {
+        mZone = zone;
+        mOrigin = origin;
+        mFirstDay = 0;
+        mStarts = new long[] {startOf(0), startOf(1)};
+    }
+
+    /** Returns the number of the day containing the given instant. */
+    public int getDay(long millis) {
+        if (millis < mStarts[0]) {
+            extendBefore(millis);
+        } else if (millis >= mStarts[mStarts.length - 1]) {
+            extendAfter(millis);
+        }
+        // Guess assuming 24-hour days, then step past any daylight saving shifts.
+        int last = mStarts.length - 2;
+        int i = (int) Math.min((millis - mStarts[0]) / DAY_MILLIS, last);
+        while (mStarts[i] > millis) i--;
+        while (mStarts[i + 1] <= millis) i++;
+        return mFirstDay + i;
+    }
+
+    /** Returns the time at which the given day starts. */
+    public long getStartMillis(int day) {
+        ensureDays(day, day);
+        return mStarts[day - mFirstDay];
+    }
+
+    /** Returns the time at which the given day ends (the start of the next day). */
+    public long getStopMillis(int day) {
+        ensureDays(day, day);
+        return mStarts[day + 1 - mFirstDay];
+    }
+
+    /** Returns the calendar date of the given day. */
+    public LocalDate getDate(int day) {
+        return mOrigin.plusDays(day);
+    }
+
+    /** Makes sure that the days from firstDay to lastDay, inclusive, are indexed. */
+    public void ensureDays(int firstDay, int lastDay) {
+        if (firstDay < mFirstDay) {
+            extendBefore(startOf(firstDay));
+        }
+        if (lastDay >= mFirstDay + mStarts.length - 1) {
+            extendAfter(startOf(lastDay));
+        }
+    }
+
+    private long startOf(int day) {
+        return mOrigin.plusDays(day).toDateTimeAtStartOfDay(mZone).getMillis();
+    }
+
+    /** Adds days before the first one until the index covers millis, at least doubling it. */
+    private void extendBefore(long millis) {
+        int count = mStarts.length - 1;
+        int needed = (int) ((mStarts[0] - millis) / DAY_MILLIS) + 2;
+        int firstDay = mFirstDay - Math.max(count, needed);
+        while (startOf(firstDay) > millis) {
+            firstDay--;
+        }
+        long[] starts = new long[mStarts.length + (mFirstDay - firstDay)];
+        for (int i = 0; i < mFirstDay - firstDay; i++) {
+            starts[i] = startOf(firstDay + i);
+        }
+        System.arraycopy(mStarts, 0, starts, mFirstDay - firstDay, mStarts.length);
+        mStarts = starts;
+        mFirstDay = firstDay;
+    }
+
+    /** Adds days after the last one until the index covers millis, at least doubling it. */
+    private void extendAfter(long millis) {
+        int count = mStarts.length - 1;
+        int needed = (int) ((millis - mStarts[count]) / DAY_MILLIS) + 2;
+        int endDay = mFirstDay + count + Math.max(count, needed);
+        while (startOf(endDay) <= millis) {
+            endDay++;
+        }
+        int oldLength = mStarts.length;
+        long[] starts = Arrays.copyOf(mStarts, endDay - mFirstDay + 1);
+        for (int i = oldLength; i < starts.length; i++) {
+            starts[i] = startOf(mFirstDay + i);
+        }
+        mStarts = starts;
+    }
+}
@@ -31,7 +31,8 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.projectbuendia.client.App;
 import org.projectbuendia.client.R;
-import org.projectbuendia.client.net.Server;
+import org.projectbuendia.client.sync.EventLogShipper;
+import org.projectbuendia.client.user.UserManager;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -236,36 +237,39 @@ public class Utils {
     }
 
     /**
-     * Logs a user action by sending a dummy request to the server.  (The server
-     * logs can then be scanned later to produce analytics for the client app.)
+     * Logs a user action by queueing it to be sent to the server in a dummy request.  (The
+     * server logs can then be scanned later to produce analytics for the client app.)
      * @param action An identifier for the user action; should describe a user-
      *               initiated operation in the UI (e.g. "foo_button_pressed").
      * @param pairs  An even number of arguments providing key-value pairs of
      *               arbitrary data to record with the event.
      */
     public static void logUserAction(String action, String... pairs) {
-        Server server = App.getInstance().getServer();
-        if (server != null) {
-            List<String> allPairs = Lists.newArrayList("action", action);
-            allPairs.addAll(Arrays.asList(pairs));
-            server.logToServer(allPairs);
-        }
+        List<String> allPairs = Lists.newArrayList("action", action);
+        allPairs.addAll(Arrays.asList(pairs));
+        logToServer(allPairs);
     }
 
     /**
-     * Logs an event by sending a dummy request to the server.  (The server logs
-     * can then be scanned later to produce analytics for the client app.)
+     * Logs an event by queueing it to be sent to the server in a dummy request.  (The server
+     * logs can then be scanned later to produce analytics for the client app.)
      * @param event An identifier for an event that is not directly initiated by
      *              the user (e.g. "form_submission_failed").
      * @param pairs An even number of arguments providing key-value pairs of
      *              arbitrary data to record with the event.
      */
     public static void logEvent(String event, String... pairs) {
-        Server server = App.getInstance().getServer();
-        if (server != null) {
-            List<String> allPairs = Lists.newArrayList("event", event);
-            allPairs.addAll(Arrays.asList(pairs));
-            server.logToServer(allPairs);
+        List<String> allPairs = Lists.newArrayList("event", event);
+        allPairs.addAll(Arrays.asList(pairs));
+        logToServer(allPairs);
+    }
+
+    /** Queues key-value pairs to be sent to the server with the next batch of logged events. */
+    private static void logToServer(List<String> pairs) {
+        EventLogShipper shipper = App.getEventLogShipper();
+        if (shipper != null) {
+            UserManager userManager = App.getUserManager();
+            shipper.log(userManager == null ? null : userManager.getActiveUser(), pairs);
         }
     }
 
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.fakeserver;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.projectbuendia.client.json.JsonChart;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.json.JsonConceptResponse;
+import org.projectbuendia.client.json.JsonForm;
+import org.projectbuendia.client.json.JsonLocation;
+import org.projectbuendia.client.json.JsonObservation;
+import org.projectbuendia.client.json.JsonOrder;
+import org.projectbuendia.client.json.JsonPatient;
+import org.projectbuendia.client.json.JsonUser;
+import org.projectbuendia.client.json.Serializers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import okio.Buffer;
+import okio.GzipSink;
+
+/**
+ * A stand-in for the Buendia API that runs on a desktop JVM, serving the endpoints used by
+ * OpenMrsServer, OpenMrsChartServer, and the sync phases from records held in memory.
+ * <p>
+ * Patients, observations, and orders are served the way the real server serves them for
+ * incremental sync: each record is stamped with a revision number as it is added, the sync
+ * token is the revision of the last record sent, and a request returns the records added after
+ * the "since" token, at most "limit" of them, with "more" set if some remain.  A request can be
+ * narrowed to one patient's records with the "patient" parameter.  Everything else is served
+ * whole.  Responses are gzip-compressed for clients that accept it, as Tomcat does.
+ * <p>
+ * The "changes" feed is a long poll, as on the real server: a request is held until records
+ * are added after its "since" token or its "wait" time runs out, and a wait that expires with
+ * nothing new gets an empty body.
+ * <p>
+ * Encounters can be posted, so that saves can be timed while a sync is running, but they are
+ * not stored.
+ * <p>
+ * Run main() to serve generated data on a fixed port, so that the app on an emulator can sync
+ * from it; set the OpenMRS base URL to {@code http://10.0.2.2:<port>/openmrs}.
+ */
+public class FakeBuendiaServer {
+    /** The path of the Buendia API, below the OpenMRS base URL. */
+    public static final String API_PATH = "/openmrs/ws/rest/v1/projectbuendia";
+
+    private static final int DEFAULT_LIMIT = 500;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final Gson mGson = Serializers.getGson();
+    /** Incremental records by resource type, in revision order. */
+    private final Map<String, List<Record>> mRecords = new HashMap<>();
+    private final HospitalData mData = new HospitalData();
+    private long mRevision;
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private volatile long mBytesPerSecond;
+    private volatile long mLatencyMillis;
+    /** Set on shutdown, to release any requests held open by the change feed. */
+    private boolean mStopping;
+
+    /** A record for incremental sync, already in JSON form so that serving it is cheap. */
+    private static class Record {
+        final long revision;
+        final String patientUuid;
+        final String json;
+
+        Record(long revision, String patientUuid, String json) {
+            this.revision = revision;
+            this.patientUuid = patientUuid;
+            this.json = json;
+        }
+    }
+
+    public FakeBuendiaServer() {
+        mRecords.put("patients", new ArrayList<Record>());
+        mRecords.put("observations", new ArrayList<Record>());
+        mRecords.put("orders", new ArrayList<Record>());
+        mServer.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                mRequestCount.incrementAndGet();
+                MockResponse response = FakeBuendiaServer.this.dispatch(request);
+                if (mLatencyMillis > 0) {
+                    response.setBodyDelay(mLatencyMillis, TimeUnit.MILLISECONDS);
+                }
+                if (mBytesPerSecond > 0) {
+                    response.throttleBody(
+                        Math.max(1, mBytesPerSecond/10), 100, TimeUnit.MILLISECONDS);
+                }
+                return response;
+            }
+        });
+    }
+
+    /** Starts serving on any free port. */
+    public void start() throws IOException {
+        mServer.start();
+    }
+
+    /** Starts serving on the given port. */
+    public void start(int port) throws IOException {
+        mServer.start(port);
+    }
+
+    public void shutdown() throws IOException {
+        synchronized (this) {
+            mStopping = true;
+            notifyAll();
+        }
+        mServer.shutdown();
+    }
+
+    /** Returns the OpenMRS base URL to give the client. */
+    public String getOpenmrsUrl() {
+        return mServer.url("/openmrs").toString();
+    }
+
+    /** Returns the Buendia API URL, as OpenMrsConnectionDetails.getBuendiaApiUrl() would. */
+    public String getApiUrl() {
+        return mServer.url(API_PATH).toString();
+    }
+
+    /** Limits the speed of response bodies, to imitate a slow link; 0 for no limit. */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /** Delays the body of every response by the given time, to imitate a distant server. */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Adds records to serve.  Incremental records get new revisions, so clients will receive
+     * them on their next sync; other records are added to the lists served whole.
+     */
+    public synchronized void load(HospitalData data) {
+        mData.users.addAll(data.users);
+        mData.locations.addAll(data.locations);
+        mData.concepts.addAll(data.concepts);
+        mData.charts.addAll(data.charts);
+        mData.forms.addAll(data.forms);
+        for (JsonPatient patient : data.patients) {
+            add("patients", patient.uuid, mGson.toJson(patient, JsonPatient.class));
+        }
+        for (JsonObservation obs : data.observations) {
+            add("observations", obs.patient_uuid, mGson.toJson(obs, JsonObservation.class));
+        }
+        for (JsonOrder order : data.orders) {
+            add("orders", order.patient_uuid, mGson.toJson(order, JsonOrder.class));
+        }
+        notifyAll();  // wakes change feed requests
+    }
+
+    private void add(String resourceType, String patientUuid, String json) {
+        mRecords.get(resourceType).add(new Record(++mRevision, patientUuid, json));
+    }
+
+    private synchronized MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = mServer.url(request.getPath());
+        String path = url.encodedPath();
+        if (!path.startsWith(API_PATH + "/")) {
+            return new MockResponse().setResponseCode(404);
+        }
+        List<String> segments = url.pathSegments().subList(
+            HttpUrl.parse("http://x" + API_PATH).pathSize(), url.pathSize());
+        String resource = segments.get(0);
+        String id = segments.size() > 1 ? segments.get(1) : null;
+        boolean gzip = String.valueOf(request.getHeader("Accept-Encoding")).contains("gzip");
+
+        if (mRecords.containsKey(resource) && id == null) {
+            return respond(getPage(mRecords.get(resource), url.queryParameter("since"),
+                url.queryParameter("patient"), url.queryParameter("limit")), gzip);
+        }
+        switch (resource) {
+            case "users":
+                JsonArray users = new JsonArray();
+                for (JsonUser user : mData.users) {
+                    JsonObject object = new JsonObject();
+                    object.addProperty("user_id", user.id);
+                    object.addProperty("full_name", user.fullName);
+                    users.add(object);
+                }
+                return respond(results(users), gzip);
+            case "locations":
+                return respond(results(mGson.toJsonTree(mData.locations)), gzip);
+            case "concepts":
+                if (id != null) {
+                    // Used by the health check, which only needs a successful response.
+                    return respond("{\"uuid\":\"" + id + "\"}", gzip);
+                }
+                JsonConceptResponse concepts = new JsonConceptResponse();
+                concepts.results = mData.concepts.toArray(new JsonConcept[0]);
+                return respond(mGson.toJson(concepts), gzip);
+            case "charts":
+                for (JsonChart chart : mData.charts) {
+                    if (chart.uuid.equals(id)) return respond(mGson.toJson(chart), gzip);
+                }
+                break;
+            case "xforms":
+                if (id != null) {
+                    return respond("{\"uuid\":\"" + id + "\",\"xml\":\"<h:html/>\"}", gzip);
+                }
+                JsonArray forms = new JsonArray();
+                for (JsonForm form : mData.forms) {
+                    JsonObject object = mGson.toJsonTree(form).getAsJsonObject();
+                    object.addProperty("date_created", 1420070400000L);
+                    object.add("date_changed", null);
+                    forms.add(object);
+                }
+                return respond(results(forms), gzip);
+            case "changes":
+                return getChanges(url.queryParameter("since"), url.queryParameter("wait"), gzip);
+            case "encounters":
+                if ("POST".equals(request.getMethod())) {
+                    // Saved encounters aren't served back; the client only needs a response
+                    // that parses as one.
+                    return respond("{\"uuid\":\"" + UUID.randomUUID() + "\"}", gzip);
+                }
+                break;
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    /**
+     * Answers a change feed request, holding it until records are added after the given token
+     * or the wait time runs out.  Without a token, answers at once with the current one.
+     */
+    private MockResponse getChanges(@Nullable String since, @Nullable String waitParam,
+                                    boolean gzip) {
+        long sinceRevision = since == null ? mRevision : Long.parseLong(since);
+        long waitMillis = waitParam == null ? 0 : Long.parseLong(waitParam)*1000;
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long remainingMillis = waitMillis;
+        try {
+            // wait() gives up the lock, so other requests are served meanwhile.
+            while (since != null && mRevision <= sinceRevision && remainingMillis > 0
+                && !mStopping) {
+                wait(remainingMillis);
+                remainingMillis = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (since != null && mRevision <= sinceRevision) {
+            return respond("", gzip);
+        }
+        JsonArray changed = new JsonArray();
+        for (Map.Entry<String, List<Record>> entry : mRecords.entrySet()) {
+            List<Record> records = entry.getValue();
+            if (firstAfter(records, sinceRevision) < records.size()) {
+                changed.add(new JsonPrimitive(entry.getKey()));
+            }
+        }
+        JsonObject object = new JsonObject();
+        object.add("changed", changed);
+        object.addProperty("syncToken", String.valueOf(mRevision));
+        return respond(mGson.toJson(object), gzip);
+    }
+
+    /** Builds an incremental sync response. */
+    private String getPage(List<Record> records, @Nullable String since,
+                           @Nullable String patientUuid, @Nullable String limitParam) {
+        long sinceRevision = since == null ? 0 : Long.parseLong(since);
+        int limit = limitParam == null ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        StringBuilder json = new StringBuilder("{\"results\":[");
+        int count = 0;
+        long lastRevision = sinceRevision;
+        boolean more = false;
+        for (int i = firstAfter(records, sinceRevision); i < records.size(); i++) {
+            Record record = records.get(i);
+            if (patientUuid != null && !patientUuid.equals(record.patientUuid)) continue;
+            if (count == limit) {
+                more = true;
+                break;
+            }
+            if (count > 0) json.append(',');
+            json.append(record.json);
+            lastRevision = record.revision;
+            count++;
+        }
+        // When the page is the last, the token covers everything up to now, so that the next
+        // sync doesn't scan records of other types added in the meantime.
+        json.append("],\"syncToken\":\"").append(more ? lastRevision : mRevision)
+            .append("\",\"more\":").append(more).append('}');
+        return json.toString();
+    }
+
+    /** Returns the index of the first record with a revision after the given one. */
+    private static int firstAfter(List<Record> records, long revision) {
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (records.get(mid).revision <= revision) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private String results(JsonElement results) {
+        JsonObject object = new JsonObject();
+        object.add("results", results);
+        return mGson.toJson(object);
+    }
+
+    private static MockResponse respond(String json, boolean gzip) {
+        MockResponse response = new MockResponse()
+            .setHeader("Content-Type", "application/json; charset=utf-8");
+        if (!gzip) {
+            return response.setBody(json);
+        }
+        Buffer compressed = new Buffer();
+        try {
+            Buffer source = new Buffer().writeUtf8(json);
+            GzipSink sink = new GzipSink(compressed);
+            sink.write(source, source.size());
+            sink.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);  // writing to memory doesn't fail
+        }
+        return response.setHeader("Content-Encoding", "gzip").setBody(compressed);
+    }
+
+    /**
+     * Serves generated data until stopped.
+     * Arguments: [port [patients [days [seed]]]], defaulting to 8080, 200, 14, and 1.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int numPatients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int numDays = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        HospitalData data = new HospitalDataGenerator(seed).generate(numPatients, numDays);
+        FakeBuendiaServer server = new FakeBuendiaServer();
+        server.load(data);
+        server.start(port);
+        System.out.printf("Serving %s%nOpenMRS base URL: %s%n", data, server.getOpenmrsUrl());
+        Thread.currentThread().join();  // until the process is killed
+    }
+}
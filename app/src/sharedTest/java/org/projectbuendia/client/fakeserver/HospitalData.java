@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.fakeserver;
+
+import org.projectbuendia.client.json.JsonChart;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.json.JsonForm;
+import org.projectbuendia.client.json.JsonLocation;
+import org.projectbuendia.client.json.JsonObservation;
+import org.projectbuendia.client.json.JsonOrder;
+import org.projectbuendia.client.json.JsonPatient;
+import org.projectbuendia.client.json.JsonUser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A set of records for {@link FakeBuendiaServer} to serve, such as one made by a generator. */
+public class HospitalData {
+    public final List<JsonUser> users = new ArrayList<>();
+    public final List<JsonLocation> locations = new ArrayList<>();
+    public final List<JsonConcept> concepts = new ArrayList<>();
+    public final List<JsonChart> charts = new ArrayList<>();
+    public final List<JsonForm> forms = new ArrayList<>();
+    public final List<JsonPatient> patients = new ArrayList<>();
+    public final List<JsonObservation> observations = new ArrayList<>();
+    public final List<JsonOrder> orders = new ArrayList<>();
+
+    @Override public String toString() {
+        return String.format("%d users, %d locations, %d concepts, %d forms, %d patients, "
+                + "%d observations, %d orders", users.size(), locations.size(), concepts.size(),
+            forms.size(), patients.size(), observations.size(), orders.size());
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.fakeserver;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.json.JsonChart;
+import org.projectbuendia.client.json.JsonChartItem;
+import org.projectbuendia.client.json.JsonChartSection;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.json.JsonForm;
+import org.projectbuendia.client.json.JsonLocation;
+import org.projectbuendia.client.json.JsonObservation;
+import org.projectbuendia.client.json.JsonOrder;
+import org.projectbuendia.client.json.JsonPatient;
+import org.projectbuendia.client.json.JsonUser;
+import org.projectbuendia.client.models.AppModel;
+import org.projectbuendia.client.models.ChartSectionType;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.Zones;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes up the records of a treatment centre: users, locations, the concepts and chart used by
+ * the app, and patients who are seen several times a day, each time having their vital signs,
+ * condition, and symptoms recorded.  The same seed always gives the same records, so that
+ * benchmark runs can be compared.
+ */
+public class HospitalDataGenerator {
+    /** The number of times each patient is seen each day. */
+    public static final int ROUNDS_PER_DAY = 3;
+    /** The number of symptoms, each a coded concept, recorded on every round. */
+    public static final int NUM_SYMPTOMS = 8;
+    public static final int NUM_CLINICIANS = 20;
+
+    /** Midnight at the start of day 0. */
+    private static final DateTime START = new DateTime(2015, 1, 5, 0, 0, DateTimeZone.UTC);
+    private static final String ROOT_LOCATION_UUID = uuid(0, 1);
+    private static final String[] GIVEN_NAMES = {
+        "Aminata", "Fatmata", "Mariama", "Isatu", "Hawa", "Mohamed", "Ibrahim", "Abu", "Alhaji",
+        "Sorie", "Kadiatu", "Zainab", "Musa", "Foday", "Adama", "Sahr"
+    };
+    private static final String[] FAMILY_NAMES = {
+        "Kamara", "Sesay", "Conteh", "Koroma", "Bangura", "Turay", "Kanu", "Mansaray", "Jalloh",
+        "Fofanah", "Kargbo", "Bah"
+    };
+    private static final String[] CONDITIONS = {
+        ConceptUuids.GENERAL_CONDITION_WELL_UUID,
+        ConceptUuids.GENERAL_CONDITION_UNWELL_UUID,
+        ConceptUuids.GENERAL_CONDITION_CRITICAL_UUID,
+        ConceptUuids.GENERAL_CONDITION_CONVALESCENT_UUID
+    };
+    private static final String[] SEVERITIES = {
+        ConceptUuids.NONE_UUID, ConceptUuids.MILD_UUID,
+        ConceptUuids.MODERATE_UUID, ConceptUuids.SEVERE_UUID
+    };
+    private static final String[] INSTRUCTIONS = {
+        "Paracetamol 1 g PO q6h", "ORS 1 L PO daily", "Ceftriaxone 2 g IV daily",
+        "Ringer's lactate 1 L IV q8h", "Metoclopramide 10 mg IV q8h", "Artesunate 2.4 mg/kg IV"
+    };
+
+    private final Random mRandom;
+    private final List<JsonUser> mClinicians = new ArrayList<>();
+    private final List<String> mTentUuids = new ArrayList<>();
+    private final List<String> mSymptomUuids = new ArrayList<>();
+    private final List<JsonPatient> mPatients = new ArrayList<>();
+    /** A serial number for each kind of record, to make unique UUIDs. */
+    private int mNextEncounter;
+    private int mNextObs;
+    private int mNextOrder;
+
+    public HospitalDataGenerator(long seed) {
+        mRandom = new Random(seed);
+        for (int i = 0; i < NUM_SYMPTOMS; i++) {
+            mSymptomUuids.add(uuid(i, 2));
+        }
+    }
+
+    /**
+     * Generates the reference data (users, locations, concepts, chart, and forms), the given
+     * number of patients with a few orders each, and their observations for days 0 to
+     * numDays - 1.
+     */
+    public HospitalData generate(int numPatients, int numDays) {
+        HospitalData data = new HospitalData();
+        addUsers(data);
+        addLocations(data);
+        addConcepts(data);
+        addChart(data);
+        addForms(data);
+        for (int i = 0; i < numPatients; i++) {
+            JsonPatient patient = newPatient(i);
+            mPatients.add(patient);
+            data.patients.add(patient);
+            addOrders(data, patient, numDays);
+        }
+        for (int day = 0; day < numDays; day++) {
+            addObservations(data, day);
+        }
+        return data;
+    }
+
+    /** Generates one more day of observations for all the patients generated so far. */
+    public HospitalData generateDay(int day) {
+        HospitalData data = new HospitalData();
+        addObservations(data, day);
+        return data;
+    }
+
+    private void addUsers(HospitalData data) {
+        data.users.add(new JsonUser("guest", "Guest User"));
+        for (int i = 0; i < NUM_CLINICIANS; i++) {
+            JsonUser user = new JsonUser("user" + i, pick(GIVEN_NAMES) + " " + pick(FAMILY_NAMES));
+            mClinicians.add(user);
+            data.users.add(user);
+        }
+    }
+
+    private void addLocations(HospitalData data) {
+        data.locations.add(newLocation(ROOT_LOCATION_UUID, null, "Facility"));
+        data.locations.add(newLocation(Zones.TRIAGE_ZONE_UUID, ROOT_LOCATION_UUID, "Triage"));
+        data.locations.add(newLocation(Zones.SUSPECT_ZONE_UUID, ROOT_LOCATION_UUID, "Suspect"));
+        data.locations.add(newLocation(Zones.PROBABLE_ZONE_UUID, ROOT_LOCATION_UUID, "Probable"));
+        data.locations.add(
+            newLocation(Zones.CONFIRMED_ZONE_UUID, ROOT_LOCATION_UUID, "Confirmed"));
+        data.locations.add(newLocation(Zones.MORGUE_ZONE_UUID, ROOT_LOCATION_UUID, "Morgue"));
+        data.locations.add(
+            newLocation(Zones.DISCHARGED_ZONE_UUID, ROOT_LOCATION_UUID, "Discharged"));
+        String[] zones = {Zones.SUSPECT_ZONE_UUID, Zones.PROBABLE_ZONE_UUID,
+            Zones.CONFIRMED_ZONE_UUID, Zones.CONFIRMED_ZONE_UUID, Zones.CONFIRMED_ZONE_UUID};
+        for (int i = 0; i < zones.length; i++) {
+            String tentUuid = uuid(i + 1, 1);
+            data.locations.add(newLocation(tentUuid, zones[i], "Tent " + (i + 1)));
+            mTentUuids.add(tentUuid);
+        }
+    }
+
+    private void addConcepts(HospitalData data) {
+        data.concepts.add(newConcept(ConceptUuids.TEMPERATURE_UUID, 5088, ConceptType.NUMERIC,
+            "Temperature (°C)"));
+        data.concepts.add(newConcept(ConceptUuids.PULSE_UUID, 5087, ConceptType.NUMERIC,
+            "Pulse"));
+        data.concepts.add(newConcept(ConceptUuids.WEIGHT_UUID, 5089, ConceptType.NUMERIC,
+            "Weight (kg)"));
+        data.concepts.add(newConcept(ConceptUuids.GENERAL_CONDITION_UUID, 162643,
+            ConceptType.CODED, "General condition"));
+        data.concepts.add(newConcept(ConceptUuids.IV_UUID, 162647, ConceptType.CODED,
+            "IV access present"));
+        data.concepts.add(newConcept(ConceptUuids.SOLID_FOOD_UUID, 159597, ConceptType.CODED,
+            "Eating solid food"));
+        data.concepts.add(newConcept(ConceptUuids.NOTES_UUID, 162169, ConceptType.TEXT,
+            "Notes"));
+        for (int i = 0; i < NUM_SYMPTOMS; i++) {
+            data.concepts.add(newConcept(mSymptomUuids.get(i), 900000 + i, ConceptType.CODED,
+                "Symptom " + (i + 1)));
+        }
+        for (String answer : CONDITIONS) {
+            data.concepts.add(newConcept(answer, null, ConceptType.NONE, answer));
+        }
+        for (String answer : SEVERITIES) {
+            data.concepts.add(newConcept(answer, null, ConceptType.NONE, answer));
+        }
+        data.concepts.add(newConcept(ConceptUuids.YES_UUID, 1065, ConceptType.NONE, "Yes"));
+        data.concepts.add(newConcept(ConceptUuids.NO_UUID, 1066, ConceptType.NONE, "No"));
+    }
+
+    private void addChart(HospitalData data) {
+        JsonChart chart = new JsonChart();
+        chart.version = "0.7";
+        chart.uuid = AppModel.CHART_UUID;
+        JsonChartSection vitals = newSection(ChartSectionType.TILE_ROW, "Vital signs");
+        vitals.items = new JsonChartItem[] {
+            newItem("Temperature", "number", "##.# °C", ConceptUuids.TEMPERATURE_UUID),
+            newItem("Pulse", "number", "## bpm", ConceptUuids.PULSE_UUID),
+            newItem("Weight", "number", "##.# kg", ConceptUuids.WEIGHT_UUID)
+        };
+        JsonChartSection condition = newSection(ChartSectionType.GRID_SECTION, "Condition");
+        condition.items = new JsonChartItem[] {
+            newItem("General condition", "select", null, ConceptUuids.GENERAL_CONDITION_UUID),
+            newItem("IV access", "yes_no", null, ConceptUuids.IV_UUID),
+            newItem("Eating solid food", "yes_no", null, ConceptUuids.SOLID_FOOD_UUID)
+        };
+        JsonChartSection symptoms = newSection(ChartSectionType.GRID_SECTION, "Symptoms");
+        symptoms.items = new JsonChartItem[NUM_SYMPTOMS];
+        for (int i = 0; i < NUM_SYMPTOMS; i++) {
+            symptoms.items[i] = newItem("Symptom " + (i + 1), "select", null, mSymptomUuids.get(i));
+        }
+        chart.sections = new JsonChartSection[] {vitals, condition, symptoms};
+        data.charts.add(chart);
+    }
+
+    private void addForms(HospitalData data) {
+        String[] names = {"Admission", "Observation", "Discharge"};
+        for (int i = 0; i < names.length; i++) {
+            JsonForm form = new JsonForm();
+            form.id = String.valueOf(i + 1);
+            form.uuid = uuid(i, 3);
+            form.name = names[i];
+            form.version = "1";
+            data.forms.add(form);
+        }
+    }
+
+    private JsonPatient newPatient(int index) {
+        JsonPatient patient = new JsonPatient();
+        patient.uuid = uuid(index, 4);
+        patient.id = "KH." + (index + 1);
+        patient.given_name = pick(GIVEN_NAMES);
+        patient.family_name = pick(FAMILY_NAMES);
+        patient.sex = mRandom.nextBoolean() ? "M" : "F";
+        patient.birthdate = new LocalDate(1950 + mRandom.nextInt(64), 1 + mRandom.nextInt(12), 1);
+        patient.assigned_location = new JsonLocation();
+        patient.assigned_location.uuid = pick(mTentUuids);
+        return patient;
+    }
+
+    private void addOrders(HospitalData data, JsonPatient patient, int numDays) {
+        int numOrders = 1 + mRandom.nextInt(3);
+        for (int i = 0; i < numOrders; i++) {
+            JsonOrder order = new JsonOrder();
+            order.uuid = uuid(mNextOrder++, 5);
+            order.patient_uuid = patient.uuid;
+            order.instructions = pick(INSTRUCTIONS);
+            int startDay = mRandom.nextInt(Math.max(1, numDays));
+            order.start_millis = START.plusDays(startDay).plusHours(9).getMillis();
+            // Some orders are open-ended; the rest last up to a week.
+            if (mRandom.nextBoolean()) {
+                order.stop_millis = order.start_millis + (1 + mRandom.nextInt(7)) * 86400000L;
+            }
+            data.orders.add(order);
+        }
+    }
+
+    private void addObservations(HospitalData data, int day) {
+        for (JsonPatient patient : mPatients) {
+            for (int round = 0; round < ROUNDS_PER_DAY; round++) {
+                // Rounds start at 08:00 and are spread through the day, a few minutes apart.
+                DateTime time = START.plusDays(day).plusHours(8 + round * 12 / ROUNDS_PER_DAY)
+                    .plusMinutes(mRandom.nextInt(90));
+                String encounterUuid = uuid(mNextEncounter++, 6);
+                String entererUuid = pick(mClinicians).id;
+                List<JsonObservation> obs = new ArrayList<>();
+                obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                    ConceptUuids.TEMPERATURE_UUID, format(36 + mRandom.nextDouble() * 4.5)));
+                obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                    ConceptUuids.PULSE_UUID, String.valueOf(60 + mRandom.nextInt(70))));
+                obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                    ConceptUuids.GENERAL_CONDITION_UUID, pick(CONDITIONS)));
+                obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                    ConceptUuids.IV_UUID, yesNo()));
+                obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                    ConceptUuids.SOLID_FOOD_UUID, yesNo()));
+                for (String symptomUuid : mSymptomUuids) {
+                    obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                        symptomUuid, pick(SEVERITIES)));
+                }
+                if (round == 0) {
+                    obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                        ConceptUuids.WEIGHT_UUID, format(10 + mRandom.nextDouble() * 80)));
+                }
+                if (mRandom.nextInt(5) == 0) {
+                    obs.add(newObs(patient, encounterUuid, time, entererUuid,
+                        ConceptUuids.NOTES_UUID, "Seen on round " + (round + 1)));
+                }
+                data.observations.addAll(obs);
+            }
+        }
+    }
+
+    private JsonObservation newObs(JsonPatient patient, String encounterUuid, DateTime time,
+                                   String entererUuid, String conceptUuid, String value) {
+        JsonObservation obs = new JsonObservation();
+        obs.uuid = uuid(mNextObs++, 7);
+        obs.patient_uuid = patient.uuid;
+        obs.encounter_uuid = encounterUuid;
+        obs.timestamp = time;
+        obs.concept_uuid = conceptUuid;
+        obs.enterer_uuid = entererUuid;
+        obs.value = value;
+        return obs;
+    }
+
+    private static JsonLocation newLocation(String uuid, String parentUuid, String name) {
+        JsonLocation location = new JsonLocation();
+        location.uuid = uuid;
+        location.parent_uuid = parentUuid;
+        location.names = Collections.singletonMap("en", name);
+        return location;
+    }
+
+    private static JsonConcept newConcept(
+        String uuid, Integer xformId, ConceptType type, String name) {
+        JsonConcept concept = new JsonConcept();
+        concept.uuid = uuid;
+        concept.xform_id = xformId;
+        concept.type = type;
+        concept.names = Collections.singletonMap("en", name);
+        return concept;
+    }
+
+    private static JsonChartSection newSection(ChartSectionType type, String label) {
+        JsonChartSection section = new JsonChartSection();
+        section.type = type;
+        section.label = label;
+        return section;
+    }
+
+    private static JsonChartItem newItem(
+        String label, String type, String format, String conceptUuid) {
+        JsonChartItem item = new JsonChartItem();
+        item.label = label;
+        item.type = type;
+        item.format = format;
+        item.concepts = new String[] {conceptUuid};
+        return item;
+    }
+
+    private String yesNo() {
+        return mRandom.nextBoolean() ? ConceptUuids.YES_UUID : ConceptUuids.NO_UUID;
+    }
+
+    private <T> T pick(List<T> items) {
+        return items.get(mRandom.nextInt(items.size()));
+    }
+
+    private <T> T pick(T[] items) {
+        return items[mRandom.nextInt(items.length)];
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+
+    /** Makes a well-formed UUID from a serial number and a kind of record. */
+    private static String uuid(int n, int kind) {
+        return String.format("%08x-%04d-4000-8000-000000000000", n, kind);
+    }
+}
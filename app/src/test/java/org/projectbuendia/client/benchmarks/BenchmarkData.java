@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.Location;
+import org.projectbuendia.client.models.ObsPoint;
+import org.projectbuendia.client.models.ObsValue;
+import org.projectbuendia.client.models.Patient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded data sets for the benchmarks, sized like those of a busy treatment centre.  The same
+ * seed is used everywhere, so that every run measures the same work.
+ */
+class BenchmarkData {
+    static final long SEED = 20151101;
+
+    private static final String[] GIVEN_NAMES = {
+        "Aminata", "Fatmata", "Mariama", "Isatu", "Hawa", "Mohamed", "Ibrahim", "Abu", "Alhaji",
+        "Sorie", "Kadiatu", "Zainab", "Musa", "Foday", "Adama", "Sahr", "–"
+    };
+    private static final String[] FAMILY_NAMES = {
+        "Kamara", "Sesay", "Conteh", "Koroma", "Bangura", "Turay", "Kanu", "Mansaray", "Jalloh",
+        "Fofanah", "Kargbo", "Bah", "–"
+    };
+    private static final String[] SEVERITIES = {
+        ConceptUuids.NONE_UUID, ConceptUuids.MILD_UUID,
+        ConceptUuids.MODERATE_UUID, ConceptUuids.SEVERE_UUID
+    };
+
+    /** Patients with IDs like "KH.12" and "KH.12a", as assigned at triage. */
+    static List<Patient> patients(int count) {
+        Random random = new Random(SEED);
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            patients.add(Patient.builder()
+                .setUuid("patient-" + i)
+                .setId("KH." + (i + 1) + (random.nextInt(10) == 0 ? "a" : ""))
+                .setGivenName(GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)])
+                .setFamilyName(FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)])
+                .setGender(1 + random.nextInt(2))
+                .setBirthdate(new LocalDate(1950 + random.nextInt(64), 1, 1))
+                .build());
+        }
+        return patients;
+    }
+
+    /**
+     * A facility with zones, tents, and beds, in the order they come from the database: every
+     * location after its parent.
+     */
+    static Location[] locations(int numZones, int tentsPerZone, int bedsPerTent) {
+        Random random = new Random(SEED);
+        List<Location> locations = new ArrayList<>();
+        locations.add(new Location("root", null, "Facility", 0));
+        for (int z = 0; z < numZones; z++) {
+            String zoneUuid = "zone-" + z;
+            locations.add(new Location(zoneUuid, "root", "Zone " + z, random.nextInt(5)));
+            for (int t = 0; t < tentsPerZone; t++) {
+                String tentUuid = zoneUuid + "-tent-" + t;
+                locations.add(new Location(tentUuid, zoneUuid, "Tent " + t, random.nextInt(10)));
+                for (int b = 0; b < bedsPerTent; b++) {
+                    locations.add(new Location(
+                        tentUuid + "-bed-" + b, tentUuid, "Bed " + b, random.nextInt(2)));
+                }
+            }
+        }
+        return locations.toArray(new Location[0]);
+    }
+
+    /** Temperatures taken three times a day, as plotted in a chart tile. */
+    static List<ObsPoint> temperatures(int numDays) {
+        Random random = new Random(SEED);
+        List<ObsPoint> points = new ArrayList<>();
+        DateTime start = new DateTime(2015, 1, 5, 8, 0, DateTimeZone.UTC);
+        for (int i = 0; i < numDays * 3; i++) {
+            points.add(new ObsPoint(start.plusHours(i * 8),
+                ObsValue.newNumber(Math.round((36 + random.nextDouble() * 4.5) * 10) / 10.0)));
+        }
+        return points;
+    }
+
+    /** Coded symptom severities, as shown in one chart grid row per symptom. */
+    static ObsValue[] severities(int count) {
+        Random random = new Random(SEED);
+        ObsValue[] values = new ObsValue[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = ObsValue.newCoded(SEVERITIES[random.nextInt(SEVERITIES.length)]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.benchmarks;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.utils.LocalDayIndex;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures putting a long admission's observations into day columns the way the chart grid
+ * used to (DateTime, LocalDate, start of day, TreeMap lookup) against {@link LocalDayIndex}
+ * and an array indexed by day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class LocalDayIndexBenchmark {
+    private static final int DAYS = 90;
+    private static final int NUM_OBS = 20000;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final DateTimeZone mZone = DateTimeZone.forID("Europe/London");
+    private final LocalDate mToday = new LocalDate(2016, 4, 1);
+    private long[] mTimes;
+
+    @Setup public void setUp() {
+        DateTimeZone.setDefault(mZone);
+        long start = mToday.minusDays(DAYS).toDateTimeAtStartOfDay(mZone).getMillis();
+        mTimes = new long[NUM_OBS];
+        for (int i = 0; i < NUM_OBS; i++) {
+            // Observations of each concept in turn, as the table stores them.
+            mTimes[i] = start + (long) ((i * 7919L) % NUM_OBS) * DAYS * DAY_MILLIS / NUM_OBS;
+        }
+    }
+
+    @Benchmark public int bucketWithTreeMap() {
+        SortedMap<Long, int[]> columns = new TreeMap<>();
+        for (long millis : mTimes) {
+            LocalDate date = new DateTime(millis).toLocalDate();
+            long startMillis = date.toDateTimeAtStartOfDay().getMillis();
+            int[] column = columns.get(startMillis);
+            if (column == null) {
+                column = new int[1];
+                columns.put(startMillis, column);
+            }
+            column[0]++;
+        }
+        return columns.size();
+    }
+
+    @Benchmark public int bucketWithDayIndex() {
+        LocalDayIndex days = new LocalDayIndex(mZone, mToday);
+        int[][] columns = new int[DAYS + 2][];
+        int firstDay = -DAYS - 1;
+        int count = 0;
+        for (long millis : mTimes) {
+            int index = days.getDay(millis) - firstDay;
+            int[] column = columns[index];
+            if (column == null) {
+                column = new int[1];
+                columns[index] = column;
+                count++;
+            }
+            column[0]++;
+        }
+        return count;
+    }
+}
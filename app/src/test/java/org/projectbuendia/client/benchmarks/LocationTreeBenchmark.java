@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.projectbuendia.client.FakeTypedCursor;
+import org.projectbuendia.client.models.Location;
+import org.projectbuendia.client.models.LocationTree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the location tree, which happens whenever locations are loaded, and the
+ * queries made when the location list and patient counts are shown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class LocationTreeBenchmark {
+    /** Beds per tent; 0 for a facility that tracks patients only to the tent. */
+    @Param({"0", "20"})
+    public int bedsPerTent;
+
+    private Location[] mLocations;
+    private LocationTree mTree;
+
+    @Setup public void setUp() {
+        mLocations = BenchmarkData.locations(6, 8, bedsPerTent);
+        mTree = LocationTree.forTypedCursor(new FakeTypedCursor<>(mLocations));
+    }
+
+    @Benchmark public LocationTree build() {
+        return LocationTree.forTypedCursor(new FakeTypedCursor<>(mLocations));
+    }
+
+    @Benchmark public void tentsAndCounts(Blackhole blackhole) {
+        for (Location tent : mTree.getDescendantsAtDepth(LocationTree.ABSOLUTE_DEPTH_TENT)) {
+            blackhole.consume(mTree.getTotalPatientCount(tent));
+        }
+    }
+
+    @Benchmark public void zoneSubtrees(Blackhole blackhole) {
+        for (Location zone : mTree.getChildren(mTree.getRoot())) {
+            blackhole.consume(mTree.locationsInSubtree(zone));
+        }
+    }
+
+    @Benchmark public Object ancestors() {
+        return mTree.getAncestorsStartingFromRoot(mLocations[mLocations.length - 1]);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.models.ObsValue;
+import org.projectbuendia.client.ui.chart.ObsFormat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compiling and applying the ObsFormat patterns of a chart.  The chart renderer
+ * compiles a pattern for every tile and grid cell it draws, so both matter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ObsFormatBenchmark {
+    /** Patterns like those in the chart profile: plain numbers, selections, and pairs. */
+    @Param({
+        "##.#",
+        "{1,number,##.# kg}",
+        "{1,select,1107:\u25cb;1498:-;1499:=;1500:\u2261}",
+        "{1,select,>39.95:NEG;#} / {2,select,>39.95:NEG;#}"
+    })
+    public String pattern;
+
+    private ObsFormat mFormat;
+    private ObsValue[] mArgs;
+
+    @Setup public void setUp() {
+        mFormat = new ObsFormat(pattern);
+        // ObsFormat takes its arguments 1-based; the coded value suits the symptom pattern.
+        mArgs = pattern.contains("1107")
+            ? new ObsValue[] {null, ObsValue.newCoded("1499AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA")}
+            : new ObsValue[] {null, ObsValue.newNumber(38.25), ObsValue.newNumber(40.5)};
+    }
+
+    @Benchmark public ObsFormat compile() {
+        return new ObsFormat(pattern);
+    }
+
+    @Benchmark public String format() {
+        return mFormat.format(mArgs);
+    }
+
+    @Benchmark public String compileAndFormat() {
+        return new ObsFormat(pattern).format(mArgs);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.models.Obs;
+import org.projectbuendia.client.models.ObsPoint;
+import org.projectbuendia.client.models.ObsTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a long admission's observations as a list of {@link Obs} plus the per-day
+ * point sets that the chart used to build, against loading the same data into an
+ * {@link ObsTable}.  The table's gain is mostly in memory: run with {@code -PjmhArgs='-prof gc'}
+ * to see the bytes allocated per load (gc.alloc.rate.norm) alongside the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ObsTableBenchmark {
+    private static final int DAYS = 90;
+    private static final int NUM_OBS = 20000;
+    private static final int NUM_CONCEPTS = 60;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long START_MILLIS = 1420070400000L;  // 2015-01-01
+
+    private static final String[] CODED_VALUES = {
+        ConceptUuids.NO_UUID, ConceptUuids.YES_UUID, ConceptUuids.MILD_UUID,
+        ConceptUuids.MODERATE_UUID, ConceptUuids.SEVERE_UUID
+    };
+
+    private String[] mConceptUuids;
+
+    @Setup public void setUp() {
+        mConceptUuids = new String[NUM_CONCEPTS];
+        for (int i = 0; i < NUM_CONCEPTS; i++) {
+            mConceptUuids[i] = String.format("%08d-0000-4000-8000-000000000000", i);
+        }
+    }
+
+    /** Builds the observations and points the way the chart used to. */
+    @Benchmark public Object loadList() {
+        List<Obs> observations = new ArrayList<>();
+        for (int i = 0; i < NUM_OBS; i++) {
+            String value = valueOf(i);
+            observations.add(new Obs(
+                String.format("%08d-1111-4000-8000-000000000000", i), timeOf(i),
+                new String(mConceptUuids[conceptOf(i)]), typeOf(i), value,
+                typeOf(i) == ConceptType.CODED ? "Name" : value));
+        }
+        Map<Long, Map<String, SortedSet<ObsPoint>>> columns = new HashMap<>();
+        for (Obs obs : observations) {
+            long day = obs.time.getMillis() / DAY_MILLIS;
+            Map<String, SortedSet<ObsPoint>> column = columns.get(day);
+            if (column == null) {
+                column = new HashMap<>();
+                columns.put(day, column);
+            }
+            SortedSet<ObsPoint> points = column.get(obs.conceptUuid);
+            if (points == null) {
+                points = new TreeSet<>();
+                column.put(obs.conceptUuid, points);
+            }
+            points.add(obs.getObsPoint());
+        }
+        return new Object[] {observations, columns};
+    }
+
+    /** Builds the same observations into an ObsTable. */
+    @Benchmark public ObsTable loadTable() {
+        ObsTable.Builder builder = new ObsTable.Builder(NUM_OBS);
+        for (int i = 0; i < NUM_OBS; i++) {
+            String value = valueOf(i);
+            builder.add(timeOf(i), new String(mConceptUuids[conceptOf(i)]), typeOf(i),
+                value, typeOf(i) == ConceptType.CODED ? "Name" : value);
+        }
+        return builder.build();
+    }
+
+    /** Returns the concept index, time, and raw value of synthetic observation i. */
+    private static int conceptOf(int i) {
+        return i % NUM_CONCEPTS;
+    }
+
+    private static long timeOf(int i) {
+        return START_MILLIS + (long) i * DAYS * DAY_MILLIS / NUM_OBS;
+    }
+
+    private static String valueOf(int i) {
+        // Copies the string, as Cursor.getString() returns a new one for every row.
+        return conceptOf(i) % 2 == 0
+            ? new String(CODED_VALUES[i % CODED_VALUES.length])
+            : Double.toString(36 + (i % 50) / 10.0);
+    }
+
+    private static ConceptType typeOf(int i) {
+        return conceptOf(i) % 2 == 0 ? ConceptType.CODED : ConceptType.NUMERIC;
+    }
+}
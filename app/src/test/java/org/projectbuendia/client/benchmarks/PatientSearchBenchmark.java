@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.filter.matchers.patient.IdFilter;
+import org.projectbuendia.client.filter.matchers.patient.NameFilter;
+import org.projectbuendia.client.models.Patient;
+import org.projectbuendia.client.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the patient list does on each search keystroke, matching every patient by name
+ * and by ID, and what it does to sort patients by ID.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class PatientSearchBenchmark {
+    @Param({"200", "2000"})
+    public int patients;
+
+    /** Successive keystrokes of a name search and an ID search. */
+    @Param({"k", "kam", "kamara a", "kh.1"})
+    public String query;
+
+    private final NameFilter mNameFilter = new NameFilter();
+    private final IdFilter mIdFilter = new IdFilter();
+    private List<Patient> mPatients;
+    private List<String> mIds;
+
+    @Setup public void setUp() {
+        mPatients = BenchmarkData.patients(patients);
+        mIds = new ArrayList<>();
+        for (Patient patient : mPatients) {
+            mIds.add(patient.id);
+        }
+        Collections.shuffle(mIds, new Random(BenchmarkData.SEED));
+    }
+
+    @Benchmark public int matchByName() {
+        int count = 0;
+        for (Patient patient : mPatients) {
+            if (mNameFilter.matches(patient, query)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark public int matchById() {
+        int count = 0;
+        for (Patient patient : mPatients) {
+            if (mIdFilter.matches(patient, query)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark public List<String> sortIds() {
+        List<String> ids = new ArrayList<>(mIds);
+        Collections.sort(ids, Utils.alphanumericComparator);
+        return ids;
+    }
+}
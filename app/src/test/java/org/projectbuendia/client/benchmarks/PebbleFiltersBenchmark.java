@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import com.mitchellbosecke.pebble.extension.Filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.models.ObsPoint;
+import org.projectbuendia.client.models.ObsValue;
+import org.projectbuendia.client.ui.chart.ObsFormat;
+import org.projectbuendia.client.ui.chart.PebbleExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the chart template filters that run for every tile and grid cell: "values" to take
+ * the values of a concept's points, "avg" over them, and "format_values" to display a tuple.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class PebbleFiltersBenchmark {
+    /** Days of observations in the chart. */
+    @Param({"3", "14", "60"})
+    public int days;
+
+    private Filter mValuesFilter;
+    private Filter mAvgFilter;
+    private Filter mFormatValuesFilter;
+    private List<ObsPoint> mPoints;
+    private List<ObsValue> mValues;
+    private ObsValue[] mTuple;
+    private Map<String, Object> mNoArgs;
+    private Map<String, Object> mPatternArgs;
+    private Map<String, Object> mFormatArgs;
+
+    @Setup public void setUp() {
+        Map<String, Filter> filters = new PebbleExtension().getFilters();
+        mValuesFilter = filters.get("values");
+        mAvgFilter = filters.get("avg");
+        mFormatValuesFilter = filters.get("format_values");
+        mPoints = BenchmarkData.temperatures(days);
+        //noinspection unchecked
+        mValues = (List<ObsValue>) mValuesFilter.apply(mPoints, null);
+        mTuple = new ObsValue[] {mValues.get(0), mValues.get(mValues.size() - 1)};
+        mNoArgs = Collections.emptyMap();
+        // The template passes a pattern string, which is compiled on every call, unless the
+        // chart has compiled it already.
+        mPatternArgs = Collections.<String, Object>singletonMap(
+            "format", "{1,number,##.#} / {2,number,##.#}");
+        mFormatArgs = Collections.<String, Object>singletonMap(
+            "format", new ObsFormat("{1,number,##.#} / {2,number,##.#}"));
+    }
+
+    @Benchmark public Object values() {
+        return mValuesFilter.apply(mPoints, mNoArgs);
+    }
+
+    @Benchmark public Object avg() {
+        return mAvgFilter.apply(mValues, mNoArgs);
+    }
+
+    @Benchmark public Object valuesThenAvg() {
+        return mAvgFilter.apply(mValuesFilter.apply(mPoints, mNoArgs), mNoArgs);
+    }
+
+    @Benchmark public Object formatValuesWithPattern() {
+        return mFormatValuesFilter.apply(mTuple, mPatternArgs);
+    }
+
+    @Benchmark public Object formatValuesWithFormat() {
+        return mFormatValuesFilter.apply(mTuple, mFormatArgs);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import org.joda.time.DateTime;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectbuendia.client.fakeserver.HospitalData;
+import org.projectbuendia.client.fakeserver.HospitalDataGenerator;
+import org.projectbuendia.client.json.IncrementalSyncResponse;
+import org.projectbuendia.client.json.JsonObservation;
+import org.projectbuendia.client.json.JsonPatient;
+import org.projectbuendia.client.json.Serializers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding sync pages the way GsonRequest does, from the response bytes with the
+ * shared Gson, for pages of observations and of patients made by the HospitalDataGenerator.
+ * For comparison, observations are also decoded the way GsonRequest used to: with a new Gson
+ * per response, reflection, and a tree-based DateTime deserializer, from a String.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class SyncPageDecodeBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Type OBS_RESPONSE_TYPE =
+        new TypeToken<IncrementalSyncResponse<JsonObservation>>() {}.getType();
+    private static final Type PATIENT_RESPONSE_TYPE =
+        new TypeToken<IncrementalSyncResponse<JsonPatient>>() {}.getType();
+
+    /** Records per page; SyncPageSizer keeps pages between 50 and 4000. */
+    @Param({"500", "4000"})
+    public int pageSize;
+
+    private byte[] mObsPage;
+    private byte[] mPatientPage;
+
+    @Setup public void setUp() {
+        HospitalData data = new HospitalDataGenerator(BenchmarkData.SEED).generate(pageSize, 1);
+        IncrementalSyncResponse<JsonObservation> obs = new IncrementalSyncResponse<>();
+        obs.results = data.observations.subList(0, pageSize).toArray(new JsonObservation[0]);
+        obs.syncToken = "1";
+        obs.more = true;
+        mObsPage = Serializers.getGson().toJson(obs, OBS_RESPONSE_TYPE).getBytes(UTF_8);
+        IncrementalSyncResponse<JsonPatient> patients = new IncrementalSyncResponse<>();
+        patients.results = data.patients.toArray(new JsonPatient[0]);
+        patients.syncToken = "1";
+        mPatientPage = Serializers.getGson().toJson(patients, PATIENT_RESPONSE_TYPE)
+            .getBytes(UTF_8);
+    }
+
+    @Benchmark public Object decodeObservations() {
+        return Serializers.getGson().fromJson(
+            new InputStreamReader(new ByteArrayInputStream(mObsPage), UTF_8), OBS_RESPONSE_TYPE);
+    }
+
+    @Benchmark public Object decodeObservationsAsBefore() throws Exception {
+        String json = new String(mObsPage, "UTF-8");
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(DateTime.class, new JsonDeserializer<DateTime>() {
+            @Override public DateTime deserialize(
+                JsonElement json, Type type, JsonDeserializationContext context)
+                throws JsonParseException {
+                return DateTime.parse(json.getAsString());
+            }
+        });
+        Gson gson = builder.create();
+        return gson.fromJson(json, OBS_RESPONSE_TYPE);
+    }
+
+    @Benchmark public Object decodePatients() {
+        return Serializers.getGson().fromJson(
+            new InputStreamReader(new ByteArrayInputStream(mPatientPage), UTF_8),
+            PATIENT_RESPONSE_TYPE);
+    }
+}
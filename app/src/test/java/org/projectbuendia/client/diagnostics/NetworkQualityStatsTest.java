@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.diagnostics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NetworkQualityStatsTest {
+
+    /** Tests that empty stats report no data rather than zeroes. */
+    @Test
+    public void testGetters_Empty() {
+        NetworkQualityStats stats = new NetworkQualityStats();
+        assertEquals(0, stats.getProbeCount());
+        assertEquals(0, stats.getFailureRate(), 0);
+        assertEquals(-1, stats.getRttPercentileMillis(50));
+        assertEquals(-1, stats.getMedianBytesPerSecond());
+    }
+
+    /** Tests that probes are counted into the histogram, percentiles and failure rate. */
+    @Test
+    public void testRecord_TracksRttAndFailures() {
+        // GIVEN three successful probes and one failure
+        NetworkQualityStats stats = new NetworkQualityStats();
+        stats.recordSuccess(40);
+        stats.recordSuccess(150);
+        stats.recordSuccess(9000);
+        stats.recordFailure();
+        // THEN the failure counts toward the rate but not the round-trip times
+        assertEquals(4, stats.getProbeCount());
+        assertEquals(0.25, stats.getFailureRate(), 1e-9);
+        assertArrayEquals(new int[] {1, 0, 1, 0, 0, 0, 0, 1}, stats.getRttHistogram());
+        assertEquals(150, stats.getRttPercentileMillis(50));
+        assertEquals(9000, stats.getRttPercentileMillis(100));
+    }
+
+    /** Tests that old probes drop out once the window is full. */
+    @Test
+    public void testRecord_RollsOverOldProbes() {
+        // GIVEN a full window of failures
+        NetworkQualityStats stats = new NetworkQualityStats();
+        for (int i = 0; i < NetworkQualityStats.MAX_PROBES; i++) {
+            stats.recordFailure();
+        }
+        // WHEN as many successes follow
+        for (int i = 0; i < NetworkQualityStats.MAX_PROBES; i++) {
+            stats.recordSuccess(20);
+        }
+        // THEN only the successes remain
+        assertEquals(NetworkQualityStats.MAX_PROBES, stats.getProbeCount());
+        assertEquals(0, stats.getFailureRate(), 0);
+        assertEquals(20, stats.getRttPercentileMillis(90));
+    }
+
+    /** Tests that throughput is the median of the recorded transfer rates. */
+    @Test
+    public void testRecordTransfer_MedianThroughput() {
+        // GIVEN transfers at 1000, 4000 and 2000 bytes per second, and an empty one
+        NetworkQualityStats stats = new NetworkQualityStats();
+        stats.recordTransfer(1000, 1000);
+        stats.recordTransfer(8000, 2000);
+        stats.recordTransfer(500, 250);
+        stats.recordTransfer(0, 100);
+        // THEN the empty one is ignored and the median is reported
+        assertEquals(2000, stats.getMedianBytesPerSecond());
+    }
+}
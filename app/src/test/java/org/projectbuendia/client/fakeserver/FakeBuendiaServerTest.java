@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.fakeserver;
+
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectbuendia.client.json.IncrementalSyncResponse;
+import org.projectbuendia.client.json.JsonChanges;
+import org.projectbuendia.client.json.JsonEncounter;
+import org.projectbuendia.client.json.JsonObservation;
+import org.projectbuendia.client.json.Serializers;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FakeBuendiaServerTest {
+
+    private static final Type OBS_RESPONSE_TYPE =
+        new TypeToken<IncrementalSyncResponse<JsonObservation>>() {}.getType();
+
+    private FakeBuendiaServer mServer;
+    private HospitalDataGenerator mGenerator;
+    private HospitalData mData;
+    private final OkHttpClient mClient = new OkHttpClient();
+
+    @Before
+    public void setUp() throws Exception {
+        mGenerator = new HospitalDataGenerator(1);
+        mData = mGenerator.generate(5, 2);
+        mServer = new FakeBuendiaServer();
+        mServer.load(mData);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    /** Tests that the generator makes the same records from the same seed. */
+    @Test
+    public void testGenerate_IsRepeatable() {
+        // GIVEN another generator with the same seed
+        HospitalDataGenerator generator = new HospitalDataGenerator(1);
+        // WHEN it generates the same amount of data
+        HospitalData data = generator.generate(5, 2);
+        // THEN the records are the same
+        assertEquals(mData.observations.size(), data.observations.size());
+        assertEquals(mData.observations.get(77).value, data.observations.get(77).value);
+        assertEquals(mData.patients.get(3).given_name, data.patients.get(3).given_name);
+        assertEquals(5 * 2 * HospitalDataGenerator.ROUNDS_PER_DAY,
+            countEncounters(data.observations.toArray(new JsonObservation[0])));
+    }
+
+    /** Tests that paging with sync tokens returns every observation exactly once. */
+    @Test
+    public void testObservations_PagesCoverAllRecords() throws Exception {
+        // GIVEN a server with the generated observations
+        Set<String> uuids = new HashSet<>();
+        String token = null;
+        IncrementalSyncResponse<JsonObservation> response;
+        int numPages = 0;
+        // WHEN they are fetched 100 at a time, following the sync tokens
+        do {
+            response = getObservations(token, null, 100);
+            for (JsonObservation obs : response.results) {
+                assertTrue(uuids.add(obs.uuid));
+            }
+            token = response.syncToken;
+            numPages++;
+        } while (response.more);
+        // THEN all were received, in full pages but for the last
+        assertEquals(mData.observations.size(), uuids.size());
+        assertEquals((mData.observations.size() + 99) / 100, numPages);
+    }
+
+    /** Tests that a sync after new records are added returns only the new records. */
+    @Test
+    public void testObservations_SinceTokenReturnsOnlyNewRecords() throws Exception {
+        // GIVEN a client that has fetched everything
+        String token = getObservations(null, null, 1000000).syncToken;
+        // WHEN another day of observations is added
+        HospitalData nextDay = mGenerator.generateDay(2);
+        mServer.load(nextDay);
+        // THEN the next request returns just those
+        IncrementalSyncResponse<JsonObservation> response = getObservations(token, null, 1000000);
+        assertEquals(nextDay.observations.size(), response.results.length);
+        assertEquals(nextDay.observations.get(0).uuid, response.results[0].uuid);
+        assertFalse(response.more);
+        // AND nothing is returned after that
+        assertEquals(0, getObservations(response.syncToken, null, 100).results.length);
+    }
+
+    /** Tests that observations can be fetched for a single patient. */
+    @Test
+    public void testObservations_FiltersByPatient() throws Exception {
+        // GIVEN a server with observations of several patients
+        String patientUuid = mData.patients.get(2).uuid;
+        // WHEN one patient's observations are requested
+        IncrementalSyncResponse<JsonObservation> response =
+            getObservations(null, patientUuid, 1000000);
+        // THEN only that patient's are returned
+        int expected = 0;
+        for (JsonObservation obs : mData.observations) {
+            if (obs.patient_uuid.equals(patientUuid)) expected++;
+        }
+        assertEquals(expected, response.results.length);
+        for (JsonObservation obs : response.results) {
+            assertEquals(patientUuid, obs.patient_uuid);
+        }
+    }
+
+    /** Tests that a change feed request is held until records are added. */
+    @Test
+    public void testChanges_HeldUntilRecordsAdded() throws Exception {
+        // GIVEN a client with the current change feed token
+        final String token = getChanges(null, 0).syncToken;
+        // WHEN observations are added while a request is waiting
+        final HospitalData nextDay = mGenerator.generateDay(2);
+        Thread loader = new Thread() {
+            @Override public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mServer.load(nextDay);
+            }
+        };
+        loader.start();
+        long startMillis = System.currentTimeMillis();
+        JsonChanges changes = getChanges(token, 10);
+        loader.join();
+        // THEN the request is answered once they are added, reporting their types
+        assertTrue(System.currentTimeMillis() - startMillis < 10000);
+        assertTrue(Arrays.asList(changes.changed).contains("observations"));
+        assertFalse(token.equals(changes.syncToken));
+    }
+
+    /** Tests that a change feed request with nothing new is answered when the wait runs out. */
+    @Test
+    public void testChanges_EmptyWhenWaitExpires() throws Exception {
+        // GIVEN a client with the current change feed token
+        String token = getChanges(null, 0).syncToken;
+        // WHEN it waits with nothing added
+        long startMillis = System.currentTimeMillis();
+        JsonChanges changes = getChanges(token, 1);
+        // THEN the request is held for the wait time and answered with an empty body
+        assertTrue(System.currentTimeMillis() - startMillis >= 1000);
+        assertNull(changes);
+    }
+
+    /** Tests that a posted encounter gets a response that parses as a saved encounter. */
+    @Test
+    public void testEncounters_PostIsAccepted() throws Exception {
+        // WHEN an encounter is posted
+        String json = "{\"patient_uuid\":\"" + mData.patients.get(0).uuid + "\"}";
+        Response response = mClient.newCall(new Request.Builder()
+            .url(mServer.getApiUrl() + "/encounters")
+            .post(RequestBody.create(MediaType.parse("application/json"), json))
+            .build()).execute();
+        // THEN it is answered with an encounter that has a UUID
+        assertEquals(200, response.code());
+        JsonEncounter encounter = Serializers.getGson().fromJson(
+            response.body().charStream(), JsonEncounter.class);
+        assertNotNull(encounter.uuid);
+    }
+
+    private JsonChanges getChanges(String since, int waitSeconds) throws IOException {
+        String url = mServer.getApiUrl() + "/changes?wait=" + waitSeconds
+            + (since == null ? "" : "&since=" + since);
+        Response response = mClient.newCall(new Request.Builder().url(url).build()).execute();
+        assertEquals(200, response.code());
+        return Serializers.getGson().fromJson(response.body().charStream(), JsonChanges.class);
+    }
+
+    private IncrementalSyncResponse<JsonObservation> getObservations(
+        String since, String patientUuid, int limit) throws IOException {
+        String url = mServer.getApiUrl() + "/observations?limit=" + limit
+            + (since == null ? "" : "&since=" + since)
+            + (patientUuid == null ? "" : "&patient=" + patientUuid);
+        Response response = mClient.newCall(new Request.Builder().url(url).build()).execute();
+        assertEquals(200, response.code());
+        return Serializers.getGson().fromJson(response.body().charStream(), OBS_RESPONSE_TYPE);
+    }
+
+    private static int countEncounters(JsonObservation[] observations) {
+        Set<String> encounterUuids = new HashSet<>();
+        for (JsonObservation obs : observations) {
+            encounterUuids.add(obs.encounter_uuid);
+        }
+        return encounterUuids.size();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.json;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Iso8601Test {
+
+    /** Tests that timestamps parse exactly as Joda's parser would parse them. */
+    @Test
+    public void testParse_SameAsJoda() {
+        String[] timestamps = {
+            "2015-06-23T14:48:07.123Z",
+            "2015-06-23T14:48:07Z",
+            "2015-06-23T14:48Z",
+            "2015-06-23T14:48:07.5+01:00",
+            "2015-06-23T14:48:07.123456-0530",
+            "2016-02-29T23:59:59.999+13",
+            "1969-12-31T23:59:59.999Z",
+            "1600-03-01T00:00:00.000Z",
+            "2015-06-23T14:48:07",  // no offset; left to Joda
+            "2015-06-23",  // date only; left to Joda
+        };
+        for (String timestamp : timestamps) {
+            DateTime expected = DateTime.parse(timestamp);
+            DateTime actual = Iso8601.parse(timestamp);
+            assertEquals(timestamp, expected, actual);
+            assertEquals(timestamp, expected.getMillis(), actual.getMillis());
+        }
+    }
+
+    /** Tests that invalid timestamps are rejected as Joda rejects them. */
+    @Test
+    public void testParse_RejectsInvalid() {
+        String[] timestamps = {"2015-02-29T00:00:00Z", "2015-06-23T24:00:00Z", "2015-06-23Tnoon"};
+        for (String timestamp : timestamps) {
+            try {
+                Iso8601.parse(timestamp);
+                fail("Expected " + timestamp + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyncTypeAdapterFactoryTest {
+
+    private static final Type OBSERVATIONS_RESPONSE =
+        new TypeToken<IncrementalSyncResponse<JsonObservation>>() {}.getType();
+
+    /** Tests that a page of observations is read completely, skipping unknown fields. */
+    @Test
+    public void testRead_ObservationsResponse() {
+        // GIVEN a response with two observations and a field the client doesn't know about
+        String json = "{\"results\": ["
+            + "{\"uuid\": \"o1\", \"patient_uuid\": \"p1\", \"encounter_uuid\": \"e1\","
+            + " \"timestamp\": \"2015-06-23T14:48:07.123Z\", \"concept_uuid\": \"c1\","
+            + " \"enterer_uuid\": \"u1\", \"value\": \"38.5\", \"unknown\": {\"a\": [1, 2]}},"
+            + "{\"uuid\": \"o2\", \"voided\": true, \"value\": null}"
+            + "], \"syncToken\": \"token\", \"more\": true}";
+
+        // WHEN it is parsed with the shared Gson
+        IncrementalSyncResponse<JsonObservation> response =
+            Serializers.getGson().fromJson(json, OBSERVATIONS_RESPONSE);
+
+        // THEN every field is filled in
+        assertEquals(2, response.results.length);
+        JsonObservation obs = response.results[0];
+        assertEquals("o1", obs.uuid);
+        assertEquals("p1", obs.patient_uuid);
+        assertEquals("e1", obs.encounter_uuid);
+        assertEquals(DateTime.parse("2015-06-23T14:48:07.123Z"), obs.timestamp);
+        assertEquals("c1", obs.concept_uuid);
+        assertEquals("u1", obs.enterer_uuid);
+        assertEquals("38.5", obs.value);
+        assertFalse(obs.voided);
+        assertTrue(response.results[1].voided);
+        assertNull(response.results[1].value);
+        assertEquals("token", response.syncToken);
+        assertTrue(response.more);
+    }
+
+    /** Tests that patients and orders are written and read back the same as by reflection. */
+    @Test
+    public void testReadWrite_SameAsReflection() {
+        // GIVEN a Gson that uses reflection for patients and orders
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(LocalDate.class, new LocalDateSerializer());
+        Gson reflective = builder.create();
+        JsonPatient patient = new JsonPatient();
+        patient.uuid = "p1";
+        patient.id = "123";
+        patient.given_name = "Given";
+        patient.family_name = "Family";
+        patient.sex = "F";
+        patient.birthdate = new LocalDate(1980, 2, 29);
+        patient.assigned_location = new JsonLocation();
+        patient.assigned_location.uuid = "l1";
+        JsonOrder order = new JsonOrder();
+        order.uuid = "r1";
+        order.patient_uuid = "p1";
+        order.instructions = "Paracetamol";
+        order.start_millis = 1420070400000L;
+
+        // WHEN they are written by one and read by the other
+        Gson streaming = Serializers.getGson();
+        String patientJson = streaming.toJson(patient);
+        String orderJson = streaming.toJson(order);
+
+        // THEN the same JSON and values come back
+        assertEquals(reflective.toJson(patient), patientJson);
+        assertEquals(reflective.toJson(order), orderJson);
+        JsonPatient readPatient = streaming.fromJson(patientJson, JsonPatient.class);
+        assertEquals(patient.birthdate, readPatient.birthdate);
+        assertEquals("l1", readPatient.assigned_location.uuid);
+        assertEquals(patient.family_name, readPatient.family_name);
+        JsonOrder readOrder = streaming.fromJson(orderJson, JsonOrder.class);
+        assertEquals(order.start_millis, readOrder.start_millis);
+        assertNull(readOrder.stop_millis);
+        assertEquals(order.instructions, readOrder.instructions);
+    }
+}
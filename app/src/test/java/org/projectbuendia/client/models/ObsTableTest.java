@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.models;
+
+import org.junit.Test;
+import org.projectbuendia.client.json.ConceptType;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObsTableTest {
+
+    private static final String TEMPERATURE = ConceptUuids.TEMPERATURE_UUID;
+    private static final String CONDITION = ConceptUuids.GENERAL_CONDITION_UUID;
+
+    /** Tests that points come back in time order, limited to the requested range. */
+    @Test
+    public void testGetPoints_SortedAndLimitedToRange() {
+        // GIVEN observations added out of order, interleaved with another concept
+        ObsTable table = new ObsTable.Builder()
+            .add(300, TEMPERATURE, ConceptType.NUMERIC, "38.5", null)
+            .add(100, TEMPERATURE, ConceptType.NUMERIC, "37.0", null)
+            .add(150, CONDITION, ConceptType.CODED, ConceptUuids.SEVERE_UUID, "Severe")
+            .add(200, TEMPERATURE, ConceptType.NUMERIC, "37.5", null)
+            .add(400, TEMPERATURE, ConceptType.NUMERIC, "39.0", null)
+            .build();
+
+        // WHEN the points in [100, 400) are requested
+        List<ObsPoint> points = table.getPoints(TEMPERATURE, 100, 400);
+
+        // THEN they are the ones in range, in time order
+        assertEquals(3, points.size());
+        assertEquals(100, points.get(0).time.getMillis());
+        assertEquals(37.0, points.get(0).value.number, 0);
+        assertEquals(200, points.get(1).time.getMillis());
+        assertEquals(300, points.get(2).time.getMillis());
+        assertEquals(38.5, table.getLatestPoint(TEMPERATURE, 100, 400).value.number, 0);
+        // AND coded values keep their localized names
+        assertEquals("Severe", table.getPoints(CONDITION, 0, 1000).get(0).value.name);
+    }
+
+    /** Tests that missing values are skipped, and only the first point is kept for each time. */
+    @Test
+    public void testGetPoints_SkipsMissingValuesAndDuplicateTimes() {
+        // GIVEN two observations at the same time and one with no value
+        ObsTable table = new ObsTable.Builder()
+            .add(100, TEMPERATURE, ConceptType.NUMERIC, "37.0", null)
+            .add(100, TEMPERATURE, ConceptType.NUMERIC, "40.0", null)
+            .add(200, TEMPERATURE, ConceptType.NUMERIC, null, null)
+            .build();
+
+        // WHEN the points are requested
+        List<ObsPoint> points = table.getPoints(TEMPERATURE, 0, 1000);
+
+        // THEN only the first observation at time 100 is a point
+        assertEquals(1, points.size());
+        assertEquals(37.0, points.get(0).value.number, 0);
+        // AND concepts that were never observed have no points
+        assertTrue(table.getPoints(CONDITION, 0, 1000).isEmpty());
+        assertNull(table.getLatestPoint(CONDITION, 0, 1000));
+    }
+
+    /** Tests that the latest observation of each concept is chosen, even with no value. */
+    @Test
+    public void testGetLatestObs_OnePerConcept() {
+        // GIVEN observations of two concepts
+        ObsTable table = new ObsTable.Builder()
+            .add(200, TEMPERATURE, ConceptType.NUMERIC, "37.5", null)
+            .add(100, TEMPERATURE, ConceptType.NUMERIC, "37.0", null)
+            .add(150, CONDITION, ConceptType.CODED, ConceptUuids.MILD_UUID, "Mild")
+            .add(150, CONDITION, ConceptType.CODED, ConceptUuids.SEVERE_UUID, "Severe")
+            .build();
+
+        // WHEN the latest observations are requested
+        Map<String, Obs> latest = table.getLatestObs();
+
+        // THEN there is one for each concept, the first added if several share a time
+        assertEquals(2, latest.size());
+        assertEquals(new Obs(null, 200, TEMPERATURE, ConceptType.NUMERIC, "37.5", null),
+            latest.get(TEMPERATURE));
+        assertEquals(ConceptUuids.MILD_UUID, latest.get(CONDITION).value);
+        assertEquals("Mild", latest.get(CONDITION).valueName);
+    }
+
+    /** Tests that tables built from the same observations are equal. */
+    @Test
+    public void testEquals_SameObservations() {
+        // GIVEN two tables with the same observations, and one with a different value
+        ObsTable.Builder a = new ObsTable.Builder();
+        ObsTable.Builder b = new ObsTable.Builder(1);
+        ObsTable.Builder c = new ObsTable.Builder();
+        for (int i = 0; i < 100; i++) {
+            a.add(i * 1000, TEMPERATURE, ConceptType.NUMERIC, "" + (36 + i % 4), null);
+            b.add(i * 1000, TEMPERATURE, ConceptType.NUMERIC, "" + (36 + i % 4), null);
+            c.add(i * 1000, TEMPERATURE, ConceptType.NUMERIC, "" + (36 + i % 5), null);
+        }
+
+        // THEN only the tables with the same observations are equal
+        assertEquals(a.build(), b.build());
+        assertEquals(a.build().hashCode(), b.build().hashCode());
+        assertNotEquals(a.build(), c.build());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.net;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.projectbuendia.client.diagnostics.HealthMonitor;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class ChangeFeedClientTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private MockWebServer mServer;
+    private ChangeFeedClient mClient;
+    private final BlockingQueue<Set<String>> mNotifications = new LinkedBlockingQueue<>();
+
+    @Mock private OpenMrsConnectionDetails mMockConnectionDetails;
+    @Mock private HealthMonitor mMockHealthMonitor;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        mServer = new MockWebServer();
+        mServer.start();
+        when(mMockConnectionDetails.getBuendiaApiUrl())
+            .thenReturn(mServer.url("/projectbuendia").toString());
+        when(mMockConnectionDetails.getUser()).thenReturn("user");
+        when(mMockConnectionDetails.getPassword()).thenReturn("password");
+        when(mMockHealthMonitor.isApiUnavailable()).thenReturn(false);
+
+        mClient = new ChangeFeedClient(
+            mMockConnectionDetails,
+            mMockHealthMonitor,
+            new OkHttpClient(),
+            new Gson(),
+            new ChangeFeedClient.Listener() {
+                @Override public void onChanged(Set<String> resourceTypes) {
+                    mNotifications.add(resourceTypes);
+                }
+            },
+            10 /* min backoff */, 40 /* max backoff */, 10 /* API unavailable wait */,
+            60000 /* client error wait */);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mClient.stop();
+        // The server may be blocked waiting for a response to a poll that stop() abandoned.
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.shutdown();
+    }
+
+    /** Queues a response for a wait that expires with no changes. */
+    private void enqueueNoChanges(String syncToken) {
+        mServer.enqueue(new MockResponse().setBody(
+            "{\"changed\": [], \"syncToken\": \"" + syncToken + "\"}"));
+    }
+
+    /** Tests that changed resource types are passed on and the new token is used next. */
+    @Test
+    public void testChanges_NotifyListenerAndAdvanceToken() throws Exception {
+        // GIVEN a server that reports changed observations and orders
+        mServer.enqueue(new MockResponse().setBody(
+            "{\"changed\": [\"observations\", \"orders\"], \"syncToken\": \"t1\"}"));
+        enqueueNoChanges("t1");
+        // WHEN the client is started
+        mClient.start();
+        // THEN the first request waits for changes with no token
+        RecordedRequest first = mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertTrue(first.getPath().startsWith("/projectbuendia/changes?"));
+        assertTrue(first.getPath().contains("wait=" + ChangeFeedClient.WAIT_SECONDS));
+        assertTrue(!first.getPath().contains("since="));
+        assertNotNull(first.getHeader("Authorization"));
+        // THEN the listener hears about both resource types
+        Set<String> changed = mNotifications.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(changed);
+        assertEquals(2, changed.size());
+        assertTrue(changed.contains("observations"));
+        assertTrue(changed.contains("orders"));
+        // THEN the next request carries the new token
+        RecordedRequest second = mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertTrue(second.getPath().contains("since=t1"));
+    }
+
+    /** Tests that a wait that expires with no changes doesn't notify the listener. */
+    @Test
+    public void testNoChanges_DoNotNotifyListener() throws Exception {
+        // GIVEN a server whose wait expires with nothing new
+        enqueueNoChanges("t1");
+        enqueueNoChanges("t1");
+        // WHEN the client is started
+        mClient.start();
+        // THEN it polls again with the same token, without notifying the listener
+        mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        RecordedRequest second = mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertTrue(second.getPath().contains("since=t1"));
+        assertNull(mNotifications.poll());
+    }
+
+    /** Tests that the client keeps retrying after server errors. */
+    @Test
+    public void testServerError_RetriesWithBackoff() throws Exception {
+        // GIVEN a server that fails twice before reporting a change
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setBody(
+            "{\"changed\": [\"patients\"], \"syncToken\": \"t2\"}"));
+        // WHEN the client is started
+        mClient.start();
+        // THEN it eventually gets the change through
+        Set<String> changed = mNotifications.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(changed);
+        assertTrue(changed.contains("patients"));
+        assertTrue(mServer.getRequestCount() >= 3);
+    }
+
+    /** Tests that polling stops on a server that has no change feed. */
+    @Test
+    public void testNotFound_StopsPolling() throws Exception {
+        // GIVEN an older server without the /changes endpoint
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        // WHEN the client is started
+        mClient.start();
+        // THEN it makes one request and then gives up
+        assertNotNull(mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(mServer.takeRequest(300, TimeUnit.MILLISECONDS));
+        // THEN it can be started again later
+        mClient.start();
+        assertNotNull(mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(mServer.takeRequest(300, TimeUnit.MILLISECONDS));
+    }
+
+    /** Tests that a client error isn't retried with the usual short backoff. */
+    @Test
+    public void testClientError_WaitsLongBeforeRetrying() throws Exception {
+        // GIVEN a server that refuses the credentials
+        mServer.enqueue(new MockResponse().setResponseCode(401));
+        enqueueNoChanges("t1");
+        // WHEN the client is started
+        mClient.start();
+        // THEN it doesn't retry within the usual backoff
+        assertNotNull(mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(mServer.takeRequest(300, TimeUnit.MILLISECONDS));
+    }
+
+    /** Tests that no requests are made while the API is known to be unavailable. */
+    @Test
+    public void testApiUnavailable_DoesNotPoll() throws Exception {
+        // GIVEN the health monitor reports the API unavailable
+        when(mMockHealthMonitor.isApiUnavailable()).thenReturn(true);
+        // WHEN the client is started
+        mClient.start();
+        // THEN no request reaches the server
+        assertNull(mServer.takeRequest(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, mServer.getRequestCount());
+    }
+}
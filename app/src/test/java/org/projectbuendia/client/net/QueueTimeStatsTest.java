@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueueTimeStatsTest {
+
+    /** Tests that empty stats report zeroes rather than dividing by zero. */
+    @Test
+    public void testGetMeanMillis_Empty() {
+        QueueTimeStats stats = new QueueTimeStats();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMeanMillis());
+        assertEquals(0, stats.getMaxMillis());
+    }
+
+    /** Tests that count, mean and maximum reflect the recorded queue times. */
+    @Test
+    public void testRecord_TracksCountMeanAndMax() {
+        // GIVEN stats with three recorded queue times
+        QueueTimeStats stats = new QueueTimeStats();
+        stats.record(10);
+        stats.record(50);
+        stats.record(30);
+        // THEN the summary reflects all three
+        assertEquals(3, stats.getCount());
+        assertEquals(30, stats.getMeanMillis());
+        assertEquals(50, stats.getMaxMillis());
+    }
+
+    /** Tests that reset clears everything recorded so far. */
+    @Test
+    public void testReset_ClearsStats() {
+        // GIVEN stats with a recorded queue time
+        QueueTimeStats stats = new QueueTimeStats();
+        stats.record(100);
+        // WHEN the stats are reset
+        stats.reset();
+        // THEN nothing remains
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMaxMillis());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.net;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okio.Buffer;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferCountingInterceptorTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private MockWebServer mServer;
+    private OkHttpClient mClient;
+    private TransferStats mStats;
+    private GzipRequestInterceptor mGzipRequestInterceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+
+        mStats = new TransferStats();
+        mGzipRequestInterceptor = new GzipRequestInterceptor();
+        TransferCountingInterceptor counter = new TransferCountingInterceptor(mStats);
+        mClient = new OkHttpClient();
+        mClient.interceptors().add(counter);
+        mClient.interceptors().add(mGzipRequestInterceptor);
+        mClient.networkInterceptors().add(counter.getNetworkInterceptor());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    /** Returns a highly compressible string of the given length. */
+    private static String repeat(char c, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /** Tests that a gzip-encoded response is decoded and counted at both sizes. */
+    @Test
+    public void testGzipResponse_CountsWireAndDecodedBytes() throws Exception {
+        // GIVEN a server that sends a gzip-compressed body
+        String body = repeat('x', 10000);
+        Buffer compressed = new Buffer();
+        Buffer sink = new Buffer().writeUtf8(body);
+        GzipSink gzip = new GzipSink(compressed);
+        gzip.write(sink, sink.size());
+        gzip.close();
+        long compressedSize = compressed.size();
+        mServer.enqueue(new MockResponse()
+            .addHeader("Content-Encoding", "gzip")
+            .setBody(compressed));
+
+        // WHEN the response is fetched and read
+        Response response = mClient.newCall(
+            new Request.Builder().url(mServer.url("/sync")).build()).execute();
+        String result = response.body().string();
+
+        // THEN the client asked for gzip and the app sees the decoded body
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertEquals(body, result);
+        // AND both sizes are recorded
+        assertEquals(1, mStats.getRequestCount());
+        assertEquals(body.length(), mStats.getResponseDecodedBytes());
+        assertEquals(compressedSize, mStats.getResponseWireBytes());
+    }
+
+    /** Tests that overlapping requests share their busy time instead of adding it up. */
+    @Test
+    public void testResponseMillis_CountsOverlappingRequestsOnce() {
+        // GIVEN two requests that overlap by half, and a later one
+        TransferStats stats = new TransferStats();
+        TransferStats.Counter first = new TransferStats.Counter("/a", 0);
+        TransferStats.Counter second = new TransferStats.Counter("/b", 50000000L);
+        TransferStats.Counter third = new TransferStats.Counter("/c", 1000000000L);
+
+        // WHEN they run from 0 to 100 ms, 50 to 150 ms, and 1000 to 1010 ms
+        stats.start(first);
+        stats.start(second);
+        first.endNanos = 100000000L;
+        stats.record(first);
+        second.endNanos = 150000000L;
+        stats.record(second);
+        stats.start(third);
+        third.endNanos = 1010000000L;
+        stats.abandon(third);
+
+        // THEN the link was busy for 160 ms in all, not 210 ms
+        assertEquals(160, stats.getResponseMillis());
+        assertEquals(2, stats.getRequestCount());
+    }
+
+    /** Tests that large request bodies are left alone unless compression is enabled. */
+    @Test
+    public void testLargeRequestBody_NotCompressedByDefault() throws Exception {
+        // GIVEN a large request body and compression left off
+        String body = repeat('y', 10000);
+        mServer.enqueue(new MockResponse().setBody("{}"));
+
+        // WHEN the body is posted
+        mClient.newCall(new Request.Builder()
+            .url(mServer.url("/xforminstances"))
+            .post(RequestBody.create(JSON, body))
+            .build()).execute().body().close();
+
+        // THEN it is sent as is
+        RecordedRequest request = mServer.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(body.length(), request.getBodySize());
+        assertEquals(body.length(), mStats.getRequestWireBytes());
+    }
+
+    /** Tests that large request bodies are compressed when compression is enabled. */
+    @Test
+    public void testLargeRequestBody_CompressedWhenEnabled() throws Exception {
+        // GIVEN a large request body and compression turned on
+        String body = repeat('y', 10000);
+        mGzipRequestInterceptor.setEnabled(true);
+        mServer.enqueue(new MockResponse().setBody("{}"));
+
+        // WHEN the body is posted
+        mClient.newCall(new Request.Builder()
+            .url(mServer.url("/xforminstances"))
+            .post(RequestBody.create(JSON, body))
+            .build()).execute().body().close();
+
+        // THEN it is sent compressed, and decodes to the original body
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertTrue(request.getBodySize() < body.length());
+        String decoded = Okio.buffer(new GzipSource(request.getBody())).readUtf8();
+        assertEquals(body, decoded);
+        // AND both sizes are recorded
+        assertEquals(body.length(), mStats.getRequestDecodedBytes());
+        assertEquals(request.getBodySize(), mStats.getRequestWireBytes());
+    }
+
+    /** Tests that small request bodies aren't compressed even when compression is enabled. */
+    @Test
+    public void testSmallRequestBody_NotCompressed() throws Exception {
+        // GIVEN a small request body and compression turned on
+        mGzipRequestInterceptor.setEnabled(true);
+        mServer.enqueue(new MockResponse().setBody("{}"));
+
+        // WHEN the body is posted
+        mClient.newCall(new Request.Builder()
+            .url(mServer.url("/encounters"))
+            .post(RequestBody.create(JSON, "{\"a\": 1}"))
+            .build()).execute().body().close();
+
+        // THEN it is sent as is
+        assertNull(mServer.takeRequest().getHeader("Content-Encoding"));
+    }
+}
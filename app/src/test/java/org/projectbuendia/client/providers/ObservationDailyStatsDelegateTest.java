@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.providers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Runs the SQL of {@link ObservationDailyStatsDelegate} against a real SQLite database. */
+public class ObservationDailyStatsDelegateTest {
+    private static final long DAY_MILLIS = 24*60*60*1000L;
+    // Noon UTC, so that the local date is the same in any time zone within 11 hours of UTC.
+    private static final long JAN_1_NOON = 1420113600000L;  // 2015-01-01T12:00Z
+
+    private Connection mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDb = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = mDb.createStatement()) {
+            statement.execute("CREATE TABLE observations (patient_uuid TEXT, concept_uuid TEXT, "
+                + "encounter_millis INTEGER, value STRING, value_number REAL)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDb.close();
+    }
+
+    @Test
+    public void testQuery_AggregatesEachConceptByDay() throws Exception {
+        // GIVEN temperatures on two days, a pulse, and another patient's temperature
+        insert("p1", "temp", JAN_1_NOON, 37.0);
+        insert("p1", "temp", JAN_1_NOON + 60000, 39.0);
+        insert("p1", "temp", JAN_1_NOON + DAY_MILLIS, 38.0);
+        insert("p1", "pulse", JAN_1_NOON, 80.0);
+        insert("p2", "temp", JAN_1_NOON, 41.0);
+
+        // WHEN the statistics for the first patient are queried
+        try (ResultSet rows = query("patient_uuid = ?", "p1")) {
+            // THEN there is a row per concept per day, in order
+            assertTrue(rows.next());
+            assertRow(rows, "pulse", "2015-01-01", 1, 80.0, 80.0, 80.0);
+            assertTrue(rows.next());
+            assertRow(rows, "temp", "2015-01-01", 2, 37.0, 39.0, 38.0);
+            assertTrue(rows.next());
+            assertRow(rows, "temp", "2015-01-02", 1, 38.0, 38.0, 38.0);
+            assertFalse(rows.next());
+        }
+    }
+
+    @Test
+    public void testQuery_SkipsValuesWithoutNumbers() throws Exception {
+        // GIVEN a temperature and a text observation with no numeric value
+        insert("p1", "temp", JAN_1_NOON, 37.5);
+        insert("p1", "notes", JAN_1_NOON, null);
+
+        // WHEN the statistics are queried with no selection
+        try (ResultSet rows = query(null)) {
+            // THEN only the temperature is counted
+            assertTrue(rows.next());
+            assertRow(rows, "temp", "2015-01-01", 1, 37.5, 37.5, 37.5);
+            assertFalse(rows.next());
+        }
+    }
+
+    private void insert(String patientUuid, String conceptUuid, long millis, Double number)
+        throws Exception {
+        try (PreparedStatement statement = mDb.prepareStatement(
+            "INSERT INTO observations VALUES (?, ?, ?, ?, ?)")) {
+            statement.setString(1, patientUuid);
+            statement.setString(2, conceptUuid);
+            statement.setLong(3, millis);
+            statement.setString(4, number == null ? "text" : number.toString());
+            statement.setObject(5, number);
+            statement.executeUpdate();
+        }
+    }
+
+    private ResultSet query(String selection, String... args) throws Exception {
+        PreparedStatement statement = mDb.prepareStatement(
+            ObservationDailyStatsDelegate.getQuerySql(selection, null));
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+        statement.closeOnCompletion();
+        return statement.executeQuery();
+    }
+
+    private static void assertRow(ResultSet row, String conceptUuid, String date, int count,
+                                  double min, double max, double avg) throws Exception {
+        assertEquals(conceptUuid, row.getString(Contracts.ObservationDailyStats.CONCEPT_UUID));
+        assertEquals(date, row.getString(Contracts.ObservationDailyStats.DATE));
+        assertEquals(count, row.getInt(Contracts.ObservationDailyStats.COUNT));
+        assertEquals(min, row.getDouble(Contracts.ObservationDailyStats.MIN), 0);
+        assertEquals(max, row.getDouble(Contracts.ObservationDailyStats.MAX), 0);
+        assertEquals(avg, row.getDouble(Contracts.ObservationDailyStats.AVG), 0);
+    }
+}
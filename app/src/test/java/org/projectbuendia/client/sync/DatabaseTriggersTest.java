@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectbuendia.client.models.AppModel;
+import org.projectbuendia.client.providers.Contracts.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/** Runs the order_executions triggers in {@link Database#TRIGGERS} on a real SQLite database. */
+public class DatabaseTriggersTest {
+    private static final long DAY_MILLIS = 24*60*60*1000L;
+    // Noon UTC, so that the local date is the same in any time zone within 11 hours of UTC.
+    private static final long JAN_1_NOON = 1420113600000L;  // 2015-01-01T12:00Z
+
+    // Row IDs in the uuids table.
+    private static final int PATIENT = 1;
+    private static final int EXECUTED = 2;
+    private static final int TEMPERATURE = 3;
+
+    private Connection mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDb = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = mDb.createStatement()) {
+            for (Table table : new Table[] {
+                Table.UUIDS, Table.OBSERVATION_ROWS, Table.ORDER_EXECUTIONS}) {
+                statement.execute("CREATE TABLE " + table
+                    + " (" + Database.SCHEMAS.get(table) + ")");
+            }
+            for (String trigger : Database.TRIGGERS) {
+                statement.execute("CREATE TRIGGER " + trigger);
+            }
+            // As in Database.onOpen, so that REPLACE fires the delete trigger.
+            statement.execute("PRAGMA recursive_triggers = ON");
+            statement.execute("INSERT INTO uuids VALUES "
+                + "(" + PATIENT + ", 'p1'), "
+                + "(" + EXECUTED + ", '" + AppModel.ORDER_EXECUTED_CONCEPT_UUID + "'), "
+                + "(" + TEMPERATURE + ", 'temp')");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDb.close();
+    }
+
+    @Test
+    public void testInsert_CountsExecutionsByOrderAndDay() throws Exception {
+        // GIVEN two executions of an order on one day, one the next day, one of another order,
+        // and an observation that isn't an execution
+        insert("INSERT", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+        insert("INSERT", "e2", 2, JAN_1_NOON + 60000, EXECUTED, "o1");
+        insert("INSERT", "e3", 3, JAN_1_NOON + DAY_MILLIS, EXECUTED, "o1");
+        insert("INSERT", "e4", 4, JAN_1_NOON, EXECUTED, "o2");
+        insert("INSERT", "t1", 5, JAN_1_NOON, TEMPERATURE, "37.5");
+
+        // THEN the executions are counted by order and day, and the other observation isn't
+        assertCounts("o1 2015-01-01 2", "o1 2015-01-02 1", "o2 2015-01-01 1");
+    }
+
+    @Test
+    public void testInsertOrReplace_DoesNotCountTwice() throws Exception {
+        // GIVEN an execution that is written again, as sync does when it sees it again
+        insert("INSERT", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+        insert("INSERT OR REPLACE", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+
+        // THEN it is counted once
+        assertCounts("o1 2015-01-01 1");
+
+        // WHEN it is replaced by a version on another day
+        insert("INSERT OR REPLACE", "e1", 1, JAN_1_NOON + DAY_MILLIS, EXECUTED, "o1");
+
+        // THEN it is counted on the new day only
+        assertCounts("o1 2015-01-02 1");
+    }
+
+    @Test
+    public void testUpdate_MovesExecutionToNewDay() throws Exception {
+        // GIVEN two executions on one day
+        insert("INSERT", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+        insert("INSERT", "e2", 2, JAN_1_NOON, EXECUTED, "o1");
+
+        // WHEN one of them is moved to the next day
+        update("encounter_millis = " + (JAN_1_NOON + DAY_MILLIS), "e1");
+
+        // THEN each day has one
+        assertCounts("o1 2015-01-01 1", "o1 2015-01-02 1");
+
+        // WHEN the other one is moved to the next day too
+        update("encounter_millis = " + (JAN_1_NOON + DAY_MILLIS), "e2");
+
+        // THEN the first day's row is gone
+        assertCounts("o1 2015-01-02 2");
+    }
+
+    @Test
+    public void testUpdate_ChangingConceptCountsOrUncounts() throws Exception {
+        // GIVEN an execution and an observation with an order UUID as its value
+        insert("INSERT", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+        insert("INSERT", "t1", 2, JAN_1_NOON, TEMPERATURE, "o2");
+
+        // WHEN the execution's concept is changed to one that isn't an execution
+        update("concept_id = " + TEMPERATURE, "e1");
+
+        // THEN it is no longer counted
+        assertCounts();
+
+        // WHEN the other observation's concept is changed to the execution concept
+        update("concept_id = " + EXECUTED, "t1");
+
+        // THEN it is counted
+        assertCounts("o2 2015-01-01 1");
+    }
+
+    @Test
+    public void testDelete_UncountsAndRemovesEmptyRows() throws Exception {
+        // GIVEN two executions on one day
+        insert("INSERT", "e1", 1, JAN_1_NOON, EXECUTED, "o1");
+        insert("INSERT", "e2", 2, JAN_1_NOON, EXECUTED, "o1");
+
+        // WHEN one is deleted
+        delete("e1");
+
+        // THEN the count goes down
+        assertCounts("o1 2015-01-01 1");
+
+        // WHEN the other is deleted
+        delete("e2");
+
+        // THEN the row for the day is gone
+        assertCounts();
+    }
+
+    private void insert(String verb, String uuid, int encounterId, long millis, int conceptId,
+                        String value) throws Exception {
+        try (PreparedStatement statement = mDb.prepareStatement(verb + " INTO "
+            + Table.OBSERVATION_ROWS + " (uuid, patient_id, encounter_id, encounter_millis,"
+            + " concept_id, value) VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, uuid);
+            statement.setInt(2, PATIENT);
+            statement.setInt(3, encounterId);
+            statement.setLong(4, millis);
+            statement.setInt(5, conceptId);
+            statement.setString(6, value);
+            statement.executeUpdate();
+        }
+    }
+
+    private void update(String assignment, String uuid) throws Exception {
+        try (PreparedStatement statement = mDb.prepareStatement("UPDATE "
+            + Table.OBSERVATION_ROWS + " SET " + assignment + " WHERE uuid = ?")) {
+            statement.setString(1, uuid);
+            statement.executeUpdate();
+        }
+    }
+
+    private void delete(String uuid) throws Exception {
+        try (PreparedStatement statement = mDb.prepareStatement("DELETE FROM "
+            + Table.OBSERVATION_ROWS + " WHERE uuid = ?")) {
+            statement.setString(1, uuid);
+            statement.executeUpdate();
+        }
+    }
+
+    /** Asserts the rows of order_executions, each as "order_uuid date count", in order. */
+    private void assertCounts(String... expected) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (Statement statement = mDb.createStatement();
+             ResultSet result = statement.executeQuery("SELECT order_uuid, patient_uuid, date,"
+                 + " count FROM " + Table.ORDER_EXECUTIONS + " ORDER BY order_uuid, date")) {
+            while (result.next()) {
+                assertEquals("p1", result.getString("patient_uuid"));
+                rows.add(result.getString("order_uuid") + " " + result.getString("date")
+                    + " " + result.getInt("count"));
+            }
+        }
+        assertEquals(Arrays.asList(expected), rows);
+    }
+}
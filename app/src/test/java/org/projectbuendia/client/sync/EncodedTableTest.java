@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.sync;
+
+import org.junit.Test;
+import org.projectbuendia.client.providers.Contracts.Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EncodedTableTest {
+
+    @Test
+    public void testGetIdColumn() {
+        // GIVEN UUID columns with and without the usual suffix
+        // WHEN their id columns are named
+        // THEN "_uuid" becomes "_id", and other names get "_id" added
+        assertEquals("patient_id", EncodedTable.getIdColumn("patient_uuid"));
+        assertEquals("value_coded_id", EncodedTable.getIdColumn("value_coded"));
+    }
+
+    @Test
+    public void testGetViewSql_JoinsRequiredAndOptionalColumns() {
+        // GIVEN a table with one required and one optional UUID column
+        EncodedTable encoded = new EncodedTable(Table.OBSERVATIONS, Table.OBSERVATION_ROWS,
+            new String[] {"patient_uuid"}, new String[] {"value_coded"});
+        // WHEN its view is defined
+        // THEN the required column uses an inner join and the optional one a left join
+        assertEquals("SELECT r.rowid AS rowid, r.*, u0.uuid AS patient_uuid, "
+                + "u1.uuid AS value_coded FROM observation_rows r "
+                + "JOIN uuids u0 ON u0.id = r.patient_id "
+                + "LEFT JOIN uuids u1 ON u1.id = r.value_coded_id",
+            encoded.getViewSql());
+    }
+
+    @Test
+    public void testGet_OrdinaryTable() {
+        // GIVEN a table whose UUIDs are stored as text
+        // WHEN its encoding is looked up
+        // THEN there is none
+        assertNull(EncodedTable.get(Table.LOCATIONS));
+    }
+}
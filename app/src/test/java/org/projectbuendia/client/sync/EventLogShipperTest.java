@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.sync;
+
+import org.junit.Test;
+import org.projectbuendia.client.json.JsonUser;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventLogShipperTest {
+
+    /** Tests that the retry delay doubles with each failure, up to a maximum. */
+    @Test
+    public void testGetRetryDelayMillis_DoublesUpToMaximum() {
+        assertEquals(EventLogShipper.MIN_RETRY_DELAY_MILLIS,
+            EventLogShipper.getRetryDelayMillis(1));
+        assertEquals(2*EventLogShipper.MIN_RETRY_DELAY_MILLIS,
+            EventLogShipper.getRetryDelayMillis(2));
+        assertEquals(EventLogShipper.MAX_RETRY_DELAY_MILLIS,
+            EventLogShipper.getRetryDelayMillis(50));
+    }
+
+    /** Tests that an event records its time, its user, and its URL-encoded pairs. */
+    @Test
+    public void testFormatEvent_IncludesTimeUserAndPairs() {
+        // GIVEN a logged-in user and an action with a value needing encoding
+        JsonUser user = new JsonUser("42", "Ann Smith");
+        // WHEN the event is formatted
+        String params = EventLogShipper.formatEvent(
+            1234, user, Arrays.asList("action", "search", "query", "a b;c"));
+        // THEN everything is in one string of pairs
+        assertEquals("time=1234;user_id=42;action=search;query=a+b%3Bc", params);
+    }
+
+    /** Tests that events logged with no active user, and odd leftovers, are handled. */
+    @Test
+    public void testFormatEvent_NoUser() {
+        assertEquals("time=5;event=started", EventLogShipper.formatEvent(
+            5, null, Arrays.asList("event", "started", "dangling")));
+        assertEquals("time=5", EventLogShipper.formatEvent(
+            5, null, Collections.<String>emptyList()));
+    }
+}
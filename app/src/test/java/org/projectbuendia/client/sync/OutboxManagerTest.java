@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.sync;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.junit.Test;
+import org.projectbuendia.client.sync.OutboxManager.Action;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxManagerTest {
+
+    /** Tests that the retry delay doubles with each failure, up to a maximum. */
+    @Test
+    public void testGetRetryDelayMillis_DoublesUpToMaximum() {
+        assertEquals(OutboxManager.MIN_RETRY_DELAY_MILLIS, OutboxManager.getRetryDelayMillis(1));
+        assertEquals(2*OutboxManager.MIN_RETRY_DELAY_MILLIS, OutboxManager.getRetryDelayMillis(2));
+        assertEquals(4*OutboxManager.MIN_RETRY_DELAY_MILLIS, OutboxManager.getRetryDelayMillis(3));
+        assertEquals(OutboxManager.MAX_RETRY_DELAY_MILLIS, OutboxManager.getRetryDelayMillis(50));
+    }
+
+    /** Tests that the status code is found even when the error has been wrapped. */
+    @Test
+    public void testGetStatusCode_UnwrapsCause() {
+        // GIVEN a 400 response wrapped the way OpenMrsServer wraps errors
+        VolleyError error = new VolleyError(new NetworkResponse(
+            400, new byte[0], Collections.<String, String>emptyMap(), false));
+        VolleyError wrapped = new VolleyError("Bad request", error);
+        // THEN the status code comes from the wrapped error
+        assertEquals(400, OutboxManager.getStatusCode(wrapped));
+    }
+
+    /** Tests that errors without a response report no status code. */
+    @Test
+    public void testGetStatusCode_NoResponse() {
+        assertEquals(0, OutboxManager.getStatusCode(new TimeoutError()));
+        assertEquals(0, OutboxManager.getStatusCode(null));
+    }
+
+    /** Tests that only client errors that won't clear up on their own count as rejections. */
+    @Test
+    public void testIsRejection() {
+        assertTrue(OutboxManager.isRejection(400));
+        assertTrue(OutboxManager.isRejection(422));
+        assertFalse(OutboxManager.isRejection(0));
+        assertFalse(OutboxManager.isRejection(401));
+        assertFalse(OutboxManager.isRejection(403));
+        assertFalse(OutboxManager.isRejection(408));
+        assertFalse(OutboxManager.isRejection(500));
+        assertFalse(OutboxManager.isRejection(503));
+    }
+
+    /** Tests that resubmitted writes that the server already has count as done. */
+    @Test
+    public void testIsAlreadyApplied() {
+        assertTrue(OutboxManager.isAlreadyApplied(Action.ADD_ENCOUNTER, 409));
+        assertTrue(OutboxManager.isAlreadyApplied(Action.DELETE_ORDER, 404));
+        assertTrue(OutboxManager.isAlreadyApplied(Action.DELETE_OBSERVATION, 404));
+        assertFalse(OutboxManager.isAlreadyApplied(Action.UPDATE_PATIENT, 404));
+        assertFalse(OutboxManager.isAlreadyApplied(Action.ADD_ORDER, 500));
+    }
+
+    /** Tests that actions on existing items name the item in the URL. */
+    @Test
+    public void testGetUrlSuffix() {
+        assertEquals("/patients", Action.ADD_PATIENT.getUrlSuffix("abc"));
+        assertEquals("/patients/abc", Action.UPDATE_PATIENT.getUrlSuffix("abc"));
+        assertEquals("/orders/abc", Action.DELETE_ORDER.getUrlSuffix("abc"));
+    }
+
+    @Test
+    public void testFindRejectedItem_MatchesItemOrBody() {
+        // GIVEN a patient whose creation the server refused
+        Set<String> rejected = new HashSet<>(Arrays.asList("patient-1"));
+        // THEN writes to that patient, or that mention it, depend on it
+        assertEquals("patient-1", OutboxManager.findRejectedItem("patient-1", null, rejected));
+        assertEquals("patient-1", OutboxManager.findRejectedItem(
+            "encounter-1", "{\"patient_uuid\": \"patient-1\"}", rejected));
+        // AND writes about other items do not
+        assertNull(OutboxManager.findRejectedItem(
+            "encounter-2", "{\"patient_uuid\": \"patient-2\"}", rejected));
+        assertNull(OutboxManager.findRejectedItem("patient-2", null, rejected));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.sync;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class PatientArchiverTest {
+
+    @Test
+    public void testGetLocationsWithin_IncludesDescendants() {
+        // GIVEN a zone containing a tent containing a bed, and another zone with a tent
+        Map<String, String> parents = new HashMap<>();
+        parents.put("discharged", null);
+        parents.put("tent", "discharged");
+        parents.put("bed", "tent");
+        parents.put("confirmed", null);
+        parents.put("tent 2", "confirmed");
+        // WHEN the locations within the first zone are found
+        // THEN they are the zone, the tent, and the bed
+        assertEquals(ImmutableSet.of("discharged", "tent", "bed"),
+            PatientArchiver.getLocationsWithin(ImmutableList.of("discharged"), parents));
+    }
+
+    @Test
+    public void testGetLocationsWithin_UnknownRoot() {
+        // GIVEN locations that don't include the root asked for
+        Map<String, String> parents = new HashMap<>();
+        parents.put("confirmed", null);
+        parents.put("tent", "confirmed");
+        // WHEN the locations within it are found
+        // THEN only the root itself is returned
+        assertEquals(ImmutableSet.of("morgue"),
+            PatientArchiver.getLocationsWithin(ImmutableList.of("morgue"), parents));
+    }
+
+    @Test
+    public void testGetLocationsWithin_ToleratesCycles() {
+        // GIVEN two locations that are each other's parent
+        Map<String, String> parents = new HashMap<>();
+        parents.put("a", "b");
+        parents.put("b", "a");
+        parents.put("morgue", null);
+        // WHEN the locations within a zone are found
+        // THEN the search finishes without including the cycle
+        assertEquals(ImmutableSet.of("morgue"),
+            PatientArchiver.getLocationsWithin(ImmutableList.of("morgue"), parents));
+    }
+}
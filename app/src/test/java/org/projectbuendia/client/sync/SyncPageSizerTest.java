@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.sync;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyncPageSizerTest {
+
+    /** The size of each record served by the stand-in server. */
+    private static final int RECORD_BYTES = 20;
+
+    private MockWebServer mServer;
+    /** Bytes per second that the stand-in server sends, or 0 for as fast as possible. */
+    private volatile long mBytesPerSecond;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        // Serves the number of records asked for, at the configured rate.
+        mServer.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                String limit = request.getRequestLine().replaceAll(".*limit=(\\d+).*", "$1");
+                char[] body = new char[Integer.parseInt(limit)*RECORD_BYTES];
+                Arrays.fill(body, 'x');
+                MockResponse response = new MockResponse().setBody(new String(body));
+                if (mBytesPerSecond > 0) {
+                    response.throttleBody(mBytesPerSecond/10, 100, TimeUnit.MILLISECONDS);
+                }
+                return response;
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    /** Tests that pages grow, gradually, after fast full pages. */
+    @Test
+    public void testRecordPage_GrowsOnFastLink() {
+        // GIVEN a sizer at the default page size
+        SyncPageSizer sizer = new SyncPageSizer();
+        // WHEN a full page arrives quickly
+        sizer.recordPage(SyncPageSizer.DEFAULT_PAGE_SIZE, 100000, 100);
+        // THEN the next page is twice as big, but no bigger
+        assertEquals(SyncPageSizer.DEFAULT_PAGE_SIZE*2, sizer.getPageSize());
+    }
+
+    /** Tests that a short final page doesn't make the next page bigger. */
+    @Test
+    public void testRecordPage_ShortPageDoesNotGrow() {
+        SyncPageSizer sizer = new SyncPageSizer();
+        sizer.recordPage(10, 2000, 5);
+        assertEquals(SyncPageSizer.DEFAULT_PAGE_SIZE, sizer.getPageSize());
+    }
+
+    /** Tests that short pages, whose time is mostly the round trip, don't shrink pages. */
+    @Test
+    public void testRecordPage_ShortPagesDoNotShrink() {
+        // GIVEN a sizer aiming for 4-second pages
+        SyncPageSizer sizer = new SyncPageSizer(4000);
+        // WHEN many short pages arrive, each a few records taking a 1-second round trip
+        for (int i = 0; i < 20; i++) {
+            sizer.recordPage(3, 600, 1000);
+        }
+        // THEN the page size is unchanged
+        assertEquals(SyncPageSizer.DEFAULT_PAGE_SIZE, sizer.getPageSize());
+    }
+
+    /** Tests that slow pages shrink to about the target time, with a longer timeout. */
+    @Test
+    public void testRecordPage_ShrinksOnSlowLink() {
+        // GIVEN a sizer aiming for 4-second pages
+        SyncPageSizer sizer = new SyncPageSizer(4000);
+        // WHEN a page of 500 records takes 20 seconds
+        sizer.recordPage(500, 100000, 20000);
+        // THEN the next page is sized to take about 4 seconds
+        assertEquals(100, sizer.getPageSize());
+        assertEquals(16000, sizer.getTimeoutMillis());
+    }
+
+    /** Tests that each lost page halves the next, down to the minimum. */
+    @Test
+    public void testRecordFailure_HalvesPageSize() {
+        SyncPageSizer sizer = new SyncPageSizer();
+        sizer.recordFailure();
+        assertEquals(SyncPageSizer.DEFAULT_PAGE_SIZE/2, sizer.getPageSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.recordFailure();
+        }
+        assertEquals(SyncPageSizer.MIN_PAGE_SIZE, sizer.getPageSize());
+    }
+
+    /** Tests that the sizer settles near the target page time on a throttled link. */
+    @Test
+    public void testSync_ThrottledServer() throws Exception {
+        // GIVEN a server that sends 20 kB/s, and a sizer aiming for 200-ms pages
+        mBytesPerSecond = 20000;
+        SyncPageSizer sizer = new SyncPageSizer(200);
+        // WHEN a few pages are fetched
+        fetchPages(sizer, 4);
+        // THEN the page size has come down to about 200 ms worth of records
+        int expected = (int) (mBytesPerSecond/RECORD_BYTES/5);
+        assertTrue(sizer.toString(), sizer.getPageSize() < SyncPageSizer.DEFAULT_PAGE_SIZE);
+        assertTrue(sizer.toString(), Math.abs(sizer.getPageSize() - expected) < expected/2);
+    }
+
+    /** Tests that the sizer grows pages to the maximum on an unthrottled link. */
+    @Test
+    public void testSync_FastServer() throws Exception {
+        // GIVEN a server that sends as fast as it can
+        mBytesPerSecond = 0;
+        SyncPageSizer sizer = new SyncPageSizer();
+        // WHEN enough pages are fetched for the size to double up to the maximum
+        fetchPages(sizer, 4);
+        // THEN the pages are as big as they get
+        assertEquals(sizer.toString(), SyncPageSizer.MAX_PAGE_SIZE, sizer.getPageSize());
+    }
+
+    /** Fetches pages from the stand-in server, sized and timed by the sizer. */
+    private void fetchPages(SyncPageSizer sizer, int numPages) throws Exception {
+        for (int i = 0; i < numPages; i++) {
+            int pageSize = sizer.getPageSize();
+            OkHttpClient client = new OkHttpClient();
+            client.setReadTimeout(sizer.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            long startNanos = System.nanoTime();
+            Response response = client.newCall(new Request.Builder()
+                .url(mServer.url("/observations?limit=" + pageSize))
+                .build()).execute();
+            long bytes = response.body().bytes().length;
+            long millis = (System.nanoTime() - startNanos)/1000000;
+            sizer.recordPage((int) (bytes/RECORD_BYTES), bytes, millis);
+        }
+    }
+}
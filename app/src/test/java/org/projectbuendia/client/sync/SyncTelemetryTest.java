@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package org.projectbuendia.client.sync;
+
+import org.junit.Test;
+import org.projectbuendia.client.sync.SyncTelemetry.PhaseSummary;
+import org.projectbuendia.client.sync.SyncTelemetry.SyncSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests for {@link SyncTelemetry}. */
+public class SyncTelemetryTest {
+
+    @Test public void testRecorder_totalsPagesIntoPhase() {
+        // GIVEN a recorder
+        SyncTelemetry.Recorder recorder = new SyncTelemetry.Recorder(1000);
+
+        // WHEN a phase with two pages is recorded
+        recorder.startPhase("OBSERVATIONS");
+        recorder.recordPage(500, 10000, 2000, 300, 40, 60);
+        recorder.recordPage(200, 4000, 800, 100, 20, 30);
+        recorder.countNotification();
+        recorder.endPhase(650, true);
+
+        // THEN each page is measured, followed by the totals for the phase
+        List<SyncMeasurement> measurements = recorder.getMeasurements();
+        assertEquals(3, measurements.size());
+        SyncMeasurement page = measurements.get(1);
+        assertEquals(2, page.page);
+        assertEquals(200, page.rows);
+        assertEquals(150, page.totalMillis);
+        SyncMeasurement phase = measurements.get(2);
+        assertTrue(phase.isPhase());
+        assertEquals("OBSERVATIONS", phase.phase);
+        assertEquals(650, phase.rows);
+        assertEquals(14000, phase.decodedBytes);
+        assertEquals(2800, phase.wireBytes);
+        assertEquals(400, phase.networkMillis);
+        assertEquals(60, phase.parseMillis);
+        assertEquals(90, phase.dbMillis);
+        assertEquals(1, phase.notifications);
+        assertTrue(phase.succeeded);
+    }
+
+    @Test public void testRecorder_ignoresPagesOutsidePhase() {
+        // GIVEN a recorder with no phase in progress
+        SyncTelemetry.Recorder recorder = new SyncTelemetry.Recorder(1000);
+
+        // WHEN a page is recorded
+        recorder.recordPage(500, 10000, 2000, 300, 40, 60);
+
+        // THEN nothing is measured
+        assertTrue(recorder.getMeasurements().isEmpty());
+    }
+
+    @Test public void testSummarizeSyncs_newestFirst() {
+        // GIVEN two syncs, the second of which failed in one phase
+        List<SyncMeasurement> measurements = Arrays.asList(
+            phase(1000, "USERS", 10, 100, true),
+            phase(1000, "OBSERVATIONS", 200, 900, true),
+            phase(5000, "USERS", 0, 80, true),
+            page(5000, "OBSERVATIONS", 1, 500),
+            phase(5000, "OBSERVATIONS", 0, 700, false));
+
+        // WHEN the syncs are summarized
+        List<SyncSummary> syncs = SyncTelemetry.summarizeSyncs(measurements);
+
+        // THEN the newest sync comes first and pages are not counted twice
+        assertEquals(2, syncs.size());
+        assertEquals(5000, syncs.get(0).startMillis);
+        assertEquals(780, syncs.get(0).totalMillis);
+        assertFalse(syncs.get(0).succeeded);
+        assertEquals(1000, syncs.get(1).startMillis);
+        assertEquals(210, syncs.get(1).rows);
+        assertEquals(Arrays.asList("USERS", "OBSERVATIONS"), syncs.get(1).phases);
+        assertTrue(syncs.get(1).succeeded);
+    }
+
+    @Test public void testSummarizePhases_percentilesAndTrend() {
+        // GIVEN ten successful runs of a phase that doubled in time, and one failed run
+        List<SyncMeasurement> measurements = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            measurements.add(phase(i, "OBSERVATIONS", 1, i < 5 ? 100 : 200, true));
+        }
+        measurements.add(phase(10, "OBSERVATIONS", 0, 5, false));
+
+        // WHEN the phases are summarized
+        List<PhaseSummary> phases = SyncTelemetry.summarizePhases(measurements);
+
+        // THEN times come from the successful runs, and the trend shows the slowdown
+        assertEquals(1, phases.size());
+        PhaseSummary summary = phases.get(0);
+        assertEquals(11, summary.numRuns);
+        assertEquals(1, summary.numFailed);
+        assertEquals(100, summary.p50Millis);
+        assertEquals(200, summary.p90Millis);
+        assertEquals(Integer.valueOf(100), summary.trendPercent);
+    }
+
+    @Test public void testSummarizePhases_noTrendWithFewRuns() {
+        // GIVEN only a few runs of a phase
+        List<SyncMeasurement> measurements = Arrays.asList(
+            phase(1, "USERS", 1, 100, true), phase(2, "USERS", 1, 300, true));
+
+        // WHEN the phases are summarized
+        PhaseSummary summary = SyncTelemetry.summarizePhases(measurements).get(0);
+
+        // THEN there is no trend
+        assertNull(summary.trendPercent);
+    }
+
+    @Test public void testPercentile() {
+        List<Long> values = Arrays.asList(5L, 1L, 4L, 2L, 3L);
+        assertEquals(1, SyncTelemetry.percentile(values, 0));
+        assertEquals(3, SyncTelemetry.percentile(values, 50));
+        assertEquals(5, SyncTelemetry.percentile(values, 90));
+        assertEquals(5, SyncTelemetry.percentile(values, 100));
+        assertEquals(-1, SyncTelemetry.percentile(new ArrayList<Long>(), 50));
+    }
+
+    @Test public void testToCsv() {
+        // GIVEN one page measurement
+        List<SyncMeasurement> measurements = Arrays.asList(page(1000, "USERS", 1, 20));
+
+        // WHEN it is exported
+        String[] lines = SyncTelemetry.toCsv(measurements).split("\n");
+
+        // THEN there is a header row followed by one row per measurement
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("sync_start_millis,phase,page,rows,"));
+        assertEquals("1000,USERS,1,20,0,0,0,0,0,0,0,1", lines[1]);
+    }
+
+    private static SyncMeasurement phase(
+        long start, String phase, long rows, long totalMillis, boolean succeeded) {
+        return new SyncMeasurement(
+            start, phase, 0, rows, 0, 0, 0, 0, 0, 0, totalMillis, succeeded);
+    }
+
+    private static SyncMeasurement page(long start, String phase, int page, long rows) {
+        return new SyncMeasurement(start, phase, page, rows, 0, 0, 0, 0, 0, 0, 0, true);
+    }
+}
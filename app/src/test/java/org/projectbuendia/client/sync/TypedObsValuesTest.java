@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.sync;
+
+import android.content.ContentValues;
+
+import org.junit.Test;
+import org.projectbuendia.client.json.ConceptType;
+import org.projectbuendia.client.json.JsonConcept;
+import org.projectbuendia.client.models.ConceptUuids;
+import org.projectbuendia.client.providers.Contracts.Observations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TypedObsValuesTest {
+
+    /** Tests that each type of value goes into its own column. */
+    @Test
+    public void testPut_FillsColumnForType() {
+        // WHEN values of each type are put
+        ContentValues numeric = new ContentValues();
+        TypedObsValues.put(numeric, ConceptType.NUMERIC, "38.5");
+        ContentValues coded = new ContentValues();
+        TypedObsValues.put(coded, ConceptType.CODED, ConceptUuids.YES_UUID);
+        ContentValues datetime = new ContentValues();
+        TypedObsValues.put(datetime, ConceptType.DATETIME, "1420070400000");
+
+        // THEN each is in the column for its type, and the other columns are null
+        assertEquals(38.5, numeric.getAsDouble(Observations.VALUE_NUMBER), 0);
+        assertNull(numeric.get(Observations.VALUE_CODED));
+        assertEquals(ConceptUuids.YES_UUID, coded.getAsString(Observations.VALUE_CODED));
+        assertNull(coded.get(Observations.VALUE_NUMBER));
+        assertEquals(1420070400000L, (long) datetime.getAsLong(Observations.VALUE_MILLIS));
+        assertNull(datetime.get(Observations.VALUE_NUMBER));
+    }
+
+    /** Tests that all columns are present but null when there is no typed value. */
+    @Test
+    public void testPut_NullsForUnknownTypeOrBadValue() {
+        // WHEN a value of unknown type and an unparseable number are put
+        ContentValues unknown = new ContentValues();
+        TypedObsValues.put(unknown, (ConceptType) null, "38.5");
+        ContentValues bad = new ContentValues();
+        TypedObsValues.put(bad, ConceptType.NUMERIC, "high");
+
+        // THEN all three columns are there, so the rows can be bulk inserted with others
+        for (ContentValues values : new ContentValues[] {unknown, bad}) {
+            assertEquals(3, values.size());
+            assertTrue(values.containsKey(Observations.VALUE_NUMBER));
+            assertNull(values.get(Observations.VALUE_NUMBER));
+            assertNull(values.get(Observations.VALUE_CODED));
+            assertNull(values.get(Observations.VALUE_MILLIS));
+        }
+    }
+
+    /** Tests which stored values a backfill rewrites. */
+    @Test
+    public void testGetBackfillValues() {
+        // GIVEN a number stored before its concept's type was known
+        // THEN the backfill fills in its typed value
+        assertEquals(38.5, TypedObsValues.getBackfillValues(ConceptType.NUMERIC, "38.5", false)
+            .getAsDouble(Observations.VALUE_NUMBER), 0);
+        // AND a value with no typed form is left alone
+        assertNull(TypedObsValues.getBackfillValues(ConceptType.TEXT, "notes", false));
+        assertNull(TypedObsValues.getBackfillValues(ConceptType.NUMERIC, "high", false));
+        // BUT for a concept whose type changed, the old typed value is cleared
+        ContentValues retyped = TypedObsValues.getBackfillValues(ConceptType.TEXT, "38.5", true);
+        assertTrue(retyped.containsKey(Observations.VALUE_NUMBER));
+        assertNull(retyped.get(Observations.VALUE_NUMBER));
+    }
+
+    /** Tests that only concepts with typed forms are read for the backfill. */
+    @Test
+    public void testGetTypedConceptUuids() {
+        // GIVEN concepts of every type
+        List<JsonConcept> concepts = new ArrayList<>();
+        for (ConceptType type : ConceptType.values()) {
+            JsonConcept concept = new JsonConcept();
+            concept.uuid = type.name();
+            concept.type = type;
+            concepts.add(concept);
+        }
+        concepts.add(new JsonConcept());  // a concept of unknown type
+
+        // THEN only the numeric, coded, boolean, and datetime ones are selected
+        assertEquals(Arrays.asList("NUMERIC", "BOOLEAN", "CODED", "DATETIME"),
+            TypedObsValues.getTypedConceptUuids(concepts));
+    }
+}
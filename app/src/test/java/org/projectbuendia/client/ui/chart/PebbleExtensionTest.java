@@ -11,15 +11,19 @@
 
 package org.projectbuendia.client.ui.chart;
 
+import com.google.common.collect.ImmutableList;
 import com.mitchellbosecke.pebble.extension.Filter;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Instant;
+import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
+import org.projectbuendia.client.models.DailyStats;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -41,6 +45,22 @@ public class PebbleExtensionTest {
         assertEquals(result, "12:00");
     }
 
+    @Test
+    public void testAggregateFilters_UseDailyStats() throws Exception {
+        // GIVEN the database's statistics for two days
+        List<DailyStats> stats = ImmutableList.of(
+            new DailyStats(new LocalDate(2015, 1, 1), 3, 36.0, 39.0, 37.0),
+            new DailyStats(new LocalDate(2015, 1, 2), 1, 38.0, 38.0, 38.0));
+        Map<String, Filter> filters = new PebbleExtension().getFilters();
+
+        // WHEN the aggregate filters are applied to one day and to both days
+        // THEN they use the statistics, weighting each day's average by its count
+        assertEquals(36.0, filters.get("min").apply(stats.get(0), mArgs));
+        assertEquals(36.0, filters.get("min").apply(stats, mArgs));
+        assertEquals(39.0, filters.get("max").apply(stats, mArgs));
+        assertEquals(37.25, filters.get("avg").apply(stats, mArgs));
+    }
+
     @Before
     public void setUp() {
         mArgs = new HashMap<>();
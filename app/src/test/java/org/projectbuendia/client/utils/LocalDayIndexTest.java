@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at: http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distrib-
+ * uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.projectbuendia.client.utils;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocalDayIndexTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    /** Checks every hour over a long span against Joda's own day arithmetic. */
+    private static void assertMatchesJoda(DateTimeZone zone, LocalDate origin,
+                                          long startMillis, long stopMillis) {
+        LocalDayIndex index = new LocalDayIndex(zone, origin);
+        for (long millis = startMillis; millis < stopMillis; millis += HOUR_MILLIS / 2) {
+            LocalDate date = new DateTime(millis, zone).toLocalDate();
+            int day = index.getDay(millis);
+            assertEquals(new DateTime(millis, zone).toString(),
+                Days.daysBetween(origin, date).getDays(), day);
+            assertEquals(date, index.getDate(day));
+            assertEquals(date.toDateTimeAtStartOfDay(zone).getMillis(), index.getStartMillis(day));
+            assertEquals(date.plusDays(1).toDateTimeAtStartOfDay(zone).getMillis(),
+                index.getStopMillis(day));
+        }
+    }
+
+    /** Tests days on either side of the origin in a zone with daylight saving time. */
+    @Test
+    public void testGetDay_MatchesJodaAcrossDaylightSaving() {
+        // GIVEN a zone that shifts its clocks twice a year
+        DateTimeZone zone = DateTimeZone.forID("Europe/London");
+        LocalDate origin = new LocalDate(2016, 6, 1);
+
+        // THEN every half hour for two years before and after the origin maps to the right day
+        assertMatchesJoda(zone, origin,
+            new DateTime(2014, 6, 1, 0, 0, zone).getMillis(),
+            new DateTime(2018, 6, 1, 0, 0, zone).getMillis());
+    }
+
+    /** Tests a zone whose daylight saving change skips midnight, so a day starts at 1:00. */
+    @Test
+    public void testGetDay_MatchesJodaWhenMidnightIsSkipped() {
+        // GIVEN a zone that used to start daylight saving time at midnight
+        DateTimeZone zone = DateTimeZone.forID("America/Sao_Paulo");
+        LocalDate origin = new LocalDate(2015, 1, 1);
+
+        // THEN every half hour around its transitions maps to the right day
+        assertMatchesJoda(zone, origin,
+            new DateTime(2015, 9, 1, 0, 0, zone).getMillis(),
+            new DateTime(2016, 3, 1, 0, 0, zone).getMillis());
+    }
+
+    /** Tests that far-away instants are indexed without stepping there a day at a time. */
+    @Test
+    public void testGetDay_FarFromOrigin() {
+        // GIVEN an index starting in 2016
+        DateTimeZone zone = DateTimeZone.UTC;
+        LocalDayIndex index = new LocalDayIndex(zone, new LocalDate(2016, 1, 1));
+
+        // WHEN instants decades away are looked up
+        // THEN they get the right day numbers
+        assertEquals(-16436, index.getDay(new LocalDate(1971, 1, 1)
+            .toDateTimeAtStartOfDay(zone).getMillis()));
+        assertEquals(18263, index.getDay(new LocalDate(2066, 1, 1)
+            .toDateTimeAtStartOfDay(zone).getMillis() + 1));
+    }
+}
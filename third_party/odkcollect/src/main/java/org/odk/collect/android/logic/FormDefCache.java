@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Project Buendia Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.odk.collect.android.logic;
+
+import android.util.Log;
+
+import org.apache.commons.io.IOUtils;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.xform.util.XFormUtils;
+import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.utilities.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps forms ready to open quickly.  {@link #prepare} builds a form's serialized .formdef file
+ * ahead of time, so it never has to be parsed from XML when the user opens it, and deserializes a
+ * spare {@link FormDef} into a small in-memory pool while the pool has room.  {@link #take} hands
+ * out that spare copy and deserializes a replacement in the background, so the forms that are
+ * opened most stay warm.  Preparing a form never evicts one that the user has opened.
+ * <p/>
+ * Pooled FormDefs are pristine: each one is handed out once, because a form session fills in
+ * its FormDef's instance.  Entries are keyed by the MD5 hash of the form XML, so a changed form
+ * never gets a stale FormDef.
+ */
+public class FormDefCache {
+    private final static String t = "FormDefCache";
+
+    /** Maximum number of forms to keep a deserialized FormDef for. */
+    private static final int MAX_WARM_FORMS = 4;
+
+    /** Spare FormDefs by form hash, in least-recently-used order. */
+    private static final Map<String, FormDef> sWarmFormDefs =
+        new LinkedHashMap<String, FormDef>(MAX_WARM_FORMS, 0.75f, true);
+
+    private static final ExecutorService sRefillExecutor = Executors.newSingleThreadExecutor();
+
+    private FormDefCache() {
+    }
+
+    /**
+     * Makes sure the given form has a .formdef file, and puts a spare FormDef for it in the pool
+     * if the pool has room.  This may parse the form XML, so call it on a background thread.
+     * @return true if the form is ready
+     */
+    public static boolean prepare(File formXml) {
+        String hash = FileUtils.getMd5Hash(formXml);
+        if (hash == null) {
+            return false;
+        }
+        boolean hasRoom;
+        synchronized (sWarmFormDefs) {
+            if (sWarmFormDefs.containsKey(hash)) {
+                return true;
+            }
+            hasRoom = sWarmFormDefs.size() < MAX_WARM_FORMS;
+        }
+        if (!hasRoom && getFormDefFile(hash).exists()) {
+            return true;
+        }
+        FormDef fd = load(formXml, hash);
+        if (fd == null) {
+            return false;
+        }
+        if (hasRoom) {
+            putIfRoom(hash, fd);
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the spare FormDef for the form with the given hash, or null if there
+     * isn't one.  A replacement is deserialized in the background.
+     */
+    public static FormDef take(final String hash) {
+        FormDef fd;
+        synchronized (sWarmFormDefs) {
+            fd = sWarmFormDefs.remove(hash);
+        }
+        if (fd != null) {
+            Log.i(t, "Using warm FormDef for " + hash);
+            sRefillExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FormDef replacement = readFormDef(getFormDefFile(hash));
+                    if (replacement != null) {
+                        put(hash, replacement);
+                    }
+                }
+            });
+        }
+        return fd;
+    }
+
+    /** Returns the file where the serialized FormDef for the form with the given hash goes. */
+    public static File getFormDefFile(String hash) {
+        return new File(Collect.getInstance().getCachePath() + File.separator + hash + ".formdef");
+    }
+
+    /**
+     * Read serialized {@link FormDef} from file and recreate as object.
+     *
+     * @param formDef serialized FormDef file
+     * @return {@link FormDef} object, or null if it couldn't be read
+     */
+    public static FormDef readFormDef(File formDef) {
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(formDef)));
+            FormDef fd = new FormDef();
+            fd.readExternal(dis, ExtUtil.defaultPrototypes());
+            return fd;
+        } catch (Exception e) {
+            Log.w(t, "Failed to read " + formDef.getAbsolutePath(), e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(dis);
+        }
+    }
+
+    /** Write the FormDef to the file system as a binary blob, unless it is already there. */
+    public static void writeFormDef(FormDef fd, String hash) {
+        File formDef = getFormDefFile(hash);
+        if (formDef.exists()) {
+            return;
+        }
+        // Write to a temporary file first, so that a half-written file is never read.
+        File tempFile = new File(formDef.getPath() + ".tmp");
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            fd.writeExternal(dos);
+            dos.close();
+            dos = null;
+            if (!tempFile.renameTo(formDef)) {
+                Log.w(t, "Failed to rename " + tempFile.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            Log.w(t, "Failed to write " + formDef.getAbsolutePath(), e);
+        } finally {
+            IOUtils.closeQuietly(dos);
+            tempFile.delete();
+        }
+    }
+
+    /** Loads a FormDef from its .formdef file, or else parses the XML and writes the file. */
+    private static FormDef load(File formXml, String hash) {
+        File formBin = getFormDefFile(hash);
+        if (formBin.exists()) {
+            FormDef fd = readFormDef(formBin);
+            if (fd != null) {
+                return fd;
+            }
+            formBin.delete();
+        }
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(formXml);
+            FormDef fd = XFormUtils.getFormFromInputStream(fis);
+            if (fd != null) {
+                writeFormDef(fd, hash);
+            }
+            return fd;
+        } catch (Exception e) {
+            Log.w(t, "Failed to parse " + formXml.getAbsolutePath(), e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    /** Adds a FormDef to the pool only if that wouldn't evict another one. */
+    private static void putIfRoom(String hash, FormDef fd) {
+        synchronized (sWarmFormDefs) {
+            if (sWarmFormDefs.size() < MAX_WARM_FORMS && !sWarmFormDefs.containsKey(hash)) {
+                sWarmFormDefs.put(hash, fd);
+            }
+        }
+    }
+
+    private static void put(String hash, FormDef fd) {
+        synchronized (sWarmFormDefs) {
+            sWarmFormDefs.put(hash, fd);
+            Iterator<String> eldest = sWarmFormDefs.keySet().iterator();
+            while (sWarmFormDefs.size() > MAX_WARM_FORMS) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+}